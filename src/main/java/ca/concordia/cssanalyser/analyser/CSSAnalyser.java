@@ -10,6 +10,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.w3c.dom.Document;
@@ -20,6 +24,7 @@ import ca.concordia.cssanalyser.analyser.duplication.DuplicationInstance;
 import ca.concordia.cssanalyser.analyser.duplication.items.Item;
 import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
 import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.app.ConcurrencyHelper;
 import ca.concordia.cssanalyser.app.FileLogger;
 import ca.concordia.cssanalyser.cssmodel.StyleSheet;
 import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
@@ -49,7 +54,11 @@ public class CSSAnalyser {
 	private boolean doFPGrowth = true;
 	private boolean dontUseDOM = false;
 	private boolean compareAprioriAndFPGrowth = false;
+	private boolean parallelFPGrowth = false;
 	private final String folderPath;
+	private final String domStateHTMLPath;
+	private final int numberOfThreads;
+	private final CSSParser parser;
 	
 	/**
 	 * Through this constructor, one should pass the
@@ -61,6 +70,40 @@ public class CSSAnalyser {
 	 * @throws FileNotFoundException Could not find the given directory or css file.
 	 */
 	public CSSAnalyser(String domStateHTMLPath, String cssContainingFolderOrFilePath) throws FileNotFoundException {
+		this(domStateHTMLPath, cssContainingFolderOrFilePath, 1);
+	}
+	
+	/**
+	 * Same as {@link #CSSAnalyser(String, String)}, but parses and analyses
+	 * the CSS files using the given number of threads.
+	 * The results (including the lines of analytics.txt) are written in the same order
+	 * as the analysis with one thread.
+	 * @param domStateHTMLPath
+	 * @param cssContainingFolderOrFilePath
+	 * @param numberOfThreads Number of the CSS files which are parsed and analysed at the same time.
+	 * Values less than 2 mean sequential parsing and analysis.
+	 * If there is only one CSS file, this is the number of its grouping refactorings which are evaluated at the same time.
+	 * @throws FileNotFoundException Could not find the given directory or css file.
+	 */
+	public CSSAnalyser(String domStateHTMLPath, String cssContainingFolderOrFilePath, int numberOfThreads) throws FileNotFoundException {
+		this(domStateHTMLPath, cssContainingFolderOrFilePath, numberOfThreads, CSSParserFactory.getCSSParser(CSSParserType.LESS));
+	}
+	
+	/**
+	 * Same as {@link #CSSAnalyser(String, String, int)}, but parses the CSS files using the given parser.
+	 * Passing the same {@link ca.concordia.cssanalyser.parser.CachingCSSParser} to the analysers of different DOM states
+	 * avoids parsing the CSS files which are the same in these states more than once.
+	 * @param domStateHTMLPath
+	 * @param cssContainingFolderOrFilePath
+	 * @param numberOfThreads
+	 * @param parser Parser to be used for the CSS files. It should be safe to use it from different threads.
+	 * @throws FileNotFoundException Could not find the given directory or css file.
+	 */
+	public CSSAnalyser(String domStateHTMLPath, String cssContainingFolderOrFilePath, int numberOfThreads, CSSParser parser) throws FileNotFoundException {
+		
+		this.domStateHTMLPath = domStateHTMLPath;
+		this.numberOfThreads = Math.max(1, numberOfThreads);
+		this.parser = parser;
 		
 		FileLogger.addFileAppender(cssContainingFolderOrFilePath + "/log.log", false);
 		
@@ -97,6 +140,10 @@ public class CSSAnalyser {
 		
 	}
 	
+	public CSSAnalyser(String cssContainingFolderOrCSSFilePath, int numberOfThreads) throws FileNotFoundException {
+		this(null, cssContainingFolderOrCSSFilePath, numberOfThreads);
+	}
+	
 	/**
 	 * Identifies whether analyzer should do Apriori to find
 	 * frequent declarations
@@ -115,6 +162,16 @@ public class CSSAnalyser {
 		doFPGrowth = value;
 	}
 	
+	/**
+	 * Identifies whether FP-Growth should mine the frequent declarations of a style sheet in parallel,
+	 * using the threads of the analyser, when the style sheets are analysed one at a time.
+	 * See {@link DuplicationDetector#setUseParallelFPGrowth(boolean)}.
+	 * @param value
+	 */
+	public void setParallelFPGrowth(boolean value) {
+		parallelFPGrowth = value;
+	}
+	
 	/**
 	 * Identifies whether we have to compare apriori results with fpgrowth results
 	 * @param value
@@ -124,20 +181,59 @@ public class CSSAnalyser {
 	}
 	
 	private void parseStyleSheets(List<File> files ) {
-				
-		for (File file : files) {
-			String filePath = file.getAbsolutePath();
-			LOGGER.info("Now parsing " + filePath);
-			CSSParser parser = CSSParserFactory.getCSSParser(CSSParserType.LESS);
-			try {
-				StyleSheet styleSheet = parser.parseExternalCSS(filePath);
-				model.addStyleSheet(styleSheet);
-			} catch (Exception ex) {
-				LOGGER.warn("Couldn't parse " + file + ". Skipping to the next file.");
+		
+		if (numberOfThreads > 1 && files.size() > 1) {
+			// Parse concurrently, but add the style sheets to the model in the order of the files
+			List<Callable<StyleSheet>> parseTasks = new ArrayList<>();
+			for (File file : files) {
+				parseTasks.add(() -> parseStyleSheet(file));
+			}
+			for (StyleSheet styleSheet : runInParallel(parseTasks)) {
+				if (styleSheet != null)
+					model.addStyleSheet(styleSheet);
+			}
+		} else {
+			for (File file : files) {
+				StyleSheet styleSheet = parseStyleSheet(file);
+				if (styleSheet != null)
+					model.addStyleSheet(styleSheet);
 			}
 		}
 		
 	}
+	
+	/*
+	 * Returns null if the file could not be parsed
+	 */
+	private StyleSheet parseStyleSheet(File file) {
+		String filePath = file.getAbsolutePath();
+		LOGGER.info("Now parsing " + filePath);
+		try {
+			return parser.parseExternalCSS(filePath);
+		} catch (Exception ex) {
+			LOGGER.warn("Couldn't parse " + file + ". Skipping to the next file.");
+			return null;
+		}
+	}
+	
+	/*
+	 * Runs the given tasks using a pool of numberOfThreads threads,
+	 * and returns their results in the order of the tasks.
+	 */
+	private <T> List<T> runInParallel(List<Callable<T>> tasks) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, tasks.size()));
+		try {
+			List<Future<T>> futures = new ArrayList<>();
+			for (Callable<T> task : tasks)
+				futures.add(executor.submit(task));
+			List<T> results = new ArrayList<>();
+			for (Future<T> future : futures)
+				results.add(ConcurrencyHelper.getResult(future));
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
 	/**
 	 * Invoking this method will result to the creation of 
@@ -183,71 +279,114 @@ public class CSSAnalyser {
 		
 	
 		// Do the analysis for each CSS file
-		for (StyleSheet styleSheet : model.getStyleSheets()) {
-						
-			String filePath = styleSheet.getFilePath();
-			String analyticsFolderPath = filePath + ".analyse";
-			
+		if (numberOfThreads > 1 && model.getStyleSheets().size() > 1) {
+			/*
+			 * DOM documents are not safe to be queried by different threads at the same time,
+			 * so every thread uses its own copy of the DOM state.
+			 * Every style sheet writes to its own .analyse folder,
+			 * and the lines of analytics.txt are written in the order of the style sheets.
+			 */
+			ThreadLocal<Document> documents = ThreadLocal.withInitial(() -> dontUseDOM ? null : DOMHelper.getDocument(domStateHTMLPath));
+			List<Callable<String>> analysisTasks = new ArrayList<>();
+			for (StyleSheet styleSheet : model.getStyleSheets()) {
+				analysisTasks.add(() -> analyseStyleSheet(styleSheet, MIN_SUPPORT, documents.get(), 1));
+			}
+			for (String analytics : runInParallel(analysisTasks)) {
+				writeAnalytics(analytics);
+			}
+		} else {
+			for (StyleSheet styleSheet : model.getStyleSheets()) {
+				// The threads are used for evaluating the grouping refactorings of each style sheet
+				writeAnalytics(analyseStyleSheet(styleSheet, MIN_SUPPORT, model.getDocument(), numberOfThreads));
+			}
+		}
+		
+		LOGGER.info("Done.");
+					
+	}
+	
+	private void writeAnalytics(String analytics) {
+		if (analytics != null)
+			IOHelper.writeStringToFile(analytics + System.lineSeparator(), folderPath + "/analytics.txt" , true);
+	}
+	
+	/*
+	 * Does the analysis for one style sheet, writing the results in its .analyse folder.
+	 * Returns the line to be added to analytics.txt, or null if there is no such line.
+	 * The given number of threads is used for this style sheet: the grouping refactorings are evaluated that many at a time
+	 * (see {@link RefactorDuplicationsToGroupingSelector#setNumberOfSpeculativeEvaluations(int)}),
+	 * and FP-Growth mines in parallel using them, if asked (see {@link #setParallelFPGrowth(boolean)}).
+	 */
+	private String analyseStyleSheet(StyleSheet styleSheet, final int MIN_SUPPORT, Document document, int numberOfStyleSheetThreads) {
+		
+		String analytics = null;
+		String filePath = styleSheet.getFilePath();
+		String analyticsFolderPath = filePath + ".analyse";
+		
 //			CSSValueOverridingDependencyList originalDependencies = styleSheet.getValueOverridingDependencies(model.getDocument());
 //			IOHelper.writeStringToFile(originalDependencies.toString() + "\n\n\n\n" + originalDependencies.size(), folderName + "/orderDependencies.txt");
-			
-			
+		
+		
 //			if (originalDependencies != null) // correct always
 //				continue;
-					
-			LOGGER.info("Finding different types of duplication in " + filePath);
-			
-			DuplicationDetector duplicationDetector = new DuplicationDetector(styleSheet);
-			duplicationDetector.findDuplications();
+				
+		LOGGER.info("Finding different types of duplication in " + filePath);
+		
+		DuplicationDetector duplicationDetector = new DuplicationDetector(styleSheet);
+		if (parallelFPGrowth && numberOfStyleSheetThreads > 1) {
+			duplicationDetector.setUseParallelFPGrowth(true);
+			duplicationDetector.setNumberOfFPGrowthThreads(numberOfStyleSheetThreads);
+		}
+		duplicationDetector.findDuplications();
 
-			
-			IOHelper.createFolder(analyticsFolderPath, true);
-			
-			IOHelper.writeStringToFile(styleSheet.toString(), analyticsFolderPath + "/formatted.css");
+		
+		IOHelper.createFolder(analyticsFolderPath, true);
+		
+		IOHelper.writeStringToFile(styleSheet.toString(), analyticsFolderPath + "/formatted.css");
 
-			
-			DuplicationIncstanceList typeIDuplications = duplicationDetector.getTypeIDuplications();
-			IOHelper.writeLinesToFile(typeIDuplications, analyticsFolderPath + "/typeI.txt");
 		
-			DuplicationIncstanceList typeIIDuplications = duplicationDetector.getTypeIIDuplications();
-			IOHelper.writeLinesToFile(typeIIDuplications, analyticsFolderPath + "/typeII.txt");
-			
-			DuplicationIncstanceList typeIIIDuplications = duplicationDetector.getTypeIIIDuplications();
-			IOHelper.writeLinesToFile(typeIIIDuplications, analyticsFolderPath + "/typeIII.txt");
-			
+		DuplicationIncstanceList typeIDuplications = duplicationDetector.getTypeIDuplications();
+		IOHelper.writeLinesToFile(typeIDuplications, analyticsFolderPath + "/typeI.txt");
+	
+		DuplicationIncstanceList typeIIDuplications = duplicationDetector.getTypeIIDuplications();
+		IOHelper.writeLinesToFile(typeIIDuplications, analyticsFolderPath + "/typeII.txt");
+		
+		DuplicationIncstanceList typeIIIDuplications = duplicationDetector.getTypeIIIDuplications();
+		IOHelper.writeLinesToFile(typeIIIDuplications, analyticsFolderPath + "/typeIII.txt");
+		
 //			if (typeToItemsMapper != null) continue;
-			
-			//			DuplicationIncstanceList typeIVADuplications = duplicationFinder.getTypeIVADuplications();
+		
+		//			DuplicationIncstanceList typeIVADuplications = duplicationFinder.getTypeIVADuplications();
 //			IOHelper.writeLinesToFile(typeIVADuplications, folderName + "/typeIVA.txt");
-			
-			//if (!dontUseDOM) {
-				//duplicationFinder.findTypeFourBDuplication(model.getDocument());
-				//DuplicationIncstanceList typeIVBDuplications = duplicationFinder.getTypeIVBDuplications();
-				//IOHelper.writeLinesToFile(typeIVBDuplications, folderName + "/typeIVB.txt");
-			//}
-						
-		
-			List<ItemSetList> aprioriResults = null, fpgrowthResults = null;
-			
-			if (doApriori) {
-			
-				LOGGER.info("Applying apriori algorithm with minimum support count of " + MIN_SUPPORT + " on " + filePath);
+		
+		//if (!dontUseDOM) {
+			//duplicationFinder.findTypeFourBDuplication(model.getDocument());
+			//DuplicationIncstanceList typeIVBDuplications = duplicationFinder.getTypeIVBDuplications();
+			//IOHelper.writeLinesToFile(typeIVBDuplications, folderName + "/typeIVB.txt");
+		//}
+					
+	
+		List<ItemSetList> aprioriResults = null, fpgrowthResults = null;
+		
+		if (doApriori) {
+		
+			LOGGER.info("Applying apriori algorithm with minimum support count of " + MIN_SUPPORT + " on " + filePath);
 
-				long start = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
-				aprioriResults = duplicationDetector.apriori(MIN_SUPPORT);
-				long end = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
-				long time = (end - start) / 1000000L;
-				IOHelper.writeLinesToFile(aprioriResults, analyticsFolderPath + "/apriori.txt");
-				
-				LOGGER.info("Done Apriori in " + time);
-			
-			}
+			long start = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+			aprioriResults = duplicationDetector.apriori(MIN_SUPPORT);
+			long end = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+			long time = (end - start) / 1000000L;
+			IOHelper.writeLinesToFile(aprioriResults, analyticsFolderPath + "/apriori.txt");
 			
-			if (doFPGrowth) {
+			LOGGER.info("Done Apriori in " + time);
+		
+		}
+		
+		if (doFPGrowth) {
 
-				fpgrowthResults = duplicationDetector.fpGrowth(MIN_SUPPORT, false);
-				IOHelper.writeLinesToFile(fpgrowthResults, analyticsFolderPath + "/fpgrowth.txt");
-				
+			fpgrowthResults = duplicationDetector.fpGrowth(MIN_SUPPORT, false);
+			IOHelper.writeLinesToFile(fpgrowthResults, analyticsFolderPath + "/fpgrowth.txt");
+			
 //				int numberOfPositiveSubsumed = 0, numberOrRefactoringsSubsumed = 0;
 //				for (ItemSetList isl : fpgrowthResults) {
 //					for (ItemSet is : isl) {
@@ -260,38 +399,36 @@ public class CSSAnalyser {
 //				String str = "Subsumed\tPositive\r\n" + String.valueOf(numberOrRefactoringsSubsumed) + "\t" + String.valueOf(numberOfPositiveSubsumed);
 //				IOHelper.writeStringToFile(str, analyticsFolderPath + "/refactoring-opportunities-positive-subsumed.txt");
 //				
-				long start, end, time;
-				LOGGER.info("Applying grouping refactoring opportunities");
-				start = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
-				BatchGroupingRefactoringResult refactoringResults;
-				RefactorDuplicationsToGroupingSelector refactorDuplications = new RefactorDuplicationsToGroupingSelector(styleSheet);
-				if (!dontUseDOM) {
-					refactoringResults = refactorDuplications.refactorGroupingOpportunities(MIN_SUPPORT, analyticsFolderPath, fpgrowthResults, model.getDocument(), true);
-				} else {
-					refactoringResults = refactorDuplications.refactorGroupingOpportunities(MIN_SUPPORT, analyticsFolderPath, fpgrowthResults, true);
-				}
-				end = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
-				time = (end - start) / 1000000L;
-				LOGGER.info("Applied " + refactoringResults.getNumberOfAppliedRefactorings() + " grouping refactoring(s) in " + time + " ms");
-				LOGGER.info("Collecting more info for the further analysis...");
-				
-				List<ItemSetList> fpgrowthResultsSubsumed = duplicationDetector.fpGrowth(MIN_SUPPORT, true);
-				IOHelper.writeLinesToFile(fpgrowthResultsSubsumed, analyticsFolderPath + "/fpgrowth-subsumed.txt");
-				
-				String analytics = getAnalytics(styleSheet, refactoringResults, duplicationDetector, fpgrowthResults, fpgrowthResultsSubsumed);
-				
-				IOHelper.writeStringToFile(analytics + System.lineSeparator(), folderPath + "/analytics.txt" , true);
-								
+			long start, end, time;
+			LOGGER.info("Applying grouping refactoring opportunities");
+			start = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+			BatchGroupingRefactoringResult refactoringResults;
+			RefactorDuplicationsToGroupingSelector refactorDuplications = new RefactorDuplicationsToGroupingSelector(styleSheet);
+			refactorDuplications.setUseIncrementalDependencyDetection(true);
+			refactorDuplications.setNumberOfSpeculativeEvaluations(numberOfStyleSheetThreads);
+			if (!dontUseDOM) {
+				refactoringResults = refactorDuplications.refactorGroupingOpportunities(MIN_SUPPORT, analyticsFolderPath, fpgrowthResults, document, true);
+			} else {
+				refactoringResults = refactorDuplications.refactorGroupingOpportunities(MIN_SUPPORT, analyticsFolderPath, fpgrowthResults, true);
 			}
+			end = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+			time = (end - start) / 1000000L;
+			LOGGER.info("Applied " + refactoringResults.getNumberOfAppliedRefactorings() + " grouping refactoring(s) in " + time + " ms");
+			LOGGER.info("Collecting more info for the further analysis...");
 			
-			if (compareAprioriAndFPGrowth)
-				compareAprioriAndFPGrowth(aprioriResults, fpgrowthResults);
+			List<ItemSetList> fpgrowthResultsSubsumed = duplicationDetector.fpGrowth(MIN_SUPPORT, true);
+			IOHelper.writeLinesToFile(fpgrowthResultsSubsumed, analyticsFolderPath + "/fpgrowth-subsumed.txt");
 			
-			LOGGER.info("Done analysis for " + filePath);
+			analytics = getAnalytics(styleSheet, refactoringResults, duplicationDetector, fpgrowthResults, fpgrowthResultsSubsumed);
+							
 		}
 		
-		LOGGER.info("Done.");
-					
+		if (compareAprioriAndFPGrowth)
+			compareAprioriAndFPGrowth(aprioriResults, fpgrowthResults);
+		
+		LOGGER.info("Done analysis for " + filePath);
+		
+		return analytics;
 	}
 	
 	private String getAnalytics(StyleSheet styleSheet, BatchGroupingRefactoringResult refactoringResults, DuplicationDetector finder, List<ItemSetList> dupResults, List<ItemSetList> dupResultsSubsumed) {
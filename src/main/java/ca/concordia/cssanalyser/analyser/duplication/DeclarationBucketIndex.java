@@ -0,0 +1,252 @@
+package ca.concordia.cssanalyser.analyser.duplication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.MultiValuedDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.PropertyAndLayer;
+import ca.concordia.cssanalyser.cssmodel.declaration.SingleValuedDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationEquivalentValue;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationValue;
+
+/**
+ * Groups the declarations of a style sheet into buckets, so that two declarations
+ * can only be equal ({@link Declaration#declarationEquals(Declaration)}) or
+ * equivalent ({@link Declaration#declarationIsEquivalent(Declaration)}) if they
+ * fall in the same bucket.
+ * A declaration is put in two buckets: one keyed by its equality key
+ * (property, importance, number of value layers and the real values) and one keyed by its
+ * equivalence key (the same, but using the common representation of the values).
+ * The expensive comparisons are then only needed among the declarations of these two buckets.
+ * <br />
+ * The keys are necessary conditions of the comparisons in the model, so they never
+ * separate two declarations that the pairwise comparison would match. The only assumption
+ * is that equal multi-valued declarations style the same set of properties,
+ * which is what the equivalence check already requires.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+class DeclarationBucketIndex {
+
+	private final int[][] equalityBucketOf;
+	private final int[][] equivalenceBucketOf;
+	private final int[] positionInEqualityBucket;
+	private final int[] positionInEquivalenceBucket;
+
+	/**
+	 * Builds the buckets for the given declarations.
+	 * The indices used in this class are the indices of the declarations in the given list.
+	 * @param declarations
+	 * @param onlyCheckProperties If true, the values are not considered for the equality key,
+	 * as in {@link DuplicationDetector#findPropertyDuplications()}
+	 */
+	public DeclarationBucketIndex(List<Declaration> declarations, boolean onlyCheckProperties) {
+
+		Map<String, List<Integer>> equalityBuckets = new HashMap<>();
+		Map<String, List<Integer>> equivalenceBuckets = new HashMap<>();
+
+		List<List<Integer>> equalityBucketOfList = new ArrayList<>(declarations.size());
+		List<List<Integer>> equivalenceBucketOfList = new ArrayList<>(declarations.size());
+
+		positionInEqualityBucket = new int[declarations.size()];
+		positionInEquivalenceBucket = new int[declarations.size()];
+
+		for (int i = 0; i < declarations.size(); i++) {
+			Declaration declaration = declarations.get(i);
+
+			String equalityKey = getEqualityKey(declaration, onlyCheckProperties);
+			List<Integer> equalityBucket = equalityBuckets.get(equalityKey);
+			if (equalityBucket == null) {
+				equalityBucket = new ArrayList<>();
+				equalityBuckets.put(equalityKey, equalityBucket);
+			}
+			positionInEqualityBucket[i] = equalityBucket.size();
+			equalityBucket.add(i);
+			equalityBucketOfList.add(equalityBucket);
+
+			String equivalenceKey = getEquivalenceKey(declaration);
+			List<Integer> equivalenceBucket = equivalenceBuckets.get(equivalenceKey);
+			if (equivalenceBucket == null) {
+				equivalenceBucket = new ArrayList<>();
+				equivalenceBuckets.put(equivalenceKey, equivalenceBucket);
+			}
+			positionInEquivalenceBucket[i] = equivalenceBucket.size();
+			equivalenceBucket.add(i);
+			equivalenceBucketOfList.add(equivalenceBucket);
+		}
+
+		// Share one array per bucket between all its members
+		equalityBucketOf = toArrays(equalityBucketOfList);
+		equivalenceBucketOf = toArrays(equivalenceBucketOfList);
+	}
+
+	private static int[][] toArrays(List<List<Integer>> bucketOfList) {
+		Map<List<Integer>, int[]> bucketArrays = new IdentityHashMap<>();
+		int[][] toReturn = new int[bucketOfList.size()][];
+		for (int i = 0; i < bucketOfList.size(); i++) {
+			List<Integer> bucket = bucketOfList.get(i);
+			int[] bucketArray = bucketArrays.get(bucket);
+			if (bucketArray == null) {
+				bucketArray = new int[bucket.size()];
+				for (int j = 0; j < bucket.size(); j++)
+					bucketArray[j] = bucket.get(j);
+				bucketArrays.put(bucket, bucketArray);
+			}
+			toReturn[i] = bucketArray;
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Returns the indices of the declarations which come after the given declaration
+	 * and could be equal or equivalent with it, in ascending order.
+	 * @param declarationIndex
+	 * @return
+	 */
+	public int[] getCandidatesAfter(int declarationIndex) {
+		int[] equalityBucket = equalityBucketOf[declarationIndex];
+		int[] equivalenceBucket = equivalenceBucketOf[declarationIndex];
+		int i = positionInEqualityBucket[declarationIndex] + 1;
+		int j = positionInEquivalenceBucket[declarationIndex] + 1;
+
+		int[] candidates = new int[(equalityBucket.length - i) + (equivalenceBucket.length - j)];
+		int size = 0;
+		// Merge two sorted tails, skipping the indices which are in both
+		while (i < equalityBucket.length || j < equivalenceBucket.length) {
+			int next;
+			if (j >= equivalenceBucket.length || (i < equalityBucket.length && equalityBucket[i] < equivalenceBucket[j])) {
+				next = equalityBucket[i++];
+			} else if (i >= equalityBucket.length || equivalenceBucket[j] < equalityBucket[i]) {
+				next = equivalenceBucket[j++];
+			} else {
+				next = equalityBucket[i++];
+				j++;
+			}
+			candidates[size++] = next;
+		}
+
+		if (size == candidates.length)
+			return candidates;
+		int[] toReturn = new int[size];
+		System.arraycopy(candidates, 0, toReturn, 0, size);
+		return toReturn;
+	}
+
+	/**
+	 * Returns a key which is the same for any two equal declarations.
+	 * @param declaration
+	 * @param onlyCheckProperties Only consider property, importance and the number of value layers
+	 * @return
+	 */
+	static String getEqualityKey(Declaration declaration, boolean onlyCheckProperties) {
+		StringBuilder key = getPropertyKey(declaration);
+		if (onlyCheckProperties)
+			return key.toString();
+		if (declaration instanceof SingleValuedDeclaration) {
+			key.append(((SingleValuedDeclaration)declaration).getValue().getValue().toLowerCase());
+		} else if (declaration instanceof MultiValuedDeclaration) {
+			MultiValuedDeclaration multiValuedDeclaration = (MultiValuedDeclaration) declaration;
+			int numberOfRealValues = 0;
+			for (Iterator<DeclarationValue> iterator = multiValuedDeclaration.getRealValues().iterator(); iterator.hasNext(); iterator.next())
+				numberOfRealValues++;
+			key.append(numberOfRealValues).append('|');
+			appendStylePropertiesKey(key, multiValuedDeclaration, false);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns a key which is the same for any two equivalent declarations.
+	 * @param declaration
+	 * @return
+	 */
+	static String getEquivalenceKey(Declaration declaration) {
+		StringBuilder key = getPropertyKey(declaration);
+		if (declaration instanceof SingleValuedDeclaration) {
+			key.append(getEquivalentValueKey(((SingleValuedDeclaration)declaration).getValue()));
+		} else if (declaration instanceof MultiValuedDeclaration) {
+			appendStylePropertiesKey(key, (MultiValuedDeclaration) declaration, true);
+		}
+		return key.toString();
+	}
+
+	private static StringBuilder getPropertyKey(Declaration declaration) {
+		StringBuilder key = new StringBuilder(declaration.getProperty());
+		key.append('|').append(declaration.isImportant() ? '!' : ' ');
+		key.append('|').append(declaration.getNumberOfValueLayers());
+		key.append('|');
+		return key;
+	}
+
+	/*
+	 * Appends every style property (and layer) of the declaration,
+	 * followed by the sorted distinct keys of the values for that style property.
+	 * Comparison of multi-valued declarations is done style property by style property,
+	 * either ordered or not, so the sorted distinct keys are the same for the matched declarations.
+	 */
+	private static void appendStylePropertiesKey(StringBuilder key, MultiValuedDeclaration declaration, boolean equivalent) {
+		Map<String, TreeSet<String>> stylePropertyToValues = new TreeMap<>();
+		for (PropertyAndLayer propertyAndLayer : declaration.getAllSetPropertyAndLayers()) {
+			TreeSet<String> valueKeys = new TreeSet<>();
+			Collection<DeclarationValue> values = declaration.getDeclarationValuesForStyleProperty(propertyAndLayer);
+			if (values != null) {
+				for (DeclarationValue value : values) {
+					if (equivalent)
+						valueKeys.add(getEquivalentValueKey(value));
+					else
+						valueKeys.add(value.getValue().toLowerCase());
+				}
+			}
+			stylePropertyToValues.put(propertyAndLayer.getPropertyName() + "#" + propertyAndLayer.getPropertyLayer(), valueKeys);
+		}
+		for (Map.Entry<String, TreeSet<String>> entry : stylePropertyToValues.entrySet()) {
+			key.append(entry.getKey()).append('=').append(entry.getValue()).append(';');
+		}
+	}
+
+	/*
+	 * The key is a function of the common representation of the value (the real value for
+	 * the values not having one). Numbers are normalized the same way
+	 * DeclarationEquivalentValue#equivalent() parses them, so 1.0px and 1px get the same key.
+	 * Colors are compared by their packed components, and so are the keys.
+	 */
+	static String getEquivalentValueKey(DeclarationValue value) {
+		if (value.isRGBAColor())
+			return "rgba#" + Integer.toHexString(value.getRGB()) + "/" + value.getAlpha();
+		String representation;
+		if (value instanceof DeclarationEquivalentValue) {
+			representation = ((DeclarationEquivalentValue)value).getEquivalentValue();
+			if (representation == null)
+				return "\0";
+		} else {
+			representation = value.getValue();
+		}
+
+		int suffixPosition = 0;
+		while (suffixPosition < representation.length() &&
+				!Character.isLetter(representation.charAt(suffixPosition)) && representation.charAt(suffixPosition) != '%') {
+			suffixPosition++;
+		}
+		if (suffixPosition > 0) {
+			try {
+				double number = Double.parseDouble(representation.substring(0, suffixPosition));
+				if (number == 0)
+					number = 0; // -0.0 and 0.0 are equivalent
+				return number + representation.substring(suffixPosition).trim().toLowerCase();
+			} catch (NumberFormatException nfe) {
+				// Not a number, use the representation itself
+			}
+		}
+		return representation.toLowerCase();
+	}
+
+}
@@ -2,8 +2,10 @@ package ca.concordia.cssanalyser.analyser.duplication;
 
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -14,10 +16,12 @@ import org.w3c.dom.Document;
 
 import ca.concordia.cssanalyser.analyser.duplication.TypeFourDuplicationInstance.TypeIVBDuplication;
 import ca.concordia.cssanalyser.analyser.duplication.apriori.Apriori;
+import ca.concordia.cssanalyser.analyser.duplication.charm.Charm;
 import ca.concordia.cssanalyser.analyser.duplication.fpgrowth.FPGrowth;
 import ca.concordia.cssanalyser.analyser.duplication.items.Item;
 import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
 import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetNumbering;
 import ca.concordia.cssanalyser.analyser.progressmonitor.ProgressMonitor;
 import ca.concordia.cssanalyser.app.FileLogger;
 import ca.concordia.cssanalyser.cssmodel.StyleSheet;
@@ -47,9 +51,85 @@ public class DuplicationDetector {
 	 */
 	private Map<Declaration, Item> declarationItemMap = new HashMap<>();
 
+	/*
+	 * If true, type I and II duplications are found by comparing every declaration
+	 * with all the declarations after it, rather than only with the ones in its buckets.
+	 * Kept for comparing the results of the two approaches.
+	 */
+	private boolean usePairwiseTypeOneAndTwoDetection = false;
+	private boolean useParallelFPGrowth = false;
+	private int numberOfFPGrowthThreads = 0;
+	private boolean useArrayFPTree = false;
+	private boolean useClosedItemSetMining = false;
+	private boolean useNumberedItemSets = false;
+
 	public DuplicationDetector(StyleSheet stylesheet) {
 		this.stylesheet = stylesheet;
 	}
+	
+	/**
+	 * Identifies whether type I and type II duplications should be found using the 
+	 * pairwise comparison of all declarations (the old way), instead of 
+	 * comparing only the declarations which fall in the same bucket (default).
+	 * See {@link DeclarationBucketIndex}.
+	 * @param value
+	 */
+	public void setUsePairwiseTypeOneAndTwoDetection(boolean value) {
+		usePairwiseTypeOneAndTwoDetection = value;
+	}
+	
+	/**
+	 * Identifies whether FP-Growth should mine the conditional FP-Trees
+	 * of the top-level items in parallel. The results are the same as the
+	 * sequential mining (default).
+	 * See {@link FPGrowth#setParallel(boolean)}.
+	 * @param value
+	 */
+	public void setUseParallelFPGrowth(boolean value) {
+		useParallelFPGrowth = value;
+	}
+	
+	/**
+	 * Sets the number of threads used by the parallel FP-Growth
+	 * (see {@link #setUseParallelFPGrowth(boolean)}).
+	 * Zero (default) means using the common fork/join pool.
+	 * See {@link FPGrowth#setNumberOfThreads(int)}.
+	 * @param numberOfThreads
+	 */
+	public void setNumberOfFPGrowthThreads(int numberOfThreads) {
+		numberOfFPGrowthThreads = numberOfThreads;
+	}
+	
+	/**
+	 * Identifies whether FP-Growth should use the array-backed FP-Tree,
+	 * which allocates much less objects than the default one.
+	 * See {@link FPGrowth#setUseArrayFPTree(boolean)}.
+	 * @param value
+	 */
+	public void setUseArrayFPTree(boolean value) {
+		useArrayFPTree = value;
+	}
+	
+	/**
+	 * Identifies whether the closed itemsets should be mined directly, using {@link Charm},
+	 * when {@link #fpGrowth(int, boolean)} is asked to remove the subsumed itemsets.
+	 * The results contain the same itemsets, without generating and then removing the subsumed ones.
+	 * @param value
+	 */
+	public void setUseClosedItemSetMining(boolean value) {
+		useClosedItemSetMining = value;
+	}
+	
+	/**
+	 * Identifies whether the ItemSets mined by {@link #fpGrowth(int, boolean)} should 
+	 * keep their items and supports as bits, using a numbering of the Items and Selectors
+	 * of the style sheet (see {@link ItemSetNumbering}).
+	 * This makes the containment and equality checks of the ItemSets and their supports word-wise operations.
+	 * @param value
+	 */
+	public void setUseNumberedItemSets(boolean value) {
+		useNumberedItemSets = value;
+	}
 
 	private DuplicationIncstanceList typeOneDuplicationsList;
 	private DuplicationIncstanceList typeTwoDuplicationsList;
@@ -112,8 +192,16 @@ public class DuplicationDetector {
 		List<Declaration> allDeclarations = new ArrayList<>(stylesheet.getAllDeclarations());
 
 		// We don't want to repeat, being identical is a symmetric relation
-		Set<Integer> visitedIdenticalDeclarations = new HashSet<>();
-		Set<Integer> visitedEquivalentDeclarations = new HashSet<>();
+		BitSet visitedIdenticalDeclarations = new BitSet(allDeclarations.size());
+		BitSet visitedEquivalentDeclarations = new BitSet(allDeclarations.size());
+
+		/*
+		 * Only the declarations in the same buckets could be equal or equivalent, 
+		 * so we don't need to compare each declaration with all the others
+		 */
+		DeclarationBucketIndex bucketIndex = null;
+		if (!usePairwiseTypeOneAndTwoDetection)
+			bucketIndex = new DeclarationBucketIndex(allDeclarations, onlyCheckProperties);
 
 		TypeOneDuplicationInstance typeOneDuplication = new TypeOneDuplicationInstance();
 		TypeTwoDuplicationInstance typeTwoDuplication = new TypeTwoDuplicationInstance();
@@ -123,8 +211,6 @@ public class DuplicationDetector {
 
 			Declaration currentDeclaration = allDeclarations.get(currentDeclarationIndex);
 
-			int checkingDecIndex = currentDeclarationIndex;
-
 			/*
 			 * We want to keep all current identical declarations together, and
 			 * then add them to the duplications list when we found all
@@ -162,7 +248,14 @@ public class DuplicationDetector {
 				C1.add(itemSet);
 			}
 
-			while (++checkingDecIndex < allDeclarations.size()) {
+			int[] candidateIndices = null;
+			if (bucketIndex != null)
+				candidateIndices = bucketIndex.getCandidatesAfter(currentDeclarationIndex);
+			int numberOfCandidates = bucketIndex != null ? candidateIndices.length : allDeclarations.size() - currentDeclarationIndex - 1;
+
+			for (int candidate = 0; candidate < numberOfCandidates; candidate++) {
+
+				int checkingDecIndex = bucketIndex != null ? candidateIndices[candidate] : currentDeclarationIndex + candidate + 1;
 
 				Declaration checkingDeclaration = allDeclarations.get(checkingDecIndex);
 
@@ -176,14 +269,14 @@ public class DuplicationDetector {
 				else
 					equals = currentDeclaration.declarationEquals(checkingDeclaration);
 
-				if (equals && !visitedIdenticalDeclarations.contains(currentDeclarationIndex)
-						&& !visitedIdenticalDeclarations.contains(checkingDecIndex)) {
+				if (equals && !visitedIdenticalDeclarations.get(currentDeclarationIndex)
+						&& !visitedIdenticalDeclarations.get(checkingDecIndex)) {
 
 					// We have found type I duplication
 					// We add the checkingDeclaration, it will add the Selector
 					// itself.
 					currentTypeIDuplicatedDeclarations.add(checkingDeclaration);
-					visitedIdenticalDeclarations.add(checkingDecIndex);
+					visitedIdenticalDeclarations.set(checkingDecIndex);
 					mustAddCurrentTypeIDuplication = true;
 
 					// This only used in apriori and fpgrowth
@@ -191,14 +284,14 @@ public class DuplicationDetector {
 					declarationItemMap.put(checkingDeclaration, newItem);
 					newItem.addDuplicationType(1);
 				}
-				if (!equals && !visitedEquivalentDeclarations.contains(checkingDecIndex)
+				if (!equals && !visitedEquivalentDeclarations.get(checkingDecIndex)
 						    && (currentDeclaration.declarationIsEquivalent(checkingDeclaration))) {
 					// || (equals && currentTypeIIDuplicatedDeclarations.size() > 1)) {
 					/*
 					 * We have found type II duplication
 					 */
 					currentTypeIIDuplicatedDeclarations.add(checkingDeclaration);
-					visitedEquivalentDeclarations.add(checkingDecIndex);
+					visitedEquivalentDeclarations.set(checkingDecIndex);
 					mustAddCurrentTypeTwoDuplication = true;
 
 					newItem.add(checkingDeclaration);
@@ -247,53 +340,58 @@ public class DuplicationDetector {
 
 		typeThreeDuplicationsList = new DuplicationIncstanceList();
 
+		/*
+		 * A virtual shorthand can only be matched with a real shorthand of the same property,
+		 * so we index the real shorthands by their properties once, 
+		 * instead of going over all the declarations of the style sheet for every virtual shorthand.
+		 */
+		Map<String, List<ShorthandDeclaration>> realShorthandsIndex = getRealShorthandDeclarationsIndex();
+
 		for (Selector selector : stylesheet.getAllSelectors()) {
 
 			for (ShorthandDeclaration virtualShorthand : selector.getVirtualShorthandDeclarations()) {
 				
+				List<ShorthandDeclaration> realShorthands = realShorthandsIndex.get(virtualShorthand.getProperty());
+				if (realShorthands == null)
+					continue;
+				
 				// For each real shorthand in the style sheet, we compare it with the virtual shorthands of this selectors
-				for (Declaration checkingDeclaration : stylesheet.getAllDeclarations()) {
-					
-					if (checkingDeclaration.getSelector() != selector && checkingDeclaration instanceof ShorthandDeclaration) {
+				for (ShorthandDeclaration checkingShorthandDeclaration : realShorthands) {
 					
-						ShorthandDeclaration checkingShorthandDeclaration = (ShorthandDeclaration) checkingDeclaration;
+					if (checkingShorthandDeclaration.getSelector() != selector) {
 
-						if(!checkingShorthandDeclaration.isVirtual()) {
+						boolean equivalentCondition = false;
+						if (onlyCheckProperties)
+							equivalentCondition = virtualShorthand.isImportant() == checkingShorthandDeclaration.isImportant() &&
+									checkingShorthandDeclaration.getSelector().mediaQueryListsEqual(checkingShorthandDeclaration.getSelector()) &&
+									checkingShorthandDeclaration.getNumberOfValueLayers() == checkingShorthandDeclaration.getNumberOfValueLayers();
+						else
+							equivalentCondition = virtualShorthand.individualDeclarationsEquivalent(checkingShorthandDeclaration);
 
-							boolean equivalentCondition = false;
-							if (onlyCheckProperties)
-								equivalentCondition = virtualShorthand.getProperty().equals(checkingDeclaration.getProperty()) &&
-										virtualShorthand.isImportant() == checkingDeclaration.isImportant() &&
-												checkingDeclaration.getSelector().mediaQueryListsEqual(checkingDeclaration.getSelector()) &&
-												checkingDeclaration.getNumberOfValueLayers() == checkingDeclaration.getNumberOfValueLayers();
-							else
-								equivalentCondition = virtualShorthand.individualDeclarationsEquivalent(checkingShorthandDeclaration);
-							
-							if (equivalentCondition) {
+						if (equivalentCondition) {
 
-								TypeThreeDuplicationInstance duplication =  new TypeThreeDuplicationInstance(checkingShorthandDeclaration, virtualShorthand.getIndividualDeclarations());
-								typeThreeDuplicationsList.addDuplication(duplication);
+							TypeThreeDuplicationInstance duplication =  new TypeThreeDuplicationInstance(checkingShorthandDeclaration, virtualShorthand.getIndividualDeclarations());
+							typeThreeDuplicationsList.addDuplication(duplication);
 
 
-								/*
-								 * Well, well, when we add individual declarations to a virtual shorthand, it does not add the real values to the
-								 * virtual shorthand declaration itself. Indeed it is difficult to get values from individual shorthand declarations.
-								 */
+							/*
+							 * Well, well, when we add individual declarations to a virtual shorthand, it does not add the real values to the
+							 * virtual shorthand declaration itself. Indeed it is difficult to get values from individual shorthand declarations.
+							 */
 
-								//for (DeclarationValue v : checkingShorthandDeclaration.getValues())
-								//	virtualShorthand.getValues().add(v.clone());
+							//for (DeclarationValue v : checkingShorthandDeclaration.getValues())
+							//	virtualShorthand.getValues().add(v.clone());
 
-								// For apriori and FP-Growth
-								Item item = declarationItemMap.get(checkingDeclaration);
+							// For apriori and FP-Growth
+							Item item = declarationItemMap.get(checkingShorthandDeclaration);
 
-								item.add(virtualShorthand);
+							item.add(virtualShorthand);
 
-								item.addDuplicationType(3);
+							item.addDuplicationType(3);
 
-								//selector.addDeclaration(virtualShorthand);
-								declarationItemMap.put(virtualShorthand, item);
+							//selector.addDeclaration(virtualShorthand);
+							declarationItemMap.put(virtualShorthand, item);
 
-							}
 						}
 					}
 				}
@@ -302,6 +400,29 @@ public class DuplicationDetector {
 
 	}
 
+	/**
+	 * Maps every shorthand property to the real (i.e., non-virtual) shorthand declarations
+	 * of the style sheet having that property, preserving the order of the declarations.
+	 * @return
+	 */
+	private Map<String, List<ShorthandDeclaration>> getRealShorthandDeclarationsIndex() {
+		Map<String, List<ShorthandDeclaration>> realShorthandsIndex = new HashMap<>();
+		for (Declaration declaration : stylesheet.getAllDeclarations()) {
+			if (declaration instanceof ShorthandDeclaration) {
+				ShorthandDeclaration shorthandDeclaration = (ShorthandDeclaration) declaration;
+				if (!shorthandDeclaration.isVirtual()) {
+					List<ShorthandDeclaration> shorthandsForProperty = realShorthandsIndex.get(shorthandDeclaration.getProperty());
+					if (shorthandsForProperty == null) {
+						shorthandsForProperty = new ArrayList<>();
+						realShorthandsIndex.put(shorthandDeclaration.getProperty(), shorthandsForProperty);
+					}
+					shorthandsForProperty.add(shorthandDeclaration);
+				}
+			}
+		}
+		return realShorthandsIndex;
+	}
+
 	/**
 	 * Finds type IV_A duplications
 	 * 
@@ -450,8 +571,27 @@ public class DuplicationDetector {
 				itemSets.add(currentItems);
 		}
 
-		FPGrowth fpGrowth = new FPGrowth(removeSubsets, monitor);
-		List<ItemSetList> results = fpGrowth.mine(itemSets, minSupport);
+		ItemSetNumbering itemSetNumbering = null;
+		if (useNumberedItemSets) {
+			Set<Item> items = new LinkedHashSet<>();
+			for (TreeSet<Item> currentItems : itemSets)
+				items.addAll(currentItems);
+			itemSetNumbering = new ItemSetNumbering(stylesheet.getAllSelectors(), items);
+		}
+
+		List<ItemSetList> results;
+		if (removeSubsets && useClosedItemSetMining) {
+			Charm charm = new Charm(monitor);
+			charm.setItemSetNumbering(itemSetNumbering);
+			results = charm.mine(itemSets, minSupport);
+		} else {
+			FPGrowth fpGrowth = new FPGrowth(removeSubsets, monitor);
+			fpGrowth.setParallel(useParallelFPGrowth);
+			fpGrowth.setNumberOfThreads(numberOfFPGrowthThreads);
+			fpGrowth.setUseArrayFPTree(useArrayFPTree);
+			fpGrowth.setItemSetNumbering(itemSetNumbering);
+			results = fpGrowth.mine(itemSets, minSupport);
+		}
 		long end = ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
 		long time = (end - start) / 1000000L;
 		LOGGER.info("Done FP-Growth in " + time + " ms");
@@ -532,7 +672,8 @@ public class DuplicationDetector {
 			 * In case of individual properties which could be a part of a
 			 * shorthand property 
 			 */
-			Set<String> correspondingProperties = ShorthandDeclaration.getShorthandPropertyNames(declaration.getProperty());
+			Set<String> correspondingProperties = new HashSet<>();
+			correspondingProperties.addAll(ShorthandDeclaration.getShorthandPropertyNames(declaration.getProperty()));
 			correspondingProperties.add(declaration.getProperty());
 
 			for (String property : correspondingProperties) {
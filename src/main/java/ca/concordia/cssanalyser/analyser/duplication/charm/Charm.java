@@ -0,0 +1,201 @@
+package ca.concordia.cssanalyser.analyser.duplication.charm;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import ca.concordia.cssanalyser.analyser.duplication.items.Item;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetNumbering;
+import ca.concordia.cssanalyser.analyser.progressmonitor.ProgressMonitor;
+import ca.concordia.cssanalyser.analyser.progressmonitor.ProgressMonitorDelegator;
+
+/**
+ * Mines the closed frequent itemsets using the CHARM algorithm
+ * (Zaki and Hsiao, "CHARM: An efficient algorithm for closed itemset mining", SDM 2002).
+ * An itemset is closed if none of its supersets has the same support.
+ * This is the same result that {@link ca.concordia.cssanalyser.analyser.duplication.fpgrowth.FPGrowth}
+ * gives when the subsumed itemsets are removed, but CHARM never generates the
+ * subsumed itemsets, so there is no need to remove them afterwards.
+ * <br />
+ * The support of the itemsets (the tidsets in CHARM) are kept as {@link BitSet}s over the transactions.
+ * Since a closed itemset is the only closed itemset with its support, the check for
+ * subsumption is a lookup in a map keyed by the support.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class Charm {
+
+	private final ProgressMonitorDelegator monitor;
+	private final Map<BitSet, Set<Item>> closedItemSets = new LinkedHashMap<>();
+	private ItemSetNumbering itemSetNumbering;
+
+	public Charm() {
+		this(null);
+	}
+
+	public Charm(ProgressMonitor monitor) {
+		this.monitor = new ProgressMonitorDelegator(monitor);
+	}
+
+	/**
+	 * Sets the numbering of Items and Selectors used for the resulting ItemSets.
+	 * If set, the ItemSets keep their items and supports as bits (see {@link ItemSet#ItemSet(ItemSetNumbering)}).
+	 * @param itemSetNumbering
+	 */
+	public void setItemSetNumbering(ItemSetNumbering itemSetNumbering) {
+		this.itemSetNumbering = itemSetNumbering;
+	}
+
+	/*
+	 * A node of the IT-tree: an itemset and its support
+	 */
+	private static class ItemSetAndSupport {
+		private final Set<Item> itemSet;
+		private final BitSet support;
+		private final int supportSize;
+
+		public ItemSetAndSupport(Set<Item> itemSet, BitSet support) {
+			this.itemSet = itemSet;
+			this.support = support;
+			this.supportSize = support.cardinality();
+		}
+	}
+
+	/**
+	 * Mines the closed frequent itemsets of the given data set
+	 * @param dataSet Every member of the data set is a transaction (i.e., the Items of a Selector)
+	 * @param minSupport
+	 * @return A list of ItemSetLists, sorted by the size of the ItemSets
+	 */
+	public List<ItemSetList> mine(Collection<TreeSet<Item>> dataSet, int minSupport) {
+
+		// Supports over the transactions, for the frequent Items. Sorted by the support (increasing).
+		Map<Item, BitSet> itemSupports = new HashMap<>();
+		List<Item> items = new ArrayList<>();
+		int transaction = 0;
+		for (TreeSet<Item> transactionItems : dataSet) {
+			for (Item item : transactionItems) {
+				BitSet support = itemSupports.get(item);
+				if (support == null) {
+					support = new BitSet();
+					itemSupports.put(item, support);
+					items.add(item);
+				}
+				support.set(transaction);
+			}
+			transaction++;
+		}
+		Collections.sort(items);
+
+		List<ItemSetAndSupport> frequentItems = new ArrayList<>();
+		for (Item item : items) {
+			BitSet support = itemSupports.get(item);
+			if (support.cardinality() >= minSupport) {
+				Set<Item> itemSet = new LinkedHashSet<>();
+				itemSet.add(item);
+				frequentItems.add(new ItemSetAndSupport(itemSet, support));
+			}
+		}
+
+		monitor.setFinalState(frequentItems.size());
+		charmExtend(frequentItems, minSupport, true);
+		monitor.finished();
+
+		Map<Integer, ItemSetList> resultItemSetLists = new HashMap<>();
+		for (Set<Item> closedItemSet : closedItemSets.values()) {
+			ItemSet itemSet = itemSetNumbering != null ? new ItemSet(itemSetNumbering, closedItemSet) : new ItemSet(closedItemSet);
+			ItemSetList itemSetList = resultItemSetLists.get(itemSet.size());
+			if (itemSetList == null) {
+				itemSetList = new ItemSetList();
+				resultItemSetLists.put(itemSet.size(), itemSetList);
+			}
+			itemSetList.add(itemSet);
+		}
+
+		// Deliver results in order.
+		List<Integer> keys = new ArrayList<>(resultItemSetLists.keySet());
+		Collections.sort(keys);
+		List<ItemSetList> results = new ArrayList<>();
+		for (int i : keys) {
+			results.add(resultItemSetLists.get(i));
+		}
+
+		return results;
+	}
+
+	private void charmExtend(List<ItemSetAndSupport> nodes, int minSupport, boolean topLevel) {
+		for (int i = 0; i < nodes.size(); i++) {
+			if (monitor.shouldStop())
+				return;
+			ItemSetAndSupport current = nodes.get(i);
+			if (current == null) // Removed by one of the previous nodes
+				continue;
+			Set<Item> currentItemSet = new LinkedHashSet<>(current.itemSet);
+			List<ItemSetAndSupport> newNodes = new ArrayList<>();
+			for (int j = i + 1; j < nodes.size(); j++) {
+				ItemSetAndSupport other = nodes.get(j);
+				if (other == null)
+					continue;
+				BitSet support = (BitSet) current.support.clone();
+				support.and(other.support);
+				int supportSize = support.cardinality();
+				if (supportSize < minSupport)
+					continue;
+				boolean sameAsCurrent = supportSize == current.supportSize;
+				boolean sameAsOther = supportSize == other.supportSize;
+				if (sameAsCurrent) {
+					// The support of the current itemset is a subset of the other one's:
+					// the other itemset is in the closure of the current one
+					addToAll(currentItemSet, newNodes, other.itemSet);
+					if (sameAsOther) {
+						// Same supports: the other itemset is not needed anymore
+						nodes.set(j, null);
+					}
+				} else {
+					Set<Item> newItemSet = new LinkedHashSet<>(currentItemSet);
+					newItemSet.addAll(other.itemSet);
+					if (sameAsOther) {
+						// The other itemset's closure includes the current one
+						nodes.set(j, null);
+					}
+					newNodes.add(new ItemSetAndSupport(newItemSet, support));
+				}
+			}
+			if (!newNodes.isEmpty()) {
+				charmExtend(newNodes, minSupport, false);
+			}
+			addIfNotSubsumed(currentItemSet, current.support);
+			if (topLevel)
+				monitor.worked(1);
+		}
+	}
+
+	/*
+	 * Adds the given items to the current itemset, and to the itemsets
+	 * which are made from the current itemset so far
+	 */
+	private void addToAll(Set<Item> currentItemSet, List<ItemSetAndSupport> newNodes, Set<Item> itemsToAdd) {
+		currentItemSet.addAll(itemsToAdd);
+		for (ItemSetAndSupport newNode : newNodes)
+			newNode.itemSet.addAll(itemsToAdd);
+	}
+
+	private void addIfNotSubsumed(Set<Item> itemSet, BitSet support) {
+		Set<Item> closedItemSetWithSameSupport = closedItemSets.get(support);
+		if (closedItemSetWithSameSupport != null && closedItemSetWithSameSupport.containsAll(itemSet))
+			return;
+		closedItemSets.put(support, itemSet);
+	}
+
+}
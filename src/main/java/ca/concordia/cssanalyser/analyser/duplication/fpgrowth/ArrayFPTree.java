@@ -0,0 +1,378 @@
+package ca.concordia.cssanalyser.analyser.duplication.fpgrowth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import ca.concordia.cssanalyser.analyser.duplication.items.Item;
+
+/**
+ * An FP-Tree which keeps its nodes in parallel int arrays, instead of {@link Node} objects.
+ * Every {@link Item} of the data set is mapped to a dense int id once. The ids are sorted
+ * the same way the Items are (see {@link Item#compareTo(Item)}), so building and mining
+ * the tree never hashes or compares Items.
+ * <br />
+ * Inside a tree, items are referred to using local ids, which are sorted ascending the same way as the global ids.
+ * The trees are built and pruned exactly like {@link FPTree}, so mining them gives the same results.
+ * This includes the way the header table of {@link FPTree} (a TreeSet) keeps only one of the
+ * different Items for which {@link Item#compareTo(Item)} returns zero: the one whose
+ * first node was created first.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class ArrayFPTree {
+
+	private static final int ROOT = 0;
+	private static final int NONE = -1;
+
+	// All Items of the data set, by their global ids
+	private final Item[] allItems;
+	// Items comparing as equal have the same group, by global id
+	private final int[] itemGroups;
+
+	// Items of the tree, by local id
+	private final int[] itemIds;
+	private final int[] firstNodes;
+	private final int[] firstCreatedNodes;
+	private final int[] totalSupports;
+	private final boolean[] inHeaderTable;
+
+	// Nodes, by node index. Node 0 is the root.
+	private int numberOfNodes;
+	private int[] nodeItems;
+	private int[] counts;
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] nextSiblings;
+	private int[] linkNodes;
+
+	private ArrayFPTree(Item[] allItems, int[] itemGroups, int[] itemIds, int initialCapacity) {
+		this.allItems = allItems;
+		this.itemGroups = itemGroups;
+		this.itemIds = itemIds;
+		this.firstNodes = new int[itemIds.length];
+		Arrays.fill(this.firstNodes, NONE);
+		this.firstCreatedNodes = new int[itemIds.length];
+		this.totalSupports = new int[itemIds.length];
+		this.inHeaderTable = new boolean[itemIds.length];
+		int capacity = Math.max(initialCapacity, 2);
+		nodeItems = new int[capacity];
+		counts = new int[capacity];
+		parents = new int[capacity];
+		firstChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		linkNodes = new int[capacity];
+		// The root
+		nodeItems[ROOT] = NONE;
+		parents[ROOT] = NONE;
+		firstChildren[ROOT] = NONE;
+		nextSiblings[ROOT] = NONE;
+		linkNodes[ROOT] = NONE;
+		numberOfNodes = 1;
+	}
+
+	/**
+	 * Generates the FP-Tree of the given data set
+	 * @param dataSet
+	 * @return
+	 */
+	public static ArrayFPTree generate(Collection<TreeSet<Item>> dataSet) {
+
+		// Give dense ids to the Items, in the order of the Items
+		Map<Item, Integer> globalIds = new HashMap<>();
+		List<Item> items = new ArrayList<>();
+		for (TreeSet<Item> transaction : dataSet) {
+			for (Item item : transaction) {
+				if (!globalIds.containsKey(item)) {
+					globalIds.put(item, NONE);
+					items.add(item);
+				}
+			}
+		}
+		Collections.sort(items);
+		Item[] allItems = items.toArray(new Item[items.size()]);
+		int[] itemIds = new int[allItems.length];
+		int[] itemGroups = new int[allItems.length];
+		for (int i = 0; i < allItems.length; i++) {
+			globalIds.put(allItems[i], i);
+			itemIds[i] = i;
+			if (i > 0)
+				itemGroups[i] = itemGroups[i - 1] + (allItems[i].compareTo(allItems[i - 1]) == 0 ? 0 : 1);
+		}
+
+		ArrayFPTree tree = new ArrayFPTree(allItems, itemGroups, itemIds, allItems.length + 1);
+		// Children of the root are looked up a lot, don't search them
+		int[] rootChildren = new int[allItems.length];
+		Arrays.fill(rootChildren, NONE);
+
+		for (TreeSet<Item> transaction : dataSet) {
+			int parent = ROOT;
+			for (Item item : transaction.descendingSet()) {
+				int itemId = globalIds.get(item);
+				int node = parent == ROOT ? rootChildren[itemId] : tree.getChildForItem(parent, itemId);
+				if (node != NONE) {
+					tree.counts[node]++;
+					tree.totalSupports[itemId]++;
+				} else {
+					node = tree.addNode(itemId, parent, 1);
+					if (parent == ROOT)
+						rootChildren[itemId] = node;
+				}
+				parent = node;
+			}
+		}
+
+		tree.buildHeaderTable();
+
+		return tree;
+	}
+
+	/*
+	 * Puts the items in the header table, keeping one item for the Items which compare as equal:
+	 * the item whose first node was created first.
+	 */
+	private void buildHeaderTable() {
+		int representative = NONE;
+		for (int item = 0; item < itemIds.length; item++) {
+			if (firstNodes[item] == NONE)
+				continue;
+			if (representative != NONE && itemGroups[itemIds[representative]] == itemGroups[itemIds[item]]) {
+				if (firstCreatedNodes[item] < firstCreatedNodes[representative]) {
+					inHeaderTable[representative] = false;
+					inHeaderTable[item] = true;
+					representative = item;
+				}
+			} else {
+				inHeaderTable[item] = true;
+				representative = item;
+			}
+		}
+	}
+
+	private int addNode(int item, int parent, int count) {
+		if (numberOfNodes == nodeItems.length) {
+			int newCapacity = nodeItems.length * 2;
+			nodeItems = Arrays.copyOf(nodeItems, newCapacity);
+			counts = Arrays.copyOf(counts, newCapacity);
+			parents = Arrays.copyOf(parents, newCapacity);
+			firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, newCapacity);
+			linkNodes = Arrays.copyOf(linkNodes, newCapacity);
+		}
+		int node = numberOfNodes++;
+		nodeItems[node] = item;
+		counts[node] = count;
+		parents[node] = parent;
+		firstChildren[node] = NONE;
+		nextSiblings[node] = firstChildren[parent];
+		firstChildren[parent] = node;
+		linkNodes[node] = firstNodes[item];
+		if (firstNodes[item] == NONE)
+			firstCreatedNodes[item] = node;
+		firstNodes[item] = node;
+		totalSupports[item] += count;
+		return node;
+	}
+
+	private int getChildForItem(int parent, int item) {
+		for (int child = firstChildren[parent]; child != NONE; child = nextSiblings[child]) {
+			if (nodeItems[child] == item)
+				return child;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Builds the conditional FP-Tree of the given item, and prunes it using the given minimum support.
+	 * Like {@link FPTree#prune(int)}, a node of an infrequent item of the header table is removed by connecting
+	 * its children to its parent, without merging them with the other children of the parent.
+	 * @param item Local id of the item
+	 * @param minSupport
+	 * @param globalIdsScratch An array with the size of all Items of the data set, filled with -1.
+	 * It is used (and then filled back) during the construction, so the same array can be
+	 * given for all the trees built in one thread.
+	 * @return
+	 */
+	public ArrayFPTree getConditionalTree(int item, int minSupport, int[] globalIdsScratch) {
+
+		// Find the items in the conditional pattern base
+		int numberOfPathItems = 0;
+		int[] pathItemIds = new int[8];
+		int numberOfPathNodes = 0;
+		for (int node = firstNodes[item]; node != NONE; node = linkNodes[node]) {
+			for (int current = parents[node]; current != ROOT; current = parents[current]) {
+				int globalId = itemIds[nodeItems[current]];
+				int pathItem = globalIdsScratch[globalId];
+				if (pathItem == NONE) {
+					if (numberOfPathItems == pathItemIds.length) {
+						pathItemIds = Arrays.copyOf(pathItemIds, numberOfPathItems * 2);
+					}
+					pathItem = numberOfPathItems++;
+					globalIdsScratch[globalId] = pathItem;
+					pathItemIds[pathItem] = globalId;
+				}
+				numberOfPathNodes++;
+			}
+		}
+
+		// Local ids of the unpruned tree: the path items, sorted
+		int[] unprunedItemIds = Arrays.copyOf(pathItemIds, numberOfPathItems);
+		Arrays.sort(unprunedItemIds);
+		for (int i = 0; i < numberOfPathItems; i++)
+			globalIdsScratch[unprunedItemIds[i]] = i;
+
+		// Build the unpruned tree over the pattern base
+		ArrayFPTree unpruned = new ArrayFPTree(allItems, itemGroups, unprunedItemIds, numberOfPathNodes + 1);
+		int[] path = new int[8];
+		for (int node = firstNodes[item]; node != NONE; node = linkNodes[node]) {
+			int pathSupport = counts[node];
+			int pathLength = 0;
+			for (int current = parents[node]; current != ROOT; current = parents[current]) {
+				if (pathLength == path.length)
+					path = Arrays.copyOf(path, pathLength * 2);
+				path[pathLength++] = globalIdsScratch[itemIds[nodeItems[current]]];
+			}
+			int parent = ROOT;
+			for (int i = pathLength - 1; i >= 0; i--) {
+				int child = unpruned.getChildForItem(parent, path[i]);
+				if (child != NONE) {
+					unpruned.counts[child] += pathSupport;
+					unpruned.totalSupports[path[i]] += pathSupport;
+				} else {
+					child = unpruned.addNode(path[i], parent, pathSupport);
+				}
+				parent = child;
+			}
+		}
+		unpruned.buildHeaderTable();
+
+		for (int i = 0; i < numberOfPathItems; i++)
+			globalIdsScratch[unprunedItemIds[i]] = NONE;
+
+		// Only the infrequent items of the header table are pruned
+		int numberOfKeptItems = 0;
+		int[] keptItemIds = new int[numberOfPathItems];
+		int[] unprunedToKeptItems = new int[numberOfPathItems];
+		for (int i = 0; i < numberOfPathItems; i++) {
+			if (!unpruned.inHeaderTable[i] || unpruned.totalSupports[i] >= minSupport) {
+				unprunedToKeptItems[i] = numberOfKeptItems;
+				keptItemIds[numberOfKeptItems++] = unprunedItemIds[i];
+			} else {
+				unprunedToKeptItems[i] = NONE;
+			}
+		}
+
+		// Prune: keep the nodes of the kept items, connected to their closest kept ancestor
+		ArrayFPTree conditionalTree = new ArrayFPTree(allItems, itemGroups, Arrays.copyOf(keptItemIds, numberOfKeptItems), unpruned.numberOfNodes);
+		int[] prunedNodes = new int[unpruned.numberOfNodes];
+		prunedNodes[ROOT] = ROOT;
+		// Parents are always added before their children
+		for (int node = 1; node < unpruned.numberOfNodes; node++) {
+			int keptItem = unprunedToKeptItems[unpruned.nodeItems[node]];
+			int prunedParent = prunedNodes[unpruned.parents[node]];
+			if (keptItem == NONE)
+				prunedNodes[node] = prunedParent;
+			else
+				prunedNodes[node] = conditionalTree.addNode(keptItem, prunedParent, unpruned.counts[node]);
+		}
+		for (int i = 0; i < numberOfPathItems; i++) {
+			if (unprunedToKeptItems[i] != NONE)
+				conditionalTree.inHeaderTable[unprunedToKeptItems[i]] = unpruned.inHeaderTable[i];
+		}
+
+		return conditionalTree;
+	}
+
+	/**
+	 * Returns the number of items of this tree.
+	 * The local ids of the items are from zero to this number (exclusive), in ascending order.
+	 * @return
+	 */
+	public int getNumberOfItems() {
+		return itemIds.length;
+	}
+
+	/**
+	 * Indicates whether the given item is in the header table of this tree,
+	 * i.e., whether it should be mined.
+	 * @param item Local id of the item
+	 * @return
+	 */
+	public boolean isInHeaderTable(int item) {
+		return inHeaderTable[item];
+	}
+
+	/**
+	 * Returns the number of items in the header table
+	 * @return
+	 */
+	public int getHeaderTableSize() {
+		int size = 0;
+		for (boolean in : inHeaderTable)
+			if (in)
+				size++;
+		return size;
+	}
+
+	/**
+	 * Returns the number of all Items of the data set,
+	 * i.e., the size of the scratch array of {@link #getConditionalTree(int, int, int[])}
+	 * @return
+	 */
+	public int getNumberOfAllItems() {
+		return allItems.length;
+	}
+
+	/**
+	 * Returns the Item for the given local id
+	 * @param item
+	 * @return
+	 */
+	public Item getItem(int item) {
+		return allItems[itemIds[item]];
+	}
+
+	public int getTotalSupport(int item) {
+		return totalSupports[item];
+	}
+
+	public int getNumberOfNodes() {
+		return numberOfNodes;
+	}
+
+	public boolean isEmpty() {
+		return firstChildren[ROOT] == NONE;
+	}
+
+	public boolean hasASinglePath() {
+		int node = ROOT;
+		while (firstChildren[node] != NONE) {
+			if (nextSiblings[firstChildren[node]] != NONE)
+				return false;
+			node = firstChildren[node];
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the Items along the path from the root,
+	 * when the tree has a single path (see {@link #hasASinglePath()})
+	 * @return
+	 */
+	public List<Item> getItemsAlongTheSinglePath() {
+		List<Item> items = new ArrayList<>();
+		int node = ROOT;
+		while (firstChildren[node] != NONE) {
+			node = firstChildren[node];
+			items.add(getItem(nodeItems[node]));
+		}
+		return items;
+	}
+
+}
@@ -1,20 +1,26 @@
 package ca.concordia.cssanalyser.analyser.duplication.fpgrowth;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import ca.concordia.cssanalyser.analyser.duplication.items.Item;
 import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
 import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetNumbering;
 import ca.concordia.cssanalyser.analyser.progressmonitor.ProgressMonitorDelegator;
 import ca.concordia.cssanalyser.analyser.progressmonitor.ProgressMonitor;
 
@@ -23,11 +29,18 @@ public class FPGrowth {
 	private final Map<Integer, ItemSetList> resultItemSetLists;
 	private final boolean removeSubsets;
 	private int maxItemSetSize = -1;
+	private boolean parallel = false;
+	private int numberOfThreads = 0;
+	private boolean useArrayFPTree = false;
+	private ItemSetNumbering itemSetNumbering;
+	private int[] globalIdsScratch;
+	// For the tasks of the parallel mining: the original set of items given for each ItemSet in the results
+	private Map<ItemSet, Set<Item>> itemSetSources;
 	
 	private final ProgressMonitorDelegator monitor;
 	
 	public FPGrowth(boolean removeSubSets) {
-		this(removeSubSets, null);
+		this(removeSubSets, (ProgressMonitor)null);
 	}
 	
 	/**
@@ -48,13 +61,72 @@ public class FPGrowth {
 		this.monitor = new ProgressMonitorDelegator(monitor);
 	}
 	
+	/*
+	 * Used for the tasks of the parallel mining,
+	 * which report to the monitor of the main object 
+	 */
+	private FPGrowth(boolean removeSubSets, ProgressMonitorDelegator monitor) {
+		this.resultItemSetLists = new HashMap<>();
+		this.removeSubsets = removeSubSets;
+		this.monitor = monitor;
+		this.itemSetSources = new IdentityHashMap<>();
+	}
+	
+	/**
+	 * Mine the conditional FP-Tree of every item of the (top-level) header table
+	 * in parallel, using fork/join tasks.
+	 * The results are identical to the ones of the sequential mining.
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
+	/**
+	 * Sets the number of threads used for the parallel mining.
+	 * Zero or negative values mean using the common fork/join pool.
+	 * @param numberOfThreads
+	 */
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+	
+	/**
+	 * Use {@link ArrayFPTree}, which keeps the nodes in int arrays, instead of {@link FPTree}.
+	 * This allocates much less objects for big data sets.
+	 * The results are identical.
+	 * @param useArrayFPTree
+	 */
+	public void setUseArrayFPTree(boolean useArrayFPTree) {
+		this.useArrayFPTree = useArrayFPTree;
+	}
+	
+	/**
+	 * Sets the numbering of Items and Selectors used for the resulting ItemSets.
+	 * If set, the ItemSets keep their items and supports as bits (see {@link ItemSet#ItemSet(ItemSetNumbering)}).
+	 * @param itemSetNumbering
+	 */
+	public void setItemSetNumbering(ItemSetNumbering itemSetNumbering) {
+		this.itemSetNumbering = itemSetNumbering;
+	}
+	
+	private ItemSet newItemSet() {
+		if (itemSetNumbering != null)
+			return new ItemSet(itemSetNumbering);
+		return new ItemSet();
+	}
+	
 	public List<ItemSetList> mine(Collection<TreeSet<Item>> dataSet, int minSupport) {
 		
-		FPTree tree = generateFPTree(dataSet);
-
-		fpGrowth(tree, new HashSet<Item>(), minSupport);
-		
-		tree = null;
+		if (useArrayFPTree) {
+			ArrayFPTree tree = ArrayFPTree.generate(dataSet);
+			fpGrowth(tree, new HashSet<Item>(), minSupport, true);
+			tree = null;
+		} else {
+			FPTree tree = generateFPTree(dataSet);
+			fpGrowth(tree, new HashSet<Item>(), minSupport);
+			tree = null;
+		}
 
 		// Deliver results in order.
 		List<Integer> keys = new ArrayList<>(resultItemSetLists.keySet());
@@ -126,7 +198,7 @@ public class FPGrowth {
 		fpGrowth(tree, currentItems, minSupport, true);
 	}
 	
-	private void fpGrowth(FPTree tree, Set<Item> currentItems, int minSupport, boolean topLevel) {
+	private void fpGrowth(final FPTree tree, final Set<Item> currentItems, final int minSupport, boolean topLevel) {
 		if (topLevel && monitor != null) {
 			monitor.setFinalState(tree.getHeaderTable().size());
 		}
@@ -139,98 +211,259 @@ public class FPGrowth {
 				node = node.getChildern().iterator().next();
 				itemsAlongThePath.add(node.getItem());
 			}
-			if (removeSubsets) {
-				// Don't get all subsets, many of them will be removed
-				// Only get the maximal ones along the path 
-				List<Set<Item>> itemSetsToConsider = new ArrayList<>();
-				ItemSet itemsSoFar = new ItemSet();
-				int lastSize = 0;
-				for (Item item : itemsAlongThePath) {
-					itemsSoFar.add(item);
-					if (itemsSoFar.getSupportSize() < lastSize) {
-						HashSet<Item> copy = new HashSet<>(itemsSoFar);
-						copy.remove(item);
-						itemSetsToConsider.add(copy);
-					}
-					lastSize = itemsSoFar.getSupportSize();
-				}
-				// The longest set is always a desired itemset
-				itemSetsToConsider.add(itemsAlongThePath);
-				for (Set<Item> itemSet : itemSetsToConsider) {
-					itemSet.addAll(currentItems);
-					addItemSet(itemSet);
+			addSinglePathItemSets(itemsAlongThePath, currentItems);
+		} else {
+			if (topLevel && parallel) {
+				List<HeaderItemTask> tasks = new ArrayList<>();
+				for (final Item item : tree.getHeaderTable()) {
+					tasks.add(new HeaderItemTask() {
+						private static final long serialVersionUID = 1L;
+						@Override
+						protected void mine(FPGrowth taskFPGrowth) {
+							taskFPGrowth.mineHeaderItem(tree, item, currentItems, minSupport);
+						}
+					});
 				}
+				mineHeaderItemsInParallel(tasks);
 			} else {
-				Set<Set<Item>> allSubsets = getAllSubsets(itemsAlongThePath);
-				for (Set<Item> itemSet : allSubsets) {
-					itemSet.addAll(currentItems);
-					addItemSet(itemSet);
+				// Start from the end of the header table of tree.
+				for (Item item : tree.getHeaderTable()) {
+					if (monitor != null && monitor.shouldStop()) {
+						return;
+					}
+					mineHeaderItem(tree, item, currentItems, minSupport);
+					if (topLevel && monitor != null) {
+						monitor.worked(1);
+					}
 				}
-				if (currentItems.size() > 0) {
-					addItemSet(currentItems);
+			}
+		}
+		if (topLevel && monitor != null) {
+			monitor.finished();
+		}
+	}
+	
+	/*
+	 * Adds the itemsets of a tree having a single path
+	 */
+	private void addSinglePathItemSets(Set<Item> itemsAlongThePath, Set<Item> currentItems) {
+		if (removeSubsets) {
+			// Don't get all subsets, many of them will be removed
+			// Only get the maximal ones along the path 
+			List<Set<Item>> itemSetsToConsider = new ArrayList<>();
+			ItemSet itemsSoFar = newItemSet();
+			int lastSize = 0;
+			for (Item item : itemsAlongThePath) {
+				itemsSoFar.add(item);
+				if (itemsSoFar.getSupportSize() < lastSize) {
+					HashSet<Item> copy = new HashSet<>(itemsSoFar);
+					copy.remove(item);
+					itemSetsToConsider.add(copy);
 				}
+				lastSize = itemsSoFar.getSupportSize();
+			}
+			// The longest set is always a desired itemset
+			itemSetsToConsider.add(itemsAlongThePath);
+			for (Set<Item> itemSet : itemSetsToConsider) {
+				itemSet.addAll(currentItems);
+				// An empty tree has an empty path, which is not an itemset
+				if (itemSet.size() > 0)
+					addItemSet(itemSet);
 			}
 		} else {
-			// Start from the end of the header table of tree.
-			for (Item item : tree.getHeaderTable()) {
-				if (monitor != null && monitor.shouldStop()) {
-					return;
+			Set<Set<Item>> allSubsets = getAllSubsets(itemsAlongThePath);
+			for (Set<Item> itemSet : allSubsets) {
+				itemSet.addAll(currentItems);
+				addItemSet(itemSet);
+			}
+			if (currentItems.size() > 0) {
+				addItemSet(currentItems);
+			}
+		}
+	}
+	
+	private void fpGrowth(final ArrayFPTree tree, final Set<Item> currentItems, final int minSupport, boolean topLevel) {
+		if (topLevel && monitor != null) {
+			monitor.setFinalState(tree.getHeaderTableSize());
+		}
+		if (tree.hasASinglePath()) {
+			// All combinations may be required
+			Set<Item> itemsAlongThePath = new LinkedHashSet<>(tree.getItemsAlongTheSinglePath());
+			addSinglePathItemSets(itemsAlongThePath, currentItems);
+		} else {
+			if (topLevel && parallel) {
+				List<HeaderItemTask> tasks = new ArrayList<>();
+				for (int item = 0; item < tree.getNumberOfItems(); item++) {
+					if (!tree.isInHeaderTable(item))
+						continue;
+					final int headerItem = item;
+					tasks.add(new HeaderItemTask() {
+						private static final long serialVersionUID = 1L;
+						@Override
+						protected void mine(FPGrowth taskFPGrowth) {
+							taskFPGrowth.mineHeaderItem(tree, headerItem, currentItems, minSupport);
+						}
+					});
 				}
-				// First see if the current prefix is frequent.
-				int support = tree.getTotalSupport(item);
-				if (support < minSupport)
-					continue;
-				// Construct the conditional pattern base for every item
-				// For each path, we do have a conditional pattern base
-				Node node = tree.getFirstNode(item);
-				FPTree conditionalFP = new FPTree();
-				while (node != null) {
-					/*
-					 * For this node, go up through it's path to the root
-					 * to create the pattern base
-					 */
-					Stack<Node> currentPath = new Stack<>();
-					int pathSupport = node.getNumberOfTransactions();
-					Node currentNode = node.getParent();
-					while (currentNode != null && currentNode.getItem() != null) {
-						currentPath.add(currentNode);
-						currentNode = currentNode.getParent();
+				mineHeaderItemsInParallel(tasks);
+			} else {
+				// Start from the end of the header table of tree.
+				for (int item = 0; item < tree.getNumberOfItems(); item++) {
+					if (!tree.isInHeaderTable(item))
+						continue;
+					if (monitor != null && monitor.shouldStop()) {
+						return;
 					}
-					// Add current path to the conditional fp-tree
-					Node parentNodeConditional = conditionalFP.getRoot();
-					while (!currentPath.empty()) {
-						Node currentOriginalNode = currentPath.pop();
-						Node newNodeConditional = parentNodeConditional.getFirstChildForItem(currentOriginalNode.getItem());
-						if (newNodeConditional != null) {
-							newNodeConditional.setNumberOfTransactions(newNodeConditional.getNumberOfTransactions() + pathSupport);
-						} else {
-							newNodeConditional = new Node(currentOriginalNode.getItem(), conditionalFP, pathSupport);
-							conditionalFP.addNodeLinkItem(newNodeConditional);
-							parentNodeConditional.addChild(newNodeConditional);
-						}
-						parentNodeConditional = newNodeConditional;
+					mineHeaderItem(tree, item, currentItems, minSupport);
+					if (topLevel && monitor != null) {
+						monitor.worked(1);
 					}
-
-					// Continue with another node in the linked-list
-					node = node.getLinkNode();
 				}
+			}
+		}
+		if (topLevel && monitor != null) {
+			monitor.finished();
+		}
+	}
+	
+	/*
+	 * Same as mineHeaderItem(FPTree, Item, Set<Item>, int), for ArrayFPTree.
+	 * The item is the local id of the item in the tree.
+	 */
+	private void mineHeaderItem(ArrayFPTree tree, int item, Set<Item> currentItems, int minSupport) {
+		if (tree.getTotalSupport(item) < minSupport)
+			return;
+		if (globalIdsScratch == null) {
+			globalIdsScratch = new int[tree.getNumberOfAllItems()];
+			Arrays.fill(globalIdsScratch, -1);
+		}
+		ArrayFPTree conditionalFP = tree.getConditionalTree(item, minSupport, globalIdsScratch);
+		
+		ItemSet newItemSet = newItemSet();
+		newItemSet.addAll(currentItems);
+		newItemSet.add(tree.getItem(item));
+		addItemSet(newItemSet);
+		if (!conditionalFP.isEmpty()) {
+			fpGrowth(conditionalFP, newItemSet, minSupport, false);
+		}
+	}
+	
+	/*
+	 * Mines the itemsets ending with the given item of the header table:
+	 * builds the conditional FP-Tree of the item and continues recursively.
+	 * The given tree is only read here.
+	 */
+	private void mineHeaderItem(FPTree tree, Item item, Set<Item> currentItems, int minSupport) {
+		// First see if the current prefix is frequent.
+		int support = tree.getTotalSupport(item);
+		if (support < minSupport)
+			return;
+		// Construct the conditional pattern base for every item
+		// For each path, we do have a conditional pattern base
+		Node node = tree.getFirstNode(item);
+		FPTree conditionalFP = new FPTree();
+		while (node != null) {
+			/*
+			 * For this node, go up through it's path to the root
+			 * to create the pattern base
+			 */
+			Stack<Node> currentPath = new Stack<>();
+			int pathSupport = node.getNumberOfTransactions();
+			Node currentNode = node.getParent();
+			while (currentNode != null && currentNode.getItem() != null) {
+				currentPath.add(currentNode);
+				currentNode = currentNode.getParent();
+			}
+			// Add current path to the conditional fp-tree
+			Node parentNodeConditional = conditionalFP.getRoot();
+			while (!currentPath.empty()) {
+				Node currentOriginalNode = currentPath.pop();
+				Node newNodeConditional = parentNodeConditional.getFirstChildForItem(currentOriginalNode.getItem());
+				if (newNodeConditional != null) {
+					newNodeConditional.setNumberOfTransactions(newNodeConditional.getNumberOfTransactions() + pathSupport);
+				} else {
+					newNodeConditional = new Node(currentOriginalNode.getItem(), conditionalFP, pathSupport);
+					conditionalFP.addNodeLinkItem(newNodeConditional);
+					parentNodeConditional.addChild(newNodeConditional);
+				}
+				parentNodeConditional = newNodeConditional;
+			}
 
-				conditionalFP.prune(minSupport);
-				
-				ItemSet newItemSet = new ItemSet();
-				newItemSet.addAll(currentItems);
-				newItemSet.add(item);
-				addItemSet(newItemSet);
-				if (!conditionalFP.isEmpty()) {
-					fpGrowth(conditionalFP, newItemSet, minSupport, false);
+			// Continue with another node in the linked-list
+			node = node.getLinkNode();
+		}
+
+		conditionalFP.prune(minSupport);
+		
+		ItemSet newItemSet = newItemSet();
+		newItemSet.addAll(currentItems);
+		newItemSet.add(item);
+		addItemSet(newItemSet);
+		if (!conditionalFP.isEmpty()) {
+			fpGrowth(conditionalFP, newItemSet, minSupport, false);
+		}
+	}
+	
+	/*
+	 * Runs the given tasks, each mining the conditional FP-Tree of one item of the header table.
+	 * Each task collects its itemsets in its own FPGrowth object (removing the subsets it can
+	 * see locally), so the tasks share nothing but the read-only tree.
+	 * The results are then merged in the order of the header table, the same order
+	 * in which the sequential algorithm finds them. The remaining subsets are removed during this merge.
+	 * The original sets of items are added again (and not the ItemSets of the tasks), since the order
+	 * of the items given to an ItemSet determines the order of its support.
+	 */
+	private void mineHeaderItemsInParallel(final List<HeaderItemTask> tasks) {
+		ForkJoinPool pool = numberOfThreads > 0 ? new ForkJoinPool(numberOfThreads) : ForkJoinPool.commonPool();
+		try {
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
 				}
-				if (topLevel && monitor != null) {
-					monitor.worked(1);
+			});
+		} finally {
+			if (pool != ForkJoinPool.commonPool())
+				pool.shutdown();
+		}
+		
+		for (HeaderItemTask task : tasks) {
+			Map<Integer, ItemSetList> taskResults = task.join();
+			List<Integer> sizes = new ArrayList<>(taskResults.keySet());
+			Collections.sort(sizes);
+			for (int size : sizes) {
+				for (ItemSet itemSet : taskResults.get(size)) {
+					addItemSet(task.getItemSetSource(itemSet));
 				}
 			}
 		}
-		if (topLevel && monitor != null) {
-			monitor.finished();
+	}
+	
+	private abstract class HeaderItemTask extends RecursiveTask<Map<Integer, ItemSetList>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private FPGrowth taskFPGrowth;
+		
+		/*
+		 * Mines the item of this task, adding the itemsets to the given FPGrowth object
+		 */
+		protected abstract void mine(FPGrowth taskFPGrowth);
+
+		@Override
+		protected Map<Integer, ItemSetList> compute() {
+			taskFPGrowth = new FPGrowth(removeSubsets, monitor);
+			taskFPGrowth.itemSetNumbering = itemSetNumbering;
+			if (!monitor.shouldStop()) {
+				mine(taskFPGrowth);
+				monitor.worked(1);
+			}
+			return taskFPGrowth.resultItemSetLists;
+		}
+		
+		public Set<Item> getItemSetSource(ItemSet itemSet) {
+			return taskFPGrowth.itemSetSources.get(itemSet);
 		}
 	}
 	
@@ -240,7 +473,7 @@ public class FPGrowth {
 	 * delete all subsets
 	 */
 	private void addItemSet(Set<Item> is) {
-		ItemSet newItemSet = new ItemSet();
+		ItemSet newItemSet = newItemSet();
 		newItemSet.addAll(is);
 		if (removeSubsets) {
 			// If this itemset is already in a superset, don't add it
@@ -251,6 +484,8 @@ public class FPGrowth {
 				}
 			}
 		}
+		if (itemSetSources != null)
+			itemSetSources.put(newItemSet, is);
 		ItemSetList correspondingItemSetList = resultItemSetLists.get(newItemSet.size());
 		if (correspondingItemSetList == null) {
 			correspondingItemSetList = new ItemSetList();
@@ -38,6 +38,7 @@ public class ItemSet implements Set<Item>, Cloneable {
 	
 	private final Set<Item> itemset;
 	private final Set<Selector> support;
+	private final ItemSetNumbering numbering;
 	private ItemSetList parentItemSetList;
 	// Store refactoring impact, so don't compute it again
 	protected int refactoringImpact = -1;
@@ -46,6 +47,7 @@ public class ItemSet implements Set<Item>, Cloneable {
 	public ItemSet() {
 		itemset = new HashSet<>();
 		support = new HashSet<>();
+		numbering = null;
 	} 
 	
 	public ItemSet(Set<Item> items) {
@@ -54,6 +56,25 @@ public class ItemSet implements Set<Item>, Cloneable {
 			add(item);
 	}
 	
+	/**
+	 * Creates an ItemSet which keeps its items and support as bits,
+	 * using the given numbering of Items and Selectors.
+	 * {@link #iterator()} and {@link #getSupport()} are views over these bits, in the order of the numbers.
+	 * Only the Items of the numbering can be added to this ItemSet.
+	 * @param numbering
+	 */
+	public ItemSet(ItemSetNumbering numbering) {
+		itemset = numbering.newItemSet();
+		support = numbering.newSelectorSet();
+		this.numbering = numbering;
+	}
+	
+	public ItemSet(ItemSetNumbering numbering, Set<Item> items) {
+		this(numbering);
+		for (Item item : items)
+			add(item);
+	}
+	
 	public Iterable<Selector> getSupport() {
 		return support;
 	}
@@ -81,6 +102,8 @@ public class ItemSet implements Set<Item>, Cloneable {
 	
 	@Override
 	public ItemSet clone() {
+		if (numbering != null)
+			return new ItemSet(numbering, itemset);
 		return new ItemSet(itemset);
 	}
 	
@@ -108,12 +131,11 @@ public class ItemSet implements Set<Item>, Cloneable {
 		if (itemsChanged) {
 			if (itemset.size() == 1) {
 				supportChanged = true;
-				for (Selector s : e.getSupport())
-					support.add(s);
+				support.addAll(getSupport(e));
 				mediaQueryLists = e.getMediaQueryLists();
 			}
 			else
-				supportChanged = support.retainAll((Collection<Selector>)e.getSupport());
+				supportChanged = support.retainAll(getSupport(e));
 			refactoringImpact = -1;
 		}
 		e.setParentItemSet(this);
@@ -123,6 +145,18 @@ public class ItemSet implements Set<Item>, Cloneable {
 		
 	}
 
+	/*
+	 * The support of the given Item, as bits if this ItemSet is numbered
+	 */
+	private Collection<Selector> getSupport(Item item) {
+		if (numbering != null) {
+			Collection<Selector> itemSupport = numbering.getSupport(item);
+			if (itemSupport != null)
+				return itemSupport;
+		}
+		return (Collection<Selector>)item.getSupport();
+	}
+
 	@Override
 	public boolean addAll(Collection<? extends Item> c) {
 		boolean changed = false;
@@ -148,6 +182,8 @@ public class ItemSet implements Set<Item>, Cloneable {
 
 	@Override
 	public boolean containsAll(Collection<?> c) {
+		if (c instanceof ItemSet)
+			return itemset.containsAll(((ItemSet)c).itemset);
 		return itemset.containsAll(c);
 	}
 
@@ -179,7 +215,7 @@ public class ItemSet implements Set<Item>, Cloneable {
 		support.clear();
 		boolean mustUnion = true;
 		for (Item i : itemset) {
-			Collection<Selector> selectors = (Collection<Selector>)i.getSupport();
+			Collection<Selector> selectors = getSupport(i);
 			if (mustUnion) {
 				support.addAll(selectors);
 				mustUnion = false;
@@ -481,7 +517,7 @@ public class ItemSet implements Set<Item>, Cloneable {
 		List<Item> items = new ArrayList<>(itemset);
 		if (size() > 2) {
 			for (int i = 1; i < Math.pow(2, size()); i++) {
-				ItemSet newSubSet = new ItemSet();
+				ItemSet newSubSet = numbering != null ? new ItemSet(numbering) : new ItemSet();
 				String bits = Integer.toBinaryString(i);
 				// Add leading zeros
 				int zerosToAdd = size() - bits.length();
@@ -0,0 +1,102 @@
+package ca.concordia.cssanalyser.analyser.duplication.items;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+
+/**
+ * Numbers the Items and Selectors of a style sheet, so that the {@link ItemSet}s
+ * created using this numbering keep their items and support as bits
+ * (see {@link ItemSet#ItemSet(ItemSetNumbering)}).
+ * Checking containment and equality of such ItemSets and their supports are word-wise operations.
+ * <br />
+ * A numbering is not changed after it is created, so it can be shared between threads.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class ItemSetNumbering {
+
+	private final List<Item> items;
+	private final Map<Item, Integer> itemNumbers;
+	private final List<Selector> selectors;
+	private final Map<Selector, Integer> selectorNumbers;
+	private final Map<Item, NumberedSet<Selector>> itemSupports;
+
+	/**
+	 * Numbers the given Items and Selectors, in the given order.
+	 * The Selectors in the supports of the Items which are not given
+	 * are numbered after the given ones.
+	 * @param selectors
+	 * @param items
+	 */
+	public ItemSetNumbering(Iterable<? extends Selector> selectors, Collection<Item> items) {
+		this.selectors = new ArrayList<>();
+		this.selectorNumbers = new HashMap<>();
+		for (Selector selector : selectors) {
+			addSelector(selector);
+		}
+		for (Item item : items) {
+			for (Selector selector : item.getSupport())
+				addSelector(selector);
+		}
+
+		this.items = new ArrayList<>();
+		this.itemNumbers = new HashMap<>();
+		this.itemSupports = new HashMap<>();
+		for (Item item : items) {
+			if (!itemNumbers.containsKey(item)) {
+				itemNumbers.put(item, this.items.size());
+				this.items.add(item);
+				NumberedSet<Selector> support = newSelectorSet();
+				for (Selector selector : item.getSupport())
+					support.add(selector);
+				itemSupports.put(item, support);
+			}
+		}
+	}
+
+	private void addSelector(Selector selector) {
+		if (!selectorNumbers.containsKey(selector)) {
+			selectorNumbers.put(selector, this.selectors.size());
+			this.selectors.add(selector);
+		}
+	}
+
+	public int getNumberOfItems() {
+		return items.size();
+	}
+
+	public int getNumberOfSelectors() {
+		return selectors.size();
+	}
+
+	public List<Item> getItems() {
+		return Collections.unmodifiableList(items);
+	}
+
+	public List<Selector> getSelectors() {
+		return Collections.unmodifiableList(selectors);
+	}
+
+	NumberedSet<Item> newItemSet() {
+		return new NumberedSet<>(items, itemNumbers);
+	}
+
+	NumberedSet<Selector> newSelectorSet() {
+		return new NumberedSet<>(selectors, selectorNumbers);
+	}
+
+	/*
+	 * Support of the given Item as bits, or null if the Item is not numbered
+	 */
+	NumberedSet<Selector> getSupport(Item item) {
+		return itemSupports.get(item);
+	}
+
+}
@@ -0,0 +1,193 @@
+package ca.concordia.cssanalyser.analyser.duplication.items;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of objects which are numbered beforehand (see {@link ItemSetNumbering}),
+ * kept as a {@link BitSet} of the numbers.
+ * When both sets use the same numbering, containment, equality,
+ * intersection and union are done word by word on the bits.
+ * <br />
+ * Equality and hash code are the same as any other {@link java.util.Set},
+ * so these sets can be mixed with (e.g.) HashSets in maps.
+ * The iteration order is the order of the numbers.
+ *
+ * @author Davood Mazinanian
+ *
+ * @param <T>
+ */
+class NumberedSet<T> extends AbstractSet<T> {
+
+	private final List<T> elements;
+	private final Map<T, Integer> numbers;
+	private final BitSet bits;
+	private int size;
+	private int hashCode;
+	private boolean hashCodeIsValid;
+
+	NumberedSet(List<T> elements, Map<T, Integer> numbers) {
+		this.elements = elements;
+		this.numbers = numbers;
+		this.bits = new BitSet(elements.size());
+	}
+
+	private NumberedSet(NumberedSet<T> other) {
+		this.elements = other.elements;
+		this.numbers = other.numbers;
+		this.bits = (BitSet) other.bits.clone();
+		this.size = other.size;
+		this.hashCode = other.hashCode;
+		this.hashCodeIsValid = other.hashCodeIsValid;
+	}
+
+	NumberedSet<T> copy() {
+		return new NumberedSet<>(this);
+	}
+
+	private boolean hasSameNumbering(Object o) {
+		return o instanceof NumberedSet && ((NumberedSet<?>) o).numbers == numbers;
+	}
+
+	private void changed() {
+		size = bits.cardinality();
+		hashCodeIsValid = false;
+	}
+
+	@Override
+	public boolean add(T e) {
+		Integer number = numbers.get(e);
+		if (number == null)
+			throw new IllegalArgumentException(e + " is not numbered");
+		if (bits.get(number))
+			return false;
+		bits.set(number);
+		size++;
+		hashCodeIsValid = false;
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		Integer number = numbers.get(o);
+		if (number == null || !bits.get(number))
+			return false;
+		bits.clear(number);
+		size--;
+		hashCodeIsValid = false;
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		Integer number = numbers.get(o);
+		return number != null && bits.get(number);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (hasSameNumbering(c)) {
+			NumberedSet<?> other = (NumberedSet<?>) c;
+			if (other.size > size)
+				return false;
+			BitSet notContained = (BitSet) other.bits.clone();
+			notContained.andNot(bits);
+			return notContained.isEmpty();
+		}
+		return super.containsAll(c);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		if (hasSameNumbering(c)) {
+			int oldSize = size;
+			bits.or(((NumberedSet<?>) c).bits);
+			changed();
+			return size != oldSize;
+		}
+		return super.addAll(c);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		if (hasSameNumbering(c)) {
+			int oldSize = size;
+			bits.and(((NumberedSet<?>) c).bits);
+			changed();
+			return size != oldSize;
+		}
+		return super.retainAll(c);
+	}
+
+	@Override
+	public void clear() {
+		bits.clear();
+		changed();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int next = bits.nextSetBit(0);
+			private int last = -1;
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public T next() {
+				if (next < 0)
+					throw new NoSuchElementException();
+				last = next;
+				next = bits.nextSetBit(next + 1);
+				return elements.get(last);
+			}
+
+			@Override
+			public void remove() {
+				if (last < 0)
+					throw new IllegalStateException();
+				bits.clear(last);
+				size--;
+				hashCodeIsValid = false;
+				last = -1;
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+		if (hasSameNumbering(o))
+			return bits.equals(((NumberedSet<?>) o).bits);
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		if (!hashCodeIsValid) {
+			hashCode = super.hashCode();
+			hashCodeIsValid = true;
+		}
+		return hashCode;
+	}
+
+}
@@ -4,6 +4,7 @@ package ca.concordia.cssanalyser.analyser.progressmonitor;
  * Very simple progress monitor,
  * that should be implmeneted by the clients that run a time-consuming
  * progress (e.g., FPGrowth).
+ * The methods can be called from different threads.
  * @author Davood Mazinanian
  *
  */
@@ -28,18 +29,18 @@ public class ProgressMonitorDelegator {
 		}
 	}
 	
-	public void setFinalState(int finalState) {
+	public synchronized void setFinalState(int finalState) {
 		this.finalState = finalState;
 	}
 	
-	public void worked(int i) {
+	public synchronized void worked(int i) {
 		state += i;
 		if (state <= finalState) {
 			progressMonitor.progressed((int)Math.ceil(state / (float)finalState * 100));
 		}
 	}
 	
-	public void finished() {
+	public synchronized void finished() {
 		worked(finalState - state);
 	}
 	
@@ -24,6 +24,7 @@ import ca.concordia.cssanalyser.migration.topreprocessors.sass.SassHelper;
 import ca.concordia.cssanalyser.parser.CSSParser;
 import ca.concordia.cssanalyser.parser.CSSParserFactory;
 import ca.concordia.cssanalyser.parser.CSSParserFactory.CSSParserType;
+import ca.concordia.cssanalyser.parser.CachingCSSParser;
 import ca.concordia.cssanalyser.parser.ParseException;
 import ca.concordia.cssanalyser.parser.less.LessCSSParser;
 import ca.concordia.cssanalyser.parser.less.ModifiedLessFileSource;
@@ -137,7 +138,8 @@ public class CSSAnalyserCLI {
 		CSSAnalyser cssAnalyser = null;
 		if (params.getInputFolderPath() != null) {
 			try {
-				cssAnalyser = new CSSAnalyser(params.getInputFolderPath());
+				cssAnalyser = new CSSAnalyser(null, params.getInputFolderPath(), params.getNumberOfThreads(),
+						CSSParserFactory.getCSSParser(params.getCSSParserType()));
 			} catch (FileNotFoundException fnfe) {
 				LOGGER.warn(fnfe.getMessage());
 			}
@@ -145,6 +147,7 @@ public class CSSAnalyserCLI {
 			LOGGER.error("Please provide an input folder with --in-folder \"in/folder\"");
 			return;
 		}
+		cssAnalyser.setParallelFPGrowth(params.shouldUseParallelFPGrowth());
 		cssAnalyser.analyse(params.getFPGrowthMinsup());
 	}
 
@@ -155,6 +158,10 @@ public class CSSAnalyserCLI {
 			LOGGER.error("Please provide an input folder with --in-folder \"in/folder\" or list of folders using --folders-file \"path/to/file\".");
 		} else {
 
+			// The DOM states of a web site usually share the same CSS files, they are parsed once
+			CachingCSSParser cssParser = new CachingCSSParser(CSSParserFactory.getCSSParser(params.getCSSParserType()));
+			cssParser.setCacheFolder(params.getParseCacheFolderPath());
+
 			for (String folder : folders) {
 				List<File> allStatesFiles = IOHelper.searchForFiles(folder + "crawljax/doms", "html");
 				if (allStatesFiles.size() == 0) {
@@ -168,7 +175,8 @@ public class CSSAnalyserCLI {
 
 						try {
 
-							CSSAnalyser cssAnalyser = new CSSAnalyser(domStateHtml.getAbsolutePath(), folder + "css/" + correspondingCSSFolderName);
+							CSSAnalyser cssAnalyser = new CSSAnalyser(domStateHtml.getAbsolutePath(), folder + "css/" + correspondingCSSFolderName, params.getNumberOfThreads(), cssParser);
+							cssAnalyser.setParallelFPGrowth(params.shouldUseParallelFPGrowth());
 							cssAnalyser.analyse(params.getFPGrowthMinsup());
 
 						} catch (FileNotFoundException fnfe) {
@@ -198,6 +206,10 @@ public class CSSAnalyserCLI {
 			urls.add(params.getUrl());
 		}
 
+		// The DOM states of a web site usually share the same CSS files, they are parsed once
+		CachingCSSParser cssParser = new CachingCSSParser(CSSParserFactory.getCSSParser(params.getCSSParserType()));
+		cssParser.setCacheFolder(params.getParseCacheFolderPath());
+
 		for (String currentUrl : urls) {
 
 			String outputFolderPath = params.getOutputFolderPath() + currentUrl.replaceFirst("http[s]?://", "").replaceFirst("file://", "").replace("/", "_").replace(":", "_") + "/";
@@ -215,7 +227,8 @@ public class CSSAnalyserCLI {
 
 				try {
 
-					CSSAnalyser cssAnalyser = new CSSAnalyser(domStateHtml.getAbsolutePath(), outputFolderPath + "css/" + correspondingCSSFolderName);
+					CSSAnalyser cssAnalyser = new CSSAnalyser(domStateHtml.getAbsolutePath(), outputFolderPath + "css/" + correspondingCSSFolderName, params.getNumberOfThreads(), cssParser);
+					cssAnalyser.setParallelFPGrowth(params.shouldUseParallelFPGrowth());
 					cssAnalyser.analyse(params.getFPGrowthMinsup());
 
 				} catch (FileNotFoundException fnfe) {
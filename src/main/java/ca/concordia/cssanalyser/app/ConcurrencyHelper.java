@@ -0,0 +1,55 @@
+package ca.concordia.cssanalyser.app;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Helps the parts of the tool which run their tasks in parallel (using an ExecutorService)
+ * to collect the results of the tasks.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public final class ConcurrencyHelper {
+
+	private ConcurrencyHelper() {}
+
+	/**
+	 * Waits for the given task and returns its result.
+	 * If the task has thrown an unchecked exception (or an error), the same exception is thrown here;
+	 * other exceptions are wrapped in a RuntimeException.
+	 * If the current thread is interrupted while waiting, it is interrupted again and a RuntimeException is thrown.
+	 * @param future
+	 * @return
+	 */
+	public static <T> T getResult(Future<T> future) {
+		return getResult(future, RuntimeException.class);
+	}
+
+	/**
+	 * Waits for the given task and returns its result, the same as {@link #getResult(Future)},
+	 * except that if the task has thrown an exception of the given (checked) type, the same exception is thrown here.
+	 * @param future
+	 * @param exceptionType
+	 * @return
+	 * @throws E
+	 */
+	public static <T, E extends Exception> T getResult(Future<T> future, Class<E> exceptionType) throws E {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (exceptionType.isInstance(cause))
+				throw exceptionType.cast(cause);
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+}
@@ -14,6 +14,7 @@ import org.kohsuke.args4j.Option;
 import org.slf4j.Logger;
 
 import ca.concordia.cssanalyser.io.IOHelper;
+import ca.concordia.cssanalyser.parser.CSSParserFactory.CSSParserType;
 
 /**
  * Parses input arguments.
@@ -65,6 +66,18 @@ class ParametersParser {
 	@Option(name="--input-file", usage="File containing the list of URLs for analysis")
 	private String inputFile;
 
+	@Option(name="--threads", usage="Number of CSS files which are parsed and analyzed at the same time")
+	private int numberOfThreads = 1;
+
+	@Option(name="--parallel-fpgrowth", usage="When enabled, FP-Growth mines each CSS file using the threads given by --threads")
+	private boolean parallelFPGrowth = false;
+
+	@Option(name="--parser", usage="Parser for the CSS files in the clone refactoring modes: LESS (default), AUTO (Flute for plain CSS), CHUNKED (large files are split and parsed in parallel) or FLUTE")
+	private CSSParserType parserType = CSSParserType.LESS;
+
+	@Option(name="--parse-cache-folder", usage="Folder in which the parsed CSS files are kept, so that they are not parsed again in the next runs")
+	private String parseCacheFolder;
+
 	private final CmdLineParser parser;
 
 	public ParametersParser(String[] args) {
@@ -141,6 +154,40 @@ class ParametersParser {
 		return urlsFile;
 	}
 	
+	/**
+	 * Returns the number of threads used for parsing and analyzing the CSS files.
+	 * The minimum (and default) value is 1, i.e., sequential analysis.
+	 * @return
+	 */
+	public int getNumberOfThreads() {
+		if (numberOfThreads < 1) {
+			numberOfThreads = 1;
+			LOGGER.warn("Invalid number was given for the number of threads (--threads), 1 is selected by default.");
+		}
+		return numberOfThreads;
+	}
+	
+	public boolean shouldUseParallelFPGrowth() {
+		return parallelFPGrowth;
+	}
+
+	/**
+	 * Returns the type of the parser for the CSS files, LESS by default
+	 * @return
+	 */
+	public CSSParserType getCSSParserType() {
+		return parserType;
+	}
+
+	/**
+	 * Returns the folder in which the parsed style sheets are kept,
+	 * or null if they should only be kept in memory
+	 * @return
+	 */
+	public String getParseCacheFolderPath() {
+		return parseCacheFolder;
+	}
+	
 	public int getMaxDeclarations() {
 		return maxDeclarations;
 	}
@@ -19,6 +19,7 @@ import ca.concordia.cssanalyser.cssmodel.selectors.GroupingSelector;
 import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
 import ca.concordia.cssanalyser.dom.DOMNodeWrapper;
 import ca.concordia.cssanalyser.dom.DOMNodeWrapperList;
+import ca.concordia.cssanalyser.dom.DOMSelectorMatcher;
 import ca.concordia.cssanalyser.refactoring.dependencies.CSSDependencyDetector;
 import ca.concordia.cssanalyser.refactoring.dependencies.CSSValueOverridingDependencyList;
 
@@ -107,8 +108,63 @@ public class StyleSheet extends CSSModelObject {
 
 	@Override
 	public String toString() {
+		return writeStyleSheet(null);
+	}
+
+	/**
+	 * Returns a copy of this style sheet, in which the selectors and declarations
+	 * have the location info of their positions in the string returned by {@link #toString()}.
+	 * This is the same as writing this style sheet to a file and parsing the file again,
+	 * without the I/O and parsing. The selectors and declarations of the copy are numbered 
+	 * in the order in which they appear in that string.
+	 * Virtual shorthand declarations are not copied.
+	 * @return
+	 */
+	public StyleSheet getCopyWithLocationInfoUpdated() {
+		StyleSheet styleSheetToReturn = new StyleSheet();
+		styleSheetToReturn.cssFilePath = this.cssFilePath;
+		writeStyleSheet(styleSheetToReturn);
+		return styleSheetToReturn;
+	}
+
+	/*
+	 * Keeps the position (line, column and offset) of the end of the string being built
+	 */
+	private static class PositionAwareStringBuilder {
+		private final StringBuilder builder = new StringBuilder();
+		private int line = 1;
+		private int column = 1;
+
+		public void append(String string) {
+			builder.append(string);
+			for (int i = 0; i < string.length(); i++) {
+				if (string.charAt(i) == '\n') {
+					line++;
+					column = 1;
+				} else {
+					column++;
+				}
+			}
+		}
 
-		StringBuilder toReturn = new StringBuilder();
+		public LocationInfo getLocationInfo(int length) {
+			return new LocationInfo(line, column, builder.length(), length);
+		}
+
+		@Override
+		public String toString() {
+			return builder.toString();
+		}
+	}
+
+	/*
+	 * Writes this style sheet to a string. 
+	 * If a style sheet is given, the copies of the selectors and declarations, 
+	 * having the location info of their positions in the string, are added to it. 
+	 */
+	private String writeStyleSheet(StyleSheet copyStyleSheet) {
+
+		PositionAwareStringBuilder toReturn = new PositionAwareStringBuilder();
 		Set<MediaQueryList> lastMediaQueryLists = null;
 		Iterator<Selector> selectorIterator = selectors.keySet().iterator();
 		int currentIndentation = 0;
@@ -127,18 +183,32 @@ public class StyleSheet extends CSSModelObject {
 					lastMediaQueryLists = s.getMediaQueryLists();
 				}
 				
-				toReturn.append(getIndentsString(currentIndentation) + s + " {" + System.lineSeparator());
+				toReturn.append(getIndentsString(currentIndentation));
+				LocationInfo selectorStart = toReturn.getLocationInfo(-1);
+				toReturn.append(s + " {" + System.lineSeparator());
+				List<Declaration> declarations = new ArrayList<>();
+				List<LocationInfo> declarationLocations = new ArrayList<>();
 				for (Declaration d : s.getDeclarations()) {
 					if (d instanceof ShorthandDeclaration) {
 						if (((ShorthandDeclaration)d).isVirtual())
 							continue;
 					}
-					toReturn.append(getIndentsString(currentIndentation + 1) + d);
+					toReturn.append(getIndentsString(currentIndentation + 1));
+					String declarationString = d.toString();
 					if (d.isImportant())
-						toReturn.append(" !important");
+						declarationString += " !important";
+					declarations.add(d);
+					declarationLocations.add(toReturn.getLocationInfo(declarationString.length()));
+					toReturn.append(declarationString);
 					toReturn.append(";" + System.lineSeparator());
 				}
-				toReturn.append(getIndentsString(currentIndentation) + "}" + System.lineSeparator() + System.lineSeparator());
+				toReturn.append(getIndentsString(currentIndentation) + "}");
+				if (copyStyleSheet != null) {
+					LocationInfo selectorLocation = new LocationInfo(selectorStart.getLineNumber(), selectorStart.getColumnNumber(), 
+							selectorStart.getOffset(), toReturn.builder.length() - selectorStart.getOffset());
+					copyStyleSheet.addSelector(copySelector(s, selectorLocation, declarations, declarationLocations));
+				}
+				toReturn.append(System.lineSeparator() + System.lineSeparator());
 				
 				if (selectorIterator.hasNext()) {
 					s = selectorIterator.next();
@@ -169,6 +239,43 @@ public class StyleSheet extends CSSModelObject {
 		return toReturn.toString();
 	}
 
+	/*
+	 * Copies the given selector and the given declarations of it, and sets their location info.
+	 * The location info of the selector should be set before the selector or its declarations
+	 * are put in hash-based collections, since the hash codes depend on it.
+	 */
+	private Selector copySelector(Selector selector, LocationInfo selectorLocation, List<Declaration> declarations, List<LocationInfo> declarationLocations) {
+		Selector newSelector;
+		if (selector instanceof GroupingSelector) {
+			GroupingSelector newGroupingSelector = new GroupingSelector(selectorLocation);
+			int offset = selectorLocation.getOffset();
+			for (BaseSelector baseSelector : ((GroupingSelector)selector).getBaseSelectors()) {
+				BaseSelector newBaseSelector = (BaseSelector)baseSelector.copyEmptySelector();
+				int length = baseSelector.toString().length();
+				LocationInfo baseSelectorLocation = new LocationInfo(selectorLocation.getLineNumber(), 
+						selectorLocation.getColumnNumber() + offset - selectorLocation.getOffset(), offset, length);
+				newBaseSelector.setLocationInfo(baseSelectorLocation);
+				newBaseSelector.setSelectorNameLocationInfo(baseSelectorLocation);
+				newBaseSelector.setParentGroupSelector(newGroupingSelector);
+				newGroupingSelector.add(newBaseSelector);
+				offset += length + 2; // ", "
+			}
+			newGroupingSelector.addMediaQueryLists(selector.getMediaQueryLists());
+			newSelector = newGroupingSelector;
+		} else {
+			newSelector = selector.copyEmptySelector();
+			newSelector.setLocationInfo(selectorLocation);
+			newSelector.setSelectorNameLocationInfo(new LocationInfo(selectorLocation.getLineNumber(), 
+					selectorLocation.getColumnNumber(), selectorLocation.getOffset(), selector.toString().length()));
+		}
+		for (int i = 0; i < declarations.size(); i++) {
+			Declaration newDeclaration = declarations.get(i).clone();
+			newDeclaration.setLocationInfo(declarationLocations.get(i));
+			newSelector.addDeclaration(newDeclaration);
+		}
+		return newSelector;
+	}
+
 	private String getIndentsString(int currentIndentation) {
 		String s = "";
 		for (int i = 0; i < currentIndentation; i++)
@@ -195,18 +302,14 @@ public class StyleSheet extends CSSModelObject {
 	}
 
 	/**
-	 * Maps every base selector to a node list in the stylesheet
+	 * Maps every base selector to a node list in the stylesheet.
+	 * The selectors are matched using a {@link DOMSelectorMatcher}.
 	 * @param document
 	 * @param styleSheet
 	 * @return
 	 */
 	public Map<BaseSelector, DOMNodeWrapperList> mapStylesheetOnDocument(Document document) {
-		List<BaseSelector> allSelectors = getAllBaseSelectors();
-		Map<BaseSelector, DOMNodeWrapperList> selectorNodeListMap = new LinkedHashMap<>();
-		for (BaseSelector selector : allSelectors) {
-			selectorNodeListMap.put(selector, selector.getSelectedNodes(document));
-		}
-		return selectorNodeListMap;
+		return new DOMSelectorMatcher(document).getSelectedNodes(getAllBaseSelectors());
 	}
 
 	/**
@@ -217,10 +320,12 @@ public class StyleSheet extends CSSModelObject {
 	 */
 	public Map<DOMNodeWrapper, List<BaseSelector>> getCSSClassesForDOMNodes(Document document) {
 			
-		// Map every node in the DOM tree to a list of selectors in the stylesheet
-		Map<DOMNodeWrapper, List<BaseSelector>> nodeToSelectorsMapping = new HashMap<>();
+		// Map every node in the DOM tree to a list of selectors in the stylesheet.
+		// The nodes are kept in the order in which they are found, so the dependencies are found in the same order every time
+		Map<DOMNodeWrapper, List<BaseSelector>> nodeToSelectorsMapping = new LinkedHashMap<>();
+		DOMSelectorMatcher selectorMatcher = new DOMSelectorMatcher(document);
 		for (BaseSelector selector : getAllBaseSelectors()) {
-			DOMNodeWrapperList matchedNodes = selector.getSelectedNodes(document);
+			DOMNodeWrapperList matchedNodes = selectorMatcher.getSelectedNodes(selector);
 			for (DOMNodeWrapper domNodeWrapper : matchedNodes) {
 				List<BaseSelector> correspondingSelectors = nodeToSelectorsMapping.get(domNodeWrapper);
 				if (correspondingSelectors == null) {
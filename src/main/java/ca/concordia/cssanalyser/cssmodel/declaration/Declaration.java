@@ -26,6 +26,29 @@ import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
  */
 public abstract class Declaration extends CSSModelObject implements Cloneable {
 
+	private static final Set<String> VENDOR_PREFIXES = new HashSet<>();
+	
+	static {
+		VENDOR_PREFIXES.add("-webkit-");
+		VENDOR_PREFIXES.add("-moz-");
+		VENDOR_PREFIXES.add("-ms-");
+		VENDOR_PREFIXES.add("-o-");
+		
+		VENDOR_PREFIXES.add("-ah-");
+		VENDOR_PREFIXES.add("-apple-");
+		VENDOR_PREFIXES.add("-atsc-");
+		VENDOR_PREFIXES.add("-epub-");
+		VENDOR_PREFIXES.add("-hp-");
+		VENDOR_PREFIXES.add("-khtml-");
+		VENDOR_PREFIXES.add("-rim-");
+		VENDOR_PREFIXES.add("-ro-");
+		VENDOR_PREFIXES.add("-tc-");
+		VENDOR_PREFIXES.add("-wap-");
+		VENDOR_PREFIXES.add("-xv-");
+		
+		VENDOR_PREFIXES.add("-moz-osx-");
+	}
+	
 	protected final String property;
 	protected Selector parentSelector;
 	protected boolean isImportant;
@@ -56,27 +79,7 @@ public abstract class Declaration extends CSSModelObject implements Cloneable {
 	 */
 	public static String getNonVendorProperty(String property) {
 		String torReturn = property;
-		Set<String> prefixes = new HashSet<>();
-		prefixes.add("-webkit-");
-		prefixes.add("-moz-");
-		prefixes.add("-ms-");
-		prefixes.add("-o-");
-		
-		prefixes.add("-ah-");
-		prefixes.add("-apple-");
-		prefixes.add("-atsc-");
-		prefixes.add("-epub-");
-		prefixes.add("-hp-");
-		prefixes.add("-khtml-");
-		prefixes.add("-rim-");
-		prefixes.add("-ro-");
-		prefixes.add("-tc-");
-		prefixes.add("-wap-");
-		prefixes.add("-xv-");
-		
-		prefixes.add("-moz-osx-");
-		
-		for (String prefix : prefixes)
+		for (String prefix : VENDOR_PREFIXES)
 			if (torReturn.startsWith(prefix)) {
 				torReturn = torReturn.substring(prefix.length());
 				break;
@@ -84,6 +87,15 @@ public abstract class Declaration extends CSSModelObject implements Cloneable {
 		return torReturn;
 	}
 	
+	/**
+	 * Returns the vendor prefixes (like -moz-, -webkit-, etc.)
+	 * which are removed by {@link #getNonVendorProperty(String)}, in the order in which they are checked
+	 * @return
+	 */
+	static Iterable<String> getVendorPrefixes() {
+		return VENDOR_PREFIXES;
+	}
+	
 	public static String getNonHackedProperty(String property) {
 		String torReturn = property;
 		Set<String> prefixes = new HashSet<>();
@@ -3,6 +3,7 @@ package ca.concordia.cssanalyser.cssmodel.declaration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -35,11 +36,21 @@ public class ShorthandDeclaration extends MultiValuedDeclaration {
 	private Map<String, Declaration> individualDeclarations;
 
 	private static final Map<String, Set<String>> shorthandProperties = new HashMap<>();
+	
+	/*
+	 * The results of getIndividualPropertiesForAShorthand() and getShorthandPropertyNames()
+	 * for every property (with or without vendor prefixes) for which they are not empty, 
+	 * i.e., the transitive closures of the relation kept in shorthandProperties in both directions.
+	 * These are built once, when the class is loaded.
+	 */
+	private static final Map<String, Set<String>> individualPropertiesClosure = new HashMap<>();
+	private static final Map<String, Set<String>> shorthandPropertiesClosure = new HashMap<>();
 
 	private boolean isVirtual = false;
 
 	static {
 		initializeShorthandsMap();
+		initializeClosures();
 	}
 
 	public ShorthandDeclaration(String propertyName, List<DeclarationValue> values, Selector belongsTo, boolean important, boolean addMissingValues, LocationInfo location) {
@@ -1140,7 +1151,57 @@ public class ShorthandDeclaration extends MultiValuedDeclaration {
 		return shorthandProperties.containsKey(property);
 	}
 
+	private static void initializeClosures() {
+		Set<String> properties = new HashSet<>();
+		for (Entry<String, Set<String>> entry : shorthandProperties.entrySet()) {
+			properties.add(entry.getKey());
+			properties.addAll(entry.getValue());
+		}
+		List<String> prefixes = new ArrayList<>();
+		prefixes.add("");
+		for (String prefix : Declaration.getVendorPrefixes())
+			prefixes.add(prefix);
+		for (String prefix : prefixes) {
+			for (String property : properties) {
+				String prefixedProperty = prefix + property;
+				Set<String> individualProperties = computeIndividualPropertiesForAShorthand(prefixedProperty);
+				if (!individualProperties.isEmpty())
+					individualPropertiesClosure.put(prefixedProperty, Collections.unmodifiableSet(individualProperties));
+				Set<String> shorthandPropertyNames = computeShorthandPropertyNames(prefixedProperty);
+				if (!shorthandPropertyNames.isEmpty())
+					shorthandPropertiesClosure.put(prefixedProperty, Collections.unmodifiableSet(shorthandPropertyNames));
+			}
+		}
+	}
+	
+	/*
+	 * The properties which are not in the closures and may have a result 
+	 * are the ones having hacks (e.g., *margin), which are rare.
+	 * These are computed every time.
+	 */
+	private static boolean mayBeHackedProperty(String property) {
+		return property.indexOf('*') >= 0 || property.indexOf('_') >= 0;
+	}
+
+	/**
+	 * Returns all the individual properties (at all levels) of the given shorthand property,
+	 * with the vendor prefix of the given property. 
+	 * For example, for border, this method returns border-color, border-left-color, border-width, etc.
+	 * If the given property is not a shorthand property, the returned set is empty.
+	 * The returned set cannot be changed. 
+	 * @param shorthandProperty
+	 * @return
+	 */
 	public static Set<String> getIndividualPropertiesForAShorthand(String shorthandProperty) {
+		Set<String> individualProperties = individualPropertiesClosure.get(shorthandProperty);
+		if (individualProperties != null)
+			return individualProperties;
+		if (mayBeHackedProperty(shorthandProperty))
+			return Collections.unmodifiableSet(computeIndividualPropertiesForAShorthand(shorthandProperty));
+		return Collections.emptySet();
+	}
+
+	private static Set<String> computeIndividualPropertiesForAShorthand(String shorthandProperty) {
 		Set<String> results = new HashSet<>();
 		String prefix = Declaration.getVendorPrefixForProperty(shorthandProperty);
 		String nonPrefixedshorthandProperty = Declaration.getNonHackedProperty(Declaration.getNonVendorProperty(shorthandProperty));
@@ -1148,7 +1209,7 @@ public class ShorthandDeclaration extends MultiValuedDeclaration {
 		if (currentLevel != null) {
 			results.addAll(currentLevel.stream().map(s -> prefix + s).collect(Collectors.toSet()));
 			for (String property : currentLevel) {
-				Set<String> individualPropertiesForAShorthand = getIndividualPropertiesForAShorthand(property);
+				Set<String> individualPropertiesForAShorthand = computeIndividualPropertiesForAShorthand(property);
 				results.addAll(individualPropertiesForAShorthand.stream().map(s -> prefix + s).collect(Collectors.toSet()));
 			}
 		}
@@ -1160,11 +1221,20 @@ public class ShorthandDeclaration extends MultiValuedDeclaration {
 	 * those shorthand properties. For example, border-left-color could be a part of 
 	 * border-color or border-left shorthand properties. So this method would return them.
 	 * If not, the returned set is empty. 
+	 * The returned set cannot be changed. 
 	 * @param property
 	 * @return
 	 */
-	// TODO: Maybe consider using a BiMap
 	public static Set<String> getShorthandPropertyNames(String property) {
+		Set<String> shorthandPropertyNames = shorthandPropertiesClosure.get(property);
+		if (shorthandPropertyNames != null)
+			return shorthandPropertyNames;
+		if (mayBeHackedProperty(property))
+			return Collections.unmodifiableSet(computeShorthandPropertyNames(property));
+		return Collections.emptySet();
+	}
+
+	private static Set<String> computeShorthandPropertyNames(String property) {
 		String nonVendorproperty = getNonVendorProperty(getNonHackedProperty(property));
 		String prefix = getVendorPrefixForProperty(property);
 		Set<String> toReturn = new HashSet<>();
@@ -1172,7 +1242,7 @@ public class ShorthandDeclaration extends MultiValuedDeclaration {
 			if (entry.getValue().contains(nonVendorproperty)) {
 				toReturn.add(prefix + entry.getKey());
 				// This method has to act recursively, to return border for border-left-width
-				Set<String> recursiveProperties = getShorthandPropertyNames(entry.getKey());
+				Set<String> recursiveProperties = computeShorthandPropertyNames(entry.getKey());
 				for (String s : recursiveProperties)
 					toReturn.add(prefix + s);
 			}
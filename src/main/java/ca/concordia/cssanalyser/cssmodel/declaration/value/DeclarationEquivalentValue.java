@@ -43,7 +43,7 @@ public class DeclarationEquivalentValue extends DeclarationValue {
 	 * @see DeclarationValue
 	 */	
 	public DeclarationEquivalentValue(String realValue, String equivalentValue, boolean isMissing, ValueType type) {
-		super(realValue, isMissing, type);
+		super(realValue, equivalentValue, isMissing, type);
 		this.equivalentValue = equivalentValue;
 	}
 	
@@ -79,7 +79,12 @@ public class DeclarationEquivalentValue extends DeclarationValue {
 			return false;
 		}
 		
-		if (!this.isKeyword() && !otherValue.isKeyword()) {
+		// The common representations are parsed when the values are created (see DeclarationValue),
+		// so numbers and colors are compared without parsing the strings again
+		if (getType() == ValueType.COLOR) {
+			if (isRGBAColor() && otherValue.isRGBAColor())
+				return hasSameRGBA(otherValue);
+		} else if (!this.isKeyword() && !otherValue.isKeyword()) {
 			switch (getType()) {
 				case LENGTH:
 				case INTEGER:
@@ -88,24 +93,9 @@ public class DeclarationEquivalentValue extends DeclarationValue {
 				case FREQUENCY:
 				case TIME:
 				case PERCENTAGE:
-					// THIS IS A HACK.
-					// Ideally, we should keep the suffix as a field here
-					int suffixPos1 = getSuffixPosition(equivalentValue);
-					String value1 = "", suffix1 = "";
-					if (suffixPos1 > 0) {
-						value1 = equivalentValue.substring(0, suffixPos1);
-						suffix1 = equivalentValue.substring(suffixPos1, equivalentValue.length()).trim().toLowerCase();
-					}	
-	
-					int suffixPos2 = getSuffixPosition(valueToCheck);
-					String value2 = "", suffix2 = "";
-					if (suffixPos2 > 0) {
-						value2 = valueToCheck.substring(0, suffixPos2);
-						suffix2 = valueToCheck.substring(suffixPos2, valueToCheck.length()).trim().toLowerCase();
-					}
-	
-					return Double.parseDouble(value1) == Double.parseDouble(value2) && suffix1.equals(suffix2);
-	
+					if (hasMagnitude() && otherValue.hasMagnitude())
+						return hasSameMagnitudeAndUnit(otherValue);
+					break;
 				default:
 					break;
 			}
@@ -113,14 +103,6 @@ public class DeclarationEquivalentValue extends DeclarationValue {
 		return equivalentValue.equals(valueToCheck);
 	}
 	
-	private int getSuffixPosition(String value) {
-		int suffixStartingIndex = 0;
-		while (suffixStartingIndex < value.length() && (!Character.isLetter(value.charAt(suffixStartingIndex)) && value.charAt(suffixStartingIndex) != '%')) {
-			suffixStartingIndex++;
-		} 
-		return suffixStartingIndex;
-	}
-	
 	/**
 	 * Returns the equivalent value
 	 * @return
@@ -21,6 +21,19 @@ public class DeclarationValue extends CSSModelObject implements Cloneable {
 	
 	private final boolean isKeyword;
 	
+	/*
+	 * The common representation of this value (see DeclarationEquivalentValue),
+	 * parsed once when the value is created, so that comparing values needs no work on strings.
+	 * For numbers, the magnitude and the unit (unit is null if the representation is not a number).
+	 * For colors, the packed RGB components and the alpha (if the representation is an rgba() color).
+	 */
+	private final double magnitude;
+	private final ValueUnit unit;
+	private final String unitSuffix;
+	private final int rgb;
+	private final double alpha;
+	private final boolean isRGBAColor;
+	
 	/**
 	 * 
 	 * @param realValue The real value of property. Note that the value may not be 
@@ -42,11 +55,100 @@ public class DeclarationValue extends CSSModelObject implements Cloneable {
 	 * @param type The type of value based on {@link ValueType}
 	 */
 	public DeclarationValue(String value, boolean isMissing, ValueType type) {
+		this(value, null, isMissing, type);
+	}
+	
+	/**
+	 * Used by the values having a common representation other than the real value
+	 * @param value The real value
+	 * @param representation The common representation of the value to be parsed
+	 * (if null, the real value is used)
+	 * @param isMissing
+	 * @param type
+	 * @see DeclarationEquivalentValue
+	 */
+	protected DeclarationValue(String value, String representation, boolean isMissing, ValueType type) {
 		this.realInFileValue = value.trim();
 		isAMissingValue = isMissing;
 		valueType = type;
 		// only alphabets or dashes
 		isKeyword = realInFileValue.matches("[a-zA-Z\\-]+");
+		
+		if (representation == null)
+			representation = realInFileValue;
+		double magnitude = Double.NaN;
+		ValueUnit unit = null;
+		String unitSuffix = null;
+		double[] color = null;
+		switch (type) {
+			case LENGTH:
+			case INTEGER:
+			case REAL:
+			case ANGLE:
+			case FREQUENCY:
+			case TIME:
+			case PERCENTAGE:
+				int suffixPosition = getSuffixPosition(representation);
+				if (suffixPosition > 0) {
+					try {
+						magnitude = Double.parseDouble(representation.substring(0, suffixPosition));
+						unitSuffix = representation.substring(suffixPosition).trim().toLowerCase();
+						unit = ValueUnit.fromSuffix(unitSuffix);
+					} catch (NumberFormatException nfe) {
+						// Not a number, will be compared as string
+					}
+				}
+				break;
+			case COLOR:
+				color = getRGBAComponents(representation);
+				break;
+			default:
+				break;
+		}
+		this.magnitude = magnitude;
+		this.unit = unit;
+		this.unitSuffix = unitSuffix;
+		this.isRGBAColor = color != null;
+		this.rgb = color == null ? 0 : ((int) color[0] << 16) | ((int) color[1] << 8) | (int) color[2];
+		// -0.0 and 0.0 are the same alpha
+		this.alpha = color == null ? Double.NaN : color[3] + 0.0;
+	}
+	
+	private static int getSuffixPosition(String value) {
+		int suffixStartingIndex = 0;
+		while (suffixStartingIndex < value.length() && (!Character.isLetter(value.charAt(suffixStartingIndex)) && value.charAt(suffixStartingIndex) != '%')) {
+			suffixStartingIndex++;
+		} 
+		return suffixStartingIndex;
+	}
+	
+	/*
+	 * Returns the components of an rgba(r, g, b, a) color.
+	 * The alpha is kept as it is parsed (not scaled to 0-255), so colors which differ only slightly 
+	 * in their alpha, e.g. rgba(0, 0, 0, .5) and rgba(0, 0, 0, .501), stay different. 
+	 * Returns null if the value is not such a color.
+	 */
+	private static double[] getRGBAComponents(String value) {
+		if (!value.regionMatches(true, 0, "rgba(", 0, 5) || !value.endsWith(")"))
+			return null;
+		String[] components = value.substring(5, value.length() - 1).split(",");
+		if (components.length != 4)
+			return null;
+		double[] rgba = new double[4];
+		try {
+			for (int i = 0; i < 3; i++) {
+				int component = Integer.parseInt(components[i].trim());
+				if (component < 0 || component > 255)
+					return null;
+				rgba[i] = component;
+			}
+			rgba[3] = Double.parseDouble(components[3].trim());
+			if (!(rgba[3] >= 0 && rgba[3] <= 1))
+				return null;
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+		return rgba;
 	}
 		
 	/**
@@ -133,6 +235,82 @@ public class DeclarationValue extends CSSModelObject implements Cloneable {
 		return valueType;
 	}
 		
+	/**
+	 * Returns true if the common representation of this value is a number
+	 * (i.e., this value is of a numeric type and has a magnitude and a unit).
+	 * @return
+	 */
+	public boolean hasMagnitude() {
+		return unit != null;
+	}
+	
+	/**
+	 * Returns the magnitude of the common representation of this value
+	 * (e.g., 16 for 12pt, which is 16px), or NaN if it is not a number.
+	 * @see #hasMagnitude()
+	 * @return
+	 */
+	public double getMagnitude() {
+		return magnitude;
+	}
+	
+	/**
+	 * Returns the unit of the common representation of this value
+	 * (e.g., {@link ValueUnit#PX} for 12pt, which is 16px), or null if it is not a number.
+	 * @see #hasMagnitude()
+	 * @return
+	 */
+	public ValueUnit getUnit() {
+		return unit;
+	}
+	
+	/**
+	 * Returns true if the common representation of this value is an rgba() color
+	 * @return
+	 */
+	public boolean isRGBAColor() {
+		return isRGBAColor;
+	}
+	
+	/**
+	 * Returns the red, green and blue components of the common representation
+	 * of this value packed as 0xRRGGBB.
+	 * Only meaningful if {@link #isRGBAColor()} returns true.
+	 * @return
+	 */
+	public int getRGB() {
+		return rgb;
+	}
+
+	/**
+	 * Returns the alpha component of the common representation of this value, as it is parsed (0 to 1).
+	 * Only meaningful if {@link #isRGBAColor()} returns true.
+	 * @return
+	 */
+	public double getAlpha() {
+		return alpha;
+	}
+
+	/**
+	 * Compares the red, green, blue and alpha components of the common representations of the two values.
+	 * The alphas should be exactly the same
+	 * @param otherValue
+	 * @return
+	 */
+	protected boolean hasSameRGBA(DeclarationValue otherValue) {
+		return rgb == otherValue.rgb && alpha == otherValue.alpha;
+	}
+	
+	/**
+	 * Compares the parsed numbers of the common representations of the two values
+	 * @param otherValue
+	 * @return
+	 */
+	protected boolean hasSameMagnitudeAndUnit(DeclarationValue otherValue) {
+		return magnitude == otherValue.magnitude && unit == otherValue.unit &&
+				(unit != ValueUnit.OTHER || unitSuffix.equals(otherValue.unitSuffix));
+	}
+	
 	public boolean equivalent(DeclarationValue otherValue) {
 		if (otherValue instanceof DeclarationEquivalentValue)
 			return otherValue.equivalent(this);
@@ -353,8 +353,18 @@ public class DeclarationValueFactory {
 			return String.format("%s", d);
 	}
 
+	/**
+	 * Formats the given float the way it is written in CSS
+	 * (i.e., 1.1 and not 1.100000023841858, which is what we get when a float is widened to a double)
+	 * @param f
+	 * @return
+	 */
+	public static String formatFloat(float f) {
+		return formatDouble(Double.parseDouble(Float.toString(f)));
+	}
+
 	public static DeclarationValue getFontValue(String propertyName, float value, String unit) {
-		String val = formatDouble(value) + unit;
+		String val = formatFloat(value) + unit;
 		return getDeclarationValue(propertyName, val, ValueType.LENGTH);
 	}
 	
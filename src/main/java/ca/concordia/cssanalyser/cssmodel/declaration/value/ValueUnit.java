@@ -0,0 +1,78 @@
+package ca.concordia.cssanalyser.cssmodel.declaration.value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defines the unit of a numeric value (e.g., px in 12px).
+ * Numbers without unit (e.g., 700) have the {@link #NONE} unit,
+ * and the units which are not known here are {@link #OTHER}.
+ * @author Davood Mazinanian
+ *
+ */
+public enum ValueUnit {
+	NONE(""),
+	PERCENTAGE("%"),
+	PX("px"),
+	EM("em"),
+	EX("ex"),
+	REM("rem"),
+	CH("ch"),
+	VW("vw"),
+	VH("vh"),
+	VMIN("vmin"),
+	VMAX("vmax"),
+	CM("cm"),
+	MM("mm"),
+	IN("in"),
+	PT("pt"),
+	PC("pc"),
+	DEG("deg"),
+	RAD("rad"),
+	GRAD("grad"),
+	TURN("turn"),
+	S("s"),
+	MS("ms"),
+	HZ("hz"),
+	KHZ("khz"),
+	DPI("dpi"),
+	DPCM("dpcm"),
+	DPPX("dppx"),
+	OTHER(null);
+
+	private static final Map<String, ValueUnit> UNITS = new HashMap<>();
+
+	static {
+		for (ValueUnit unit : values()) {
+			if (unit.suffix != null)
+				UNITS.put(unit.suffix, unit);
+		}
+	}
+
+	private final String suffix;
+
+	private ValueUnit(String suffix) {
+		this.suffix = suffix;
+	}
+
+	/**
+	 * Returns the suffix of the values having this unit, in lower case
+	 * (null for {@link #OTHER})
+	 * @return
+	 */
+	public String getSuffix() {
+		return suffix;
+	}
+
+	/**
+	 * Returns the unit for the given suffix, which should be in lower case.
+	 * @param suffix
+	 * @return
+	 */
+	public static ValueUnit fromSuffix(String suffix) {
+		ValueUnit unit = UNITS.get(suffix);
+		if (unit == null)
+			return OTHER;
+		return unit;
+	}
+}
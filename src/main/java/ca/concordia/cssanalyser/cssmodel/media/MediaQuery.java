@@ -31,6 +31,10 @@ public class MediaQuery extends CSSModelObject {
 		this.prefix = prefix;
 	}
 
+	public MediaQueryPrefix getPrefix() {
+		return prefix;
+	}
+
 	public String getMediaType() {
 		return mediaType;
 	}
@@ -28,6 +28,11 @@ public abstract class Combinator extends BaseSelector {
 		return combinatorCharacter;
 	}
 	
+	@Override
+	public int selectorEqualsHashCode() {
+		return 31 * getLeftHandSideSelector().selectorEqualsHashCode() + getRightHandSideSelector().selectorEqualsHashCode();
+	}
+	
 	@Override
 	public DOMNodeWrapperList getSelectedNodes(Document document) {
 		DOMNodeWrapperList toReturn = new DOMNodeWrapperList();
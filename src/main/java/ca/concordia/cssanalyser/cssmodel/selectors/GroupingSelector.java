@@ -95,6 +95,18 @@ public class GroupingSelector extends Selector implements Collection<BaseSelecto
 		return result.toString();
 	}
 	
+	/**
+	 * The base selectors are compared regardless of their order,
+	 * so their hash codes are summed up
+	 */
+	@Override
+	public int selectorEqualsHashCode() {
+		int result = 0;
+		for (BaseSelector baseSelector : listOfBaseSelectors)
+			result += baseSelector.selectorEqualsHashCode();
+		return result;
+	}
+	
 	/**
 	 * Returns true of the list of selector for both
 	 * GroupingSelector are the same, regardless of the
@@ -242,6 +254,15 @@ public class GroupingSelector extends Selector implements Collection<BaseSelecto
 		return newOne;
 	}
 
+	@Override
+	public Selector copyEmptySelector() {
+		GroupingSelector newOne = (GroupingSelector)super.copyEmptySelector();
+		// The base selectors are cloned with the declarations of this grouping selector
+		for (BaseSelector baseSelector : newOne.listOfBaseSelectors)
+			baseSelector.declarations.clear();
+		return newOne;
+	}
+
 	@Override
 	public String getXPath() throws UnsupportedSelectorToXPathException {
 		StringBuilder xPath = new StringBuilder();
@@ -15,6 +15,10 @@ public class PseudoElement {
 		this.name = name;
 	}
 	
+	public String getName() {
+		return name;
+	}
+	
 	@Override
 	public String toString() {
 		return name;
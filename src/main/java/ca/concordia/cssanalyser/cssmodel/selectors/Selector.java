@@ -1,6 +1,7 @@
 package ca.concordia.cssanalyser.cssmodel.selectors;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -34,6 +35,11 @@ public abstract class Selector extends CSSModelObject  {
 	protected CSSSource source = CSSSource.EXTERNAL;
 	protected CSSOrigin origin = CSSOrigin.AUTHOR;
 	private Selector originalSelector;
+	/*
+	 * The virtual shorthand declarations are computed once, 
+	 * and computed again only after the declarations of this selector are changed
+	 */
+	private volatile List<ShorthandDeclaration> virtualShorthandDeclarations;
 	
 	public Selector() {
 		this(new LocationInfo());
@@ -76,6 +82,7 @@ public abstract class Selector extends CSSModelObject  {
 	public void addDeclaration(Declaration declaration) {
 		if (!declarations.containsKey(declaration))
 			declarations.put(declaration, declarations.size() + 1);
+		virtualShorthandDeclarations = null;
 		declaration.setSelector(this);
 	}
 	
@@ -121,6 +128,15 @@ public abstract class Selector extends CSSModelObject  {
 	 */
 	public abstract boolean selectorEquals(Selector otherSelector, boolean considerMediaQueryLists);
 	
+	/**
+	 * Returns a hash code which is the same for any two selectors
+	 * for which {@link #selectorEquals(Selector, boolean)} returns true
+	 * (regardless of their definition location and media queries).
+	 * This can be used to find the equal selectors without comparing all of them.
+	 * @return
+	 */
+	public abstract int selectorEqualsHashCode();
+	
 	public abstract Selector clone();
 	
 	public abstract String getXPath() throws UnsupportedSelectorToXPathException;
@@ -142,6 +158,7 @@ public abstract class Selector extends CSSModelObject  {
 	 */
 	public void removeDeclaration(Declaration declaration) {
 		this.declarations.remove(declaration);
+		virtualShorthandDeclarations = null;
 		// Update the numbers associated with declarations
 		int i = 0;
 		for (Declaration d : declarations.keySet())
@@ -209,9 +226,22 @@ public abstract class Selector extends CSSModelObject  {
 	 * real values, because it is not easy to get, from individual declarations, the values
 	 * for the equivalent shorthand declarations.
 	 * Therefore, from a virtual shorthand declaration, only use 1) property name and 2) individual properties 
+	 * <br />
+	 * The virtual shorthand declarations are created once, and the same objects are returned
+	 * until a declaration is added to or removed from this selector. 
+	 * They should therefore not be changed. 
 	 * @return
 	 */
 	public Iterable<ShorthandDeclaration> getVirtualShorthandDeclarations() {
+		List<ShorthandDeclaration> virtualShorthands = virtualShorthandDeclarations;
+		if (virtualShorthands == null) {
+			virtualShorthands = Collections.unmodifiableList(createVirtualShorthandDeclarations());
+			virtualShorthandDeclarations = virtualShorthands;
+		}
+		return virtualShorthands;
+	}
+	
+	private List<ShorthandDeclaration> createVirtualShorthandDeclarations() {
 		/*
 		 * For each selector, we loop over the declarations to see whether a
 		 * declaration could become the individual property for one
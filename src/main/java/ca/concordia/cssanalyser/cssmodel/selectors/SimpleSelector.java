@@ -161,6 +161,7 @@ public class SimpleSelector extends BaseSelector {
 				selectedID.equalsIgnoreCase(otherSimpleSelector.selectedID) &&
 				selectedClasses.size() == otherSimpleSelector.selectedClasses.size() && 
 					selectedClasses.containsAll(otherSimpleSelector.selectedClasses) &&
+					otherSimpleSelector.selectedClasses.containsAll(selectedClasses) &&
 				conditions.size() == otherSimpleSelector.conditions.size() &&
 					conditions.containsAll(otherSimpleSelector.conditions) &&
 				pseudoClasses.equals(otherSimpleSelector.pseudoClasses) &&
@@ -174,6 +175,22 @@ public class SimpleSelector extends BaseSelector {
 		return true;
 	}
 	
+	/**
+	 * Computed from the element name (where "*" is the same as no name),
+	 * the ID and the set of classes, ignoring the case and the order of the classes
+	 */
+	@Override
+	public int selectorEqualsHashCode() {
+		String elementName = selectedElementName.trim();
+		if ("*".equals(elementName))
+			elementName = "";
+		int result = 17;
+		result = 31 * result + elementName.toLowerCase().hashCode();
+		result = 31 * result + selectedID.toLowerCase().hashCode();
+		result = 31 * result + new HashSet<>(selectedClasses).hashCode();
+		return result;
+	}
+	
 	/**
 	 * Two atomic element selectors are equal
 	 * if they are in the same line anc column in the file, 
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -13,7 +14,8 @@ import org.w3c.dom.NodeList;
 
 public class DOMNodeWrapperList implements Iterable<DOMNodeWrapper> {
 	
-	private Set<DOMNodeWrapper> allNodes = new HashSet<>();
+	// The nodes are iterated in the order in which they are added (e.g., in the document order)
+	private Set<DOMNodeWrapper> allNodes = new LinkedHashSet<>();
 	private Map<Node, Set<DOMNodeWrapper>> nodesMap = new HashMap<>();
 	
 	public void add(DOMNodeWrapper wrapperNode) {
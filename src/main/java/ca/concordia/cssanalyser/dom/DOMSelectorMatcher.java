@@ -0,0 +1,548 @@
+package ca.concordia.cssanalyser.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import ca.concordia.cssanalyser.cssmodel.selectors.AdjacentSiblingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.ChildSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.Combinator;
+import ca.concordia.cssanalyser.cssmodel.selectors.DescendantSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.PseudoClass;
+import ca.concordia.cssanalyser.cssmodel.selectors.SiblingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.SimpleSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.conditions.SelectorCondition;
+
+/**
+ * Matches the selectors of a style sheet against a DOM document, without using XPath.
+ * The elements of the document are visited once, and are indexed by their id, classes and tag name.
+ * Every {@link BaseSelector} is compiled once into its simple selectors and the combinators between them,
+ * and is matched from right to left: the candidate elements for the rightmost simple selector
+ * come from the index, and the rest of the selector is checked by going up
+ * through the parents or the previous siblings of the candidates.
+ * <br />
+ * For every selector, the result is the same as {@link BaseSelector#getSelectedNodes(Document)}.
+ * The selectors whose XPath does more than checking the element name, id, classes and attributes
+ * (e.g., the ones having :nth-child(), :not() or :contains()) are not compiled;
+ * for these selectors {@link BaseSelector#getSelectedNodes(Document)} is used.
+ * <br />
+ * Objects of this class are not thread-safe, the same as the DOM documents.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class DOMSelectorMatcher {
+
+	/*
+	 * Pseudo classes which have an XPath condition in SimpleSelector#getXPathConditionsString().
+	 * The rest of pseudo classes do not affect the selected nodes.
+	 */
+	private static final Set<String> PSEUDO_CLASSES_WITH_XPATH_CONDITION = new HashSet<>(Arrays.asList(
+			"lang", "first-child", "last-child", "nth-child", "nth-last-child",
+			"first-of-type", "nth-of-type", "last-of-type", "nth-last-of-type",
+			"only-of-type", "only-child", "empty", "checked", "contains", "not", "root"
+	));
+
+	private static final Pattern ATTRIBUTE_NAME_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_.\\-]*");
+
+	private enum Relation {
+		DESCENDANT,
+		CHILD,
+		SIBLING,
+		ADJACENT_SIBLING
+	}
+
+	private final Document document;
+	private final List<Node> elements = new ArrayList<>();
+	private final List<String[]> elementClasses = new ArrayList<>();
+	private int[] parents;
+	private int[] previousSiblings;
+	private final Map<String, List<Integer>> elementsById = new HashMap<>();
+	private final Map<String, List<Integer>> elementsByClass = new HashMap<>();
+	private final Map<String, List<Integer>> elementsByTagName = new HashMap<>();
+
+	private final Map<BaseSelector, CompiledSelector> compiledSelectors = new IdentityHashMap<>();
+	private int[][] matchCache = new int[0][];
+	private int matchCacheStamp = 0;
+
+	/**
+	 * Creates a matcher for the given document.
+	 * The document is indexed at this point, so it should not be changed
+	 * while this matcher is being used.
+	 * @param document
+	 */
+	public DOMSelectorMatcher(Document document) {
+		this.document = document;
+		indexElements();
+	}
+
+	private void indexElements() {
+		List<Integer> parentsList = new ArrayList<>();
+		List<Integer> previousSiblingsList = new ArrayList<>();
+
+		// Pre-order traversal, so that the elements are numbered in the document order
+		List<Integer> openElements = new ArrayList<>();
+		List<Integer> lastChildElements = new ArrayList<>();
+		Node node = document.getFirstChild();
+		int parent = -1, previousSibling = -1;
+		while (node != null) {
+			boolean isElement = node.getNodeType() == Node.ELEMENT_NODE;
+			int current = -1;
+			if (isElement) {
+				current = elements.size();
+				elements.add(node);
+				parentsList.add(parent);
+				previousSiblingsList.add(previousSibling);
+				previousSibling = current;
+				indexElement(current);
+			}
+			if (isElement && node.getFirstChild() != null) {
+				openElements.add(parent);
+				lastChildElements.add(previousSibling);
+				parent = current;
+				previousSibling = -1;
+				node = node.getFirstChild();
+			} else {
+				while (node != null && node.getNextSibling() == null) {
+					node = node.getParentNode();
+					if (node == null || node == document) {
+						node = null;
+					} else {
+						parent = openElements.remove(openElements.size() - 1);
+						previousSibling = lastChildElements.remove(lastChildElements.size() - 1);
+					}
+				}
+				if (node != null)
+					node = node.getNextSibling();
+			}
+		}
+
+		parents = toArray(parentsList);
+		previousSiblings = toArray(previousSiblingsList);
+	}
+
+	private void indexElement(int element) {
+		Node node = elements.get(element);
+
+		addToIndex(elementsByTagName, node.getNodeName(), element);
+
+		String id = getAttributeValue(node, "id");
+		if (id != null)
+			addToIndex(elementsById, id, element);
+
+		String classAttribute = getAttributeValue(node, "class");
+		String[] classes = classAttribute == null ? new String[0] : splitOnXMLWhiteSpaces(classAttribute);
+		elementClasses.add(classes);
+		for (String className : classes) {
+			List<Integer> elementsWithClass = elementsByClass.get(className);
+			// An element may have the same class twice
+			if (elementsWithClass == null || elementsWithClass.get(elementsWithClass.size() - 1) != element)
+				addToIndex(elementsByClass, className, element);
+		}
+	}
+
+	private static void addToIndex(Map<String, List<Integer>> index, String key, int element) {
+		List<Integer> indexedElements = index.get(key);
+		if (indexedElements == null) {
+			indexedElements = new ArrayList<>();
+			index.put(key, indexedElements);
+		}
+		indexedElements.add(element);
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] toReturn = new int[list.size()];
+		for (int i = 0; i < toReturn.length; i++)
+			toReturn[i] = list.get(i);
+		return toReturn;
+	}
+
+	/**
+	 * Returns the nodes selected by the given selector, in the same way as {@link BaseSelector#getSelectedNodes(Document)}
+	 * @param selector
+	 * @return
+	 */
+	public DOMNodeWrapperList getSelectedNodes(BaseSelector selector) {
+		CompiledSelector compiledSelector;
+		if (compiledSelectors.containsKey(selector)) {
+			compiledSelector = compiledSelectors.get(selector);
+		} else {
+			compiledSelector = compile(selector);
+			compiledSelectors.put(selector, compiledSelector);
+		}
+
+		if (compiledSelector == null)
+			return selector.getSelectedNodes(document);
+
+		DOMNodeWrapperList toReturn = new DOMNodeWrapperList();
+		int lastIndex = compiledSelector.simpleSelectors.length - 1;
+		prepareMatchCache(lastIndex);
+		for (int element : getCandidates(compiledSelector.simpleSelectors[lastIndex])) {
+			if (matches(compiledSelector, lastIndex, element))
+				toReturn.add(new DOMNodeWrapper(elements.get(element), compiledSelector.unsupportedPseudoClasses));
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Maps every given selector to the nodes it selects
+	 * @param selectors
+	 * @return
+	 */
+	public Map<BaseSelector, DOMNodeWrapperList> getSelectedNodes(Iterable<? extends BaseSelector> selectors) {
+		Map<BaseSelector, DOMNodeWrapperList> toReturn = new LinkedHashMap<>();
+		for (BaseSelector selector : selectors)
+			toReturn.put(selector, getSelectedNodes(selector));
+		return toReturn;
+	}
+
+	/*
+	 * The smallest list of the elements from the index which could be matched by the given simple selector
+	 */
+	private List<Integer> getCandidates(CompiledSimpleSelector simpleSelector) {
+		if (simpleSelector.id != null)
+			return getFromIndex(elementsById, simpleSelector.id);
+		List<Integer> candidates = null;
+		for (String className : simpleSelector.classNames) {
+			List<Integer> elementsWithClass = getFromIndex(elementsByClass, className);
+			if (candidates == null || elementsWithClass.size() < candidates.size())
+				candidates = elementsWithClass;
+		}
+		if (simpleSelector.elementName != null) {
+			List<Integer> elementsWithName = getFromIndex(elementsByTagName, simpleSelector.elementName);
+			if (candidates == null || elementsWithName.size() < candidates.size())
+				candidates = elementsWithName;
+		}
+		if (candidates == null) {
+			candidates = new ArrayList<>(elements.size());
+			for (int i = 0; i < elements.size(); i++)
+				candidates.add(i);
+		}
+		return candidates;
+	}
+
+	private static List<Integer> getFromIndex(Map<String, List<Integer>> index, String key) {
+		List<Integer> toReturn = index.get(key);
+		if (toReturn == null)
+			return Collections.emptyList();
+		return toReturn;
+	}
+
+	/*
+	 * Results of matching the simple selectors (other than the rightmost one) against the elements are cached,
+	 * so that every element is checked at most once for every simple selector of a selector.
+	 * A cached result is valid only if it is stored with the current stamp.
+	 */
+	private void prepareMatchCache(int numberOfLevels) {
+		if (matchCache.length < numberOfLevels) {
+			int[][] newMatchCache = Arrays.copyOf(matchCache, numberOfLevels);
+			for (int i = matchCache.length; i < numberOfLevels; i++)
+				newMatchCache[i] = new int[elements.size()];
+			matchCache = newMatchCache;
+		}
+		matchCacheStamp++;
+	}
+
+	private boolean matchesCached(CompiledSelector selector, int level, int element) {
+		int cached = matchCache[level][element];
+		if (cached == 2 * matchCacheStamp + 1)
+			return true;
+		if (cached == 2 * matchCacheStamp)
+			return false;
+		boolean matches = matches(selector, level, element);
+		matchCache[level][element] = 2 * matchCacheStamp + (matches ? 1 : 0);
+		return matches;
+	}
+
+	/*
+	 * Checks whether the given element is matched by the simple selector at the given level
+	 * and all the simple selectors on its left
+	 */
+	private boolean matches(CompiledSelector selector, int level, int element) {
+		if (!matches(selector.simpleSelectors[level], element))
+			return false;
+		if (level == 0)
+			return true;
+		switch (selector.relations[level - 1]) {
+		case CHILD:
+			return parents[element] >= 0 && matchesCached(selector, level - 1, parents[element]);
+		case DESCENDANT:
+			for (int ancestor = parents[element]; ancestor >= 0; ancestor = parents[ancestor]) {
+				if (matchesCached(selector, level - 1, ancestor))
+					return true;
+			}
+			return false;
+		case ADJACENT_SIBLING:
+			return previousSiblings[element] >= 0 && matchesCached(selector, level - 1, previousSiblings[element]);
+		case SIBLING:
+			for (int sibling = previousSiblings[element]; sibling >= 0; sibling = previousSiblings[sibling]) {
+				if (matchesCached(selector, level - 1, sibling))
+					return true;
+			}
+			return false;
+		default:
+			return false;
+		}
+	}
+
+	private boolean matches(CompiledSimpleSelector simpleSelector, int element) {
+		Node node = elements.get(element);
+		if (simpleSelector.elementName != null && !simpleSelector.elementName.equals(node.getNodeName()))
+			return false;
+		if (simpleSelector.id != null && !simpleSelector.id.equals(getAttributeValue(node, "id")))
+			return false;
+		if (simpleSelector.classNames.length > 0) {
+			List<String> classes = Arrays.asList(elementClasses.get(element));
+			for (String className : simpleSelector.classNames) {
+				if (!classes.contains(className))
+					return false;
+			}
+		}
+		for (SelectorCondition condition : simpleSelector.conditions) {
+			if (!matches(condition, node))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Same as the XPath conditions generated in SimpleSelector#getXPathConditionsString(),
+	 * for the conditions which are accepted in compile(SimpleSelector)
+	 */
+	private static boolean matches(SelectorCondition condition, Node node) {
+		String attributeValue = getAttributeValue(node, condition.getAttributeName());
+		if (attributeValue == null)
+			return false;
+		String value = condition.getValue();
+		switch (condition.getConditionType()) {
+		case HAS_ATTRIBUTE:
+			return true;
+		case VALUE_CONTAINS:
+			return attributeValue.contains(value);
+		case VALUE_CONTAINS_WORD_SPACE_SEPARATED:
+			return Arrays.asList(splitOnXMLWhiteSpaces(attributeValue)).contains(value);
+		case VALUE_ENDS_WITH:
+			return attributeValue.endsWith(value);
+		case VALUE_EQUALS_EXACTLY:
+			return attributeValue.equals(value);
+		case VALUE_STARTS_WITH:
+			return attributeValue.startsWith(value);
+		case VALUE_START_WITH_DASH_SEPARATED:
+			return attributeValue.equals(value) || attributeValue.startsWith(value + "-");
+		default:
+			return false;
+		}
+	}
+
+	/*
+	 * Returns the value of the attribute which is selected by @attributeName in XPath,
+	 * or null if there is no such attribute
+	 */
+	private static String getAttributeValue(Node node, String attributeName) {
+		NamedNodeMap attributes = node.getAttributes();
+		if (attributes == null)
+			return null;
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Node attribute = attributes.item(i);
+			String name = attribute.getNodeName();
+			// Namespace declarations are not attributes in XPath
+			if ("xmlns".equals(name) || name.startsWith("xmlns:"))
+				continue;
+			String localName = attribute.getLocalName();
+			if (localName == null)
+				localName = name.substring(name.indexOf(':') + 1);
+			String namespaceURI = attribute.getNamespaceURI();
+			if (localName.equals(attributeName) && (namespaceURI == null || "".equals(namespaceURI)))
+				return attribute.getNodeValue();
+		}
+		return null;
+	}
+
+	/*
+	 * Splits the given string the same way as normalize-space() in XPath
+	 */
+	private static String[] splitOnXMLWhiteSpaces(String string) {
+		List<String> parts = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i <= string.length(); i++) {
+			if (i == string.length() || isXMLWhiteSpace(string.charAt(i))) {
+				if (start >= 0) {
+					parts.add(string.substring(start, i));
+					start = -1;
+				}
+			} else if (start < 0) {
+				start = i;
+			}
+		}
+		return parts.toArray(new String[parts.size()]);
+	}
+
+	private static boolean isXMLWhiteSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	private static boolean hasXMLWhiteSpace(String string) {
+		for (int i = 0; i < string.length(); i++)
+			if (isXMLWhiteSpace(string.charAt(i)))
+				return true;
+		return false;
+	}
+
+	private static class CompiledSimpleSelector {
+		private final String elementName;
+		private final String id;
+		private final String[] classNames;
+		private final SelectorCondition[] conditions;
+
+		public CompiledSimpleSelector(String elementName, String id, String[] classNames, SelectorCondition[] conditions) {
+			this.elementName = elementName;
+			this.id = id;
+			this.classNames = classNames;
+			this.conditions = conditions;
+		}
+	}
+
+	private static class CompiledSelector {
+		// From left to right
+		private final CompiledSimpleSelector[] simpleSelectors;
+		// relations[i] is the relation between simpleSelectors[i] and simpleSelectors[i + 1]
+		private final Relation[] relations;
+		private final Set<PseudoClass> unsupportedPseudoClasses;
+
+		public CompiledSelector(CompiledSimpleSelector[] simpleSelectors, Relation[] relations, Set<PseudoClass> unsupportedPseudoClasses) {
+			this.simpleSelectors = simpleSelectors;
+			this.relations = relations;
+			this.unsupportedPseudoClasses = unsupportedPseudoClasses;
+		}
+	}
+
+	/*
+	 * Returns null if the selector could not be compiled,
+	 * i.e., its XPath does something that the compiled selectors do not do.
+	 */
+	private static CompiledSelector compile(BaseSelector selector) {
+		List<CompiledSimpleSelector> simpleSelectors = new ArrayList<>();
+		List<Relation> relations = new ArrayList<>();
+		if (!compile(selector, simpleSelectors, relations))
+			return null;
+
+		Set<PseudoClass> unsupportedPseudoClasses;
+		if (selector instanceof Combinator)
+			unsupportedPseudoClasses = ((Combinator)selector).getRightHandSideSelector().getUnsupportedPseudoClasses();
+		else
+			unsupportedPseudoClasses = ((SimpleSelector)selector).getUnsupportedPseudoClasses();
+
+		return new CompiledSelector(simpleSelectors.toArray(new CompiledSimpleSelector[simpleSelectors.size()]),
+				relations.toArray(new Relation[relations.size()]), unsupportedPseudoClasses);
+	}
+
+	private static boolean compile(BaseSelector selector, List<CompiledSimpleSelector> simpleSelectors, List<Relation> relations) {
+		SimpleSelector rightHandSideSelector;
+		if (selector instanceof SimpleSelector) {
+			rightHandSideSelector = (SimpleSelector) selector;
+		} else if (selector instanceof DescendantSelector) {
+			DescendantSelector descendantSelector = (DescendantSelector) selector;
+			if (!compile(descendantSelector.getParentSelector(), simpleSelectors, relations))
+				return false;
+			relations.add(selector instanceof ChildSelector ? Relation.CHILD : Relation.DESCENDANT);
+			rightHandSideSelector = descendantSelector.getChildSelector();
+		} else if (selector instanceof SiblingSelector) {
+			SiblingSelector siblingSelector = (SiblingSelector) selector;
+			if (!compile(siblingSelector.getFirstSelector(), simpleSelectors, relations))
+				return false;
+			relations.add(selector instanceof AdjacentSiblingSelector ? Relation.ADJACENT_SIBLING : Relation.SIBLING);
+			rightHandSideSelector = siblingSelector.getSecondSelector();
+		} else {
+			return false;
+		}
+		CompiledSimpleSelector compiledSimpleSelector = compile(rightHandSideSelector);
+		if (compiledSimpleSelector == null)
+			return false;
+		simpleSelectors.add(compiledSimpleSelector);
+		return true;
+	}
+
+	private static CompiledSimpleSelector compile(SimpleSelector simpleSelector) {
+		if (simpleSelector == null)
+			return null;
+
+		String elementName = simpleSelector.getSelectedElementName();
+		if (elementName == null || elementName.indexOf('\'') >= 0)
+			return null;
+		if ("*".equals(elementName) || "".equals(elementName))
+			elementName = null;
+		else
+			elementName = elementName.toUpperCase();
+
+		String id = simpleSelector.getElementID();
+		// The id is compared by reference in SimpleSelector#getXPathConditionsString()
+		if (id != "") {
+			if (id == null || "".equals(id) || id.indexOf('\'') >= 0)
+				return null;
+		} else {
+			id = null;
+		}
+
+		List<String> classNames = simpleSelector.getClassNames();
+		for (String className : classNames) {
+			if (className == null || "".equals(className) || className.indexOf('\'') >= 0 || hasXMLWhiteSpace(className))
+				return null;
+		}
+
+		for (PseudoClass pseudoClass : simpleSelector.getPseudoClasses()) {
+			if (pseudoClass.getName() == null)
+				return null;
+			if (!pseudoClass.isPseudoclassWithNoXpathEquivalence() && PSEUDO_CLASSES_WITH_XPATH_CONDITION.contains(pseudoClass.getName()))
+				return null;
+		}
+
+		List<SelectorCondition> conditions = simpleSelector.getConditions();
+		for (SelectorCondition condition : conditions) {
+			if (!canBeCompiled(condition))
+				return null;
+		}
+
+		return new CompiledSimpleSelector(elementName, id,
+				classNames.toArray(new String[classNames.size()]),
+				conditions.toArray(new SelectorCondition[conditions.size()]));
+	}
+
+	private static boolean canBeCompiled(SelectorCondition condition) {
+		if (condition == null || condition.getConditionType() == null)
+			return false;
+		String attributeName = condition.getAttributeName();
+		if (attributeName == null || !ATTRIBUTE_NAME_PATTERN.matcher(attributeName).matches() || "xmlns".equals(attributeName))
+			return false;
+		String value = condition.getValue();
+		switch (condition.getConditionType()) {
+		case HAS_ATTRIBUTE:
+			return true;
+		case VALUE_EQUALS_EXACTLY:
+		case VALUE_START_WITH_DASH_SEPARATED:
+			return value != null && value.indexOf('\'') < 0;
+		case VALUE_CONTAINS:
+		case VALUE_STARTS_WITH:
+		case VALUE_ENDS_WITH:
+			// With an empty value, these XPath conditions are also true for the elements not having the attribute
+			return value != null && !"".equals(value) && value.indexOf('\'') < 0;
+		case VALUE_CONTAINS_WORD_SPACE_SEPARATED:
+			return value != null && !"".equals(value) && value.indexOf('\'') < 0 && !hasXMLWhiteSpace(value);
+		default:
+			return false;
+		}
+	}
+
+}
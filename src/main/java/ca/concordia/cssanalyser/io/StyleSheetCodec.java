@@ -0,0 +1,127 @@
+package ca.concordia.cssanalyser.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+
+/**
+ * A compact binary format for {@link StyleSheet}s,
+ * which can be read back without parsing the CSS again. <br />
+ * A stream starts with {@link #MAGIC} and the version of the format, followed by any number of style sheets.
+ * Numbers are written as varints (small numbers take one byte).
+ * Strings (properties, class names, values, etc.) are written once in a stream,
+ * and are referred to by their index afterwards.
+ * The media query lists that are shared between the selectors are also written once. <br />
+ * Use {@link StyleSheetWriter} and {@link StyleSheetReader} to write and read the style sheets
+ * over NIO channels.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public final class StyleSheetCodec {
+
+	static final byte[] MAGIC = new byte[] { 'C', 'S', 'S', 'M' };
+
+	/**
+	 * The version of the format written by {@link StyleSheetWriter}.
+	 * {@link StyleSheetReader} reads this version and the older ones.
+	 */
+	public static final int VERSION = 1;
+
+	static final int SIMPLE_SELECTOR = 1;
+	static final int DESCENDANT_SELECTOR = 2;
+	static final int CHILD_SELECTOR = 3;
+	static final int SIBLING_SELECTOR = 4;
+	static final int ADJACENT_SIBLING_SELECTOR = 5;
+	static final int GROUPING_SELECTOR = 6;
+
+	static final int SINGLE_VALUED_DECLARATION = 1;
+	static final int MULTI_VALUED_DECLARATION = 2;
+	static final int SHORTHAND_DECLARATION = 3;
+
+	static final int PSEUDO_CLASS = 1;
+	static final int NEGATION_PSEUDO_CLASS = 2;
+
+	private StyleSheetCodec() {}
+
+	/**
+	 * Writes the given style sheet to the given file
+	 * @param styleSheet
+	 * @param path
+	 * @throws IOException
+	 */
+	public static void writeToFile(StyleSheet styleSheet, String path) throws IOException {
+		try (StyleSheetWriter writer = new StyleSheetWriter(FileChannel.open(Paths.get(path),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+			writer.write(styleSheet);
+		}
+	}
+
+	/**
+	 * Reads the (first) style sheet from the given file
+	 * @param path
+	 * @return
+	 * @throws IOException If the file could not be read or is not in this format
+	 */
+	public static StyleSheet readFromFile(String path) throws IOException {
+		try (StyleSheetReader reader = new StyleSheetReader(FileChannel.open(Paths.get(path), StandardOpenOption.READ))) {
+			return readFirst(reader);
+		}
+	}
+
+	/**
+	 * Returns the given style sheet in this format
+	 * @param styleSheet
+	 * @return
+	 */
+	public static byte[] toBytes(StyleSheet styleSheet) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (StyleSheetWriter writer = new StyleSheetWriter(Channels.newChannel(bytes))) {
+			writer.write(styleSheet);
+		} catch (IOException ex) {
+			// Writing to memory
+			throw new RuntimeException(ex);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the (first) style sheet from the given bytes
+	 * @param bytes
+	 * @return
+	 * @throws IOException If the bytes are not in this format
+	 */
+	public static StyleSheet fromBytes(byte[] bytes) throws IOException {
+		return fromBytes(bytes, 0, 0);
+	}
+
+	/**
+	 * Reads the (first) style sheet from the given bytes, and moves its locations
+	 * by the given number of lines and characters (see {@link StyleSheetReader#setLocationShift(int, int)})
+	 * @param bytes
+	 * @param lineShift
+	 * @param offsetShift
+	 * @return
+	 * @throws IOException If the bytes are not in this format
+	 */
+	public static StyleSheet fromBytes(byte[] bytes, int lineShift, int offsetShift) throws IOException {
+		try (StyleSheetReader reader = new StyleSheetReader(Channels.newChannel(new ByteArrayInputStream(bytes)))) {
+			reader.setLocationShift(lineShift, offsetShift);
+			return readFirst(reader);
+		}
+	}
+
+	private static StyleSheet readFirst(StyleSheetReader reader) throws IOException {
+		StyleSheet styleSheet = reader.read();
+		if (styleSheet == null)
+			throw new IOException("No style sheet is found");
+		return styleSheet;
+	}
+
+}
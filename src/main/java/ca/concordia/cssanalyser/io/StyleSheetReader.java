@@ -0,0 +1,398 @@
+package ca.concordia.cssanalyser.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.concordia.cssanalyser.cssmodel.LocationInfo;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.MultiValuedDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.ShorthandDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.SingleValuedDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationEquivalentValue;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationValue;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.ValueType;
+import ca.concordia.cssanalyser.cssmodel.media.MediaFeatureExpression;
+import ca.concordia.cssanalyser.cssmodel.media.MediaQuery;
+import ca.concordia.cssanalyser.cssmodel.media.MediaQuery.MediaQueryPrefix;
+import ca.concordia.cssanalyser.cssmodel.media.MediaQueryList;
+import ca.concordia.cssanalyser.cssmodel.selectors.AdjacentSiblingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.ChildSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.DescendantSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.GroupingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.NegationPseudoClass;
+import ca.concordia.cssanalyser.cssmodel.selectors.PseudoClass;
+import ca.concordia.cssanalyser.cssmodel.selectors.PseudoElement;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.cssmodel.selectors.SiblingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.SimpleSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.conditions.SelectorCondition;
+import ca.concordia.cssanalyser.cssmodel.selectors.conditions.SelectorConditionType;
+
+/**
+ * Reads the {@link StyleSheet}s written by a {@link StyleSheetWriter} from a channel.
+ * Every call to {@link #read()} returns a new style sheet,
+ * independent from the other style sheets.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class StyleSheetReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+	private final List<String> strings;
+	private final List<MediaQueryList> mediaQueryLists;
+	private boolean headerRead;
+	private int lineShift;
+	private int offsetShift;
+
+	public StyleSheetReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buffer.flip();
+		this.strings = new ArrayList<>();
+		this.mediaQueryLists = new ArrayList<>();
+	}
+
+	/**
+	 * Reads the next style sheet
+	 * @return The style sheet, or null if there is no more style sheet in the channel
+	 * @throws IOException If the channel could not be read, or is not in the format of {@link StyleSheetCodec}
+	 */
+	public StyleSheet read() throws IOException {
+		if (!headerRead) {
+			readHeader();
+			headerRead = true;
+		}
+		if (!fill(1))
+			return null;
+		mediaQueryLists.clear();
+		StyleSheet styleSheet = new StyleSheet();
+		styleSheet.setPath(readString());
+		int numberOfSelectors = readCount();
+		for (int i = 0; i < numberOfSelectors; i++)
+			styleSheet.addSelector(readSelector());
+		return styleSheet;
+	}
+
+	/**
+	 * Moves the locations of the style sheets which are read after this call
+	 * by the given number of lines and characters,
+	 * e.g., when the CSS that is parsed has more (or, if negative, less) lines before the CSS of the written style sheets.
+	 * The column numbers and the unknown locations (i.e., -1) are not changed.
+	 * @param lines
+	 * @param characters
+	 */
+	public void setLocationShift(int lines, int characters) {
+		this.lineShift = lines;
+		this.offsetShift = characters;
+	}
+
+	private void readHeader() throws IOException {
+		require(StyleSheetCodec.MAGIC.length);
+		for (byte b : StyleSheetCodec.MAGIC) {
+			if (buffer.get() != b)
+				throw new IOException("Not a style sheet stream");
+		}
+		int version = readCount();
+		if (version < 1 || version > StyleSheetCodec.VERSION)
+			throw new IOException("Unsupported style sheet stream version " + version);
+	}
+
+	private Selector readSelector() throws IOException {
+		Selector selector = readSelectorStructure();
+		int numberOfDeclarations = readCount();
+		for (int i = 0; i < numberOfDeclarations; i++)
+			selector.addDeclaration(readDeclaration());
+		int numberOfMediaQueryLists = readCount();
+		for (int i = 0; i < numberOfMediaQueryLists; i++)
+			selector.addMediaQueryList(readMediaQueryList());
+		return selector;
+	}
+
+	private Selector readSelectorStructure() throws IOException {
+		int kind = readCount();
+		LocationInfo locationInfo = readLocationInfo();
+		LocationInfo selectorNameLocationInfo = readLocationInfo();
+		Selector selector;
+		switch (kind) {
+		case StyleSheetCodec.SIMPLE_SELECTOR:
+			selector = readSimpleSelector(locationInfo);
+			break;
+		case StyleSheetCodec.DESCENDANT_SELECTOR:
+			selector = new DescendantSelector(readBaseSelectorStructure(), readSimpleSelectorStructure());
+			break;
+		case StyleSheetCodec.CHILD_SELECTOR:
+			selector = new ChildSelector(readBaseSelectorStructure(), readSimpleSelectorStructure());
+			break;
+		case StyleSheetCodec.SIBLING_SELECTOR:
+			selector = new SiblingSelector(readBaseSelectorStructure(), readSimpleSelectorStructure());
+			break;
+		case StyleSheetCodec.ADJACENT_SIBLING_SELECTOR:
+			selector = new AdjacentSiblingSelector(readBaseSelectorStructure(), readSimpleSelectorStructure());
+			break;
+		case StyleSheetCodec.GROUPING_SELECTOR:
+			GroupingSelector groupingSelector = new GroupingSelector(locationInfo);
+			int numberOfBaseSelectors = readCount();
+			for (int i = 0; i < numberOfBaseSelectors; i++) {
+				BaseSelector baseSelector = readBaseSelectorStructure();
+				groupingSelector.add(baseSelector);
+				baseSelector.setParentGroupSelector(groupingSelector);
+			}
+			selector = groupingSelector;
+			break;
+		default:
+			throw new IOException("Unknown selector kind " + kind);
+		}
+		selector.setLocationInfo(locationInfo);
+		selector.setSelectorNameLocationInfo(selectorNameLocationInfo);
+		return selector;
+	}
+
+	private BaseSelector readBaseSelectorStructure() throws IOException {
+		Selector selector = readSelectorStructure();
+		if (!(selector instanceof BaseSelector))
+			throw new IOException("A base selector is expected, found " + selector);
+		return (BaseSelector)selector;
+	}
+
+	private SimpleSelector readSimpleSelectorStructure() throws IOException {
+		Selector selector = readSelectorStructure();
+		if (!(selector instanceof SimpleSelector))
+			throw new IOException("A simple selector is expected, found " + selector);
+		return (SimpleSelector)selector;
+	}
+
+	private SimpleSelector readSimpleSelector(LocationInfo locationInfo) throws IOException {
+		SimpleSelector simpleSelector = new SimpleSelector(locationInfo);
+		simpleSelector.setSelectedElementName(readString());
+		simpleSelector.setElementID(readString());
+		int numberOfClasses = readCount();
+		for (int i = 0; i < numberOfClasses; i++)
+			simpleSelector.addClassName(readString());
+		int numberOfConditions = readCount();
+		for (int i = 0; i < numberOfConditions; i++) {
+			String attributeName = readString();
+			String value = readString();
+			SelectorConditionType type = readEnum(SelectorConditionType.values());
+			simpleSelector.addCondition(new SelectorCondition(attributeName, value, type));
+		}
+		int numberOfPseudoClasses = readCount();
+		for (int i = 0; i < numberOfPseudoClasses; i++) {
+			int kind = readCount();
+			if (kind == StyleSheetCodec.NEGATION_PSEUDO_CLASS) {
+				simpleSelector.addPseudoClass(new NegationPseudoClass(readBaseSelectorStructure()));
+			} else if (kind == StyleSheetCodec.PSEUDO_CLASS) {
+				String name = readString();
+				simpleSelector.addPseudoClass(new PseudoClass(name, readString()));
+			} else {
+				throw new IOException("Unknown pseudo class kind " + kind);
+			}
+		}
+		int numberOfPseudoElements = readCount();
+		for (int i = 0; i < numberOfPseudoElements; i++)
+			simpleSelector.addPseudoElement(new PseudoElement(readString()));
+		return simpleSelector;
+	}
+
+	private Declaration readDeclaration() throws IOException {
+		int kind = readCount();
+		String property = readNonNullString();
+		int flags = readCount();
+		boolean isImportant = (flags & 1) != 0;
+		LocationInfo locationInfo = readLocationInfo();
+		switch (kind) {
+		case StyleSheetCodec.SINGLE_VALUED_DECLARATION:
+			return new SingleValuedDeclaration(property, readDeclarationValue(), null, isImportant, locationInfo);
+		case StyleSheetCodec.MULTI_VALUED_DECLARATION:
+			return new MultiValuedDeclaration(property, readDeclarationValues(), null, isImportant, true, locationInfo);
+		case StyleSheetCodec.SHORTHAND_DECLARATION:
+			ShorthandDeclaration shorthandDeclaration = new ShorthandDeclaration(property, readDeclarationValues(), null, isImportant, true, locationInfo);
+			shorthandDeclaration.isVirtual((flags & 2) != 0);
+			return shorthandDeclaration;
+		default:
+			throw new IOException("Unknown declaration kind " + kind);
+		}
+	}
+
+	private List<DeclarationValue> readDeclarationValues() throws IOException {
+		int numberOfValues = readCount();
+		List<DeclarationValue> values = new ArrayList<>();
+		for (int i = 0; i < numberOfValues; i++)
+			values.add(readDeclarationValue());
+		return values;
+	}
+
+	private DeclarationValue readDeclarationValue() throws IOException {
+		int flags = readCount();
+		boolean isMissing = (flags & 1) != 0;
+		String value = readNonNullString();
+		String equivalentValue = null;
+		if ((flags & 2) != 0)
+			equivalentValue = readString();
+		ValueType type = readEnum(ValueType.values());
+		DeclarationValue declarationValue;
+		if ((flags & 2) != 0)
+			declarationValue = new DeclarationEquivalentValue(value, equivalentValue, isMissing, type);
+		else
+			declarationValue = new DeclarationValue(value, isMissing, type);
+		declarationValue.setLocationInfo(readLocationInfo());
+		return declarationValue;
+	}
+
+	private MediaQueryList readMediaQueryList() throws IOException {
+		int reference = readCount();
+		if (reference > 0) {
+			if (reference > mediaQueryLists.size())
+				throw new IOException("Unknown media query list " + reference);
+			return mediaQueryLists.get(reference - 1);
+		}
+		MediaQueryList mediaQueryList = new MediaQueryList();
+		mediaQueryLists.add(mediaQueryList);
+		mediaQueryList.setLocationInfo(readLocationInfo());
+		int numberOfMediaQueries = readCount();
+		for (int i = 0; i < numberOfMediaQueries; i++) {
+			LocationInfo locationInfo = readLocationInfo();
+			int prefix = readCount();
+			if (prefix > MediaQueryPrefix.values().length)
+				throw new IOException("Unknown media query prefix " + prefix);
+			MediaQuery mediaQuery = new MediaQuery(prefix == 0 ? null : MediaQueryPrefix.values()[prefix - 1], readString());
+			mediaQuery.setLocationInfo(locationInfo);
+			int numberOfExpressions = readCount();
+			for (int j = 0; j < numberOfExpressions; j++) {
+				LocationInfo expressionLocationInfo = readLocationInfo();
+				String feature = readString();
+				MediaFeatureExpression expression = new MediaFeatureExpression(feature, readString());
+				expression.setLocationInfo(expressionLocationInfo);
+				mediaQuery.addMediaFeatureExpression(expression);
+			}
+			mediaQueryList.addMediaQuery(mediaQuery);
+		}
+		return mediaQueryList;
+	}
+
+	private LocationInfo readLocationInfo() throws IOException {
+		long line = readUnsigned();
+		if (line == 0)
+			return null;
+		int lineNumber = unzigzag(line - 1);
+		int columnNumber = unzigzag(readUnsigned());
+		int offset = unzigzag(readUnsigned());
+		int length = unzigzag(readUnsigned());
+		if (lineNumber >= 0)
+			lineNumber += lineShift;
+		if (offset >= 0)
+			offset += offsetShift;
+		return new LocationInfo(lineNumber, columnNumber, offset, length);
+	}
+
+	private String readNonNullString() throws IOException {
+		String string = readString();
+		if (string == null)
+			throw new IOException("A string is expected, found null");
+		return string;
+	}
+
+	private String readString() throws IOException {
+		int reference = readCount();
+		if (reference == 0)
+			return null;
+		if (reference > 1) {
+			if (reference - 2 >= strings.size())
+				throw new IOException("Unknown string " + reference);
+			return strings.get(reference - 2);
+		}
+		int numberOfBytes = readCount();
+		if (numberOfBytes == 0) {
+			// The model compares some strings with the "" literal
+			strings.add("");
+			return "";
+		}
+		// The bytes are read in pieces, so that a wrong length fails at the end of the channel,
+		// instead of allocating that many bytes first
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(numberOfBytes, BUFFER_SIZE));
+		int remaining = numberOfBytes;
+		while (remaining > 0) {
+			require(1);
+			int length = Math.min(buffer.remaining(), remaining);
+			bytes.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+			buffer.position(buffer.position() + length);
+			remaining -= length;
+		}
+		String string = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		strings.add(string);
+		return string;
+	}
+
+	private <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+		int ordinal = readCount();
+		if (ordinal >= values.length)
+			throw new IOException("Unknown " + values.getClass().getComponentType().getSimpleName() + " " + ordinal);
+		return values[ordinal];
+	}
+
+	private static int unzigzag(long value) {
+		int zigzag = (int)value;
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	private int readCount() throws IOException {
+		long count = readUnsigned();
+		if (count > Integer.MAX_VALUE)
+			throw new IOException("Invalid number " + count);
+		return (int)count;
+	}
+
+	private long readUnsigned() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			require(1);
+			byte b = buffer.get();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed number");
+	}
+
+	private void require(int length) throws IOException {
+		if (!fill(length))
+			throw new EOFException("Unexpected end of the style sheet stream");
+	}
+
+	/*
+	 * Makes sure that at least the given number of bytes (at most the size of the buffer) are in the buffer.
+	 * Returns false if the channel ends before that.
+	 */
+	private boolean fill(int length) throws IOException {
+		if (buffer.remaining() >= length)
+			return true;
+		buffer.compact();
+		try {
+			while (buffer.position() < length) {
+				if (channel.read(buffer) < 0)
+					return false;
+			}
+		} finally {
+			buffer.flip();
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
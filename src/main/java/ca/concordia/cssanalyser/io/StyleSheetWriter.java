@@ -0,0 +1,332 @@
+package ca.concordia.cssanalyser.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.concordia.cssanalyser.cssmodel.LocationInfo;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.MultiValuedDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.ShorthandDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.SingleValuedDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationEquivalentValue;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationValue;
+import ca.concordia.cssanalyser.cssmodel.media.MediaFeatureExpression;
+import ca.concordia.cssanalyser.cssmodel.media.MediaQuery;
+import ca.concordia.cssanalyser.cssmodel.media.MediaQueryList;
+import ca.concordia.cssanalyser.cssmodel.selectors.AdjacentSiblingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.ChildSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.DescendantSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.GroupingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.NegationPseudoClass;
+import ca.concordia.cssanalyser.cssmodel.selectors.PseudoClass;
+import ca.concordia.cssanalyser.cssmodel.selectors.PseudoElement;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.cssmodel.selectors.SiblingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.SimpleSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.conditions.SelectorCondition;
+
+/**
+ * Writes {@link StyleSheet}s to a channel, in the format described in {@link StyleSheetCodec}.
+ * The style sheets written by one writer can be read back, in the same order,
+ * using one {@link StyleSheetReader}. <br />
+ * The written bytes are buffered, call {@link #flush()} or {@link #close()} at the end.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class StyleSheetWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	private final Map<String, Integer> strings;
+	private final Map<MediaQueryList, Integer> mediaQueryLists;
+	private boolean headerWritten;
+
+	public StyleSheetWriter(WritableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.strings = new HashMap<>();
+		this.mediaQueryLists = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Writes the given style sheet
+	 * @param styleSheet
+	 * @throws IOException
+	 */
+	public void write(StyleSheet styleSheet) throws IOException {
+		if (!headerWritten) {
+			ensureRemaining(StyleSheetCodec.MAGIC.length);
+			buffer.put(StyleSheetCodec.MAGIC);
+			writeCount(StyleSheetCodec.VERSION);
+			headerWritten = true;
+		}
+		// Media query lists are only shared inside a style sheet
+		mediaQueryLists.clear();
+		writeString(styleSheet.getFilePath());
+		writeCount(styleSheet.getNumberOfSelectors());
+		for (Selector selector : styleSheet.getAllSelectors())
+			writeSelector(selector);
+	}
+
+	private void writeSelector(Selector selector) throws IOException {
+		writeSelectorStructure(selector);
+		writeCount(selector.getNumberOfDeclarations());
+		for (Declaration declaration : selector.getDeclarations())
+			writeDeclaration(declaration);
+		Collection<MediaQueryList> selectorMediaQueryLists = selector.getMediaQueryLists();
+		writeCount(selectorMediaQueryLists.size());
+		for (MediaQueryList mediaQueryList : selectorMediaQueryLists)
+			writeMediaQueryList(mediaQueryList);
+	}
+
+	/*
+	 * Writes the selector itself, without its media query lists and declarations.
+	 * These are the selectors inside grouping selectors, combinators and :not().
+	 */
+	private void writeSelectorStructure(Selector selector) throws IOException {
+		if (selector instanceof SimpleSelector) {
+			writeCount(StyleSheetCodec.SIMPLE_SELECTOR);
+		} else if (selector instanceof ChildSelector) {
+			writeCount(StyleSheetCodec.CHILD_SELECTOR);
+		} else if (selector instanceof DescendantSelector) {
+			writeCount(StyleSheetCodec.DESCENDANT_SELECTOR);
+		} else if (selector instanceof AdjacentSiblingSelector) {
+			writeCount(StyleSheetCodec.ADJACENT_SIBLING_SELECTOR);
+		} else if (selector instanceof SiblingSelector) {
+			writeCount(StyleSheetCodec.SIBLING_SELECTOR);
+		} else if (selector instanceof GroupingSelector) {
+			writeCount(StyleSheetCodec.GROUPING_SELECTOR);
+		} else {
+			throw new IllegalArgumentException("Unknown selector " + selector.getClass().getName());
+		}
+		writeLocationInfo(selector.getLocationInfo());
+		writeLocationInfo(selector.getSelectorNameLocationInfo());
+
+		if (selector instanceof SimpleSelector) {
+			SimpleSelector simpleSelector = (SimpleSelector)selector;
+			writeString(simpleSelector.getSelectedElementName());
+			writeString(simpleSelector.getElementID());
+			writeCount(simpleSelector.getClassNames().size());
+			for (String className : simpleSelector.getClassNames())
+				writeString(className);
+			writeCount(simpleSelector.getConditions().size());
+			for (SelectorCondition condition : simpleSelector.getConditions()) {
+				writeString(condition.getAttributeName());
+				writeString(condition.getValue());
+				writeCount(condition.getConditionType().ordinal());
+			}
+			writeCount(simpleSelector.getPseudoClasses().size());
+			for (PseudoClass pseudoClass : simpleSelector.getPseudoClasses()) {
+				if (pseudoClass instanceof NegationPseudoClass) {
+					writeCount(StyleSheetCodec.NEGATION_PSEUDO_CLASS);
+					writeSelectorStructure(((NegationPseudoClass)pseudoClass).getSelector());
+				} else {
+					writeCount(StyleSheetCodec.PSEUDO_CLASS);
+					writeString(pseudoClass.getName());
+					writeString(pseudoClass.getValue());
+				}
+			}
+			writeCount(simpleSelector.getPseudoElements().size());
+			for (PseudoElement pseudoElement : simpleSelector.getPseudoElements())
+				writeString(pseudoElement.getName());
+		} else if (selector instanceof DescendantSelector) {
+			DescendantSelector descendantSelector = (DescendantSelector)selector;
+			writeSelectorStructure(descendantSelector.getParentSelector());
+			writeSelectorStructure(descendantSelector.getChildSelector());
+		} else if (selector instanceof SiblingSelector) {
+			SiblingSelector siblingSelector = (SiblingSelector)selector;
+			writeSelectorStructure(siblingSelector.getFirstSelector());
+			writeSelectorStructure(siblingSelector.getSecondSelector());
+		} else {
+			GroupingSelector groupingSelector = (GroupingSelector)selector;
+			writeCount(groupingSelector.getBaseSelectorsSize());
+			for (BaseSelector baseSelector : groupingSelector.getBaseSelectors())
+				writeSelectorStructure(baseSelector);
+		}
+	}
+
+	/*
+	 * Only the real values of the multi-valued declarations are written.
+	 * The missing values are added again when the declarations are read,
+	 * the same way as when they are parsed.
+	 */
+	private void writeDeclaration(Declaration declaration) throws IOException {
+		List<DeclarationValue> values = new ArrayList<>();
+		if (declaration instanceof SingleValuedDeclaration) {
+			writeCount(StyleSheetCodec.SINGLE_VALUED_DECLARATION);
+			values.add(((SingleValuedDeclaration)declaration).getValue());
+		} else if (declaration instanceof MultiValuedDeclaration) {
+			if (declaration instanceof ShorthandDeclaration)
+				writeCount(StyleSheetCodec.SHORTHAND_DECLARATION);
+			else
+				writeCount(StyleSheetCodec.MULTI_VALUED_DECLARATION);
+			for (DeclarationValue value : ((MultiValuedDeclaration)declaration).getRealValues())
+				values.add(value);
+		} else {
+			throw new IllegalArgumentException("Unknown declaration " + declaration.getClass().getName());
+		}
+		writeString(declaration.getProperty());
+		int flags = 0;
+		if (declaration.isImportant())
+			flags |= 1;
+		if (declaration instanceof ShorthandDeclaration && ((ShorthandDeclaration)declaration).isVirtual())
+			flags |= 2;
+		writeCount(flags);
+		writeLocationInfo(declaration.getLocationInfo());
+		if (!(declaration instanceof SingleValuedDeclaration))
+			writeCount(values.size());
+		for (DeclarationValue value : values)
+			writeDeclarationValue(value);
+	}
+
+	private void writeDeclarationValue(DeclarationValue value) throws IOException {
+		int flags = 0;
+		if (value.isAMissingValue())
+			flags |= 1;
+		if (value instanceof DeclarationEquivalentValue)
+			flags |= 2;
+		writeCount(flags);
+		writeString(value.getValue());
+		if (value instanceof DeclarationEquivalentValue)
+			writeString(((DeclarationEquivalentValue)value).getEquivalentValue());
+		writeCount(value.getType().ordinal());
+		writeLocationInfo(value.getLocationInfo());
+	}
+
+	/*
+	 * A media query list which is already written in the current style sheet
+	 * is written as its index plus one, others are written after a zero.
+	 */
+	private void writeMediaQueryList(MediaQueryList mediaQueryList) throws IOException {
+		Integer index = mediaQueryLists.get(mediaQueryList);
+		if (index != null) {
+			writeCount(index + 1);
+			return;
+		}
+		mediaQueryLists.put(mediaQueryList, mediaQueryLists.size());
+		writeCount(0);
+		writeLocationInfo(mediaQueryList.getLocationInfo());
+		writeCount(mediaQueryList.size());
+		for (MediaQuery mediaQuery : mediaQueryList) {
+			writeLocationInfo(mediaQuery.getLocationInfo());
+			writeCount(mediaQuery.getPrefix() == null ? 0 : mediaQuery.getPrefix().ordinal() + 1);
+			writeString(mediaQuery.getMediaType());
+			List<MediaFeatureExpression> expressions = new ArrayList<>();
+			for (MediaFeatureExpression expression : mediaQuery.getMediaFeatureExpressions())
+				expressions.add(expression);
+			writeCount(expressions.size());
+			for (MediaFeatureExpression expression : expressions) {
+				writeLocationInfo(expression.getLocationInfo());
+				writeString(expression.getFeature());
+				writeString(expression.getExpression());
+			}
+		}
+	}
+
+	/*
+	 * Null is written as zero, others as the zigzag-encoded line number plus one,
+	 * followed by the zigzag-encoded column, offset and length.
+	 */
+	private void writeLocationInfo(LocationInfo locationInfo) throws IOException {
+		if (locationInfo == null) {
+			writeCount(0);
+		} else {
+			writeUnsigned(zigzag(locationInfo.getLineNumber()) + 1);
+			writeUnsigned(zigzag(locationInfo.getColumnNumber()));
+			writeUnsigned(zigzag(locationInfo.getOffset()));
+			writeUnsigned(zigzag(locationInfo.getLength()));
+		}
+	}
+
+	/*
+	 * Null is written as zero, a string which is already written as its index plus two,
+	 * and a new string as one followed by the length and the UTF-8 bytes of the string.
+	 */
+	private void writeString(String string) throws IOException {
+		if (string == null) {
+			writeCount(0);
+			return;
+		}
+		Integer index = strings.get(string);
+		if (index != null) {
+			writeCount(index + 2);
+			return;
+		}
+		strings.put(string, strings.size());
+		writeCount(1);
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeCount(bytes.length);
+		int written = 0;
+		while (written < bytes.length) {
+			if (!buffer.hasRemaining())
+				flushBuffer();
+			int length = Math.min(buffer.remaining(), bytes.length - written);
+			buffer.put(bytes, written, length);
+			written += length;
+		}
+	}
+
+	private static long zigzag(int value) {
+		return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+	}
+
+	private void writeCount(int count) throws IOException {
+		writeUnsigned(count);
+	}
+
+	private void writeUnsigned(long value) throws IOException {
+		ensureRemaining(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+
+	private void ensureRemaining(int length) throws IOException {
+		if (buffer.remaining() < length)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the buffered bytes to the channel
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+	}
+
+	/**
+	 * Writes the buffered bytes and closes the channel
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package ca.concordia.cssanalyser.parser;
+
+import org.slf4j.Logger;
+
+import ca.concordia.cssanalyser.app.FileLogger;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.parser.flute.FluteCSSParser;
+import ca.concordia.cssanalyser.parser.less.LessCSSParser;
+
+/**
+ * Parses plain CSS with the (faster) Flute parser, and everything else with less4j. <br />
+ * Flute is asked to fail on the first error, so the CSS that Flute does not understand
+ * (Less syntax, such as variables, nesting, mixin calls and <code>//</code> comments, or CSS hacks like <code>*zoom</code>)
+ * is parsed again with less4j. Both parsers give the same style sheets for plain CSS.
+ * Less files (<code>.less</code>) are directly parsed with less4j.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class AutoCSSParser implements CSSParser {
+
+	private static final Logger LOGGER = FileLogger.getLogger(AutoCSSParser.class);
+
+	private final CSSParser fluteParser = new FluteCSSParser(true);
+	private final CSSParser lessParser = new LessCSSParser();
+
+	@Override
+	public StyleSheet parseCSSString(String css) throws ParseException {
+		try {
+			return fluteParser.parseCSSString(css);
+		} catch (ParseException ex) {
+			LOGGER.debug("Parsing with less4j, Flute could not parse the given CSS: " + ex.getMessage());
+			return lessParser.parseCSSString(css);
+		}
+	}
+
+	@Override
+	public StyleSheet parseExternalCSS(String path) throws ParseException {
+		if (!path.toLowerCase().endsWith(".less")) {
+			try {
+				return fluteParser.parseExternalCSS(path);
+			} catch (ParseException ex) {
+				LOGGER.debug(String.format("Parsing %s with less4j, Flute could not parse it: %s", path, ex.getMessage()));
+			}
+		}
+		return lessParser.parseExternalCSS(path);
+	}
+
+}
@@ -1,5 +1,6 @@
 package ca.concordia.cssanalyser.parser;
 
+import ca.concordia.cssanalyser.parser.flute.ChunkedCSSParser;
 import ca.concordia.cssanalyser.parser.flute.FluteCSSParser;
 import ca.concordia.cssanalyser.parser.less.LessCSSParser;
 
@@ -7,7 +8,16 @@ public class CSSParserFactory {
 	
 	public enum CSSParserType {
 		LESS,
-		FLUTE
+		FLUTE,
+		/**
+		 * Flute for plain CSS, less4j otherwise (see {@link AutoCSSParser})
+		 */
+		AUTO,
+		/**
+		 * Same as {@link #AUTO}, but large CSS files are split and parsed in parallel
+		 * (see {@link ChunkedCSSParser})
+		 */
+		CHUNKED
 	}
 	
 	public static CSSParser getCSSParser(CSSParserType type) {
@@ -16,6 +26,10 @@ public class CSSParserFactory {
 			return new FluteCSSParser();
 		case LESS:
 			return new LessCSSParser();
+		case AUTO:
+			return new AutoCSSParser();
+		case CHUNKED:
+			return new ChunkedCSSParser(Runtime.getRuntime().availableProcessors());
 		default:
 			throw new IllegalArgumentException();
 		
@@ -0,0 +1,331 @@
+package ca.concordia.cssanalyser.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+
+import ca.concordia.cssanalyser.app.FileLogger;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.io.IOHelper;
+import ca.concordia.cssanalyser.io.StyleSheetCodec;
+
+/**
+ * A {@link CSSParser} which keeps the style sheets parsed by another parser,
+ * so that the same CSS is only parsed once.
+ * The style sheets are kept in memory, keyed by the hash of the CSS.
+ * The least recently used ones are dropped when there are more than
+ * a given number of them. <br />
+ * The style sheets are kept in the format of {@link StyleSheetCodec},
+ * and every call reads a fresh copy of the kept style sheet,
+ * so callers can change the returned style sheets independently.
+ * The style sheets can also be kept in a folder (see {@link #setCacheFolder(String)}),
+ * so that they are not parsed again in the next runs. <br />
+ * The CSS files that the crawler downloads start with a comment
+ * containing the name of the DOM state (see {@link ca.concordia.cssanalyser.crawler.plugin.CSSCatcher}),
+ * so the same CSS file differs from one state to the other.
+ * Since comments are not kept in our model, the lines of the leading comments are
+ * not considered in the hash. The locations of the returned style sheets are moved
+ * according to the number of these lines.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class CachingCSSParser implements CSSParser {
+
+	private static final Logger LOGGER = FileLogger.getLogger(CachingCSSParser.class);
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final String CACHE_FILE_EXTENSION = ".cssm";
+	private static final String STRING_KEY_PREFIX = "string-";
+	// The style sheets of the files have paths, so they are not mixed with the ones of the strings
+	private static final String FILE_KEY_PREFIX = "file-";
+
+	private final CSSParser parser;
+	private final Map<String, CachedStyleSheet> cache;
+	private String cacheFolder;
+	private int numberOfHits;
+	private int numberOfMisses;
+
+	/*
+	 * How the parser sets the path of the style sheet of a file
+	 * (i.e., the given path, the absolute path, or the URI of the file)
+	 */
+	private enum PathStyle {
+		NONE, GIVEN, ABSOLUTE, URI;
+
+		static PathStyle of(String styleSheetPath, String parsedPath) {
+			if (styleSheetPath == null)
+				return NONE;
+			File parsedFile = new File(parsedPath);
+			if (styleSheetPath.equals(parsedFile.getAbsolutePath()))
+				return ABSOLUTE;
+			else if (styleSheetPath.equals(parsedFile.toURI().toString()))
+				return URI;
+			else
+				return GIVEN;
+		}
+
+		String getPathFor(String path) {
+			switch (this) {
+			case ABSOLUTE:
+				return new File(path).getAbsolutePath();
+			case URI:
+				return new File(path).toURI().toString();
+			case GIVEN:
+				return path;
+			default:
+				return null;
+			}
+		}
+	}
+
+	/*
+	 * The leading comments of a CSS, up to the last line break before the rest of the CSS.
+	 * The rest of the CSS starts at the beginning of a line, so its column numbers do not depend on the header.
+	 */
+	static class Header {
+		final int length;
+		final int lines;
+
+		Header(String css) {
+			int i = 0, length = 0;
+			while (true) {
+				while (i < css.length() && Character.isWhitespace(css.charAt(i))) {
+					if (css.charAt(i) == '\n' || css.charAt(i) == '\r')
+						length = i + 1;
+					i++;
+				}
+				if (!css.startsWith("/*", i))
+					break;
+				int commentEnd = css.indexOf("*/", i + 2);
+				if (commentEnd < 0)
+					break;
+				i = commentEnd + 2;
+			}
+			int lines = 0;
+			for (int j = 0; j < length; j++) {
+				// \r\n is one line break
+				if (css.charAt(j) == '\n' || (css.charAt(j) == '\r' && (j + 1 >= length || css.charAt(j + 1) != '\n')))
+					lines++;
+			}
+			this.length = length;
+			this.lines = lines;
+		}
+	}
+
+	private static final Header NO_HEADER = new Header("");
+
+	/*
+	 * A style sheet, as if it was parsed from a CSS without the header
+	 */
+	private static class CachedStyleSheet {
+		private final byte[] bytes;
+		private final PathStyle pathStyle;
+
+		public CachedStyleSheet(byte[] bytes, PathStyle pathStyle) {
+			this.bytes = bytes;
+			this.pathStyle = pathStyle;
+		}
+
+		public CachedStyleSheet(StyleSheet styleSheet, Header header, PathStyle pathStyle) throws ParseException {
+			byte[] bytes = StyleSheetCodec.toBytes(styleSheet);
+			if (header.length > 0) {
+				try {
+					bytes = StyleSheetCodec.toBytes(StyleSheetCodec.fromBytes(bytes, -header.lines, -header.length));
+				} catch (IOException ex) {
+					throw new ParseException(ex);
+				}
+			}
+			this.bytes = bytes;
+			this.pathStyle = pathStyle;
+		}
+
+		public StyleSheet getStyleSheet(Header header) throws ParseException {
+			try {
+				return StyleSheetCodec.fromBytes(bytes, header.lines, header.length);
+			} catch (IOException ex) {
+				throw new ParseException(ex);
+			}
+		}
+	}
+
+	public CachingCSSParser(CSSParser parser) {
+		this(parser, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param parser The parser which is used for the CSS which is not already parsed
+	 * @param capacity Maximum number of the style sheets which are kept in memory
+	 */
+	@SuppressWarnings("serial")
+	public CachingCSSParser(CSSParser parser, final int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity of the cache should be at least 1");
+		this.parser = parser;
+		this.cache = new LinkedHashMap<String, CachedStyleSheet>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedStyleSheet> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Keeps the parsed style sheets in the given folder too (one file for each CSS),
+	 * and reads the style sheets that are not in memory from there.
+	 * The files in the folder should be created by the same parser.
+	 * @param folder The folder, or null to only keep the style sheets in memory
+	 */
+	public synchronized void setCacheFolder(String folder) {
+		if (folder != null)
+			new File(folder).mkdirs();
+		this.cacheFolder = folder;
+	}
+
+	@Override
+	public StyleSheet parseCSSString(String css) throws ParseException {
+		Header header = new Header(css);
+		String key = STRING_KEY_PREFIX + getKey(css, header);
+		CachedStyleSheet cached = get(key);
+		if (cached == null) {
+			cached = new CachedStyleSheet(parser.parseCSSString(css), header, PathStyle.NONE);
+			put(key, cached);
+		}
+		return cached.getStyleSheet(header);
+	}
+
+	@Override
+	public StyleSheet parseExternalCSS(String path) throws ParseException {
+		String css;
+		try {
+			css = IOHelper.readFileToString(path);
+		} catch (IOException ex) {
+			throw new ParseException(ex);
+		}
+		Header header = new Header(css);
+		String key = FILE_KEY_PREFIX + getKey(css, header);
+		CachedStyleSheet cached = get(key);
+		if (cached == null) {
+			StyleSheet styleSheet = parser.parseExternalCSS(path);
+			cached = new CachedStyleSheet(styleSheet, header, PathStyle.of(styleSheet.getFilePath(), path));
+			put(key, cached);
+		}
+		StyleSheet styleSheet = cached.getStyleSheet(header);
+		styleSheet.setPath(cached.pathStyle.getPathFor(path));
+		return styleSheet;
+	}
+
+	private CachedStyleSheet get(String key) throws ParseException {
+		String cacheFolder;
+		synchronized (this) {
+			CachedStyleSheet cached = cache.get(key);
+			if (cached != null) {
+				numberOfHits++;
+				return cached;
+			}
+			cacheFolder = this.cacheFolder;
+		}
+		CachedStyleSheet cached = null;
+		if (cacheFolder != null) {
+			File file = new File(cacheFolder, key + CACHE_FILE_EXTENSION);
+			if (file.exists()) {
+				try {
+					StyleSheet styleSheet = StyleSheetCodec.readFromFile(file.getAbsolutePath());
+					PathStyle pathStyle = PathStyle.NONE;
+					if (key.startsWith(FILE_KEY_PREFIX)) {
+						// Instead of the path of the file, the way that the parser sets the path is kept
+						pathStyle = PathStyle.valueOf(String.valueOf(styleSheet.getFilePath()));
+						styleSheet.setPath(null);
+					}
+					cached = new CachedStyleSheet(StyleSheetCodec.toBytes(styleSheet), pathStyle);
+				} catch (IOException | IllegalArgumentException ex) {
+					LOGGER.warn(String.format("Could not read the cached style sheet %s: %s", file, ex.getMessage()));
+				}
+			}
+		}
+		synchronized (this) {
+			if (cached == null) {
+				numberOfMisses++;
+			} else {
+				numberOfHits++;
+				cache.put(key, cached);
+			}
+		}
+		return cached;
+	}
+
+	private void put(String key, CachedStyleSheet cached) throws ParseException {
+		String cacheFolder;
+		synchronized (this) {
+			cache.put(key, cached);
+			cacheFolder = this.cacheFolder;
+		}
+		if (cacheFolder != null) {
+			File file = new File(cacheFolder, key + CACHE_FILE_EXTENSION);
+			StyleSheet styleSheet = cached.getStyleSheet(NO_HEADER);
+			if (key.startsWith(FILE_KEY_PREFIX))
+				styleSheet.setPath(cached.pathStyle.name());
+			try {
+				StyleSheetCodec.writeToFile(styleSheet, file.getAbsolutePath());
+			} catch (IOException ex) {
+				LOGGER.warn(String.format("Could not write the cached style sheet %s: %s", file, ex.getMessage()));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of the calls which returned an already parsed style sheet
+	 * @return
+	 */
+	public synchronized int getNumberOfHits() {
+		return numberOfHits;
+	}
+
+	/**
+	 * Returns the number of the calls which had to parse the CSS
+	 * @return
+	 */
+	public synchronized int getNumberOfMisses() {
+		return numberOfMisses;
+	}
+
+	/**
+	 * Removes all the style sheets kept in memory.
+	 * The ones in the cache folder are kept.
+	 */
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns the hash of the given CSS, without the lines of the comments at the beginning of the CSS
+	 * @param css
+	 * @return
+	 */
+	static String getKey(String css) {
+		return getKey(css, new Header(css));
+	}
+
+	private static String getKey(String css, Header header) {
+		String key = css.substring(header.length);
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : hash)
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			LOGGER.warn("SHA-256 is not available, using the CSS itself as the key");
+			return key;
+		}
+	}
+
+}
@@ -1,19 +1,20 @@
 package ca.concordia.cssanalyser.parser.flute;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
 import org.w3c.css.sac.CSSException;
 import org.w3c.css.sac.Condition;
 import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.CSSParseException;
 import org.w3c.css.sac.DocumentHandler;
+import org.w3c.css.sac.ErrorHandler;
 import org.w3c.css.sac.InputSource;
 import org.w3c.css.sac.LexicalUnit;
-import org.w3c.css.sac.Locator;
 import org.w3c.css.sac.SACMediaList;
 import org.w3c.css.sac.SelectorList;
 import org.w3c.flute.parser.LexicalUnitImpl;
@@ -64,22 +65,64 @@ import ca.concordia.cssanalyser.cssmodel.selectors.SimpleSelector;
 import ca.concordia.cssanalyser.cssmodel.selectors.conditions.SelectorCondition;
 import ca.concordia.cssanalyser.cssmodel.selectors.conditions.SelectorConditionType;
 
-
-
+/**
+ * Builds our model of the style sheet from what the Flute parser reads. <br />
+ * The model is built the same way as {@link ca.concordia.cssanalyser.parser.less.LessStyleSheetAdapter} does:
+ * selectors, declarations and media query lists have their location info (line, column, offset and length),
+ * the declarations are added to the selector after the location info of the selector is set,
+ * and the selector is added to the style sheet when it is complete.
+ * 
+ * @author Davood Mazinanian
+ *
+ */
 public class CSSDocumentHandler implements DocumentHandler {
 	
 	private static final Logger LOGGER = FileLogger.getLogger(CSSDocumentHandler.class);
 
 	private Selector currentSelector;
+	private List<Declaration> currentDeclarations;
+	private Map<org.w3c.css.sac.Selector, LocationInfo> selectorLocations;
 	private Set<MediaQueryList> currentMediaQueryLists;
 	private StyleSheet styleSheet;
 	private int numberOfVisitedElements = 0;
+	private final ErrorHandler errorHandler;
 
 	public CSSDocumentHandler(StyleSheet styleSheet) {
+		this(styleSheet, null);
+	}
+
+	/**
+	 * @param styleSheet
+	 * @param errorHandler If not null, the parts of the CSS that cannot be added to our model
+	 * (e.g., unsupported selectors, or declarations without values) are reported to it as errors.
+	 * Otherwise, they are logged and skipped.
+	 */
+	public CSSDocumentHandler(StyleSheet styleSheet, ErrorHandler errorHandler) {
 		this.styleSheet = styleSheet;
+		this.errorHandler = errorHandler;
 		currentMediaQueryLists = new LinkedHashSet<>();
 	}
 
+	private void reportError(String message, LocationInfo locationInfo) {
+		if (errorHandler != null) {
+			int line = -1, column = -1;
+			if (locationInfo != null) {
+				line = locationInfo.getLineNumber();
+				column = locationInfo.getColumnNumber();
+			}
+			errorHandler.error(new CSSParseException(message, null, line, column));
+		} else {
+			LOGGER.warn(message);
+		}
+	}
+
+	private void reportError(Exception ex, LocationInfo locationInfo) {
+		// Already reported, e.g., for the selector of a :not()
+		if (ex instanceof CSSParseException)
+			throw (CSSParseException)ex;
+		reportError(ex.toString(), locationInfo);
+	}
+
 	@Override
 	public void startDocument(InputSource arg0) throws CSSException {
 	}
@@ -120,17 +163,7 @@ public class CSSDocumentHandler implements DocumentHandler {
 	}
 	
 	public void importStyle(String path, MediaQueryList forMedia, String arg2) throws CSSException  {
-		//According to CSS3 '@import' rules must occur before all rules other than '@charset' rule
-			File file = new File(styleSheet.getFilePath());
-			String parentFolder = file.getParent(); 
-			FluteCSSParser parser = new FluteCSSParser();
-			try {
-				StyleSheet importedStyleSheet = parser.parseExternalCSS(parentFolder + "/" + path);
-				importedStyleSheet.addMediaQueryList(forMedia);
-				styleSheet.addSelectors(importedStyleSheet);
-			} catch (Exception ex) {
-				LOGGER.warn("Couldn't parse or import " + parentFolder + "/" + path);
-			}
+		// The imported style sheets are not parsed, the same as in LessCSSParser
 	}
 
 	@Override
@@ -197,21 +230,44 @@ public class CSSDocumentHandler implements DocumentHandler {
 
 	@Override
 	public void startSelector(SelectorList selectorList) throws CSSException {
-		throw new CSSException("No locator is provided.");
+		throw new CSSException("No location info is provided.");
 	}
 
-	public void startSelector(SelectorList selectorList, Locator loc) {
+	/**
+	 * Starts a new selector
+	 * @param selectorList
+	 * @param selectorLocations The location info of the selectors in the given list, and their parts
+	 */
+	public void startSelector(SelectorList selectorList, Map<org.w3c.css.sac.Selector, LocationInfo> selectorLocations) {
 		numberOfVisitedElements++;
 
-		currentSelector = getSelector(selectorList, loc);
-
-		if (currentSelector != null)
-			styleSheet.addSelector(currentSelector);
+		this.selectorLocations = selectorLocations;
+		currentSelector = getSelector(selectorList);
+		currentDeclarations = new ArrayList<>();
 	}
 
 	@Override
 	public void endSelector(SelectorList selectorList) throws CSSException {
+		throw new CSSException("No location info is provided.");
+	}
+
+	/**
+	 * Adds the current selector, with its declarations, to the style sheet
+	 * @param selectorList
+	 * @param locationInfo Location info of the whole rule, i.e., from the beginning of the selector to the closing curly bracket
+	 */
+	public void endSelector(SelectorList selectorList, LocationInfo locationInfo) {
+		if (currentSelector != null) {
+			// The location info should be set before the declarations are added (their hash codes depend on the selector)
+			currentSelector.setLocationInfo(locationInfo);
+			for (Declaration declaration : currentDeclarations)
+				currentSelector.addDeclaration(declaration);
+			for (MediaQueryList mediaQueryList : currentMediaQueryLists)
+				currentSelector.addMediaQueryList(mediaQueryList);
+			styleSheet.addSelector(currentSelector);
+		}
 		currentSelector = null;
+		currentDeclarations = null;
 	}
 
 	@Override
@@ -219,70 +275,82 @@ public class CSSDocumentHandler implements DocumentHandler {
 			throws CSSException {
 
 		// property(arg0, arg1, arg2, null);
-		throw new RuntimeException("No locator provided");
+		throw new RuntimeException("No location info is provided");
 	}
 
-	public void property(String propertyName, LexicalUnit values, boolean isImportant, Locator locator) {
+	public void property(String propertyName, LexicalUnit values, boolean isImportant, LocationInfo locationInfo) {
 		
+		if (currentSelector == null)
+			return;
+
+		List<DeclarationValue> valuesList;
 		try {
-			List<DeclarationValue> valuesList = getAllValues(propertyName, values);
-	
-			Declaration newDeclaration = null;
-	
-			newDeclaration = DeclarationFactory.getDeclaration(propertyName, valuesList, currentSelector, isImportant, true, new LocationInfo(locator.getLineNumber(), locator.getColumnNumber()));
-		
-			if (currentSelector != null)
-				currentSelector.addDeclaration(newDeclaration);
-			
+			valuesList = getAllValues(propertyName, values);
 		} catch (Exception ex) {
-			LOGGER.warn(ex.toString());
+			reportError(ex, locationInfo);
+			return;
+		}
+
+		if (valuesList.size() == 0) {
+			reportError(String.format("No CSS values could be found for property %s at line %s, column %s", propertyName, 
+					locationInfo.getLineNumber(), locationInfo.getColumnNumber()), locationInfo);
+		} else {
+			try {
+				// The same as LessStyleSheetAdapter, the declaration is created without the selector, and added to it later
+				currentDeclarations.add(DeclarationFactory.getDeclaration(propertyName, valuesList, null, isImportant, true, locationInfo));
+			} catch (Exception ex) {
+				reportError(ex, locationInfo);
+			}
 		}
 
 	}
 	
+	private LocationInfo getLocationInfo(org.w3c.css.sac.Selector selector) {
+		if (selectorLocations == null)
+			return null;
+		return selectorLocations.get(selector);
+	}
+
 	/**
 	 * Gets a {@link Selector} from a SAC Selector List
 	 * @param list a SAC selector list, a list of comma separated SAC selectors
-	 * @param locator SAC Locator pointing to the location of the selector list 
 	 * @return
 	 */
-	private Selector getSelector(SelectorList list, Locator locator) {
-		Selector s = null;
-		int line = -1, column = -1;
+	private Selector getSelector(SelectorList list) {
 		if (list.getLength() > 1) {
 			GroupingSelector groupedSelectors = new GroupingSelector();
 			for (int i = 0; i < list.getLength(); i++) {
 				try {
 					BaseSelector newAtomicSelector = SACSelectorToAtomicSelector(list.item(i));
-					newAtomicSelector.setLocationInfo(
-							new LocationInfo(
-										locator.getLineNumber(), 
-										locator.getColumnNumber() - newAtomicSelector.toString().length() + 1));
-					if (currentMediaQueryLists.size() > 0)
-						newAtomicSelector.addMediaQueryLists(currentMediaQueryLists);
 					groupedSelectors.add(newAtomicSelector);
+					newAtomicSelector.setParentGroupSelector(groupedSelectors);
 				} catch (Exception ex) {
-					LOGGER.warn(ex.toString());
+					reportError(ex, getLocationInfo(list.item(i)));
 				}
 			}
-			line = locator.getLineNumber();
-			column = locator.getColumnNumber() - groupedSelectors.toString().length() + 1;
-			groupedSelectors.addMediaQueryLists(currentMediaQueryLists);
-			s = groupedSelectors;
+			return groupedSelectors;
 		} else {
 			try {
-				s = SACSelectorToAtomicSelector(list.item(0));
-				line = locator.getLineNumber();
-				column = locator.getColumnNumber() - s.toString().length() + 1;
-				if (currentMediaQueryLists.size() > 0)
-					s.addMediaQueryLists(currentMediaQueryLists);
-				// styleSheet.addSelector(currentSelector);
+				return SACSelectorToAtomicSelector(list.item(0));
 			} catch (Exception ex) {
-				LOGGER.warn(ex.toString());
+				reportError(ex, getLocationInfo(list.item(0)));
+				return null;
 			}
 		}
-		s.setLocationInfo(new LocationInfo(line, column));
-		return s;
+	}
+
+	/**
+	 * Returns an {@link BaseSelector} from a given SAC selector,
+	 * with the location info of its name set
+	 * @param selector
+	 * @return
+	 * @throws Exception
+	 */
+	private BaseSelector SACSelectorToAtomicSelector(org.w3c.css.sac.Selector selector) throws Exception {
+		BaseSelector baseSelector = getBaseSelector(selector);
+		if (selectorLocations != null && selectorLocations.containsKey(selector))
+			baseSelector.setSelectorNameLocationInfo(selectorLocations.get(selector));
+		return baseSelector;
 	}
 
 	/**
@@ -292,7 +360,7 @@ public class CSSDocumentHandler implements DocumentHandler {
 	 * @return
 	 * @throws Exception
 	 */
-	private BaseSelector SACSelectorToAtomicSelector(org.w3c.css.sac.Selector selector) throws Exception {
+	private BaseSelector getBaseSelector(org.w3c.css.sac.Selector selector) throws Exception {
 		// if (selector instanceof CharacterDataSelector) {
 		// Unimplemented in flute?
 		// }
@@ -330,22 +398,22 @@ public class CSSDocumentHandler implements DocumentHandler {
 			ChildSelectorImpl sacChildSelectorImpl = (ChildSelectorImpl) selector;
 
 			BaseSelector parentAtomicSelector = SACSelectorToAtomicSelector(sacChildSelectorImpl.getAncestorSelector());
-			SimpleSelector childAtomicSelector = (SimpleSelector)SACSelectorToAtomicSelector(sacChildSelectorImpl.getSimpleSelector());
 
 			BaseSelector selectorToReturn;
 
 			if (sacChildSelectorImpl.getSimpleSelector() instanceof PseudoElementSelectorImpl) {
 				selectorToReturn = parentAtomicSelector;
-				PseudoElementSelectorImpl pseudoClass = (PseudoElementSelectorImpl) sacChildSelectorImpl.getSimpleSelector();
+				PseudoElementSelectorImpl pseudoElement = (PseudoElementSelectorImpl) sacChildSelectorImpl.getSimpleSelector();
 				SimpleSelector simpleSelector;
-				if (selectorToReturn instanceof SimpleSelector) // in case of .test:test
+				if (selectorToReturn instanceof SimpleSelector) // in case of .test:first-line
 					simpleSelector = ((SimpleSelector) selectorToReturn);
-				else // in case of .test .test2:test
+				else // in case of .test .test2:first-line
 					simpleSelector = ((Combinator)selectorToReturn).getRightHandSideSelector();
 				
-				simpleSelector.addPseudoClass(new PseudoClass(pseudoClass.getLocalName()));
+				simpleSelector.addPseudoElement(new PseudoElement(pseudoElement.getLocalName()));
 
 			} else {
+				SimpleSelector childAtomicSelector = (SimpleSelector)SACSelectorToAtomicSelector(sacChildSelectorImpl.getSimpleSelector());
 				selectorToReturn = new ChildSelector(parentAtomicSelector, childAtomicSelector);
 			}
 
@@ -355,7 +423,7 @@ public class CSSDocumentHandler implements DocumentHandler {
 			
 			PseudoElementSelectorImpl pseudoElementSelector = (PseudoElementSelectorImpl) selector;
 			SimpleSelector atomicElementSelector = new SimpleSelector();
-			atomicElementSelector.addPseudoClass(new PseudoClass(pseudoElementSelector.getLocalName()));
+			atomicElementSelector.addPseudoElement(new PseudoElement(pseudoElementSelector.getLocalName()));
 			return atomicElementSelector;
 			
 		} else if (selector instanceof DirectAdjacentSelectorImpl) {
@@ -409,8 +477,10 @@ public class CSSDocumentHandler implements DocumentHandler {
 		} else if (sacCondition instanceof PseudoClassConditionImpl) {
 
 			PseudoClassConditionImpl pseudoCond = (PseudoClassConditionImpl) sacCondition;
-			atomicElementSelector.addPseudoClass(new PseudoClass(pseudoCond
-					.getValue()));
+			if (isCSS2PseudoElement(pseudoCond.getValue())) // :before and :after (less4j also reads them as pseudo elements)
+				atomicElementSelector.addPseudoElement(new PseudoElement(pseudoCond.getValue()));
+			else
+				atomicElementSelector.addPseudoClass(new PseudoClass(pseudoCond.getValue()));
 
 		} else if (sacCondition instanceof IdConditionImpl) {
 
@@ -486,13 +556,12 @@ public class CSSDocumentHandler implements DocumentHandler {
 
 			NegativeConditionImpl condition = (NegativeConditionImpl) sacCondition;
 			SelectorList l = condition.getSelectorList();
-			Locator loc = condition.getLocator();
-			Selector s = getSelector(l, loc);
+			Selector s = getSelector(l);
 			// Selector "s" shoule be a simple selector, based on W3C http://www.w3.org/TR/css3-selectors/
 			if ((s instanceof SimpleSelector)) {
 				atomicElementSelector.addPseudoClass(new NegationPseudoClass((BaseSelector)s));
 			} else {
-				LOGGER.warn("The parameter of not() pseudo-element should be a simple CSS selector. ");
+				reportError("The parameter of not() pseudo-element should be a simple CSS selector: " + s, getLocationInfo(l.item(0)));
 			}
 
 		} else if (sacCondition instanceof FunctionPseudoClassCondition) {
@@ -512,6 +581,18 @@ public class CSSDocumentHandler implements DocumentHandler {
 		}
 	}
 
+	private boolean isCSS2PseudoElement(String name) {
+		switch (name.toLowerCase()) {
+		case "before":
+		case "after":
+		case "first-line":
+		case "first-letter":
+			return true;
+		default:
+			return false;
+		}
+	}
+
 	/**
 	 * This method gives a <code>List<ca.concordia.cssanalyser.cssmodel.declaration.DeclarationValue></code>
 	 * From a given LexicalUnit value from SAC. <br />
@@ -526,8 +607,12 @@ public class CSSDocumentHandler implements DocumentHandler {
 			do {
 				
 				DeclarationValue decValue = getValue(propertyName, value);
-				if (value != null)
+				if (value != null) {
+					// The same as LessStyleSheetAdapter, every value has its own location
+					if (decValue != null && value instanceof LexicalUnitImpl && ((LexicalUnitImpl) value).getLocationInfo() != null)
+						decValue.setLocationInfo(((LexicalUnitImpl) value).getLocationInfo());
 					accumulator.add(decValue);
+				}
 				value = value.getNextLexicalUnit();
 			} while (value != null);
 		}
@@ -579,7 +664,7 @@ public class CSSDocumentHandler implements DocumentHandler {
 		case LexicalUnit.SAC_INTEGER:
 			return DeclarationValueFactory.getDeclarationValue(propertyName, String.valueOf(value.getIntegerValue()), ValueType.INTEGER);
 		case LexicalUnit.SAC_REAL:
-			return DeclarationValueFactory.getDeclarationValue(propertyName, DeclarationValueFactory.formatDouble(value.getFloatValue()), ValueType.REAL);
+			return DeclarationValueFactory.getDeclarationValue(propertyName, DeclarationValueFactory.formatFloat(value.getFloatValue()), ValueType.REAL);
 			
 		// Length values may be convertible to each other
 		case LexicalUnit.SAC_PICA:
@@ -597,45 +682,45 @@ public class CSSDocumentHandler implements DocumentHandler {
 			
 		// We convert all angle values to degree.
 		case LexicalUnit.SAC_GRADIAN:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "grad";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "grad";
 			return  DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.ANGLE);
 		case LexicalUnit.SAC_RADIAN:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "rad";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "rad";
 			return  DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.ANGLE);
 		case LexicalUnitImpl.TURN:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "turn";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "turn";
 			return  DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.ANGLE);
 		case LexicalUnit.SAC_DEGREE:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "deg";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "deg";
 			return  DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.ANGLE);
 			
 		case LexicalUnit.SAC_KILOHERTZ:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "khz";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "khz";
 			return DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.FREQUENCY);
 		case LexicalUnit.SAC_HERTZ:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "hz";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "hz";
 			return DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.FREQUENCY);
 			
 		// s and ms are convertible to each other
 		case LexicalUnit.SAC_SECOND:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "s";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "s";
 			return DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.TIME);
 		case LexicalUnit.SAC_MILLISECOND:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "ms";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "ms";
 			return DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.TIME);
 			
 		// EM and % are somehow the same. 	
 		case LexicalUnit.SAC_EM:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "em";			
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "em";			
 			return DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.LENGTH);
 			
 		case LexicalUnitImpl.REM:
 			// 1rem = 100% of the parent's font. SO we don't add 
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "rem";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "rem";
 			return DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.PERCENTAGE);
 			
 		case LexicalUnit.SAC_PERCENTAGE:
-			realVal = DeclarationValueFactory.formatDouble(value.getFloatValue()) + "%";
+			realVal = DeclarationValueFactory.formatFloat(value.getFloatValue()) + "%";
 			return DeclarationValueFactory.getDeclarationValue(propertyName, realVal, ValueType.PERCENTAGE);
 		
 			
@@ -644,11 +729,11 @@ public class CSSDocumentHandler implements DocumentHandler {
 			 *  EX is calculated in a different way across different browsers
 			 * (IE-not known in which version-: 1ex = 0.5em, while not other browsers)
 			 */
-			return DeclarationValueFactory.getDeclarationValue(propertyName, DeclarationValueFactory.formatDouble(value.getFloatValue()) + "ex", ValueType.LENGTH);
+			return DeclarationValueFactory.getDeclarationValue(propertyName, DeclarationValueFactory.formatFloat(value.getFloatValue()) + "ex", ValueType.LENGTH);
 		case LexicalUnit.SAC_DIMENSION:
 			//Unknown dimension :)
 			return DeclarationValueFactory.getDeclarationValue(propertyName, 
-					DeclarationValueFactory.formatDouble(value.getFloatValue()) + value.getDimensionUnitText().toLowerCase(), ValueType.DIMENSION);
+					DeclarationValueFactory.formatFloat(value.getFloatValue()) + value.getDimensionUnitText().toLowerCase(), ValueType.DIMENSION);
 			
 		case LexicalUnit.SAC_URI:
 			realVal = "url('" + value.getStringValue() + "')";
@@ -0,0 +1,185 @@
+package ca.concordia.cssanalyser.parser.flute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+
+import ca.concordia.cssanalyser.app.ConcurrencyHelper;
+import ca.concordia.cssanalyser.app.FileLogger;
+import ca.concordia.cssanalyser.cssmodel.LocationInfo;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.io.IOHelper;
+import ca.concordia.cssanalyser.parser.CSSParser;
+import ca.concordia.cssanalyser.parser.ParseException;
+import ca.concordia.cssanalyser.parser.less.LessCSSParser;
+
+/**
+ * Parses large plain CSS files in parallel. <br />
+ * The CSS is split into chunks at the boundaries of the top-level rules and at-rules
+ * (so that a <code>@media</code> rule is never split), the chunks are parsed by Flute in parallel, each one
+ * at its own line, column and offset in the whole style sheet, and the resulting selectors are added to one style sheet
+ * in the order of the chunks. Therefore, the style sheet is the same as the one {@link FluteCSSParser} gives. <br />
+ * If Flute cannot parse a chunk (e.g., because of Less syntax or CSS hacks), the whole CSS is parsed by less4j,
+ * the same as {@link ca.concordia.cssanalyser.parser.AutoCSSParser}. Less files (<code>.less</code>) are directly parsed by less4j.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class ChunkedCSSParser implements CSSParser {
+
+	private static final Logger LOGGER = FileLogger.getLogger(ChunkedCSSParser.class);
+
+	/**
+	 * Smaller CSS is not worth splitting
+	 */
+	public static final int DEFAULT_MINIMUM_CHUNK_LENGTH = 64 * 1024;
+
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final int numberOfThreads;
+	private final int minimumChunkLength;
+
+	public ChunkedCSSParser(int numberOfThreads) {
+		this(numberOfThreads, DEFAULT_MINIMUM_CHUNK_LENGTH);
+	}
+
+	public ChunkedCSSParser(int numberOfThreads, int minimumChunkLength) {
+		if (numberOfThreads < 1 || minimumChunkLength < 1)
+			throw new IllegalArgumentException();
+		this.numberOfThreads = numberOfThreads;
+		this.minimumChunkLength = minimumChunkLength;
+	}
+
+	@Override
+	public StyleSheet parseCSSString(String css) throws ParseException {
+		int chunkLength = Math.max(minimumChunkLength, css.length() / (numberOfThreads * CHUNKS_PER_THREAD));
+		List<LocationInfo> chunks = getChunks(css, chunkLength);
+		try {
+			if (chunks.size() == 1)
+				return new FluteCSSParser(true).parseCSSString(css);
+			StyleSheet styleSheet = new StyleSheet();
+			for (StyleSheet chunkStyleSheet : parseInParallel(css, chunks))
+				styleSheet.addSelectors(chunkStyleSheet);
+			return styleSheet;
+		} catch (ParseException ex) {
+			LOGGER.debug("Parsing with less4j, Flute could not parse the given CSS: " + ex.getMessage());
+			return new LessCSSParser().parseCSSString(css);
+		}
+	}
+
+	@Override
+	public StyleSheet parseExternalCSS(String path) throws ParseException {
+		if (path.toLowerCase().endsWith(".less"))
+			return new LessCSSParser().parseExternalCSS(path);
+		try {
+			StyleSheet styleSheet = parseCSSString(IOHelper.readFileToString(path));
+			styleSheet.setPath(FluteCSSParser.getStyleSheetPath(path));
+			return styleSheet;
+		} catch (IOException e) {
+			throw new ParseException(e);
+		}
+	}
+
+	private List<StyleSheet> parseInParallel(String css, List<LocationInfo> chunks) throws ParseException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, chunks.size()));
+		try {
+			List<Future<StyleSheet>> futures = new ArrayList<>();
+			for (LocationInfo chunk : chunks) {
+				Callable<StyleSheet> task = () -> new FluteCSSParser(true).parseCSSString(
+						css.substring(chunk.getOffset(), chunk.getOffset() + chunk.getLength()),
+						chunk.getLineNumber(), chunk.getColumnNumber(), chunk.getOffset());
+				futures.add(executor.submit(task));
+			}
+			List<StyleSheet> styleSheets = new ArrayList<>();
+			for (Future<StyleSheet> future : futures)
+				styleSheets.add(ConcurrencyHelper.getResult(future, ParseException.class));
+			return styleSheets;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Splits the given CSS into chunks of (at least) the given length.
+	 * The chunks end after a top-level rule or at-rule, i.e., after a <code>}</code> or <code>;</code>
+	 * which is not inside a block, a string or a comment, and is not escaped.
+	 * @param css
+	 * @param chunkLength
+	 * @return The location of each chunk (line, column, offset and length), in the order of the chunks
+	 */
+	static List<LocationInfo> getChunks(String css, int chunkLength) {
+		List<LocationInfo> chunks = new ArrayList<>();
+		int chunkStart = 0, chunkLine = 1, chunkColumn = 1;
+		int line = 1, lineStart = 0;
+		int depth = 0;
+		char quote = 0;
+		boolean inComment = false, escaped = false;
+		for (int i = 0; i < css.length(); i++) {
+			char c = css.charAt(i);
+			if (c == '\n' || (c == '\r' && (i + 1 == css.length() || css.charAt(i + 1) != '\n'))) {
+				line++;
+				lineStart = i + 1;
+			}
+			if (inComment) {
+				if (c == '*' && i + 1 < css.length() && css.charAt(i + 1) == '/') {
+					inComment = false;
+					i++;
+				}
+				continue;
+			}
+			// Escaped characters, in strings or not (e.g., .a\\{b), do not start or end anything
+			if (escaped) {
+				escaped = false;
+				continue;
+			}
+			if (c == '\\') {
+				escaped = true;
+				continue;
+			}
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+				continue;
+			}
+			boolean endOfRule = false;
+			switch (c) {
+			case '/':
+				if (i + 1 < css.length() && css.charAt(i + 1) == '*') {
+					inComment = true;
+					i++;
+				}
+				break;
+			case '"':
+			case '\'':
+				quote = c;
+				break;
+			case '{':
+				depth++;
+				break;
+			case '}':
+				if (depth > 0)
+					depth--;
+				endOfRule = depth == 0;
+				break;
+			case ';':
+				endOfRule = depth == 0;
+				break;
+			}
+			if (endOfRule && i + 1 - chunkStart >= chunkLength && i + 1 < css.length()) {
+				chunks.add(new LocationInfo(chunkLine, chunkColumn, chunkStart, i + 1 - chunkStart));
+				chunkStart = i + 1;
+				chunkLine = line;
+				chunkColumn = chunkStart - lineStart + 1;
+			}
+		}
+		chunks.add(new LocationInfo(chunkLine, chunkColumn, chunkStart, css.length() - chunkStart));
+		return chunks;
+	}
+
+}
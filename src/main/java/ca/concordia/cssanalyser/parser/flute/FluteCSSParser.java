@@ -1,80 +1,136 @@
 package ca.concordia.cssanalyser.parser.flute;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.net.URL;
-
-import org.slf4j.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+
+import org.w3c.css.sac.CSSException;
+import org.w3c.css.sac.CSSParseException;
+import org.w3c.css.sac.ErrorHandler;
 import org.w3c.css.sac.InputSource;
-import org.w3c.css.sac.Parser;
-import org.w3c.css.sac.helpers.ParserFactory;
+import org.w3c.flute.parser.CharSequence_CharStream;
+import org.w3c.flute.parser.CharStream;
+import org.w3c.flute.parser.Parser;
 
-import ca.concordia.cssanalyser.app.FileLogger;
 import ca.concordia.cssanalyser.cssmodel.StyleSheet;
 import ca.concordia.cssanalyser.parser.CSSParser;
 import ca.concordia.cssanalyser.parser.ParseException;
 
-
+/**
+ * Parses plain CSS using the Flute parser. <br />
+ * The style sheets are built the way {@link ca.concordia.cssanalyser.parser.less.LessCSSParser} builds them
+ * (the same file path, and the location info of the selectors, declarations and values is computed the same way,
+ * e.g., a declaration includes its semicolon), so that this parser can be used for plain CSS files instead of it. <br />
+ * Only the test style sheets are checked to be parsed the same as less4j does (see <code>FluteCSSParserTest</code>),
+ * so {@link ca.concordia.cssanalyser.parser.CSSParserFactory.CSSParserType#LESS} is still the default parser.
+ *
+ * @author Davood Mazinanian
+ *
+ */
 public class FluteCSSParser implements CSSParser {
 
-	private CSSDocumentHandler docHandler;
-
-	private Parser parser;
-	
-	private Logger LOGGER = FileLogger.getLogger(FluteCSSParser.class);
-	
-	static {
-		System.setProperty("org.w3c.css.sac.parser", "org.w3c.flute.parser.Parser");
-	}
+	private final boolean failOnErrors;
 
 	public FluteCSSParser() {
+		this(false);
+	}
 
+	/**
+	 * @param failOnErrors If true, a {@link ParseException} is thrown for the first error that Flute reports
+	 * (e.g., for Less syntax or the CSS hacks that Flute does not understand),
+	 * or for the first part of the CSS that cannot be added to our model (e.g., <code>:not(a b)</code>).
+	 * Otherwise, Flute skips the erroneous parts of the CSS, as it always does.
+	 */
+	public FluteCSSParser(boolean failOnErrors) {
+		this.failOnErrors = failOnErrors;
 	}
-	
+
+	@Override
 	public StyleSheet parseCSSString(String css) throws ParseException {
-		try {
-			return parseStreamCSS(new ByteArrayInputStream(css.getBytes()));
-		} catch (Exception e) {
-			e.printStackTrace();
-			throw new ParseException(e);
-		}
+		return parse(new CharSequence_CharStream(css), null);
 	}
-	
 
+	/**
+	 * Parses the given part of a style sheet, which starts at the given line, column and offset of the style sheet.
+	 * The location info of the selectors, declarations, etc. is given in the whole style sheet.
+	 * @param css
+	 * @param line
+	 * @param column
+	 * @param offset
+	 * @return
+	 * @throws ParseException
+	 */
+	public StyleSheet parseCSSString(String css, int line, int column, int offset) throws ParseException {
+		return parse(new CharSequence_CharStream(css, line, column, offset), null);
+	}
+
+	/**
+	 * The file is memory-mapped and read in place (see {@link CharSequence_CharStream#map(String, Charset)}),
+	 * using the same charset as {@link ca.concordia.cssanalyser.io.IOHelper#readFileToString(String)}
+	 */
+	@Override
 	public StyleSheet parseExternalCSS(String path) throws ParseException {
 		try {
-			LOGGER.info("Parsing " + path);
-			URL uri = new URL("file", null, -1, path);
-			StyleSheet styleSheet = parseStreamCSS(uri.openStream());
-			styleSheet.setPath(path);
-			LOGGER.info("Parsed " + path);
-			return styleSheet;
-		}
-		catch (Exception e) {
-			LOGGER.warn(e.toString());
+			return parse(CharSequence_CharStream.map(path, Charset.defaultCharset()), getStyleSheetPath(path));
+		} catch (IOException e) {
 			throw new ParseException(e);
 		}
 	}
-	
-	private StyleSheet parseStreamCSS(InputStream inputStream) throws Exception {
-				
-		StyleSheet styleSheet = new StyleSheet();
 
-		InputSource source = new InputSource();
+	/**
+	 * Returns the same path as the one that {@link ca.concordia.cssanalyser.parser.less.LessCSSParser}
+	 * gives to the style sheet of the given file
+	 * @param path
+	 * @return
+	 */
+	static String getStyleSheetPath(String path) {
+		try {
+			return new URI(path.replace(File.separatorChar, '/')).toString();
+		} catch (URISyntaxException e) {
+			return new File(path).getAbsolutePath();
+		}
+	}
 
-		source.setByteStream(inputStream);
-		//source.setURI(uri.toString());
-		ParserFactory factory = new ParserFactory();
+	private StyleSheet parse(CharStream stream, String path) throws ParseException {
 
-		parser = factory.makeParser();
+		StyleSheet styleSheet = new StyleSheet();
+		styleSheet.setPath(path);
 
-		docHandler = new CSSDocumentHandler(styleSheet);
+		// The characters (and not bytes) are read from the stream, so that the offsets are the indices of the characters in the string
+		InputSource source = new InputSource();
 
-		parser.setDocumentHandler(docHandler);
+		Parser parser = new Parser();
+		if (failOnErrors) {
+			ErrorHandler errorHandler = new ErrorHandler() {
+				@Override
+				public void warning(CSSParseException exception) throws CSSException {
+					// Skipped at-rules which are not in our model (e.g., @keyframes), LessCSSParser skips them too
+				}
+
+				@Override
+				public void error(CSSParseException exception) throws CSSException {
+					throw exception;
+				}
+
+				@Override
+				public void fatalError(CSSParseException exception) throws CSSException {
+					throw exception;
+				}
+			};
+			parser.setErrorHandler(errorHandler);
+			// The CSS that cannot be added to our model (e.g., unsupported selectors) is also an error
+			parser.setDocumentHandler(new CSSDocumentHandler(styleSheet, errorHandler));
+		} else {
+			parser.setDocumentHandler(new CSSDocumentHandler(styleSheet));
+		}
 
-		parser.parseStyleSheet(source);
-			
-		inputStream.close();
+		try {
+			parser.parseStyleSheet(source, stream);
+		} catch (IOException | CSSException e) {
+			throw new ParseException(e);
+		}
 
 		return styleSheet;
 	}
@@ -0,0 +1,268 @@
+package ca.concordia.cssanalyser.refactoring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.concordia.cssanalyser.analyser.duplication.items.Item;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+
+/**
+ * Gives the grouping refactoring opportunities (ItemSets) in the order in which
+ * {@link RefactorDuplicationsToGroupingSelector} applies them: the ones with more impact first,
+ * and among the ones with the same impact, the one which was given first.
+ * <br />
+ * The candidates are kept in an indexed binary max-heap. The heap is built in linear time
+ * when the candidates are given (i.e., after every applied refactoring, when the ItemSets are mined again),
+ * and then only the candidates which are taken out are sorted.
+ * Whether an ItemSet is applicable is checked only when it reaches the top of the heap.
+ * <br />
+ * The ItemSets for which the refactoring was infeasible are kept through the rounds,
+ * indexed by the size of the ItemSet, the size of the support and the property of the
+ * declaration of one of their Items, so checking whether a candidate was infeasible
+ * only compares it with the infeasible ItemSets sharing these.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+class GroupingRefactoringScheduler {
+
+	private ItemSet[] heap = new ItemSet[0];
+	private int[] impacts = new int[0];
+	private int[] sequences = new int[0];
+	private int size;
+	private final Map<ItemSet, Integer> positions = new IdentityHashMap<>();
+	private final Map<ItemSet, Boolean> applicability = new IdentityHashMap<>();
+
+	private final Map<String, List<ItemSet>> infeasibleItemSets = new HashMap<>();
+
+	/**
+	 * Replaces the candidates with the ItemSets of the given FP-Growth results
+	 * which have positive impact.
+	 * @param fpgrowthResults
+	 */
+	public void setCandidates(List<ItemSetList> fpgrowthResults) {
+		List<ItemSet> candidates = new ArrayList<>();
+		for (ItemSetList isl : fpgrowthResults) {
+			for (ItemSet is : isl) {
+				if (is.getGroupingRefactoringImpact() > 0)
+					candidates.add(is);
+			}
+		}
+
+		positions.clear();
+		applicability.clear();
+		size = candidates.size();
+		heap = new ItemSet[size];
+		impacts = new int[size];
+		sequences = new int[size];
+		for (int i = 0; i < size; i++) {
+			ItemSet itemSet = candidates.get(i);
+			heap[i] = itemSet;
+			impacts[i] = itemSet.getGroupingRefactoringImpact();
+			sequences[i] = i;
+			positions.put(itemSet, i);
+		}
+		for (int i = size / 2 - 1; i >= 0; i--)
+			siftDown(i);
+	}
+
+	/**
+	 * Returns the number of the current candidates which are applicable
+	 * (see {@link ItemSet#isApplicable()}). Checks all of the candidates.
+	 * @return
+	 */
+	public int getNumberOfApplicableCandidates() {
+		int numberOfApplicableCandidates = 0;
+		for (int i = 0; i < size; i++) {
+			if (isApplicable(heap[i]))
+				numberOfApplicableCandidates++;
+		}
+		return numberOfApplicableCandidates;
+	}
+
+	/**
+	 * Removes and returns the applicable candidate with the maximum impact
+	 * which is not marked as infeasible, or null if there is no such candidate.
+	 * @return
+	 */
+	public ItemSet pollNextCandidate() {
+		while (size > 0) {
+			ItemSet top = heap[0];
+			remove(top);
+			if (isApplicable(top) && !isInfeasible(top))
+				return top;
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the given candidate, if it is one of the current candidates.
+	 * @param itemSet
+	 * @return True if the candidate was removed
+	 */
+	public boolean remove(ItemSet itemSet) {
+		Integer position = positions.remove(itemSet);
+		if (position == null)
+			return false;
+		size--;
+		if (position != size) {
+			move(size, position);
+			siftDown(position);
+			siftUp(position);
+		}
+		heap[size] = null;
+		return true;
+	}
+
+	public int getNumberOfCandidates() {
+		return size;
+	}
+
+	/**
+	 * Marks the given ItemSet as infeasible. The ItemSets having the same declarations
+	 * (see {@link #isInfeasible(ItemSet)}) are not given anymore, even in the later rounds.
+	 * @param itemSet
+	 */
+	public void markInfeasible(ItemSet itemSet) {
+		for (Item item : itemSet) {
+			// Indexed by only one of the Items
+			String key = getInfeasibilityKey(itemSet, item);
+			List<ItemSet> itemSetsWithSameKey = infeasibleItemSets.get(key);
+			if (itemSetsWithSameKey == null) {
+				itemSetsWithSameKey = new ArrayList<>();
+				infeasibleItemSets.put(key, itemSetsWithSameKey);
+			}
+			itemSetsWithSameKey.add(itemSet);
+			break;
+		}
+	}
+
+	/**
+	 * Returns true if an ItemSet marked as infeasible has the same number of Items and the same support size
+	 * as the given ItemSet, and the representative declaration of each of its Items
+	 * is equal to the representative declaration of one of the Items of the given ItemSet.
+	 * @param itemSet
+	 * @return
+	 */
+	public boolean isInfeasible(ItemSet itemSet) {
+		if (infeasibleItemSets.isEmpty())
+			return false;
+		Set<String> checkedKeys = new HashSet<>();
+		for (Item item : itemSet) {
+			String key = getInfeasibilityKey(itemSet, item);
+			if (!checkedKeys.add(key))
+				continue;
+			List<ItemSet> itemSetsWithSameKey = infeasibleItemSets.get(key);
+			if (itemSetsWithSameKey != null) {
+				for (ItemSet infeasibleItemSet : itemSetsWithSameKey) {
+					if (hasSameDeclarations(infeasibleItemSet, itemSet))
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Equal declarations have the same property and importance
+	 */
+	private String getInfeasibilityKey(ItemSet itemSet, Item item) {
+		StringBuilder key = new StringBuilder();
+		key.append(itemSet.size()).append('|').append(itemSet.getSupportSize()).append('|');
+		Declaration declaration = item.getFirstDeclaration();
+		if (declaration != null) {
+			key.append(declaration.isImportant() ? '!' : ' ');
+			key.append(declaration.getProperty());
+		}
+		return key.toString();
+	}
+
+	private boolean hasSameDeclarations(ItemSet is, ItemSet itemSet) {
+		if (is.size() == itemSet.size() && is.getSupportSize() == itemSet.getSupportSize()) {
+			for (Item i : is) {
+				boolean itemFound = false;
+				for (Item j : itemSet) {
+					if (i.getFirstDeclaration().declarationEquals(j.getFirstDeclaration())) {
+						itemFound = true;
+						break;
+					}
+				}
+				if (!itemFound) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isApplicable(ItemSet itemSet) {
+		Boolean applicable = applicability.get(itemSet);
+		if (applicable == null) {
+			applicable = itemSet.isApplicable();
+			applicability.put(itemSet, applicable);
+		}
+		return applicable;
+	}
+
+	/*
+	 * True if the candidate at position i should be taken before the one at position j
+	 */
+	private boolean comesBefore(int i, int j) {
+		if (impacts[i] != impacts[j])
+			return impacts[i] > impacts[j];
+		return sequences[i] < sequences[j];
+	}
+
+	private void siftUp(int position) {
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (!comesBefore(position, parent))
+				break;
+			swap(position, parent);
+			position = parent;
+		}
+	}
+
+	private void siftDown(int position) {
+		while (true) {
+			int first = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+			if (left < size && comesBefore(left, first))
+				first = left;
+			if (right < size && comesBefore(right, first))
+				first = right;
+			if (first == position)
+				break;
+			swap(position, first);
+			position = first;
+		}
+	}
+
+	private void swap(int i, int j) {
+		ItemSet itemSet = heap[i];
+		int impact = impacts[i];
+		int sequence = sequences[i];
+		move(j, i);
+		heap[j] = itemSet;
+		impacts[j] = impact;
+		sequences[j] = sequence;
+		positions.put(itemSet, j);
+	}
+
+	private void move(int from, int to) {
+		heap[to] = heap[from];
+		impacts[to] = impacts[from];
+		sequences[to] = sequences[from];
+		positions.put(heap[to], to);
+	}
+
+}
@@ -1,18 +1,26 @@
 package ca.concordia.cssanalyser.refactoring;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.w3c.dom.Document;
 
 import ca.concordia.cssanalyser.analyser.duplication.DuplicationDetector;
-import ca.concordia.cssanalyser.analyser.duplication.items.Item;
 import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
 import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.app.ConcurrencyHelper;
 import ca.concordia.cssanalyser.app.FileLogger;
 import ca.concordia.cssanalyser.cssmodel.StyleSheet;
 import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
@@ -26,6 +34,7 @@ import ca.concordia.cssanalyser.parser.CSSParserFactory.CSSParserType;
 import ca.concordia.cssanalyser.refactoring.dependencies.CSSDependencyDetector;
 import ca.concordia.cssanalyser.refactoring.dependencies.CSSDependencyDifferenceList;
 import ca.concordia.cssanalyser.refactoring.dependencies.CSSValueOverridingDependencyList;
+import ca.concordia.cssanalyser.refactoring.dependencies.IncrementalCSSDependencyDetector;
 
 
 
@@ -34,6 +43,118 @@ public class RefactorDuplicationsToGroupingSelector {
 	Logger LOGGER = FileLogger.getLogger(RefactorDuplicationsToGroupingSelector.class);
 	
 	private StyleSheet originalStyleSheet;
+	private boolean useIncrementalDependencyDetection = false;
+	private boolean parseRefactoredStyleSheets = false;
+	private int numberOfSpeculativeEvaluations = 1;
+	
+	/*
+	 * The result of evaluating a grouping refactoring on the current style sheet, 
+	 * without changing the current style sheet or its dependencies.
+	 * Everything that applying the refactoring needs is kept, so a feasible refactoring is not evaluated again
+	 */
+	private static class SpeculativeEvaluation {
+		private final ItemSet itemSet;
+		private final CandidateKey key;
+		private final StyleSheet refactoredStyleSheet;
+		private StyleSheet refactoredStyleSheetWithLocationInfo;
+		private IncrementalCSSDependencyDetector.Update dependencyUpdate;
+		private boolean feasible;
+		// Only if there are non-missing differences in the dependencies
+		private CSSDependencyDifferenceList differences;
+		private StyleSheet reorderedStyleSheet;
+		
+		public SpeculativeEvaluation(ItemSet itemSet, CandidateKey key, StyleSheet refactoredStyleSheet) {
+			this.itemSet = itemSet;
+			this.key = key;
+			this.refactoredStyleSheet = refactoredStyleSheet;
+		}
+	}
+	
+	/*
+	 * Identifies a grouping refactoring by the positions of the selectors in its support, 
+	 * the positions of the declarations it removes (ignoring the virtual shorthand declarations), 
+	 * and the declarations of its grouping selector, 
+	 * so the same refactoring can be found among the ItemSets mined again from the next style sheet
+	 */
+	private static class CandidateKey {
+		private final int[] selectorPositions;
+		private final String declarations;
+		
+		private CandidateKey(int[] selectorPositions, String declarations) {
+			this.selectorPositions = selectorPositions;
+			this.declarations = declarations;
+		}
+		
+		public CandidateKey(ItemSet itemSet) {
+			List<Integer> supportPositions = new ArrayList<>();
+			for (Selector selector : itemSet.getSupport())
+				supportPositions.add(selector.getSelectorNumber());
+			Collections.sort(supportPositions);
+			List<int[]> declarationPositions = new ArrayList<>();
+			for (Declaration declaration : itemSet.getDeclarationsToBeRemoved())
+				declarationPositions.add(new int[] { declaration.getSelector().getSelectorNumber(), getDeclarationPosition(declaration) });
+			Collections.sort(declarationPositions, new Comparator<int[]>() {
+				@Override
+				public int compare(int[] o1, int[] o2) {
+					return o1[0] != o2[0] ? Integer.compare(o1[0], o2[0]) : Integer.compare(o1[1], o2[1]);
+				}
+			});
+			List<String> groupingSelectorDeclarations = new ArrayList<>();
+			for (Declaration declaration : itemSet.getGroupingSelector().getDeclarations())
+				groupingSelectorDeclarations.add(declaration.toString());
+			Collections.sort(groupingSelectorDeclarations);
+			
+			selectorPositions = new int[supportPositions.size() + declarationPositions.size()];
+			StringBuilder declarations = new StringBuilder();
+			int i = 0;
+			for (int position : supportPositions)
+				selectorPositions[i++] = position;
+			for (int[] position : declarationPositions) {
+				selectorPositions[i++] = position[0];
+				declarations.append(position[1]).append(",");
+			}
+			this.declarations = declarations.append(groupingSelectorDeclarations).toString();
+		}
+		
+		private static int getDeclarationPosition(Declaration declaration) {
+			int position = 0;
+			for (Declaration d : declaration.getSelector().getDeclarations()) {
+				if (d == declaration)
+					return position;
+				if (!(d instanceof ShorthandDeclaration && ((ShorthandDeclaration)d).isVirtual()))
+					position++;
+			}
+			return -1;
+		}
+		
+		/*
+		 * Returns the key of the same refactoring after the selectors are moved to the given positions,
+		 * or null if one of its selectors is removed or changed (i.e., it is not in the given map)
+		 */
+		public CandidateKey getKeyWithNewPositions(Map<Integer, Integer> newPositions) {
+			int[] positions = new int[selectorPositions.length];
+			for (int i = 0; i < positions.length; i++) {
+				Integer newPosition = newPositions.get(selectorPositions[i]);
+				if (newPosition == null)
+					return null;
+				positions[i] = newPosition;
+			}
+			return new CandidateKey(positions, declarations);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CandidateKey))
+				return false;
+			CandidateKey other = (CandidateKey)obj;
+			return Arrays.equals(selectorPositions, other.selectorPositions) && declarations.equals(other.declarations);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Arrays.hashCode(selectorPositions) + declarations.hashCode();
+		}
+	}
 	
 	public RefactorDuplicationsToGroupingSelector(StyleSheet styleSheet) {
 		originalStyleSheet = styleSheet;
@@ -43,9 +164,54 @@ public class RefactorDuplicationsToGroupingSelector {
 		return this.originalStyleSheet;
 	}
 
+	/**
+	 * If set, the dependencies of the refactored style sheets on the DOM are updated incrementally 
+	 * after every grouping refactoring (see {@link IncrementalCSSDependencyDetector}):
+	 * the selectors are matched against the DOM only once, and in every round only the DOM nodes
+	 * which are selected by the new grouping selector and the selectors in its support are visited again.
+	 * Has no effect when the DOM is not given.
+	 * @param useIncrementalDependencyDetection
+	 */
+	public void setUseIncrementalDependencyDetection(boolean useIncrementalDependencyDetection) {
+		this.useIncrementalDependencyDetection = useIncrementalDependencyDetection;
+	}
+
+	/**
+	 * If set, in every round the refactored style sheet is parsed again from the intermediate file
+	 * to which it is written, in order to update the location info of its selectors and declarations.
+	 * Otherwise (the default), the location info is updated in memory, 
+	 * see {@link StyleSheet#getCopyWithLocationInfoUpdated()}.
+	 * Has no effect when the intermediate files are not written.
+	 * @param parseRefactoredStyleSheets
+	 */
+	public void setParseRefactoredStyleSheets(boolean parseRefactoredStyleSheets) {
+		this.parseRefactoredStyleSheets = parseRefactoredStyleSheets;
+	}
+
+	/**
+	 * If set to more than one, the grouping refactorings with the most impact are evaluated
+	 * this many at a time, in parallel, each on its own copy of the current style sheet.
+	 * The refactorings are then taken in the order of their impact, as before: 
+	 * the infeasible ones are skipped without being evaluated again, and the first feasible one is applied
+	 * using its evaluation.
+	 * The infeasible evaluations are kept for the next rounds as long as the applied refactorings do not
+	 * re-order the selectors, and visit none of the DOM nodes and change none of the dependencies that the 
+	 * evaluated refactoring does (see {@link IncrementalCSSDependencyDetector.Update#isIndependentOf(IncrementalCSSDependencyDetector.Update)}).
+	 * Such a refactoring stays infeasible, since the dependencies of the style sheet that it creates 
+	 * only change where the refactoring does not change them.
+	 * The refactorings are applied in the same order as when they are evaluated one by one.
+	 * <br />
+	 * Has no effect when the incremental dependency detection is not used (see {@link #setUseIncrementalDependencyDetection(boolean)}),
+	 * or when the refactored style sheets are parsed again (see {@link #setParseRefactoredStyleSheets(boolean)}).
+	 * @param numberOfSpeculativeEvaluations
+	 */
+	public void setNumberOfSpeculativeEvaluations(int numberOfSpeculativeEvaluations) {
+		this.numberOfSpeculativeEvaluations = numberOfSpeculativeEvaluations;
+	}
+
 	/**
 	 * Applies one grouping refactoring for the given ItemSet on the given style sheet.
-	 * Doesn't touch the original given stylesheet
+	 * Doesn't touch the original given stylesheet.
 	 * @param styleSheetToBeRefactored
 	 * @param itemset
 	 * @return
@@ -131,140 +297,169 @@ public class RefactorDuplicationsToGroupingSelector {
 		
 		IOHelper.writeStringToFile(originalDependencies.toString(), folderName + "/orderDependencies.txt");
 		
-		TreeSet<ItemSet> itemSetsTreeSet = new TreeSet<>(new Comparator<ItemSet>() {
-			@Override
-			public int compare(ItemSet o1, ItemSet o2) {
-				if (o1 == o2)
-					return 0;
-				
-				int i = o1.getGroupingRefactoringImpact();
-				int j = o2.getGroupingRefactoringImpact();
-
-				if (i != j)
-					return -Integer.compare(i, j);
-				return 1;
-			}
-
-		});
+		IncrementalCSSDependencyDetector incrementalDependencyDetector = null;
+		if (useIncrementalDependencyDetection && dom != null)
+			incrementalDependencyDetector = new IncrementalCSSDependencyDetector(stylesheetToBeRefactored, dom);
 		
-		List<ItemSet> itemSetsSortedList = null;
+		GroupingRefactoringScheduler scheduler = new GroupingRefactoringScheduler();
 		
-		List<ItemSet> listOfInfeasibleRefactorings = new ArrayList<>();
+		ExecutorService executor = null;
+		if (numberOfSpeculativeEvaluations > 1 && incrementalDependencyDetector != null && !(parseRefactoredStyleSheets && writeIntermediateFiles))
+			executor = Executors.newFixedThreadPool(numberOfSpeculativeEvaluations);
+		List<SpeculativeEvaluation> speculativeEvaluations = new ArrayList<>();
+		Map<CandidateKey, SpeculativeEvaluation> keptEvaluations = new HashMap<>();
+		SpeculativeEvaluation appliedEvaluation = null;
+		StyleSheet previousStyleSheet = null;
 		
 		boolean firstRun = true;
 		int numberOfPositiveRefactorings = 0; 
 		int refactoringRound = 0;
 		boolean refactoringWasPossible = true;
 		
-		while (true) {
-
-			if (refactoringWasPossible) {
-				refactoringRound++;
-				itemSetsTreeSet.clear();
-				for (ItemSetList isl : fpgrowthResults) {
-					for (ItemSet is : isl) {
-						if (is.getGroupingRefactoringImpact() > 0) {
-							if (is.isApplicable())
-								itemSetsTreeSet.add(is);
-						}
-					}
-				}
-
+		try {
+			while (true) {
 
-				itemSetsSortedList = new ArrayList<>(itemSetsTreeSet);
+				if (refactoringWasPossible) {
+					refactoringRound++;
+					// All the ItemSets are mined again after each applied refactoring
+					scheduler.setCandidates(fpgrowthResults);
+					if (appliedEvaluation != null)
+						keepIndependentEvaluations(speculativeEvaluations, keptEvaluations, appliedEvaluation, previousStyleSheet);
+					speculativeEvaluations.clear();
 				
-				if (firstRun) {
-					firstRun = false;
-					numberOfPositiveRefactorings = itemSetsSortedList.size();
+					if (firstRun) {
+						firstRun = false;
+						numberOfPositiveRefactorings = scheduler.getNumberOfApplicableCandidates();
+					}
 				}
-			}
 			
-			// Find a feasible refactoring opportunity with max impact 
-			ItemSet itemSetWithMaxImpact = null;
-			do {
-				if (itemSetsSortedList.size() == 0) {
-					itemSetWithMaxImpact = null;
-					break;
+				// Find a feasible refactoring opportunity with max impact 
+				ItemSet itemSetWithMaxImpact;
+				SpeculativeEvaluation speculativeEvaluation = null;
+				if (executor != null) {
+					speculativeEvaluation = getNextSpeculativeEvaluation(scheduler, speculativeEvaluations, keptEvaluations, executor,
+							stylesheetToBeRefactored, originalDependencies, incrementalDependencyDetector);
+					itemSetWithMaxImpact = speculativeEvaluation == null ? null : speculativeEvaluation.itemSet;
+				} else {
+					itemSetWithMaxImpact = scheduler.pollNextCandidate();
 				}
-				itemSetWithMaxImpact = itemSetsSortedList.get(0);
-				itemSetsSortedList.remove(0);
-			} while (containsItemSet(listOfInfeasibleRefactorings, itemSetWithMaxImpact));
 			
-			if (itemSetWithMaxImpact == null)
-				// No more refactoring is possible to reduce the size
-				break;
+				if (itemSetWithMaxImpact == null)
+					// No more refactoring is possible to reduce the size
+					break;
 			
 
-			LOGGER.info(String.format("Applying round %s of refactoring on %s to reduce %s characters.", 
-					refactoringRound, stylesheetToBeRefactored.getFilePath(), itemSetWithMaxImpact.getGroupingRefactoringImpact()));
+				LOGGER.info(String.format("Applying round %s of refactoring on %s to reduce %s characters.", 
+						refactoringRound, stylesheetToBeRefactored.getFilePath(), itemSetWithMaxImpact.getGroupingRefactoringImpact()));
 			
-			StyleSheet newStyleSheet = groupingRefactoring(stylesheetToBeRefactored, itemSetWithMaxImpact);
+				if (speculativeEvaluation != null && !speculativeEvaluation.feasible) {
+					// Already evaluated, the same as below
+					refactoringWasPossible = false;
+					scheduler.markInfeasible(itemSetWithMaxImpact);
+					if (writeIntermediateFiles)
+						IOHelper.writeStringToFile(speculativeEvaluation.refactoredStyleSheet.toString(), folderName + "/refactored" + refactoringRound + ".css");
+					IOHelper.writeStringToFile(speculativeEvaluation.differences.toString(), folderName + "/dependency-differences" + refactoringRound + ".txt");
+					LOGGER.info("Reordering was not feasible, applying the next refactoring opportunity at round " + refactoringRound);
+					continue;
+				}
+				// A feasible refactoring is applied in the same way, whether it is evaluated before or not.
+				// The evaluation has the refactored style sheet, its dependencies, and the re-ordered style sheet (if needed).
 			
-			if (writeIntermediateFiles)
-				IOHelper.writeStringToFile(newStyleSheet.toString(), folderName + "/refactored" + refactoringRound + ".css");
-
-			CSSParser parser = CSSParserFactory.getCSSParser(CSSParserType.LESS);
-			try {
-				newStyleSheet = parser.parseExternalCSS(folderName + "/refactored" + refactoringRound + ".css");
-			} catch (Exception ex) {
-				ex.printStackTrace();
-			}
+				String refactoredFilePath = folderName + "/refactored" + refactoringRound + ".css";
+				StyleSheet newStyleSheet;
+				CSSValueOverridingDependencyList refactoredDependencies;
+				// Selectors which are changed by the refactoring.
+				// The new grouping selector selects the same nodes as these selectors. 
+				List<Selector> changedSelectors = new ArrayList<>();
+				if (speculativeEvaluation != null) {
+					if (writeIntermediateFiles)
+						IOHelper.writeStringToFile(speculativeEvaluation.refactoredStyleSheet.toString(), refactoredFilePath);
+					newStyleSheet = speculativeEvaluation.refactoredStyleSheetWithLocationInfo;
+					refactoredDependencies = incrementalDependencyDetector.apply(speculativeEvaluation.dependencyUpdate);
+				} else {
+					newStyleSheet = groupingRefactoring(stylesheetToBeRefactored, itemSetWithMaxImpact);
+					if (writeIntermediateFiles)
+						IOHelper.writeStringToFile(newStyleSheet.toString(), refactoredFilePath);
 
-			CSSValueOverridingDependencyList refactoredDependencies = newStyleSheet.getValueOverridingDependencies(dom);
+					newStyleSheet = getStyleSheetWithLocationInfo(newStyleSheet, writeIntermediateFiles ? refactoredFilePath : null);
 
-			LOGGER.info("Checking differences in the dependencies");
-			CSSDependencyDifferenceList differences = originalDependencies.getDifferencesWith(refactoredDependencies);
+					if (incrementalDependencyDetector != null) {
+						for (Selector selector : itemSetWithMaxImpact.getSupport())
+							changedSelectors.add(selector);
+						refactoredDependencies = incrementalDependencyDetector.update(newStyleSheet, changedSelectors);
+					} else {
+						refactoredDependencies = newStyleSheet.getValueOverridingDependencies(dom);
+					}
+				}
 
-			if (differences.size() > 0 && !differences.allMissing()) {
+				LOGGER.info("Checking differences in the dependencies");
+				// Missing dependencies are fine, only the added (or reversed) ones should be checked
+				if (speculativeEvaluation != null ? speculativeEvaluation.differences != null : originalDependencies.hasNonMissingDifferencesWith(refactoredDependencies)) {
 				
-				IOHelper.writeStringToFile(differences.toString(), folderName + "/dependency-differences" + refactoringRound + ".txt");
+					CSSDependencyDifferenceList differences = speculativeEvaluation != null ? speculativeEvaluation.differences : originalDependencies.getDifferencesWith(refactoredDependencies);
+					IOHelper.writeStringToFile(differences.toString(), folderName + "/dependency-differences" + refactoringRound + ".txt");
 				
-				LOGGER.info("Reordering needed at round " + refactoringRound);
+					LOGGER.info("Reordering needed at round " + refactoringRound);
 
-				RefactorToSatisfyDependencies r = new RefactorToSatisfyDependencies();
-				StyleSheet refactoredAndOrdered = r.refactorToSatisfyOverridingDependencies(newStyleSheet, originalDependencies); 
+					StyleSheet refactoredAndOrdered;
+					if (speculativeEvaluation != null) {
+						refactoredAndOrdered = speculativeEvaluation.reorderedStyleSheet;
+					} else {
+						RefactorToSatisfyDependencies r = new RefactorToSatisfyDependencies();
+						refactoredAndOrdered = r.refactorToSatisfyOverridingDependencies(newStyleSheet, originalDependencies); 
+					}
 
-				if (refactoredAndOrdered == null) { // It was not possible to satisfy constraints 
+					if (refactoredAndOrdered == null) { // It was not possible to satisfy constraints 
 
-					refactoringWasPossible = false;
-					listOfInfeasibleRefactorings.add(itemSetWithMaxImpact);
-					LOGGER.info("Reordering was not feasible, applying the next refactoring opportunity at round " + refactoringRound);
+						refactoringWasPossible = false;
+						scheduler.markInfeasible(itemSetWithMaxImpact);
+						if (incrementalDependencyDetector != null) // Go back to the dependencies of the style sheet before this refactoring 
+							incrementalDependencyDetector.update(stylesheetToBeRefactored, changedSelectors);
+						LOGGER.info("Reordering was not feasible, applying the next refactoring opportunity at round " + refactoringRound);
 					
-				} else {
+					} else {
 
-					refactoringWasPossible = true;
+						refactoringWasPossible = true;
 
-					CSSDependencyDetector dependencyDetector2 = new CSSDependencyDetector(refactoredAndOrdered, dom); 
-					
-					if (writeIntermediateFiles)
-						IOHelper.writeStringToFile(refactoredAndOrdered.toString(), folderName + "/refactored-reordered" + refactoringRound + ".css");
+						String reorderedFilePath = folderName + "/refactored-reordered" + refactoringRound + ".css";
+						if (writeIntermediateFiles)
+							IOHelper.writeStringToFile(refactoredAndOrdered.toString(), reorderedFilePath);
 
-					CSSValueOverridingDependencyList dependenciesReordered = dependencyDetector2.findOverridingDependancies();
-					differences = originalDependencies.getDifferencesWith(dependenciesReordered);
+						CSSValueOverridingDependencyList dependenciesReordered;
+						if (incrementalDependencyDetector != null) {
+							// The order of the selectors is changed, all the nodes should be visited again
+							dependenciesReordered = incrementalDependencyDetector.recompute(refactoredAndOrdered);
+						} else {
+							CSSDependencyDetector dependencyDetector2 = new CSSDependencyDetector(refactoredAndOrdered, dom); 
+							dependenciesReordered = dependencyDetector2.findOverridingDependancies();
+						}
+						differences = originalDependencies.getDifferencesWith(dependenciesReordered);
 					
-					if (differences.size() > 0) {
-						LOGGER.warn("Differences in dependencies after reordering " + refactoringRound + "\n");  
-						LOGGER.warn(differences.toString() + "\n");	
-						IOHelper.writeStringToFile(differences.toString(), folderName + "/dependency-differences-after-reordering" + refactoringRound + ".txt");
-					}
+						if (differences.size() > 0) {
+							LOGGER.warn("Differences in dependencies after reordering " + refactoringRound + "\n");  
+							LOGGER.warn(differences.toString() + "\n");	
+							IOHelper.writeStringToFile(differences.toString(), folderName + "/dependency-differences-after-reordering" + refactoringRound + ".txt");
+						}
 					
-					try {
-						newStyleSheet = parser.parseExternalCSS(folderName + "/refactored-reordered" + refactoringRound + ".css");
-					} catch (Exception ex) {
-						ex.printStackTrace();
+						newStyleSheet = getStyleSheetWithLocationInfo(refactoredAndOrdered, writeIntermediateFiles ? reorderedFilePath : null);
 					}
+				} else { // If there were not difference between dependencies after grouping
+					refactoringWasPossible = true;
 				}
-			} else { // If there were not difference between dependencies after grouping
-				refactoringWasPossible = true;
-			}
 			
-			if (refactoringWasPossible) {
-				stylesheetToBeRefactored = newStyleSheet;
-				DuplicationDetector duplicationFinderRefacored = new DuplicationDetector(stylesheetToBeRefactored);
-				duplicationFinderRefacored.findDuplications();
-				fpgrowthResults = duplicationFinderRefacored.fpGrowth(MIN_SUPPORT, false);
-				duplicationFinderRefacored = null;
+				if (refactoringWasPossible) {
+					appliedEvaluation = speculativeEvaluation;
+					previousStyleSheet = stylesheetToBeRefactored;
+					stylesheetToBeRefactored = newStyleSheet;
+					DuplicationDetector duplicationFinderRefacored = new DuplicationDetector(stylesheetToBeRefactored);
+					duplicationFinderRefacored.findDuplications();
+					fpgrowthResults = duplicationFinderRefacored.fpGrowth(MIN_SUPPORT, false);
+					duplicationFinderRefacored = null;
+				}
 			}
+		} finally {
+			if (executor != null)
+				executor.shutdownNow();
 		}
 		
 		
@@ -273,29 +468,142 @@ public class RefactorDuplicationsToGroupingSelector {
 		
 	}
 	
-	private boolean containsItemSet(List<ItemSet> listOfItemSetsToCheck, ItemSet itemSet) {
-		for (ItemSet is : listOfItemSetsToCheck) {
-			boolean itemSetFound = true;
-			if (is.size() == itemSet.size() && is.getSupportSize() == itemSet.getSupportSize()) {
-				for (Item i : is) {
-					boolean itemFound = false;
-					for (Item j : itemSet) {
-						if (i.getFirstDeclaration().declarationEquals(j.getFirstDeclaration())) {
-							itemFound = true;
-							break;
-						}
+	/*
+	 * Returns the next candidate (i.e., the one that the scheduler would give), evaluated.
+	 * If there are no evaluated candidates left, the next candidates are evaluated in parallel,
+	 * except the ones whose evaluations are kept from the previous rounds.
+	 * Returns null if there are no more candidates.
+	 */
+	private SpeculativeEvaluation getNextSpeculativeEvaluation(GroupingRefactoringScheduler scheduler, List<SpeculativeEvaluation> speculativeEvaluations,
+			Map<CandidateKey, SpeculativeEvaluation> keptEvaluations, ExecutorService executor, StyleSheet styleSheet, 
+			CSSValueOverridingDependencyList originalDependencies, IncrementalCSSDependencyDetector incrementalDependencyDetector) {
+		while (true) {
+			if (speculativeEvaluations.isEmpty()) {
+				List<SpeculativeEvaluation> candidates = new ArrayList<>();
+				int numberOfCandidatesToEvaluate = 0;
+				ItemSet candidate;
+				while (numberOfCandidatesToEvaluate < numberOfSpeculativeEvaluations && (candidate = scheduler.pollNextCandidate()) != null) {
+					CandidateKey key = new CandidateKey(candidate);
+					SpeculativeEvaluation keptEvaluation = keptEvaluations.remove(key);
+					SpeculativeEvaluation speculativeEvaluation = new SpeculativeEvaluation(candidate, key, groupingRefactoring(styleSheet, candidate));
+					if (keptEvaluation != null) {
+						// Infeasible, the differences are the ones found when it was evaluated
+						speculativeEvaluation.dependencyUpdate = keptEvaluation.dependencyUpdate;
+						speculativeEvaluation.differences = keptEvaluation.differences;
+					} else {
+						numberOfCandidatesToEvaluate++;
 					}
-					if (!itemFound) {
-						itemSetFound = false;
-						break;
+					candidates.add(speculativeEvaluation);
+				}
+				if (candidates.isEmpty())
+					return null;
+				evaluateInParallel(executor, candidates, originalDependencies, incrementalDependencyDetector);
+				speculativeEvaluations.addAll(candidates);
+			}
+			SpeculativeEvaluation speculativeEvaluation = speculativeEvaluations.remove(0);
+			// An ItemSet equal to this one might have been found infeasible after this one was taken from the scheduler
+			if (!scheduler.isInfeasible(speculativeEvaluation.itemSet))
+				return speculativeEvaluation;
+		}
+	}
+
+	/*
+	 * Evaluates the given grouping refactorings (whose refactored style sheets are already created) in parallel, 
+	 * the same way as refactorGroupingOpportunities() does, except the ones whose evaluations are kept from the previous rounds.
+	 */
+	private void evaluateInParallel(ExecutorService executor, List<SpeculativeEvaluation> speculativeEvaluations,
+			final CSSValueOverridingDependencyList originalDependencies, final IncrementalCSSDependencyDetector incrementalDependencyDetector) {
+		List<Future<SpeculativeEvaluation>> futures = new ArrayList<>();
+		for (final SpeculativeEvaluation speculativeEvaluation : speculativeEvaluations) {
+			if (speculativeEvaluation.dependencyUpdate != null)
+				continue;
+			final List<Selector> changedSelectors = new ArrayList<>();
+			for (Selector selector : speculativeEvaluation.itemSet.getSupport())
+				changedSelectors.add(selector);
+			futures.add(executor.submit(new Callable<SpeculativeEvaluation>() {
+				@Override
+				public SpeculativeEvaluation call() {
+					StyleSheet refactoredStyleSheet = speculativeEvaluation.refactoredStyleSheet.getCopyWithLocationInfoUpdated();
+					speculativeEvaluation.refactoredStyleSheetWithLocationInfo = refactoredStyleSheet;
+					speculativeEvaluation.dependencyUpdate = incrementalDependencyDetector.getUpdate(refactoredStyleSheet, changedSelectors);
+					CSSValueOverridingDependencyList refactoredDependencies = speculativeEvaluation.dependencyUpdate.getOverridingDependencies();
+					if (originalDependencies.hasNonMissingDifferencesWith(refactoredDependencies)) {
+						speculativeEvaluation.differences = originalDependencies.getDifferencesWith(refactoredDependencies);
+						RefactorToSatisfyDependencies r = new RefactorToSatisfyDependencies();
+						speculativeEvaluation.reorderedStyleSheet = r.refactorToSatisfyOverridingDependencies(refactoredStyleSheet, originalDependencies);
+						speculativeEvaluation.feasible = speculativeEvaluation.reorderedStyleSheet != null;
+					} else {
+						speculativeEvaluation.feasible = true;
 					}
+					return speculativeEvaluation;
 				}
-				if (itemSetFound) {
-					return true;
+			}));
+		}
+		for (Future<SpeculativeEvaluation> future : futures)
+			ConcurrencyHelper.getResult(future);
+	}
+
+	/*
+	 * Keeps the infeasible evaluations which are still valid after the given evaluated refactoring 
+	 * is applied on the given style sheet, with the keys of their refactorings in the new style sheet.
+	 * The rest of the evaluations (including the feasible ones, whose style sheets do not have the applied refactoring) are dropped.
+	 */
+	private void keepIndependentEvaluations(List<SpeculativeEvaluation> speculativeEvaluations, Map<CandidateKey, SpeculativeEvaluation> keptEvaluations,
+			SpeculativeEvaluation appliedEvaluation, StyleSheet styleSheet) {
+		List<SpeculativeEvaluation> evaluations = new ArrayList<>(speculativeEvaluations);
+		evaluations.addAll(keptEvaluations.values());
+		keptEvaluations.clear();
+		if (appliedEvaluation.reorderedStyleSheet != null)
+			return;
+		
+		// The selectors which are not emptied by the refactoring keep their order. The changed ones are left out
+		Set<Declaration> declarationsToBeRemoved = appliedEvaluation.itemSet.getDeclarationsToBeRemoved();
+		Set<Selector> support = new HashSet<>();
+		for (Selector selector : appliedEvaluation.itemSet.getSupport())
+			support.add(selector);
+		Map<Integer, Integer> newPositions = new HashMap<>();
+		int newPosition = 1;
+		for (Selector selector : styleSheet.getAllSelectors()) {
+			for (Declaration declaration : selector.getDeclarations()) {
+				if (!(declaration instanceof ShorthandDeclaration && ((ShorthandDeclaration)declaration).isVirtual()) && 
+						!declarationsToBeRemoved.contains(declaration)) {
+					if (!support.contains(selector))
+						newPositions.put(selector.getSelectorNumber(), newPosition);
+					newPosition++;
+					break;
 				}
 			}
 		}
-		return false;
+		
+		for (SpeculativeEvaluation evaluation : evaluations) {
+			if (evaluation.feasible || !evaluation.dependencyUpdate.isIndependentOf(appliedEvaluation.dependencyUpdate))
+				continue;
+			CandidateKey key = evaluation.key.getKeyWithNewPositions(newPositions);
+			if (key != null) {
+				SpeculativeEvaluation keptEvaluation = new SpeculativeEvaluation(evaluation.itemSet, key, null);
+				keptEvaluation.dependencyUpdate = evaluation.dependencyUpdate;
+				keptEvaluation.dependencyUpdate.discardDependencies();
+				keptEvaluation.differences = evaluation.differences;
+				keptEvaluations.put(key, keptEvaluation);
+			}
+		}
+	}
+
+	/*
+	 * Returns the given refactored style sheet with the location info of the selectors and declarations updated,
+	 * the same as if the style sheet is parsed from the given file to which it is written (if any).
+	 * The file is parsed only if parseRefactoredStyleSheets is set.
+	 */
+	private StyleSheet getStyleSheetWithLocationInfo(StyleSheet styleSheet, String writtenFilePath) {
+		if (parseRefactoredStyleSheets && writtenFilePath != null) {
+			CSSParser parser = CSSParserFactory.getCSSParser(CSSParserType.LESS);
+			try {
+				return parser.parseExternalCSS(writtenFilePath);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+		return styleSheet.getCopyWithLocationInfoUpdated();
 	}
 	
 }
@@ -1,10 +1,13 @@
 package ca.concordia.cssanalyser.refactoring;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import org.chocosolver.solver.Solver;
@@ -21,8 +24,32 @@ import ca.concordia.cssanalyser.refactoring.dependencies.CSSInterSelectorValueOv
 import ca.concordia.cssanalyser.refactoring.dependencies.CSSValueOverridingDependency;
 import ca.concordia.cssanalyser.refactoring.dependencies.CSSValueOverridingDependencyList;
 
+/**
+ * Re-orders the selectors of a style sheet so that the given value overriding dependencies hold.
+ * <br />
+ * The cascading dependencies, together with the order of the selectors which should not move,
+ * are precedence constraints (i.e., a partial order on the selectors). By default, the new order
+ * is a topological sort of these constraints which keeps the original order as much as possible;
+ * if the constraints have a cycle, re-ordering is not possible.
+ * The constraint solver model can still be used instead (see {@link #setUseConstraintSolver(boolean)}),
+ * e.g., when constraints other than precedences are to be added.
+ * 
+ * @author Davood Mazinanian
+ *
+ */
 public class RefactorToSatisfyDependencies {
 	
+	private boolean useConstraintSolver = false;
+	
+	/**
+	 * If set, the Choco constraint solver is used for finding the new order of the selectors,
+	 * instead of sorting them topologically.
+	 * @param useConstraintSolver
+	 */
+	public void setUseConstraintSolver(boolean useConstraintSolver) {
+		this.useConstraintSolver = useConstraintSolver;
+	}
+	
 	/**
 	 * Refactores a stylesheet (that possibly breaks some dependencies) to satisfy the given dependencies,
 	 * by re-ordering selectors.
@@ -46,7 +73,7 @@ public class RefactorToSatisfyDependencies {
 	 * which was placed 3rd in the style sheet is 
 	 * placed in position 1 of the new style sheet and so forth.
 	 * This can be used to track changes in the UI, etc.
-	 * @return
+	 * @return The re-ordered style sheet, or null if it is not possible to satisfy the dependencies
 	 */
 	public StyleSheet refactorToSatisfyOverridingDependencies(StyleSheet styleSheet, CSSValueOverridingDependencyList listOfDependenciesToBeHeld, List<Integer> newOrdering) {
 		
@@ -61,6 +88,175 @@ public class RefactorToSatisfyDependencies {
 		Map<CSSValueOverridingDependency, Selector[]> dependencyNodeToRealSelectorsMap 
 				= getDependencyToSelectorsMap(styleSheet, listOfDependenciesToBeHeld);
 		
+		List<Selector> selectors =  new  ArrayList<>();
+		for (Selector s : styleSheet.getAllSelectors())
+			selectors.add(s);
+		
+		List<Selector[]> precedences = getPrecedences(listOfDependenciesToBeHeld, dependencyNodeToRealSelectorsMap);
+		
+		// No need to look for an order if the last selector cannot be placed anywhere
+		if (!hasPositionForLastSelector(selectors, precedences))
+			return null;
+		
+		List<Selector> orderedSelectors;
+		if (useConstraintSolver)
+			orderedSelectors = getOrderUsingConstraintSolver(selectors, precedences);
+		else
+			orderedSelectors = getOrderUsingTopologicalSort(selectors, precedences);
+		
+		if (orderedSelectors == null) {
+			return null;
+			// It is better to throw something at least. I know.
+		}
+		
+		StyleSheet refactoredStyleSheet = new StyleSheet();
+		
+		// Put the selectors in the style sheet in order
+		for (Selector selector : orderedSelectors) {
+			newOrdering.add(selector.getSelectorNumber());
+			refactoredStyleSheet.addSelector(selector);
+		}
+	
+		return refactoredStyleSheet;
+		
+	}
+	
+	/**
+	 * Checks whether there is a position for the last selector (i.e., the newly added selector),
+	 * before which and after which the selectors that the given precedences require are placed,
+	 * while the rest of the selectors keep their order.
+	 * The precedences between the other selectors are not checked, so if this method returns false,
+	 * re-ordering is not possible (the precedences have a cycle); but if it returns true, 
+	 * re-ordering might still be impossible.
+	 * This is linear in the number of precedences, and avoids sorting the selectors 
+	 * (or running the constraint solver) for most of the infeasible refactorings.
+	 * @param selectors Selectors in the original order
+	 * @param precedences
+	 * @return
+	 */
+	boolean hasPositionForLastSelector(List<Selector> selectors, List<Selector[]> precedences) {
+
+		if (selectors.isEmpty())
+			return true;
+		Selector lastSelector = selectors.get(selectors.size() - 1);
+
+		Map<Selector, Integer> positions = new HashMap<>();
+		for (int i = 0; i < selectors.size(); i++)
+			positions.put(selectors.get(i), i);
+
+		// The last selector should be placed after the selector in the position lowerBound, and before the one in the position upperBound
+		int lowerBound = -1;
+		int upperBound = selectors.size() - 1;
+		for (Selector[] precedence : precedences) {
+			if (precedence[0] == precedence[1])
+				continue;
+			if (precedence[1] == lastSelector) {
+				Integer before = positions.get(precedence[0]);
+				if (before != null)
+					lowerBound = Math.max(lowerBound, before);
+			} else if (precedence[0] == lastSelector) {
+				Integer after = positions.get(precedence[1]);
+				if (after != null)
+					upperBound = Math.min(upperBound, after);
+			}
+		}
+
+		return lowerBound < upperBound;
+	}
+
+	/*
+	 * Returns the pairs of selectors for the cascading dependencies:
+	 * the first selector of each pair should come before the second one.
+	 */
+	private List<Selector[]> getPrecedences(CSSValueOverridingDependencyList listOfDependenciesToBeHeld,
+			Map<CSSValueOverridingDependency, Selector[]> dependencyNodeToRealSelectorsMap) {
+		List<Selector[]> precedences = new ArrayList<>();
+		for (CSSValueOverridingDependency dependency : listOfDependenciesToBeHeld) {
+			if (dependency instanceof CSSInterSelectorValueOverridingDependency) {
+				CSSInterSelectorValueOverridingDependency interSelectorValueOverridingDependency = (CSSInterSelectorValueOverridingDependency) dependency;
+				if (interSelectorValueOverridingDependency.getDependencyReason() == InterSelectorDependencyReason.DUE_TO_CASCADING) {
+					Selector[] correspondingSelectors = dependencyNodeToRealSelectorsMap.get(dependency);
+					
+					if (correspondingSelectors == null || correspondingSelectors[0] == null || correspondingSelectors[1] == null)
+						continue;
+
+					precedences.add(correspondingSelectors);
+				}
+			}
+		}
+		return precedences;
+	}
+	
+	/**
+	 * Sorts the selectors topologically, based on the given precedences and the original order 
+	 * of the selectors (all but the last one, which is the newly added selector, keep their order).
+	 * Among the selectors which can be placed next, the one which comes first in the original
+	 * order is always selected, so the original order is kept as much as possible
+	 * (e.g., the last selector is moved up only as much as needed).
+	 * @param selectors Selectors in the original order
+	 * @param precedences
+	 * @return The selectors in the new order, or null if the constraints have a cycle
+	 */
+	List<Selector> getOrderUsingTopologicalSort(List<Selector> selectors, List<Selector[]> precedences) {
+		
+		Map<Selector, Integer> positions = new HashMap<>();
+		for (int i = 0; i < selectors.size(); i++)
+			positions.put(selectors.get(i), i);
+		
+		List<Set<Integer>> successors = new ArrayList<>();
+		for (int i = 0; i < selectors.size(); i++)
+			successors.add(new HashSet<Integer>());
+		int[] numberOfPredecessors = new int[selectors.size()];
+		
+		/*
+		 * Make sure that the changes are minimum.
+		 * For all the selectors in the style sheet but the new one, 
+		 * the order of them are preserved
+		 */
+		for (int i = 0; i < selectors.size() - 2; i++) {
+			successors.get(i).add(i + 1);
+			numberOfPredecessors[i + 1]++;
+		}
+		
+		for (Selector[] precedence : precedences) {
+			Integer before = positions.get(precedence[0]);
+			Integer after = positions.get(precedence[1]);
+			if (before == null || after == null)
+				continue;
+			if (successors.get(before).add(after))
+				numberOfPredecessors[after]++;
+		}
+		
+		PriorityQueue<Integer> selectorsToBePlaced = new PriorityQueue<>();
+		for (int i = 0; i < selectors.size(); i++) {
+			if (numberOfPredecessors[i] == 0)
+				selectorsToBePlaced.add(i);
+		}
+		
+		List<Selector> orderedSelectors = new ArrayList<>();
+		while (!selectorsToBePlaced.isEmpty()) {
+			int current = selectorsToBePlaced.poll();
+			orderedSelectors.add(selectors.get(current));
+			for (int successor : successors.get(current)) {
+				if (--numberOfPredecessors[successor] == 0)
+					selectorsToBePlaced.add(successor);
+			}
+		}
+		
+		// Some selectors are never placed if there is a cycle
+		if (orderedSelectors.size() < selectors.size())
+			return null;
+		
+		return orderedSelectors;
+	}
+	
+	/**
+	 * Finds the new order of the selectors using the Choco constraint solver.
+	 * @param selectors Selectors in the original order
+	 * @param precedences
+	 * @return The selectors in the new order, or null if no solution is found
+	 */
+	List<Selector> getOrderUsingConstraintSolver(List<Selector> selectors, List<Selector[]> precedences) {
 		
 		// 1. Create a Solver 
 		Solver solver = new Solver("Selector reordering problem");
@@ -68,14 +264,10 @@ public class RefactorToSatisfyDependencies {
 		// Map every selector to a Solver variable
 		Map<Selector, IntVar> createdVars = new HashMap<>();
 		
-		List<Selector> selectors =  new  ArrayList<>();
-		for (Selector s : styleSheet.getAllSelectors())
-			selectors.add(s);
-		
 		// Create one variable for each selector in the style sheet
 		for (int i = 0; i < selectors.size(); i++) {
 			Selector selectorToBeAdded = selectors.get(i);
-			IntVar x = VariableFactory.bounded(i + ": " + selectorToBeAdded.toString(), 1, styleSheet.getNumberOfSelectors(), solver);
+			IntVar x = VariableFactory.bounded(i + ": " + selectorToBeAdded.toString(), 1, selectors.size(), solver);
 			createdVars.put(selectorToBeAdded, x);
 		}
 		
@@ -91,23 +283,13 @@ public class RefactorToSatisfyDependencies {
 		}
 		
 		// 2. Create variables through the variable factory
-		for (CSSValueOverridingDependency dependency : listOfDependenciesToBeHeld) {
-			if (dependency instanceof CSSInterSelectorValueOverridingDependency) {
-				CSSInterSelectorValueOverridingDependency interSelectorValueOverridingDependency = (CSSInterSelectorValueOverridingDependency) dependency;
-				if (interSelectorValueOverridingDependency.getDependencyReason() == InterSelectorDependencyReason.DUE_TO_CASCADING) {
-					Selector[] correspondingSelectors = dependencyNodeToRealSelectorsMap.get(dependency);
-					
-					if (correspondingSelectors == null || correspondingSelectors[0] == null || correspondingSelectors[1] == null)
-						continue;
-
-					// Get the ChocoSolver variables for the dependency
-					IntVar x = createdVars.get(correspondingSelectors[0]);
-					IntVar y = createdVars.get(correspondingSelectors[1]);
+		for (Selector[] precedence : precedences) {
+			// Get the ChocoSolver variables for the dependency
+			IntVar x = createdVars.get(precedence[0]);
+			IntVar y = createdVars.get(precedence[1]);
 
-					// 3. Create and post constraints by using constraint factories
-					solver.post(IntConstraintFactory.arithm(x, "<", y));		
-				}
-			}
+			// 3. Create and post constraints by using constraint factories
+			solver.post(IntConstraintFactory.arithm(x, "<", y));		
 		}
 		
 		// All the variables have to have unique values
@@ -132,22 +314,14 @@ public class RefactorToSatisfyDependencies {
 				assignmentToSelectorMap.put(createdVars.get(s).getValue(), s);
 			}
 			
-			StyleSheet refactoredStyleSheet = new StyleSheet();
-			
-			// Put the selectors in the style sheet in order
+			List<Selector> orderedSelectors = new ArrayList<>();
 			for (int i = 1; i <= assignmentToSelectorMap.size(); i++) {
-				Selector selector = assignmentToSelectorMap.get(i);
-				newOrdering.add(selector.getSelectorNumber());
-				refactoredStyleSheet.addSelector(selector);
+				orderedSelectors.add(assignmentToSelectorMap.get(i));
 			}
+			return orderedSelectors;
+		} 
 		
-			return refactoredStyleSheet;
-			
-		} else {
-			return null;
-			// It is better to throw something at least. I know.
-		}
-		
+		return null;
 	}
 
 	/**
@@ -158,22 +332,44 @@ public class RefactorToSatisfyDependencies {
 	 * @param listOfDependenciesToBeHeld
 	 * @return
 	 */
-	private Map<CSSValueOverridingDependency, Selector[]> getDependencyToSelectorsMap(StyleSheet styleSheet,
+	Map<CSSValueOverridingDependency, Selector[]> getDependencyToSelectorsMap(StyleSheet styleSheet,
 			CSSValueOverridingDependencyList listOfDependenciesToBeHeld) {
 
 		Map<CSSValueOverridingDependency, Selector[]> dependencyNodeToSelectorMap = new HashMap<>();
 		
+		/*
+		 * The base selectors are indexed by their selectorEquals() hash codes, and the declarations of each 
+		 * of them by property and importance (which are the same for equivalent declarations),
+		 * so every dependency is only compared with the selectors and declarations which may match it.
+		 * Both are kept in the order of the style sheet, so the last matching one is used, as before. 
+		 */
+		Map<Integer, List<BaseSelector>> baseSelectorsIndex = new HashMap<>();
+		Map<BaseSelector, Map<String, List<Declaration>>> declarationsIndex = new IdentityHashMap<>();
+		for (BaseSelector selector : styleSheet.getAllBaseSelectors()) {
+			putInIndex(baseSelectorsIndex, selector.selectorEqualsHashCode(), selector);
+			if (!declarationsIndex.containsKey(selector)) {
+				Map<String, List<Declaration>> declarationsOfSelector = new HashMap<>();
+				for (Declaration declaration : selector.getDeclarations())
+					putInIndex(declarationsOfSelector, getDeclarationKey(declaration), declaration);
+				declarationsIndex.put(selector, declarationsOfSelector);
+			}
+		}
+		
 		for (CSSValueOverridingDependency dependency : listOfDependenciesToBeHeld) {
-			for (BaseSelector selector : styleSheet.getAllBaseSelectors()) {
+			for (BaseSelector selector : getFromIndex(baseSelectorsIndex, dependency.getSelector1().selectorEqualsHashCode())) {
 				if (dependency.getSelector1().selectorEquals(selector)) {
-					for (Declaration declaration : selector.getDeclarations()) {
+					for (Declaration declaration : getFromIndex(declarationsIndex.get(selector), getDeclarationKey(dependency.getDeclaration1()))) {
 						if (declaration.declarationIsEquivalent(dependency.getDeclaration1())) {
 							// Put the declaration's selector (the selector in the new StyleSheet)
 							putCorrespondingRealSelectors(dependencyNodeToSelectorMap, dependency, declaration.getSelector(), 0);
 						}
 					}
-				} else if (dependency.getSelector2().selectorEquals(selector)) {
-					for (Declaration declaration : selector.getDeclarations()) {
+				}
+			}
+			for (BaseSelector selector : getFromIndex(baseSelectorsIndex, dependency.getSelector2().selectorEqualsHashCode())) {
+				// The selectors which are equal to the first selector are only matched with the first selector
+				if (!dependency.getSelector1().selectorEquals(selector) && dependency.getSelector2().selectorEquals(selector)) {
+					for (Declaration declaration : getFromIndex(declarationsIndex.get(selector), getDeclarationKey(dependency.getDeclaration2()))) {
 						if (declaration.declarationIsEquivalent(dependency.getDeclaration2())) {
 							putCorrespondingRealSelectors(dependencyNodeToSelectorMap, dependency, declaration.getSelector(), 1);
 						}
@@ -196,6 +392,29 @@ public class RefactorToSatisfyDependencies {
 		return dependencyNodeToSelectorMap;
 	}
 
+	/*
+	 * Equivalent declarations have the same property and importance
+	 */
+	private static String getDeclarationKey(Declaration declaration) {
+		return (declaration.isImportant() ? "!" : "") + declaration.getProperty();
+	}
+	
+	private static <K, V> void putInIndex(Map<K, List<V>> index, K key, V value) {
+		List<V> values = index.get(key);
+		if (values == null) {
+			values = new ArrayList<>();
+			index.put(key, values);
+		}
+		values.add(value);
+	}
+	
+	private static <K, V> List<V> getFromIndex(Map<K, List<V>> index, K key) {
+		List<V> values = index.get(key);
+		if (values == null)
+			return Collections.emptyList();
+		return values;
+	}
+
 	/**
 	 * 
 	 * @param dependencyNodeToSelectorMap
@@ -40,6 +40,21 @@ public abstract class CSSDependency<E> {
 		return this.toNode;
 	}
 	
+	/**
+	 * Returns a hash code computed from the structure of this dependency,
+	 * i.e., the starting and ending nodes (see {@link CSSDependencyNode#nodeHashCode()}) and the labels.
+	 * Dependencies with equal nodes and the same labels have the same structural hash code,
+	 * so it can be used to find the equal dependencies without comparing all of them.
+	 * @return
+	 */
+	public int getStructuralHashCode() {
+		int result = 17;
+		result = 31 * result + (fromNode == null ? 0 : fromNode.nodeHashCode());
+		result = 31 * result + (toNode == null ? 0 : toNode.nodeHashCode());
+		result = 31 * result + labels.hashCode();
+		return result;
+	}
+	
 	protected String getLabelsString() {
 		StringBuilder builder = new StringBuilder();
 		for (E label : getDependencyLabels()) {
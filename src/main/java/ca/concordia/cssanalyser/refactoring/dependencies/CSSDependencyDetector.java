@@ -62,153 +62,183 @@ public class CSSDependencyDetector {
 
 	private CSSValueOverridingDependencyList findInterSelectorDependencies() {
 		
-		CSSValueOverridingDependencyList dependencies = new CSSValueOverridingDependencyList();
-		Map<Integer, CSSValueOverridingDependency> dependenciesSpecialHashMapper = new HashMap<>();		
+		final CSSValueOverridingDependencyList dependencies = new CSSValueOverridingDependencyList();
+		final Map<Integer, CSSValueOverridingDependency> dependenciesSpecialHashMapper = new HashMap<>();		
 		
 		// For each node, we find all the classes that select that node.
 		Map<DOMNodeWrapper, List<BaseSelector>> nodeToSelectorsMapping = styleSheet.getCSSClassesForDOMNodes(document);
 
-
-		// We have to keep track of the base selector in which the declaration exists
-		// For grouping selectors, the declaration's selector 
-		class Entry {
-			private Declaration declaration;
-			private BaseSelector baseSelector;
-			public Entry(BaseSelector baseSelector, Declaration declaration) {
-				this.declaration = declaration;
-				this.baseSelector = baseSelector;
-			}
+		OverridingDeclarationsVisitor visitor = new OverridingDeclarationsVisitor() {
 			@Override
-			public String toString() {
-				return this.baseSelector + "$" + this.declaration;
+			public void visit(BaseSelector oldSelector, Declaration oldDeclaration, BaseSelector selector, Declaration declaration, String property) {
+				// Check to see whether such a dependency is there already
+				int specialHashCode = CSSValueOverridingDependency.getSpecialHashCode(oldSelector, oldDeclaration, selector, declaration);
+				CSSValueOverridingDependency newDependency = dependenciesSpecialHashMapper.get(specialHashCode);
+				if (newDependency != null) {
+					newDependency.addDependencyLabel(property);
+				} else {
+					newDependency = createDependency(oldSelector, oldDeclaration, selector, declaration, property);
+					dependencies.add(newDependency);
+					dependenciesSpecialHashMapper.put(newDependency.getSpecialHashCode(), newDependency);
+				}
 			}
-		}
+		};
 		
 		for (DOMNodeWrapper node : nodeToSelectorsMapping.keySet()) {
-			List<BaseSelector> selectorsForCurrentNode = nodeToSelectorsMapping.get(node);
-			//if (selectorsForCurrentNode.size() > 1) {
-
-				// Maps every property to a set of declarations in the stylesheet
-				Map<String, Set<Entry>> propertyToEntryMapping = new HashMap<>();
+			visitOverridingDeclarations(nodeToSelectorsMapping.get(node), visitor);
+		}
+		return dependencies;
+	}
 
-				for (BaseSelector selector : selectorsForCurrentNode) {
-					for (Declaration declaration : selector.getDeclarations()) {
-						
-						// We find all possible properties which could be styled using this declaration 
-						Set<String> possiblyStyledPropertiesSet = new HashSet<>();
-						// The first possible property is the real property of the declaration.
-						possiblyStyledPropertiesSet.add(declaration.getProperty());
-						// But if the declaration is a shorthand, it can style many other sub-properties
-						if (declaration instanceof ShorthandDeclaration) {
-							possiblyStyledPropertiesSet.addAll(ShorthandDeclaration.getIndividualPropertiesForAShorthand(declaration.getProperty()));
-						}
+	/**
+	 * Receives the pairs of declarations which style the same property of a DOM node,
+	 * where the second declaration comes after the first one in the style sheet.
+	 */
+	interface OverridingDeclarationsVisitor {
+		void visit(BaseSelector oldSelector, Declaration oldDeclaration, BaseSelector selector, Declaration declaration, String property);
+	}
 
-						for (String possiblyStyledProperty : possiblyStyledPropertiesSet) {
-							// See if another declaration is already styling this property (so this new declaration will override the old one)
-							Set<Entry> declarationsStylingThisProperty;
-							if (propertyToEntryMapping.containsKey(possiblyStyledProperty)) {
-								// In this case, we create one dependency from each of those declarations to the current declaration
-								declarationsStylingThisProperty = propertyToEntryMapping.get(possiblyStyledProperty);
+	// We have to keep track of the base selector in which the declaration exists
+	// For grouping selectors, the declaration's selector 
+	private static class Entry {
+		private Declaration declaration;
+		private BaseSelector baseSelector;
+		public Entry(BaseSelector baseSelector, Declaration declaration) {
+			this.declaration = declaration;
+			this.baseSelector = baseSelector;
+		}
+		@Override
+		public String toString() {
+			return this.baseSelector + "$" + this.declaration;
+		}
+	}
 
-								for (Entry oldDeclarationEntry : declarationsStylingThisProperty) {
-									if (!oldDeclarationEntry.declaration.declarationIsEquivalent(declaration, true)) {
-										/*!oldDeclarationEntry.baseSelector.selectorEquals(selector) &&*/  
+	/**
+	 * Visits every pair of non-equivalent declarations which style the same property
+	 * of a DOM node which is selected by the given selectors.
+	 * @param selectorsForCurrentNode Selectors which select the DOM node, in the order of the style sheet
+	 * @param visitor
+	 */
+	static void visitOverridingDeclarations(List<BaseSelector> selectorsForCurrentNode, OverridingDeclarationsVisitor visitor) {
 
-										// Check to see whether such a dependency is there already
-										
-										int specialHashCode = CSSValueOverridingDependency.getSpecialHashCode(
-												oldDeclarationEntry.baseSelector, oldDeclarationEntry.declaration,
-												selector, declaration);
-										CSSValueOverridingDependency newDependency = dependenciesSpecialHashMapper.get(specialHashCode);
-										if (newDependency != null) {
-											newDependency.addDependencyLabel(possiblyStyledProperty);
-										} else {
-											if (oldDeclarationEntry.baseSelector == selector) {
-												Declaration fromDeclaration = oldDeclarationEntry.declaration;
-												Declaration toDeclaration = declaration;
-												if (fromDeclaration.isImportant() && !toDeclaration.isImportant()) {
-													fromDeclaration = declaration;
-													toDeclaration = oldDeclarationEntry.declaration;
-												}
-												// Intra-selector dependency
-												newDependency = new CSSIntraSelectorValueOverridingDependency(
-														selector,
-														fromDeclaration,
-														toDeclaration,
-														possiblyStyledProperty);
-											} else {
-												// The more important declaration wins, regardless of the cascading/specificity
-												if (oldDeclarationEntry.declaration.isImportant() != declaration.isImportant()) {
-													Selector fromSelector = oldDeclarationEntry.baseSelector;
-													Declaration fromDeclaration = oldDeclarationEntry.declaration;
-													Selector toSelector = selector; 
-													Declaration toDeclaration = declaration;
-													if (fromDeclaration.isImportant() && !toDeclaration.isImportant()) {
-														fromSelector = selector;
-														fromDeclaration = declaration; 
-														toSelector = oldDeclarationEntry.baseSelector; 
-														toDeclaration = oldDeclarationEntry.declaration;
-													}
-													newDependency = new CSSInterSelectorValueOverridingDependency(
-															fromSelector,
-															fromDeclaration,
-															toSelector,
-															toDeclaration,
-															possiblyStyledProperty,
-															InterSelectorDependencyReason.DUE_TO_IMPORTANCE);
-												} else {
-													// if specificities of selectors are the same, then there is a value overriding dependency
-													if (oldDeclarationEntry.baseSelector.getSpecificity() == selector.getSpecificity()) {
-														newDependency = new CSSInterSelectorValueOverridingDependency(
-																oldDeclarationEntry.baseSelector,
-																oldDeclarationEntry.declaration,
-																selector, declaration,
-																possiblyStyledProperty,
-																InterSelectorDependencyReason.DUE_TO_CASCADING);
-													} else if (oldDeclarationEntry.baseSelector.getSpecificity() >= selector.getSpecificity()) {
-														newDependency = new CSSInterSelectorValueOverridingDependency(
-																selector, 
-																declaration,
-																oldDeclarationEntry.baseSelector,
-																oldDeclarationEntry.declaration,
-																possiblyStyledProperty,
-																InterSelectorDependencyReason.DUE_TO_SPECIFICITY);
-													} else {
-														newDependency = new CSSInterSelectorValueOverridingDependency(
-																oldDeclarationEntry.baseSelector,
-																oldDeclarationEntry.declaration,
-																selector, 
-																declaration,
-																possiblyStyledProperty,
-																InterSelectorDependencyReason.DUE_TO_SPECIFICITY);
-													}
-												}
-											}
+		// Maps every property to a set of declarations in the stylesheet
+		Map<String, Set<Entry>> propertyToEntryMapping = new HashMap<>();
 
-											if (newDependency != null) {
-												dependencies.add(newDependency);
-												dependenciesSpecialHashMapper.put(newDependency.getSpecialHashCode(), newDependency);
-											}
-										}
+		for (BaseSelector selector : selectorsForCurrentNode) {
+			for (Declaration declaration : selector.getDeclarations()) {
+				
+				// We find all possible properties which could be styled using this declaration 
+				Set<String> possiblyStyledPropertiesSet = new HashSet<>();
+				// The first possible property is the real property of the declaration.
+				possiblyStyledPropertiesSet.add(declaration.getProperty());
+				// But if the declaration is a shorthand, it can style many other sub-properties
+				if (declaration instanceof ShorthandDeclaration) {
+					possiblyStyledPropertiesSet.addAll(ShorthandDeclaration.getIndividualPropertiesForAShorthand(declaration.getProperty()));
+				}
 
-									}
-								}
+				for (String possiblyStyledProperty : possiblyStyledPropertiesSet) {
+					// See if another declaration is already styling this property (so this new declaration will override the old one)
+					Set<Entry> declarationsStylingThisProperty;
+					if (propertyToEntryMapping.containsKey(possiblyStyledProperty)) {
+						// In this case, we create one dependency from each of those declarations to the current declaration
+						declarationsStylingThisProperty = propertyToEntryMapping.get(possiblyStyledProperty);
 
-							} else { // If there is no such a declaration for current possibly styled property
-								declarationsStylingThisProperty = new HashSet<>();
+						for (Entry oldDeclarationEntry : declarationsStylingThisProperty) {
+							if (!oldDeclarationEntry.declaration.declarationIsEquivalent(declaration, true)) {
+								/*!oldDeclarationEntry.baseSelector.selectorEquals(selector) &&*/  
+								visitor.visit(oldDeclarationEntry.baseSelector, oldDeclarationEntry.declaration, selector, declaration, possiblyStyledProperty);
 							}
-
-							// Add current declaration as a styling declaration for current property
-							declarationsStylingThisProperty.add(new Entry(selector, declaration));
-							propertyToEntryMapping.put(possiblyStyledProperty, declarationsStylingThisProperty);
-
 						}
+
+					} else { // If there is no such a declaration for current possibly styled property
+						declarationsStylingThisProperty = new HashSet<>();
 					}
+
+					// Add current declaration as a styling declaration for current property
+					declarationsStylingThisProperty.add(new Entry(selector, declaration));
+					propertyToEntryMapping.put(possiblyStyledProperty, declarationsStylingThisProperty);
+
 				}
+			}
+		}
+	}
 
-			//}
+	/**
+	 * Creates the dependency between the given declarations, which style the given property of the same DOM node.
+	 * The direction of the dependency is decided by the importance of the declarations
+	 * and the specificity of the selectors.
+	 * @param oldSelector
+	 * @param oldDeclaration The declaration which comes first in the style sheet
+	 * @param selector
+	 * @param declaration
+	 * @param property
+	 * @return
+	 */
+	static CSSValueOverridingDependency createDependency(BaseSelector oldSelector, Declaration oldDeclaration, 
+			BaseSelector selector, Declaration declaration, String property) {
+		CSSValueOverridingDependency newDependency;
+		if (oldSelector == selector) {
+			Declaration fromDeclaration = oldDeclaration;
+			Declaration toDeclaration = declaration;
+			if (fromDeclaration.isImportant() && !toDeclaration.isImportant()) {
+				fromDeclaration = declaration;
+				toDeclaration = oldDeclaration;
+			}
+			// Intra-selector dependency
+			newDependency = new CSSIntraSelectorValueOverridingDependency(
+					selector,
+					fromDeclaration,
+					toDeclaration,
+					property);
+		} else {
+			// The more important declaration wins, regardless of the cascading/specificity
+			if (oldDeclaration.isImportant() != declaration.isImportant()) {
+				Selector fromSelector = oldSelector;
+				Declaration fromDeclaration = oldDeclaration;
+				Selector toSelector = selector; 
+				Declaration toDeclaration = declaration;
+				if (fromDeclaration.isImportant() && !toDeclaration.isImportant()) {
+					fromSelector = selector;
+					fromDeclaration = declaration; 
+					toSelector = oldSelector; 
+					toDeclaration = oldDeclaration;
+				}
+				newDependency = new CSSInterSelectorValueOverridingDependency(
+						fromSelector,
+						fromDeclaration,
+						toSelector,
+						toDeclaration,
+						property,
+						InterSelectorDependencyReason.DUE_TO_IMPORTANCE);
+			} else {
+				// if specificities of selectors are the same, then there is a value overriding dependency
+				if (oldSelector.getSpecificity() == selector.getSpecificity()) {
+					newDependency = new CSSInterSelectorValueOverridingDependency(
+							oldSelector,
+							oldDeclaration,
+							selector, declaration,
+							property,
+							InterSelectorDependencyReason.DUE_TO_CASCADING);
+				} else if (oldSelector.getSpecificity() >= selector.getSpecificity()) {
+					newDependency = new CSSInterSelectorValueOverridingDependency(
+							selector, 
+							declaration,
+							oldSelector,
+							oldDeclaration,
+							property,
+							InterSelectorDependencyReason.DUE_TO_SPECIFICITY);
+				} else {
+					newDependency = new CSSInterSelectorValueOverridingDependency(
+							oldSelector,
+							oldDeclaration,
+							selector, 
+							declaration,
+							property,
+							InterSelectorDependencyReason.DUE_TO_SPECIFICITY);
+				}
+			}
 		}
-		return dependencies;
+		return newDependency;
 	}
 
 	private CSSValueOverridingDependencyList findIntraSelectorDependencies() {
@@ -225,11 +255,9 @@ public class CSSDependencyDetector {
 		Map<Integer, CSSValueOverridingDependency> dependenciesSpecialHashMapper = new HashMap<>();		
 		Map<String, Set<Declaration>> propertyToDeclarationMapping = new HashMap<>();
 		for (Declaration declaration : selector.getDeclarations()) {
-			Set<String> possiblyStyledProperties;
+			Set<String> possiblyStyledProperties = new HashSet<>();
 			if (declaration instanceof ShorthandDeclaration) {
-				possiblyStyledProperties = ShorthandDeclaration.getIndividualPropertiesForAShorthand(declaration.getProperty());
-			} else {
-				possiblyStyledProperties = new HashSet<>();
+				possiblyStyledProperties.addAll(ShorthandDeclaration.getIndividualPropertiesForAShorthand(declaration.getProperty()));
 			}
 			possiblyStyledProperties.add(declaration.getProperty());
 			
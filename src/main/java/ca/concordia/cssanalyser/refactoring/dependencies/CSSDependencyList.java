@@ -2,10 +2,12 @@ package ca.concordia.cssanalyser.refactoring.dependencies;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 
 import ca.concordia.cssanalyser.refactoring.dependencies.CSSDependencyDifference.CSSDependencyDifferenceType;
@@ -153,50 +155,62 @@ public abstract class CSSDependencyList<T extends CSSDependency<?>> implements L
 
 	
 	
+	/**
+	 * Finds the differences between this list and the given list.
+	 * The dependencies which are in this list but not in the other one are missing,
+	 * the ones which are only in the other list are added, and a missing dependency
+	 * whose nodes are swapped in an added dependency is reversed.
+	 * <br />
+	 * The dependencies are indexed by their structural hash codes (see {@link CSSDependency#getStructuralHashCode()}),
+	 * so only the dependencies with the same hash code are compared.
+	 * @param otherDependencyList
+	 * @return
+	 */
 	public CSSDependencyDifferenceList getDifferencesWith(CSSDependencyList<?> otherDependencyList) {
 		
 		CSSDependencyDifferenceList toReturn = new CSSDependencyDifferenceList();
 		
+		Map<Integer, List<CSSDependency<?>>> thisDependenciesMap = getStructuralHashCodeMap(dependencies);
+		Map<Integer, List<CSSDependency<?>>> otherDependenciesMap = getStructuralHashCodeMap(otherDependencyList);
+		
 		List<CSSDependency<?>> missing = new ArrayList<>();
 		List<CSSDependency<?>> added = new ArrayList<>();
 
 		for (CSSDependency<?> d : dependencies) {
-			boolean found = false;
-			for (CSSDependency<?> rd : otherDependencyList)
-				if (rd.equals(d)) {
-					found = true;
-					break;
-				}
-			if (!found) {
+			if (!containsEqualDependency(otherDependenciesMap, d))
 				missing.add(d);
-			}
 		}
 
 		for (CSSDependency<?> rd : otherDependencyList) {
-			boolean found = false;
-			for (CSSDependency<?> d : dependencies)
-				if (rd.equals(d)) {
-					found = true;
-					break;
-				}
-			if (!found) {
-				if (!found) {
-					added.add(rd);
-				}
+			if (!containsEqualDependency(thisDependenciesMap, rd))
+				added.add(rd);
+		}
+		
+		// Added dependencies (their indices), keyed by their starting and ending nodes
+		Map<Long, List<Integer>> addedByNodes = new HashMap<>();
+		for (int j = 0; j < added.size(); j++) {
+			CSSDependency<?> rd = added.get(j);
+			Long key = getNodesKey(rd.getStartingNode(), rd.getEndingNode());
+			List<Integer> addedWithSameNodes = addedByNodes.get(key);
+			if (addedWithSameNodes == null) {
+				addedWithSameNodes = new ArrayList<>();
+				addedByNodes.put(key, addedWithSameNodes);
 			}
+			addedWithSameNodes.add(j);
 		}
 		
 		Set<Integer> toRemoveFromMissing = new HashSet<>();
 		Set<Integer> toRemoveFromAdded = new HashSet<>();
 		
 		for (int i = 0; i < missing.size(); i++) {
-			//if (toRemoveFromMissing.contains(i))
-			//	continue;
 			CSSDependency<?> d = missing.get(i);
 			
-			for (int j = 0; j < added.size(); j++) {
-				//if (toRemoveFromAdded.contains(j))
-				//	continue;
+			// A reversed dependency starts where d ends, and vice versa
+			List<Integer> candidates = addedByNodes.get(getNodesKey(d.getEndingNode(), d.getStartingNode()));
+			if (candidates == null)
+				continue;
+			
+			for (int j : candidates) {
 				CSSDependency<?> rd = added.get(j);
 				
 				if (rd.getStartingNode().nodeEquals(d.getEndingNode()) && 
@@ -221,6 +235,52 @@ public abstract class CSSDependencyList<T extends CSSDependency<?>> implements L
 
 		return toReturn;
 	}
+	
+	/**
+	 * Returns true if {@link #getDifferencesWith(CSSDependencyList)} would give any
+	 * difference other than the missing ones (i.e., added or reversed dependencies).
+	 * This is the case if the other list has a dependency which is not in this list,
+	 * so this method stops at the first such dependency.
+	 * @param otherDependencyList
+	 * @return
+	 */
+	public boolean hasNonMissingDifferencesWith(CSSDependencyList<?> otherDependencyList) {
+		Map<Integer, List<CSSDependency<?>>> thisDependenciesMap = getStructuralHashCodeMap(dependencies);
+		for (CSSDependency<?> rd : otherDependencyList) {
+			if (!containsEqualDependency(thisDependenciesMap, rd))
+				return true;
+		}
+		return false;
+	}
+	
+	private static Map<Integer, List<CSSDependency<?>>> getStructuralHashCodeMap(Iterable<? extends CSSDependency<?>> dependencies) {
+		Map<Integer, List<CSSDependency<?>>> map = new HashMap<>();
+		for (CSSDependency<?> dependency : dependencies) {
+			int hashCode = dependency.getStructuralHashCode();
+			List<CSSDependency<?>> dependenciesWithSameHashCode = map.get(hashCode);
+			if (dependenciesWithSameHashCode == null) {
+				dependenciesWithSameHashCode = new ArrayList<>();
+				map.put(hashCode, dependenciesWithSameHashCode);
+			}
+			dependenciesWithSameHashCode.add(dependency);
+		}
+		return map;
+	}
+	
+	private static boolean containsEqualDependency(Map<Integer, List<CSSDependency<?>>> structuralHashCodeMap, CSSDependency<?> dependency) {
+		List<CSSDependency<?>> candidates = structuralHashCodeMap.get(dependency.getStructuralHashCode());
+		if (candidates != null) {
+			for (CSSDependency<?> candidate : candidates) {
+				if (candidate.equals(dependency))
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	private static Long getNodesKey(CSSDependencyNode startingNode, CSSDependencyNode endingNode) {
+		return ((long) startingNode.nodeHashCode() << 32) | (endingNode.nodeHashCode() & 0xFFFFFFFFL);
+	}
 
 	public CSSDependency<?> getDependency(CSSDependencyNode node1,
 			CSSDependencyNode node2) {
@@ -2,4 +2,11 @@ package ca.concordia.cssanalyser.refactoring.dependencies;
 
 public interface CSSDependencyNode {
 	public boolean nodeEquals(CSSDependencyNode otherCSSDependencyNode);
+	
+	/**
+	 * Returns a hash code which is the same for any two nodes
+	 * for which {@link #nodeEquals(CSSDependencyNode)} returns true
+	 * @return
+	 */
+	public int nodeHashCode();
 }
@@ -50,6 +50,11 @@ public class CSSValueOverridingDependencyNode implements CSSDependencyNode {
 				//this.declaration.declarationIsEquivalent(otherValueOverridingDependencyNode.declaration));                    				                                                                                                                 
 	}
 
+	@Override
+	public int nodeHashCode() {
+		return selector.selectorEqualsHashCode();
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
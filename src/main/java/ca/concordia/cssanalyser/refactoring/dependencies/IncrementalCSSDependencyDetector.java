@@ -0,0 +1,422 @@
+package ca.concordia.cssanalyser.refactoring.dependencies;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.GroupingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.dom.DOMNodeWrapper;
+import ca.concordia.cssanalyser.dom.DOMNodeWrapperList;
+import ca.concordia.cssanalyser.dom.DOMSelectorMatcher;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSDependencyDetector.OverridingDeclarationsVisitor;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSInterSelectorValueOverridingDependency.InterSelectorDependencyReason;
+
+/**
+ * Keeps the value overriding dependencies of a style sheet on a DOM up to date,
+ * while the style sheet is being changed (e.g., when grouping refactorings are applied on it one by one).
+ * <br />
+ * The nodes selected by every selector are kept (by the text of the selector),
+ * so the selectors are matched against the DOM only once, even if the style sheet is parsed again.
+ * For every DOM node, the dependencies found for that node are counted.
+ * When the style sheet changes, only the nodes selected by the changed selectors are visited again:
+ * their old dependencies are subtracted and their new dependencies are added.
+ * <br />
+ * The dependencies are the same as the ones that {@link CSSDependencyDetector} finds for the same style sheet,
+ * except that every dependency is reported once. 
+ * (When the same node is selected by different selectors having the same text, the labels that 
+ * {@link CSSDependencyDetector} finds may depend on the order of visiting the DOM nodes; here they do not.)
+ * The dependencies which are not changed may refer to the (equal) selectors and declarations
+ * of the previous versions of the style sheet.
+ *
+ * @author Davood Mazinanian
+ *
+ */
+public class IncrementalCSSDependencyDetector {
+
+	private final Document document;
+	private final DOMSelectorMatcher selectorMatcher;
+	private final Map<String, DOMNodeWrapperList> selectedNodesCache = new HashMap<>();
+	private final Map<DOMNodeWrapper, List<BaseSelector>> nodeToSelectorsMapping = new LinkedHashMap<>();
+	/*
+	 * Dependencies whose labels are merged, the same as CSSDependencyDetector does,
+	 * keyed by their special hash codes
+	 */
+	private final Map<Integer, DependencyLabelCounts> mergedDependencies = new LinkedHashMap<>();
+	/*
+	 * Dependencies which are reversed with regard to the order of the declarations
+	 * (e.g., due to specificity). CSSDependencyDetector creates one dependency for every label of these
+	 */
+	private final Map<Integer, DependencyLabelCounts> separateDependencies = new LinkedHashMap<>();
+	private StyleSheet styleSheet;
+
+	/*
+	 * A dependency and the number of times every label of it is found in the DOM nodes
+	 */
+	private static class DependencyLabelCounts {
+		private final CSSValueOverridingDependency dependency;
+		private final Map<String, Integer> labelCounts = new LinkedHashMap<>();
+
+		public DependencyLabelCounts(CSSValueOverridingDependency dependency) {
+			this.dependency = dependency;
+		}
+	}
+
+	/**
+	 * The dependencies of a style sheet which is the current style sheet of a detector with some selectors changed,
+	 * found without changing the dependencies kept by the detector 
+	 * (see {@link IncrementalCSSDependencyDetector#getUpdate(StyleSheet, Iterable)}).
+	 * The update can be applied later, as long as the current style sheet of the detector is not changed meanwhile
+	 * (see {@link IncrementalCSSDependencyDetector#apply(Update)}).
+	 */
+	public static class Update {
+		private final StyleSheet styleSheet;
+		private final StyleSheet newStyleSheet;
+		private final Set<DOMNodeWrapper> affectedNodes;
+		private final Set<Integer> changedDependencies = new HashSet<>();
+		private Map<DOMNodeWrapper, List<BaseSelector>> newMapping;
+		private Map<Integer, DependencyLabelCounts> mergedDependencies;
+		private Map<Integer, DependencyLabelCounts> separateDependencies;
+		private CSSValueOverridingDependencyList dependencies;
+
+		private Update(StyleSheet styleSheet, StyleSheet newStyleSheet, Set<DOMNodeWrapper> affectedNodes) {
+			this.styleSheet = styleSheet;
+			this.newStyleSheet = newStyleSheet;
+			this.affectedNodes = affectedNodes;
+		}
+
+		/**
+		 * Returns the dependencies of the new style sheet
+		 * @return
+		 */
+		public CSSValueOverridingDependencyList getOverridingDependencies() {
+			return dependencies;
+		}
+
+		/**
+		 * Returns true if this update and the given one visit none of the same DOM nodes,
+		 * and change none of the same dependencies.
+		 * The dependencies of the style sheet which has the changes of both updates are then
+		 * the dependencies kept by the detector, with the changes of both updates.
+		 * @param other
+		 * @return
+		 */
+		public boolean isIndependentOf(Update other) {
+			for (Integer dependency : other.changedDependencies) {
+				if (changedDependencies.contains(dependency))
+					return false;
+			}
+			for (DOMNodeWrapper node : other.affectedNodes) {
+				if (affectedNodes.contains(node))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Frees the dependencies of this update, if it is only kept for {@link #isIndependentOf(Update)}.
+		 * The update cannot be applied afterwards.
+		 */
+		public void discardDependencies() {
+			newMapping = null;
+			mergedDependencies = null;
+			separateDependencies = null;
+			dependencies = null;
+		}
+	}
+
+	public IncrementalCSSDependencyDetector(StyleSheet styleSheet, Document document) {
+		this.document = document;
+		this.selectorMatcher = new DOMSelectorMatcher(document);
+		recompute(styleSheet);
+	}
+
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * Returns the style sheet for which the dependencies are kept
+	 * @return
+	 */
+	public StyleSheet getStyleSheet() {
+		return styleSheet;
+	}
+
+	/**
+	 * Finds the dependencies of the given style sheet from scratch.
+	 * The nodes selected by the selectors which were matched before are reused.
+	 * Should be used when the order of the selectors in the style sheet is changed.
+	 * @param newStyleSheet
+	 * @return
+	 */
+	public CSSValueOverridingDependencyList recompute(StyleSheet newStyleSheet) {
+		nodeToSelectorsMapping.clear();
+		mergedDependencies.clear();
+		separateDependencies.clear();
+		nodeToSelectorsMapping.putAll(getSelectorsForNodes(newStyleSheet, null));
+		for (List<BaseSelector> selectorsForNode : nodeToSelectorsMapping.values()) {
+			count(selectorsForNode, 1, mergedDependencies, separateDependencies, null);
+		}
+		styleSheet = newStyleSheet;
+		return getOverridingDependencies();
+	}
+
+	/**
+	 * Updates the dependencies for the given style sheet, which is the current style sheet
+	 * in which the given selectors are changed (i.e., added, removed, or their declarations are changed).
+	 * The relative order of the rest of the selectors, and their declarations, should be the same.
+	 * Only the DOM nodes which are selected by the changed selectors are visited.
+	 * @param newStyleSheet
+	 * @param changedSelectors
+	 * @return
+	 */
+	public CSSValueOverridingDependencyList update(StyleSheet newStyleSheet, Iterable<? extends Selector> changedSelectors) {
+
+		Set<DOMNodeWrapper> affectedNodes = getAffectedNodes(changedSelectors);
+
+		for (DOMNodeWrapper node : affectedNodes) {
+			List<BaseSelector> oldSelectorsForNode = nodeToSelectorsMapping.remove(node);
+			if (oldSelectorsForNode != null)
+				count(oldSelectorsForNode, -1, mergedDependencies, separateDependencies, null);
+		}
+
+		Map<DOMNodeWrapper, List<BaseSelector>> newMapping = getSelectorsForNodes(newStyleSheet, affectedNodes);
+		for (DOMNodeWrapper node : newMapping.keySet()) {
+			List<BaseSelector> selectorsForNode = newMapping.get(node);
+			nodeToSelectorsMapping.put(node, selectorsForNode);
+			count(selectorsForNode, 1, mergedDependencies, separateDependencies, null);
+		}
+
+		styleSheet = newStyleSheet;
+		return getOverridingDependencies();
+	}
+
+	/**
+	 * Returns the dependencies that {@link #update(StyleSheet, Iterable)} would return for the given 
+	 * style sheet and changed selectors, without changing the dependencies kept for the current style sheet.
+	 * <br />
+	 * Different threads can call this method at the same time, 
+	 * as long as no other method of this object is called meanwhile.
+	 * The DOM is only queried (one thread at a time) for the selectors which were not matched before.
+	 * @param newStyleSheet
+	 * @param changedSelectors
+	 * @return
+	 */
+	public CSSValueOverridingDependencyList getOverridingDependenciesAfterUpdate(StyleSheet newStyleSheet, Iterable<? extends Selector> changedSelectors) {
+		return getUpdate(newStyleSheet, changedSelectors).getOverridingDependencies();
+	}
+
+	/**
+	 * Finds the dependencies that {@link #update(StyleSheet, Iterable)} would find for the given
+	 * style sheet and changed selectors, the same as {@link #getOverridingDependenciesAfterUpdate(StyleSheet, Iterable)}, 
+	 * but the returned update can also be applied later, without visiting the DOM nodes again (see {@link #apply(Update)}).
+	 * @param newStyleSheet
+	 * @param changedSelectors
+	 * @return
+	 */
+	public Update getUpdate(StyleSheet newStyleSheet, Iterable<? extends Selector> changedSelectors) {
+
+		Update update = new Update(styleSheet, newStyleSheet, getAffectedNodes(changedSelectors));
+
+		/*
+		 * The label counts are shared with the kept dependencies,
+		 * so they are copied before being changed
+		 */
+		update.mergedDependencies = new LinkedHashMap<>(mergedDependencies);
+		update.separateDependencies = new LinkedHashMap<>(separateDependencies);
+		Set<DependencyLabelCounts> copiedLabelCounts = Collections.newSetFromMap(new IdentityHashMap<DependencyLabelCounts, Boolean>());
+
+		for (DOMNodeWrapper node : update.affectedNodes) {
+			List<BaseSelector> oldSelectorsForNode = nodeToSelectorsMapping.get(node);
+			if (oldSelectorsForNode != null)
+				count(oldSelectorsForNode, -1, update.mergedDependencies, update.separateDependencies, copiedLabelCounts);
+		}
+
+		update.newMapping = getSelectorsForNodes(newStyleSheet, update.affectedNodes);
+		for (DOMNodeWrapper node : update.newMapping.keySet()) {
+			count(update.newMapping.get(node), 1, update.mergedDependencies, update.separateDependencies, copiedLabelCounts);
+		}
+
+		for (DependencyLabelCounts dependencyLabelCounts : copiedLabelCounts)
+			update.changedDependencies.add(dependencyLabelCounts.dependency.getSpecialHashCode());
+		update.dependencies = getOverridingDependencies(update.mergedDependencies, update.separateDependencies);
+		return update;
+	}
+
+	/**
+	 * Applies the given update, found for the current style sheet, 
+	 * the same as {@link #update(StyleSheet, Iterable)} would do for its style sheet and changed selectors.
+	 * @param update
+	 * @return
+	 * @throws IllegalStateException If the update was found for another style sheet, or its dependencies are discarded
+	 */
+	public CSSValueOverridingDependencyList apply(Update update) {
+		if (update.styleSheet != styleSheet || update.dependencies == null)
+			throw new IllegalStateException("The update cannot be applied on the current dependencies");
+		for (DOMNodeWrapper node : update.affectedNodes)
+			nodeToSelectorsMapping.remove(node);
+		nodeToSelectorsMapping.putAll(update.newMapping);
+		mergedDependencies.clear();
+		mergedDependencies.putAll(update.mergedDependencies);
+		separateDependencies.clear();
+		separateDependencies.putAll(update.separateDependencies);
+		styleSheet = update.newStyleSheet;
+		return update.dependencies;
+	}
+
+	/**
+	 * Returns the dependencies of the current style sheet
+	 * @return
+	 */
+	public CSSValueOverridingDependencyList getOverridingDependencies() {
+		return getOverridingDependencies(mergedDependencies, separateDependencies);
+	}
+
+	private CSSValueOverridingDependencyList getOverridingDependencies(Map<Integer, DependencyLabelCounts> mergedDependencies, 
+			Map<Integer, DependencyLabelCounts> separateDependencies) {
+		CSSValueOverridingDependencyList dependencies = new CSSValueOverridingDependencyList();
+		for (DependencyLabelCounts dependencyLabelCounts : mergedDependencies.values()) {
+			dependencies.add(copyDependency(dependencyLabelCounts.dependency, dependencyLabelCounts.labelCounts.keySet()));
+		}
+		for (DependencyLabelCounts dependencyLabelCounts : separateDependencies.values()) {
+			for (String label : dependencyLabelCounts.labelCounts.keySet()) {
+				List<String> labels = new ArrayList<>();
+				labels.add(label);
+				dependencies.add(copyDependency(dependencyLabelCounts.dependency, labels));
+			}
+		}
+		return dependencies;
+	}
+
+	private Iterable<BaseSelector> getBaseSelectors(Selector selector) {
+		if (selector instanceof GroupingSelector) {
+			return ((GroupingSelector) selector).getBaseSelectors();
+		} else {
+			List<BaseSelector> baseSelectors = new ArrayList<>();
+			baseSelectors.add((BaseSelector) selector);
+			return baseSelectors;
+		}
+	}
+
+	private Set<DOMNodeWrapper> getAffectedNodes(Iterable<? extends Selector> changedSelectors) {
+		Set<DOMNodeWrapper> affectedNodes = new LinkedHashSet<>();
+		for (Selector selector : changedSelectors) {
+			for (BaseSelector baseSelector : getBaseSelectors(selector)) {
+				for (DOMNodeWrapper node : getSelectedNodes(baseSelector))
+					affectedNodes.add(node);
+			}
+		}
+		return affectedNodes;
+	}
+
+	private DOMNodeWrapperList getSelectedNodes(BaseSelector selector) {
+		String key = selector.toString();
+		// The DOM is not safe to be queried by different threads at the same time
+		synchronized (selectedNodesCache) {
+			DOMNodeWrapperList selectedNodes = selectedNodesCache.get(key);
+			if (selectedNodes == null) {
+				selectedNodes = selectorMatcher.getSelectedNodes(selector);
+				selectedNodesCache.put(key, selectedNodes);
+			}
+			return selectedNodes;
+		}
+	}
+
+	/*
+	 * Maps the given nodes (or all nodes, if null is given) to the selectors of the given style sheet
+	 * which select them, in the order of the style sheet
+	 */
+	private Map<DOMNodeWrapper, List<BaseSelector>> getSelectorsForNodes(StyleSheet styleSheet, Set<DOMNodeWrapper> nodes) {
+		Map<DOMNodeWrapper, List<BaseSelector>> mapping = new LinkedHashMap<>();
+		for (BaseSelector selector : styleSheet.getAllBaseSelectors()) {
+			for (DOMNodeWrapper node : getSelectedNodes(selector)) {
+				if (nodes != null && !nodes.contains(node))
+					continue;
+				List<BaseSelector> selectorsForNode = mapping.get(node);
+				if (selectorsForNode == null) {
+					selectorsForNode = new ArrayList<>();
+					mapping.put(node, selectorsForNode);
+				}
+				selectorsForNode.add(selector);
+			}
+		}
+		return mapping;
+	}
+
+	/*
+	 * Adds (or subtracts, if delta is negative) the dependencies found for a DOM node to the given maps.
+	 * If copiedLabelCounts is given, the label counts which are not in it are copied 
+	 * (and added to it) before being changed
+	 */
+	private void count(List<BaseSelector> selectorsForNode, final int delta, final Map<Integer, DependencyLabelCounts> mergedDependencies,
+			final Map<Integer, DependencyLabelCounts> separateDependencies, final Set<DependencyLabelCounts> copiedLabelCounts) {
+		CSSDependencyDetector.visitOverridingDeclarations(selectorsForNode, new OverridingDeclarationsVisitor() {
+			@Override
+			public void visit(BaseSelector oldSelector, Declaration oldDeclaration, BaseSelector selector, Declaration declaration, String property) {
+				CSSValueOverridingDependency dependency = CSSDependencyDetector.createDependency(oldSelector, oldDeclaration, selector, declaration, property);
+				int specialHashCode = dependency.getSpecialHashCode();
+				Map<Integer, DependencyLabelCounts> dependencies;
+				if (specialHashCode == CSSValueOverridingDependency.getSpecialHashCode(oldSelector, oldDeclaration, selector, declaration))
+					dependencies = mergedDependencies;
+				else
+					dependencies = separateDependencies;
+				DependencyLabelCounts dependencyLabelCounts = dependencies.get(specialHashCode);
+				if (dependencyLabelCounts == null) {
+					if (delta < 0)
+						return;
+					dependencyLabelCounts = new DependencyLabelCounts(dependency);
+					dependencies.put(specialHashCode, dependencyLabelCounts);
+					if (copiedLabelCounts != null)
+						copiedLabelCounts.add(dependencyLabelCounts);
+				} else if (copiedLabelCounts != null && !copiedLabelCounts.contains(dependencyLabelCounts)) {
+					DependencyLabelCounts copy = new DependencyLabelCounts(dependencyLabelCounts.dependency);
+					copy.labelCounts.putAll(dependencyLabelCounts.labelCounts);
+					dependencyLabelCounts = copy;
+					dependencies.put(specialHashCode, dependencyLabelCounts);
+					copiedLabelCounts.add(dependencyLabelCounts);
+				}
+				Integer count = dependencyLabelCounts.labelCounts.get(property);
+				int newCount = (count == null ? 0 : count) + delta;
+				if (newCount > 0) {
+					dependencyLabelCounts.labelCounts.put(property, newCount);
+				} else {
+					dependencyLabelCounts.labelCounts.remove(property);
+					if (dependencyLabelCounts.labelCounts.isEmpty())
+						dependencies.remove(specialHashCode);
+				}
+			}
+		});
+	}
+
+	private CSSValueOverridingDependency copyDependency(CSSValueOverridingDependency dependency, Iterable<String> labels) {
+		Iterator<String> labelsIterator = labels.iterator();
+		String firstLabel = labelsIterator.next();
+		CSSValueOverridingDependency newDependency;
+		if (dependency instanceof CSSIntraSelectorValueOverridingDependency) {
+			newDependency = new CSSIntraSelectorValueOverridingDependency((BaseSelector) dependency.getSelector1(),
+					dependency.getDeclaration1(), dependency.getDeclaration2(), firstLabel);
+		} else {
+			InterSelectorDependencyReason reason = ((CSSInterSelectorValueOverridingDependency) dependency).getDependencyReason();
+			newDependency = new CSSInterSelectorValueOverridingDependency(dependency.getSelector1(), dependency.getDeclaration1(),
+					dependency.getSelector2(), dependency.getDeclaration2(), firstLabel, reason);
+		}
+		while (labelsIterator.hasNext())
+			newDependency.addDependencyLabel(labelsIterator.next());
+		return newDependency;
+	}
+
+}
@@ -0,0 +1,268 @@
+package org.w3c.flute.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An implementation of interface CharStream over characters which are all in
+ * memory (e.g., a string or a memory-mapped file), so that, unlike
+ * {@link Generic_CharStream}, no characters are copied to a buffer and the
+ * image of a token is taken directly from the characters.
+ * As in {@link Generic_CharStream}, the characters are given to the token
+ * manager without unicode processing.
+ * <br />
+ * The lines and columns are computed from the beginnings of the lines
+ * (which are found while reading the characters), instead of being kept
+ * for every character.
+ */
+
+public final class CharSequence_CharStream implements CharStream
+{
+  private final CharSequence chars;
+  private final int length;
+
+  private final int startline;
+  private final int startcolumn;
+  private final int startoffset;
+
+  // The indices of the first characters of the lines which are read so far
+  private int[] lineStarts = new int[64];
+  private int lines = 1;
+  private int lastLineIndex = 0;
+  private int maxReadPos = 0;
+
+  private int bufpos = -1;
+  private int tokenBegin = 0;
+
+  /**
+   * Creates a stream for the given characters, which start at the given
+   * line, column and offset (the index of the first character) of the input.
+   */
+  public CharSequence_CharStream(CharSequence chars, int startline,
+                                 int startcolumn, int startoffset)
+  {
+     this.chars = chars;
+     this.length = chars.length();
+     this.startline = startline;
+     this.startcolumn = startcolumn;
+     this.startoffset = startoffset;
+  }
+
+  public CharSequence_CharStream(CharSequence chars)
+  {
+     this(chars, 1, 1, 0);
+  }
+
+  /**
+   * Creates a stream for the given file, which is memory-mapped.
+   * The characters of an ASCII (or Latin-1) file are directly read from the
+   * mapped file, otherwise the file is decoded once, using the given charset.
+   */
+  public static CharSequence_CharStream map(String path, Charset charset)
+       throws IOException
+  {
+     ByteBuffer bytes;
+     try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+        if (channel.size() > Integer.MAX_VALUE)
+           throw new IOException("File is too large to be mapped: " + path);
+        bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+     }
+
+     if (StandardCharsets.ISO_8859_1.equals(charset) ||
+         ((StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset)) && isASCII(bytes)))
+        return new CharSequence_CharStream(new ByteChars(bytes));
+
+     CharBuffer decoded = charset.newDecoder()
+                                 .onMalformedInput(CodingErrorAction.REPLACE)
+                                 .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                                 .decode(bytes);
+     return new CharSequence_CharStream(decoded);
+  }
+
+  private static boolean isASCII(ByteBuffer bytes)
+  {
+     for (int i = 0; i < bytes.limit(); i++)
+        if (bytes.get(i) < 0)
+           return false;
+     return true;
+  }
+
+  public final char BeginToken() throws java.io.IOException
+  {
+     tokenBegin = -1;
+     char c = readChar();
+     tokenBegin = bufpos;
+
+     return c;
+  }
+
+  public final char readChar() throws java.io.IOException
+  {
+     if (bufpos + 1 >= length)
+     {
+        if (tokenBegin == -1)
+           tokenBegin = bufpos;
+        throw new java.io.IOException();
+     }
+
+     char c = chars.charAt(++bufpos);
+
+     if (bufpos > maxReadPos)
+     {
+        maxReadPos = bufpos;
+        char previous = chars.charAt(bufpos - 1);
+        if (previous == '\n' || (previous == '\r' && c != '\n'))
+           addLineStart(bufpos);
+     }
+
+     return (char)((char)0xff & c);
+  }
+
+  private final void addLineStart(int pos)
+  {
+     if (lines == lineStarts.length)
+        lineStarts = java.util.Arrays.copyOf(lineStarts, lines * 2);
+     lineStarts[lines++] = pos;
+  }
+
+  private final int getLineIndex(int pos)
+  {
+     // Tokens are mostly asked for in order, so the last line is checked first
+     if (lineStarts[lastLineIndex] <= pos &&
+         (lastLineIndex + 1 == lines || pos < lineStarts[lastLineIndex + 1]))
+        return lastLineIndex;
+
+     int low = 0, high = lines - 1;
+     while (low < high)
+     {
+        int mid = (low + high + 1) >>> 1;
+        if (lineStarts[mid] <= pos)
+           low = mid;
+        else
+           high = mid - 1;
+     }
+     return lastLineIndex = low;
+  }
+
+  private final int getLine(int pos)
+  {
+     return startline + getLineIndex(pos);
+  }
+
+  private final int getColumn(int pos)
+  {
+     int lineIndex = getLineIndex(pos);
+     return pos - lineStarts[lineIndex] + (lineIndex == 0 ? startcolumn : 1);
+  }
+
+  /**
+   * @deprecated
+   * @see #getEndColumn
+   */
+
+  @Deprecated
+  public final int getColumn() {
+     return getColumn(bufpos);
+  }
+
+  /**
+   * @deprecated
+   * @see #getEndLine
+   */
+
+  @Deprecated
+  public final int getLine() {
+     return getLine(bufpos);
+  }
+
+  public final int getEndColumn() {
+     return getColumn(bufpos);
+  }
+
+  public final int getEndLine() {
+     return getLine(bufpos);
+  }
+
+  public final int getBeginColumn() {
+     return getColumn(tokenBegin);
+  }
+
+  public final int getBeginLine() {
+     return getLine(tokenBegin);
+  }
+
+  public final int getBeginOffset() {
+     return startoffset + tokenBegin;
+  }
+
+  public final int getEndOffset() {
+     return startoffset + bufpos;
+  }
+
+  public final void backup(int amount) {
+     bufpos -= amount;
+  }
+
+  public final String GetImage()
+  {
+     return chars.subSequence(tokenBegin, bufpos + 1).toString();
+  }
+
+  public final char[] GetSuffix(int len)
+  {
+     char[] ret = new char[len];
+     for (int i = 0; i < len; i++)
+        ret[i] = chars.charAt(bufpos - len + 1 + i);
+     return ret;
+  }
+
+  public void Done()
+  {
+  }
+
+  /**
+   * The characters of an ASCII (or Latin-1) buffer, without decoding it
+   */
+  private static final class ByteChars implements CharSequence
+  {
+     private final ByteBuffer bytes;
+
+     ByteChars(ByteBuffer bytes)
+     {
+        this.bytes = bytes;
+     }
+
+     public int length()
+     {
+        return bytes.limit();
+     }
+
+     public char charAt(int index)
+     {
+        return (char)(bytes.get(index) & 0xff);
+     }
+
+     public CharSequence subSequence(int start, int end)
+     {
+        ByteBuffer slice = bytes.duplicate();
+        slice.position(start);
+        slice.limit(end);
+        return new ByteChars(slice.slice());
+     }
+
+     public String toString()
+     {
+        byte[] b = new byte[bytes.limit()];
+        bytes.duplicate().get(b);
+        return new String(b, StandardCharsets.ISO_8859_1);
+     }
+  }
+
+}
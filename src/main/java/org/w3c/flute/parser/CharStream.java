@@ -63,6 +63,18 @@ abstract public interface CharStream {
    */
   abstract public int getBeginLine();
 
+  /**
+   * Returns the offset (from the beginning of the input) of the first
+   * character of the token.
+   */
+  abstract public int getBeginOffset();
+
+  /**
+   * Returns the offset (from the beginning of the input) of the last
+   * character of the token.
+   */
+  abstract public int getEndOffset();
+
   /**
    * Backs up the input stream by amount steps. Lexer calls this method if it
    * had already read some characters, but could not use them to match a
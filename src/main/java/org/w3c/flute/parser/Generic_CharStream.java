@@ -15,9 +15,11 @@ public final class Generic_CharStream implements CharStream
   public int bufpos = -1;
   private int bufline[];
   private int bufcolumn[];
+  private int bufoffset[];
 
   private int column = 0;
   private int line = 1;
+  private int offset = -1;
 
   private boolean prevCharIsCR = false;
   private boolean prevCharIsLF = false;
@@ -33,6 +35,7 @@ public final class Generic_CharStream implements CharStream
      char[] newbuffer = new char[bufsize + 2048];
      int newbufline[] = new int[bufsize + 2048];
      int newbufcolumn[] = new int[bufsize + 2048];
+     int newbufoffset[] = new int[bufsize + 2048];
 
      try
      {
@@ -51,6 +54,10 @@ public final class Generic_CharStream implements CharStream
            System.arraycopy(bufcolumn, 0, newbufcolumn, bufsize - tokenBegin, bufpos);
            bufcolumn = newbufcolumn;
 
+           System.arraycopy(bufoffset, tokenBegin, newbufoffset, 0, bufsize - tokenBegin);
+           System.arraycopy(bufoffset, 0, newbufoffset, bufsize - tokenBegin, bufpos);
+           bufoffset = newbufoffset;
+
            maxNextCharInd = (bufpos += (bufsize - tokenBegin));
         }
         else
@@ -64,6 +71,9 @@ public final class Generic_CharStream implements CharStream
            System.arraycopy(bufcolumn, tokenBegin, newbufcolumn, 0, bufsize - tokenBegin);
            bufcolumn = newbufcolumn;
 
+           System.arraycopy(bufoffset, tokenBegin, newbufoffset, 0, bufsize - tokenBegin);
+           bufoffset = newbufoffset;
+
            maxNextCharInd = (bufpos -= tokenBegin);
         }
      }
@@ -135,6 +145,7 @@ public final class Generic_CharStream implements CharStream
   private final void UpdateLineColumn(char c)
   {
      column++;
+     offset++;
 
      if (prevCharIsLF)
      {
@@ -152,6 +163,8 @@ public final class Generic_CharStream implements CharStream
            line += (column = 1);
      }
 
+     // A tab is counted as one column (and not up to the next tab stop),
+     // the same as the columns that less4j gives
      switch (c)
      {
         case '\r' :
@@ -160,16 +173,13 @@ public final class Generic_CharStream implements CharStream
         case '\n' :
            prevCharIsLF = true;
            break;
-        case '\t' :
-           column--;
-           column += (8 - (column & 07));
-           break;
         default :
            break;
      }
 
      bufline[bufpos] = line;
      bufcolumn[bufpos] = column;
+     bufoffset[bufpos] = offset;
   }
 
   public final char readChar() throws java.io.IOException
@@ -223,6 +233,14 @@ public final class Generic_CharStream implements CharStream
      return bufline[tokenBegin];
   }
 
+  public final int getBeginOffset() {
+     return bufoffset[tokenBegin];
+  }
+
+  public final int getEndOffset() {
+     return bufoffset[bufpos];
+  }
+
   public final void backup(int amount) {
 
     inBuf += amount;
@@ -241,6 +259,7 @@ public final class Generic_CharStream implements CharStream
     buffer = new char[buffersize];
     bufline = new int[buffersize];
     bufcolumn = new int[buffersize];
+    bufoffset = new int[buffersize];
   }
 
   public Generic_CharStream(java.io.Reader dstream, int startline,
@@ -254,6 +273,7 @@ public final class Generic_CharStream implements CharStream
     reader = dstream;
     line = startline;
     column = startcolumn - 1;
+    offset = -1;
 
     if (buffer == null || buffersize != buffer.length)
     {
@@ -261,6 +281,7 @@ public final class Generic_CharStream implements CharStream
       buffer = new char[buffersize];
       bufline = new int[buffersize];
       bufcolumn = new int[buffersize];
+      bufoffset = new int[buffersize];
     }
     prevCharIsLF = prevCharIsCR = false;
     tokenBegin = inBuf = maxNextCharInd = 0;
@@ -302,6 +323,7 @@ public final class Generic_CharStream implements CharStream
      buffer = null;
      bufline = null;
      bufcolumn = null;
+     bufoffset = null;
   }
 
   /**
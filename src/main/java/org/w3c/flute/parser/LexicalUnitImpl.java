@@ -10,6 +10,8 @@ package org.w3c.flute.parser;
 
 import org.w3c.css.sac.LexicalUnit;
 
+import ca.concordia.cssanalyser.cssmodel.LocationInfo;
+
 /**
  * @version $Revision: 1.3 $
  * @author Philippe Le Hegaret
@@ -42,6 +44,7 @@ public class LexicalUnitImpl implements LexicalUnit {
 	String s;
 	String fname;
 	LexicalUnitImpl params;
+	LocationInfo locationInfo;
 
 	LexicalUnitImpl(short type, int line, int column, LexicalUnitImpl p) {
 		if (p != null) {
@@ -100,6 +103,14 @@ public class LexicalUnitImpl implements LexicalUnit {
 		return column;
 	}
 
+	/**
+	 * Returns the location of this value in the style sheet,
+	 * or null if it is not known
+	 */
+	public LocationInfo getLocationInfo() {
+		return locationInfo;
+	}
+
 	public short getLexicalUnitType() {
 		return type;
 	}
@@ -3,7 +3,9 @@ package org.w3c.flute.parser;
 
 import java.io.*;
 import java.net.*;
+import java.util.IdentityHashMap;
 import java.util.Locale;
+import java.util.Map;
 
 
 import org.w3c.css.sac.ConditionFactory;
@@ -27,6 +29,7 @@ import org.w3c.flute.util.Encoding;
 
 // :)
 import ca.concordia.cssanalyser.parser.flute.CSSDocumentHandler;
+import ca.concordia.cssanalyser.cssmodel.LocationInfo;
 import ca.concordia.cssanalyser.cssmodel.media.MediaQuery;
 import ca.concordia.cssanalyser.cssmodel.media.MediaQueryList;
 import ca.concordia.cssanalyser.cssmodel.media.MediaFeatureExpression;
@@ -59,6 +62,9 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
     // temporary place holder for pseudo-element ...
     private String pseudoElt;
 
+    // the location info of the selectors (and their parts) of the current rule
+    private final Map<Selector, LocationInfo> selectorLocations = new IdentityHashMap<>();
+
     /**
      * Creates a new Parser
      */
@@ -106,7 +112,28 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
     public void parseStyleSheet(InputSource source)
             throws CSSException, IOException {
         this.source = source;
-        ReInit(getCharStreamWithLurk(source));
+        parseStyleSheet(getCharStreamWithLurk(source));
+    }
+
+    /**
+     * Parses a style sheet, whose characters are read from the given stream
+     * (e.g., a {@link CharSequence_CharStream} for a memory-mapped file, or for
+     * a part of a style sheet, which gives the locations in the whole style sheet).
+     *
+     * @param source the source of the style sheet (only its URI is used).
+     * @param stream the characters of the style sheet.
+     * @exception IOException the source can't be parsed.
+     * @exception CSSException the source is not CSS valid.
+     */
+    public void parseStyleSheet(InputSource source, CharStream stream)
+            throws CSSException, IOException {
+        this.source = source;
+        parseStyleSheet(stream);
+    }
+
+    private void parseStyleSheet(CharStream stream)
+            throws CSSException, IOException {
+        ReInit(stream);
         if (selectorFactory == null) {
             selectorFactory = new SelectorFactoryImpl();
         }
@@ -375,6 +402,44 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
         return currentLocator.reInit(this, save);
     }
 
+    /*
+     * Returns the location info of the text from the first token to the last token,
+     * without the white spaces at the end.
+     */
+    private LocationInfo getLocationInfo(Token first, Token last) {
+        Token end = first;
+        for (Token t = first; t != null; t = t.next) {
+            if (t.kind != S)
+                end = t;
+            if (t == last)
+                break;
+        }
+        return new LocationInfo(first.beginLine, first.beginColumn, first.beginOffset,
+                                end.endOffset - first.beginOffset + 1);
+    }
+
+    /*
+     * Sets the location info of the given value, from the first token to the last token
+     */
+    private LexicalUnitImpl setLocationInfo(LexicalUnitImpl value, Token first, Token last) {
+        value.locationInfo = getLocationInfo(first, last);
+        return value;
+    }
+
+    /*
+     * Returns the semicolon ending the declaration that has just been parsed,
+     * or the current token if there is no semicolon. The same as less4j,
+     * the location info of a declaration includes its semicolon.
+     */
+    private Token getDeclarationEnd() {
+        int i = 1;
+        while (getToken(i).kind == S) {
+            i++;
+        }
+        Token next = getToken(i);
+        return next.kind == SEMICOLON ? next : token;
+    }
+
     private void reportError(Locator l, Exception e) {
         if (errorHandler != null) {
             if (e instanceof ParseException) {
@@ -419,6 +484,12 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
         }
     }
 
+    private void reportErrorSkipText(Locator l, String text) {
+        if (errorHandler != null && text  != null) {
+            errorHandler.error(new CSSParseException("Skipping: " + text, l));
+        }
+    }
+
 /*
  * The grammar of CSS2
  */
@@ -586,9 +657,12 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
           if ((ret == null) || (ret.length() == 0)) {
               {if (true) return;}
           }
-          reportWarningSkipText(l, ret);
           if (ret.charAt(0) == '@') {
+              reportWarningSkipText(l, ret);
               documentHandler.ignorableAtRule(ret);
+          } else {
+              // Not an unknown at-rule, so something is skipped that could not be parsed
+              reportErrorSkipText(l, ret);
           }
       }
       label_8:
@@ -732,6 +806,7 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
     String ret;
     //MediaListImpl ml = new MediaListImpl(); 
         MediaQueryList ml = new MediaQueryList();
+        Token first = getToken(1);
     try {
       jj_consume_token(MEDIA_SYM);
       label_13:
@@ -869,6 +944,7 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
 
     } finally {
      if (start) {
+          ml.setLocationInfo(getLocationInfo(first, token));
           ((CSSDocumentHandler)documentHandler).endMedia(ml);
      }
     }
@@ -915,6 +991,7 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
         MediaFeatureExpression expression;
         MediaQuery toReturn;
         MediaQueryPrefix prefix = null;
+        Token first = getToken(1);
     if (jj_2_4(1)) {
       if (getToken(1).image.toLowerCase().equals("not" )|| getToken(1).image.toLowerCase().equals("only" )) {
         prefixToken = jj_consume_token(IDENT);
@@ -1018,6 +1095,7 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
         throw new ParseException();
       }
     }
+          toReturn.setLocationInfo(getLocationInfo(first, token));
           {if (true) return toReturn;}
     throw new Error("Missing return statement in function");
   }
@@ -1032,6 +1110,7 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
   final public MediaFeatureExpression media_expression() throws ParseException {
         String feature;
         LexicalUnit featureExpression = null;
+        Token first = getToken(1);
     jj_consume_token(LPARAN);
     label_25:
     while (true) {
@@ -1092,7 +1171,10 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
       }
       jj_consume_token(S);
     }
-                {if (true) return new MediaFeatureExpression(feature, "".equals(featureExpression.toString().trim()) ? null : featureExpression.toString());}
+                MediaFeatureExpression toReturn = new MediaFeatureExpression(feature,
+                        featureExpression == null ? "" : featureExpression.toString().trim());
+                toReturn.setLocationInfo(getLocationInfo(first, token));
+                {if (true) return toReturn;}
     throw new Error("Missing return statement in function");
   }
 
@@ -1460,9 +1542,13 @@ public class Parser implements org.w3c.css.sac.Parser, ParserConstants {
      String ret;
      Locator loc = getLocator();
      ret=skipStatement();
-     reportWarningSkipText(loc, ret);
-     if ((ret != null) && (n.image.charAt(0) == '@')) {
-         documentHandler.ignorableAtRule(ret);
+     if (n.image.charAt(0) == '@') {
+         reportWarningSkipText(loc, ret);
+         if (ret != null) {
+             documentHandler.ignorableAtRule(ret);
+         }
+     } else {
+         reportErrorSkipText(loc, ret);
      }
   }
 
@@ -1601,6 +1687,8 @@ char connector = ' ';
     SelectorList l = null;
     Token save;
     Locator loc;
+    Token first = getToken(1);
+    selectorLocations.clear();
     try {
       l = selectorList();
                         save = token;
@@ -1618,7 +1706,7 @@ char connector = ' ';
         jj_consume_token(S);
       }
          start = true;
-         ((CSSDocumentHandler) documentHandler).startSelector(l, getLocator());
+         ((CSSDocumentHandler) documentHandler).startSelector(l, selectorLocations);
       switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
       case IDENT:
         declaration();
@@ -1685,10 +1773,10 @@ char connector = ' ';
      // reportWarningSkipText(getLocator(), skipStatement());
 
     } catch (TokenMgrError e) {
-     reportWarningSkipText(getLocator(), skipStatement());
+     reportErrorSkipText(getLocator(), skipStatement());
     } finally {
      if (start) {
-         documentHandler.endSelector(l);
+         ((CSSDocumentHandler) documentHandler).endSelector(l, getLocationInfo(first, token));
      }
     }
   }
@@ -1790,6 +1878,8 @@ char connector = ' ';
   final public Selector simple_selector(Selector selector, char comb) throws ParseException {
     SimpleSelector simple_current = null;
     Condition cond = null;
+    Selector previous = selector;
+    Token first = getToken(1);
 
     pseudoElt = null;
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
@@ -2004,9 +2094,18 @@ char connector = ' ';
             } else {
                 selector= simple_current;
             }
+            LocationInfo location = getLocationInfo(first, token);
+            selectorLocations.put(simple_current, location);
+            if (previous != null && selectorLocations.containsKey(previous)) {
+                LocationInfo previousLocation = selectorLocations.get(previous);
+                location = new LocationInfo(previousLocation.getLineNumber(), previousLocation.getColumnNumber(),
+                        previousLocation.getOffset(), location.getOffset() + location.getLength() - previousLocation.getOffset());
+            }
+            selectorLocations.put(selector, location);
             if (pseudoElt != null) {
                 selector = selectorFactory.createChildSelector(selector,
                              selectorFactory.createPseudoElementSelector(null, pseudoElt));
+                selectorLocations.put(selector, location);
             }
             {if (true) return selector;}
     throw new Error("Missing return statement in function");
@@ -2472,6 +2571,7 @@ SelectorList l = null;
   String name;
   LexicalUnit exp;
   Token save;
+  Token first = getToken(1);
     try {
       name = property();
        save = token;
@@ -2497,7 +2597,7 @@ SelectorList l = null;
         jj_la1[100] = jj_gen;
         ;
       }
-         ((CSSDocumentHandler) documentHandler).property(name, exp, important, getLocator());
+         ((CSSDocumentHandler) documentHandler).property(name, exp, important, getLocationInfo(first, getDeclarationEnd()));
     } catch (JumpException e) {
      skipAfterExpression();
      // reportWarningSkipText(getLocator(), skipAfterExpression());
@@ -2573,9 +2673,9 @@ SelectorList l = null;
         }
         jj_consume_token(S);
       }
-                 {if (true) return LexicalUnitImpl.createSlash(n.beginLine,
+                 {if (true) return setLocationInfo(LexicalUnitImpl.createSlash(n.beginLine,
                                                        n.beginColumn,
-                                                       prev);}
+                                                       prev), n, n);}
       break;
     case COMMA:
       n = jj_consume_token(COMMA);
@@ -2591,9 +2691,9 @@ SelectorList l = null;
         }
         jj_consume_token(S);
       }
-                   {if (true) return LexicalUnitImpl.createComma(n.beginLine,
+                   {if (true) return setLocationInfo(LexicalUnitImpl.createComma(n.beginLine,
                                                          n.beginColumn,
-                                                         prev);}
+                                                         prev), n, n);}
       break;
     default:
       jj_la1[104] = jj_gen;
@@ -2692,6 +2792,7 @@ SelectorList l = null;
   final public LexicalUnitImpl term(LexicalUnitImpl prev) throws ParseException {
   LexicalUnitImpl result = null;
   Token n = null;
+  Token first = getToken(1);
   char op = ' ';
   LexicalUnit params = null;
     switch ((jj_ntk==-1)?jj_ntk():jj_ntk) {
@@ -2924,7 +3025,7 @@ SelectorList l = null;
       }
       jj_consume_token(S);
     }
-          {if (true) return result;}
+          {if (true) return setLocationInfo(result, first, token);}
     throw new Error("Missing return statement in function");
   }
 
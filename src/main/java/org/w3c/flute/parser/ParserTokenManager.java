@@ -3540,6 +3540,8 @@ protected Token jjFillToken()
    t.endLine = endLine;
    t.beginColumn = beginColumn;
    t.endColumn = endColumn;
+   t.beginOffset = input_stream.getBeginOffset();
+   t.endOffset = input_stream.getEndOffset();
 
    return t;
 }
@@ -30,6 +30,10 @@ public class Token implements java.io.Serializable {
   public int endLine;
   /** The column number of the last character of this Token. */
   public int endColumn;
+  /** The offset (from the beginning of the input) of the first character of this Token. */
+  public int beginOffset;
+  /** The offset (from the beginning of the input) of the last character of this Token. */
+  public int endOffset;
 
   /**
    * The string image of the token.
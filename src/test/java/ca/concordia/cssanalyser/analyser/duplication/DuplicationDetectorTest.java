@@ -0,0 +1,228 @@
+package ca.concordia.cssanalyser.analyser.duplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.concordia.cssanalyser.analyser.duplication.items.Item;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+
+public class DuplicationDetectorTest {
+	
+	private static StyleSheet styleSheet;
+	
+	@BeforeClass
+	public static void setUpOnce() {
+		styleSheet = FixturesUtil.getTestCSSFile(FixturesUtil.DUPLICATION_TEST_FILE_PATH);
+	}
+	
+	private static DuplicationDetector getDuplicationDetector(boolean pairwise) {
+		return getDuplicationDetector(styleSheet, duplicationDetector -> duplicationDetector.setUsePairwiseTypeOneAndTwoDetection(pairwise));
+	}
+
+	private static DuplicationDetector getDuplicationDetector(StyleSheet styleSheet, Consumer<DuplicationDetector> option) {
+		DuplicationDetector duplicationDetector = new DuplicationDetector(styleSheet);
+		option.accept(duplicationDetector);
+		duplicationDetector.findDuplications();
+		return duplicationDetector;
+	}
+
+	/*
+	 * Finds the duplications of the given style sheet with the default settings and with the given option,
+	 * and checks that the type I and II duplications and the mined ItemSets (with and without the subsumed ones) are the same.
+	 * If inSameOrder is false, the order of the ItemSets in each ItemSetList is ignored.
+	 * Returns the ItemSetLists mined with the option, keeping the subsumed ItemSets.
+	 */
+	private static List<ItemSetList> assertSameDuplications(StyleSheet styleSheet, Consumer<DuplicationDetector> option, boolean inSameOrder) {
+		DuplicationDetector expected = getDuplicationDetector(styleSheet, duplicationDetector -> {});
+		DuplicationDetector actual = getDuplicationDetector(styleSheet, option);
+
+		assertEquals(toString(expected.getTypeIDuplications()), toString(actual.getTypeIDuplications()));
+		assertEquals(toString(expected.getTypeIIDuplications()), toString(actual.getTypeIIDuplications()));
+		Map<Integer, List<Item>> expectedItems = expected.getItemsIncludingTypenstances();
+		Map<Integer, List<Item>> actualItems = actual.getItemsIncludingTypenstances();
+		for (Integer type : expectedItems.keySet())
+			assertEquals(expectedItems.get(type).toString(), actualItems.get(type).toString());
+
+		List<ItemSetList> toReturn = null;
+		for (boolean removeSubsets : new boolean[] { false, true }) {
+			List<ItemSetList> expectedItemSets = expected.fpGrowth(2, removeSubsets);
+			List<ItemSetList> actualItemSets = actual.fpGrowth(2, removeSubsets);
+			assertEquals(expectedItemSets.size(), actualItemSets.size());
+			for (int i = 0; i < expectedItemSets.size(); i++) {
+				assertEquals(toStrings(expectedItemSets.get(i)), toStrings(actualItemSets.get(i)));
+				if (inSameOrder)
+					assertEquals(expectedItemSets.get(i).toString(), actualItemSets.get(i).toString());
+			}
+			if (!removeSubsets)
+				toReturn = actualItemSets;
+		}
+		return toReturn;
+	}
+	
+	private static String toString(DuplicationIncstanceList duplications) {
+		StringBuilder toReturn = new StringBuilder();
+		for (DuplicationInstance duplicationInstance : duplications)
+			toReturn.append(duplicationInstance).append(System.lineSeparator());
+		return toReturn.toString();
+	}
+
+	/*
+	 * ItemSets of an ItemSetList, ignoring the order of ItemSets and Items
+	 */
+	private static Set<String> toStrings(ItemSetList itemSetList) {
+		Set<String> toReturn = new HashSet<>();
+		for (ItemSet itemSet : itemSetList) {
+			List<String> items = new ArrayList<>();
+			for (Item item : itemSet)
+				items.add(item.toString());
+			Collections.sort(items);
+			toReturn.add(items.toString() + " " + itemSet.getSupportSize());
+		}
+		return toReturn;
+	}
+
+	/*
+	 * Like toStrings(), but each Item is shown by its first declaration
+	 */
+	private static Set<String> toDeclarationStrings(ItemSetList itemSetList) {
+		Set<String> toReturn = new HashSet<>();
+		for (ItemSet itemSet : itemSetList) {
+			List<String> declarations = new ArrayList<>();
+			for (Item item : itemSet)
+				declarations.add(item.getFirstDeclaration().toString());
+			Collections.sort(declarations);
+			toReturn.add(declarations.toString() + " " + itemSet.getSupportSize());
+		}
+		return toReturn;
+	}
+
+	@Test
+	public void testBucketedAndPairwiseTypeOneAndTwoDuplicationsAreTheSame() {
+		DuplicationDetector pairwise = getDuplicationDetector(true);
+		assertTrue(pairwise.getTypeIDuplications().getSize() > 0);
+		assertTrue(pairwise.getTypeIIDuplications().getSize() > 0);
+		assertSameDuplications(styleSheet, duplicationDetector -> duplicationDetector.setUsePairwiseTypeOneAndTwoDetection(true), true);
+	}
+
+	@Test
+	public void testBucketsOfEquivalentAndImportantDeclarations() {
+		// Equivalent values have different equality keys but the same equivalence key, !important is a part of both keys
+		StyleSheet styleSheet = FixturesUtil.getStyleSheetFromString(
+				"a { color: red; margin: 0 } b { color: #ff0000; margin: 0px } c { color: red !important; margin: 0 } d { }");
+		assertSameDuplications(styleSheet, duplicationDetector -> duplicationDetector.setUsePairwiseTypeOneAndTwoDetection(true), true);
+		DuplicationDetector bucketed = getDuplicationDetector(styleSheet, duplicationDetector -> {});
+		assertEquals(1, bucketed.getTypeIDuplications().getSize());
+		assertEquals(2, bucketed.getTypeIIDuplications().getSize());
+		assertTrue(toString(bucketed.getTypeIIDuplications()).contains("color: #ff0000"));
+		Declaration importantColor = FixturesUtil.getDeclarations(FixturesUtil.getSelectorsList(styleSheet).get(2)).get(0);
+		assertTrue(importantColor.isImportant());
+		for (DuplicationInstance duplicationInstance : bucketed.getTypeIDuplications())
+			assertFalse(((TypeOneDuplicationInstance)duplicationInstance).hasDeclaration(importantColor));
+		for (DuplicationInstance duplicationInstance : bucketed.getTypeIIDuplications())
+			assertFalse(((TypeOneDuplicationInstance)duplicationInstance).hasDeclaration(importantColor));
+
+		DuplicationDetector empty = getDuplicationDetector(FixturesUtil.getStyleSheetFromString(""), duplicationDetector -> {});
+		assertEquals(0, empty.getTypeIDuplications().getSize());
+		assertEquals(0, empty.getTypeIIDuplications().getSize());
+	}
+	
+	@Test
+	public void testTypeThreeDuplications() {
+		DuplicationDetector duplicationDetector = getDuplicationDetector(false);
+		// padding-* in .header against padding in .sidebar and .content, .main
+		assertEquals(2, duplicationDetector.getTypeIIIDuplications().getSize());
+		for (DuplicationInstance duplicationInstance : duplicationDetector.getTypeIIIDuplications())
+			assertTrue(duplicationInstance.toString().startsWith("padding: 1px 2px"));
+	}
+	
+	@Test
+	public void testParallelAndSequentialFPGrowthAreTheSame() {
+		for (int numberOfThreads : new int[] { 0, 1, 3 }) {
+			List<ItemSetList> parallel = assertSameDuplications(styleSheet, duplicationDetector -> {
+				duplicationDetector.setUseParallelFPGrowth(true);
+				duplicationDetector.setNumberOfFPGrowthThreads(numberOfThreads);
+			}, true);
+			assertTrue(parallel.size() > 0);
+		}
+		// Nothing to mine: no declaration is repeated
+		StyleSheet noDuplications = FixturesUtil.getStyleSheetFromString("a { color: red } b { color: blue }");
+		List<ItemSetList> parallel = assertSameDuplications(noDuplications, duplicationDetector -> duplicationDetector.setUseParallelFPGrowth(true), true);
+		assertEquals(0, parallel.size());
+		assertEquals(0, getDuplicationDetector(noDuplications, duplicationDetector -> duplicationDetector.setUseParallelFPGrowth(true)).fpGrowth(2, true).size());
+	}
+	
+	@Test
+	public void testArrayAndObjectFPTreesAreTheSame() {
+		List<ItemSetList> arrayTree = assertSameDuplications(styleSheet, duplicationDetector -> duplicationDetector.setUseArrayFPTree(true), true);
+		assertTrue(arrayTree.size() > 0);
+
+		// Each item has the minimum support, but no two items are together in two selectors: only the items themselves are mined
+		StyleSheet singleItems = FixturesUtil.getStyleSheetFromString("a { color: red } b { color: red; float: left } c { float: left }");
+		arrayTree = assertSameDuplications(singleItems, duplicationDetector -> duplicationDetector.setUseArrayFPTree(true), true);
+		assertEquals(1, arrayTree.size());
+		assertEquals(2, arrayTree.get(0).size());
+		for (ItemSet itemSet : arrayTree.get(0)) {
+			assertEquals(1, itemSet.size());
+			assertEquals(2, itemSet.getSupportSize());
+		}
+	}
+	
+	@Test
+	public void testClosedItemSetsAreTheSameAsFPGrowthWithoutSubsets() {
+		assertSameDuplications(styleSheet, duplicationDetector -> duplicationDetector.setUseClosedItemSetMining(true), false);
+
+		// float: left is always with color: red, so it is only in the closed itemset of both;
+		// color: red alone is closed too, since it has a greater support
+		StyleSheet closed = FixturesUtil.getStyleSheetFromString("a { color: red; float: left } b { color: red; float: left } c { color: red }");
+		assertSameDuplications(closed, duplicationDetector -> duplicationDetector.setUseClosedItemSetMining(true), false);
+		DuplicationDetector duplicationDetector = getDuplicationDetector(closed, detector -> detector.setUseClosedItemSetMining(true));
+		Set<String> closedItemSets = new HashSet<>();
+		for (ItemSetList itemSetList : duplicationDetector.fpGrowth(2, true))
+			closedItemSets.addAll(toDeclarationStrings(itemSetList));
+		assertEquals(new HashSet<>(Arrays.asList("[color: red] 3", "[color: red, float: left] 2")), closedItemSets);
+	}
+	
+	@Test
+	public void testNumberedItemSetsAreTheSame() {
+		List<ItemSetList> numbered = assertSameDuplications(styleSheet, duplicationDetector -> duplicationDetector.setUseNumberedItemSets(true), false);
+		assertTrue(numbered.size() > 0);
+
+		// More than 64 items and selectors, so that the bits of both go past the first word of the BitSets
+		StringBuilder css = new StringBuilder();
+		for (int i = 0; i < 70; i++)
+			css.append(String.format(".a%1$s { color: red; margin-left: %1$spx } .b%1$s { margin-left: %1$spx }%n", i));
+		StyleSheet manyItems = FixturesUtil.getStyleSheetFromString(css.toString());
+		assertSameDuplications(manyItems, duplicationDetector -> duplicationDetector.setUseNumberedItemSets(true), false);
+
+		DuplicationDetector duplicationDetector = getDuplicationDetector(manyItems, detector -> detector.setUseNumberedItemSets(true));
+		for (boolean removeSubsets : new boolean[] { false, true }) {
+			numbered = duplicationDetector.fpGrowth(2, removeSubsets);
+			assertEquals(1, numbered.size());
+			assertEquals(71, numbered.get(0).size());
+			assertTrue(toDeclarationStrings(numbered.get(0)).contains("[color: red] 70"));
+			assertTrue(toDeclarationStrings(numbered.get(0)).contains("[margin-left: 69px] 2"));
+			for (ItemSet itemSet : numbered.get(0)) {
+				assertTrue(numbered.get(0).containsSuperSet(itemSet));
+				assertEquals(itemSet, itemSet.clone());
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,60 @@
+package ca.concordia.cssanalyser.cssmodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.GroupingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+
+public class StyleSheetTest {
+	
+	private static StyleSheet styleSheet;
+	
+	@BeforeClass
+	public static void setUpOnce() {
+		styleSheet = FixturesUtil.getTestCSSFile(FixturesUtil.DUPLICATION_TEST_FILE_PATH);
+	}
+	
+	private String getText(String text, LocationInfo locationInfo) {
+		return text.substring(locationInfo.getOffset(), locationInfo.getOffset() + locationInfo.getLength());
+	}
+
+	@Test
+	public void testGetCopyWithLocationInfoUpdated() {
+		StyleSheet copy = styleSheet.getCopyWithLocationInfoUpdated();
+		String text = styleSheet.toString();
+		assertEquals(text, copy.toString());
+		assertEquals(styleSheet.getNumberOfSelectors(), copy.getNumberOfSelectors());
+		
+		int selectorNumber = 1;
+		for (Selector selector : copy.getAllSelectors()) {
+			assertEquals(selectorNumber++, selector.getSelectorNumber());
+			String selectorText = getText(text, selector.getLocationInfo());
+			assertTrue(selectorText, selectorText.startsWith(selector + " {"));
+			assertTrue(selectorText, selectorText.endsWith("}"));
+			String textBefore = text.substring(0, selector.getLocationInfo().getOffset());
+			assertEquals(textBefore.split("\n", -1).length, selector.getLocationInfo().getLineNumber());
+			if (selector instanceof GroupingSelector) {
+				for (BaseSelector baseSelector : ((GroupingSelector)selector).getBaseSelectors()) {
+					assertEquals(baseSelector.toString(), getText(text, baseSelector.getLocationInfo()));
+					assertSame(selector, baseSelector.getParentGroupingSelector());
+				}
+			}
+			int declarationNumber = 1;
+			for (Declaration declaration : selector.getDeclarations()) {
+				assertEquals(declarationNumber++, declaration.getDeclarationNumber());
+				assertSame(selector, declaration.getSelector());
+				String declarationText = declaration.toString() + (declaration.isImportant() ? " !important" : "");
+				assertEquals(declarationText, getText(text, declaration.getLocationInfo()));
+			}
+		}
+	}
+
+}
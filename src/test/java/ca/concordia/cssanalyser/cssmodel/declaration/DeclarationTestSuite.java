@@ -8,13 +8,15 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationValueTest;
 import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
 import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
 
 @RunWith(Suite.class)
 @SuiteClasses({
 	DeclarationTest.class,
-	ShorthandDeclarationTest.class
+	ShorthandDeclarationTest.class,
+	DeclarationValueTest.class
 })
 public class DeclarationTestSuite {
 	
@@ -26,4 +26,16 @@ public class ShorthandDeclarationTest {
 		
 	}
 
+	@Test
+	public void testGetShorthandPropertyNames() {
+		assertEquals(new HashSet<>(Arrays.asList("border-left", "border-color", "border")), 
+				ShorthandDeclaration.getShorthandPropertyNames("border-left-color"));
+		assertEquals(new HashSet<>(Arrays.asList("-webkit-transition")), 
+				ShorthandDeclaration.getShorthandPropertyNames("-webkit-transition-duration"));
+		assertEquals(new HashSet<>(Arrays.asList("margin")), 
+				ShorthandDeclaration.getShorthandPropertyNames("*margin-left"));
+		assertTrue(ShorthandDeclaration.getShorthandPropertyNames("color").isEmpty());
+		assertTrue(ShorthandDeclaration.getIndividualPropertiesForAShorthand("color").isEmpty());
+	}
+
 }
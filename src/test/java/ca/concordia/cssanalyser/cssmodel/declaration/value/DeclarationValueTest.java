@@ -0,0 +1,54 @@
+package ca.concordia.cssanalyser.cssmodel.declaration.value;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DeclarationValueTest {
+
+	@Test
+	public void testMagnitudeAndUnit() {
+		DeclarationValue value = DeclarationValueFactory.getDeclarationValue("width", "12pt", ValueType.LENGTH);
+		assertTrue(value.hasMagnitude());
+		assertEquals(16, value.getMagnitude(), 0);
+		assertEquals(ValueUnit.PX, value.getUnit());
+		
+		value = DeclarationValueFactory.getDeclarationValue("font-weight", "700", ValueType.INTEGER);
+		assertEquals(700, value.getMagnitude(), 0);
+		assertEquals(ValueUnit.NONE, value.getUnit());
+		
+		value = DeclarationValueFactory.getDeclarationValue("width", "auto", ValueType.IDENT);
+		assertFalse(value.hasMagnitude());
+	}
+	
+	@Test
+	public void testRGBA() {
+		DeclarationValue value = DeclarationValueFactory.getDeclarationValue("color", "#ff8000", ValueType.COLOR);
+		assertTrue(value.isRGBAColor());
+		assertEquals(0xff8000, value.getRGB());
+		assertEquals(1, value.getAlpha(), 0);
+		assertFalse(DeclarationValueFactory.getDeclarationValue("color", "currentColor", ValueType.IDENT).isRGBAColor());
+	}
+	
+	@Test
+	public void testEquivalent() {
+		assertTrue(DeclarationValueFactory.getDeclarationValue("width", "1pc", ValueType.LENGTH)
+				.equivalent(DeclarationValueFactory.getDeclarationValue("width", "16.0px", ValueType.LENGTH)));
+		assertTrue(DeclarationValueFactory.getDeclarationValue("margin-left", "0", ValueType.INTEGER)
+				.equivalent(DeclarationValueFactory.getDeclarationValue("margin-left", "0px", ValueType.LENGTH)));
+		assertFalse(DeclarationValueFactory.getDeclarationValue("width", "1px", ValueType.LENGTH)
+				.equivalent(DeclarationValueFactory.getDeclarationValue("width", "1%", ValueType.PERCENTAGE)));
+		assertTrue(DeclarationValueFactory.getDeclarationValue("color", "red", ValueType.IDENT)
+				.equivalent(DeclarationValueFactory.getDeclarationValue("color", "rgb(255, 0, 0)", ValueType.COLOR)));
+		assertFalse(DeclarationValueFactory.getDeclarationValue("color", "red", ValueType.IDENT)
+				.equivalent(DeclarationValueFactory.getDeclarationValue("color", "#f01", ValueType.COLOR)));
+		assertTrue(DeclarationValueFactory.getDeclarationValue("color", "rgba(0, 0, 0, .5)", ValueType.COLOR)
+				.equivalent(DeclarationValueFactory.getDeclarationValue("color", "rgba(0, 0, 0, 0.50)", ValueType.COLOR)));
+		// The alphas are not rounded to 8 bits
+		assertFalse(DeclarationValueFactory.getDeclarationValue("color", "rgba(0, 0, 0, .5)", ValueType.COLOR)
+				.equivalent(DeclarationValueFactory.getDeclarationValue("color", "rgba(0, 0, 0, .501)", ValueType.COLOR)));
+		assertTrue(DeclarationValueFactory.getDeclarationValue("transition-duration", "1s", ValueType.TIME)
+				.equivalent(DeclarationValueFactory.getDeclarationValue("transition-duration", "1.0s", ValueType.TIME)));
+	}
+
+}
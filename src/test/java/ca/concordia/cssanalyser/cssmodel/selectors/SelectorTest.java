@@ -2,8 +2,18 @@ package ca.concordia.cssanalyser.cssmodel.selectors;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
+import ca.concordia.cssanalyser.cssmodel.LocationInfo;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.DeclarationFactory;
+import ca.concordia.cssanalyser.cssmodel.declaration.ShorthandDeclaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationValue;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.ValueType;
+
 import static ca.concordia.cssanalyser.cssmodel.selectors.SelectorTestSuite.*;
 
 public class SelectorTest {
@@ -46,4 +56,42 @@ public class SelectorTest {
 		assertFalse(groupingInTheSameMedia.selectorEquals(groupingInDifferentMedia));
 	}
 
+	private Declaration getDeclaration(String property, String value, Selector selector, int line) {
+		List<DeclarationValue> values = new ArrayList<>();
+		values.add(new DeclarationValue(value, ValueType.LENGTH));
+		Declaration declaration = DeclarationFactory.getDeclaration(property, values, selector, false, true, new LocationInfo(line, 1));
+		selector.addDeclaration(declaration);
+		return declaration;
+	}
+	
+	private List<ShorthandDeclaration> getVirtualShorthands(Selector selector) {
+		List<ShorthandDeclaration> virtualShorthands = new ArrayList<>();
+		for (ShorthandDeclaration virtualShorthand : selector.getVirtualShorthandDeclarations())
+			virtualShorthands.add(virtualShorthand);
+		return virtualShorthands;
+	}
+	
+	@Test
+	public void testVirtualShorthandDeclarationsAreReused() {
+		SimpleSelector selector = new SimpleSelector();
+		selector.addClassName("test");
+		getDeclaration("margin-top", "1px", selector, 1);
+		getDeclaration("margin-right", "2px", selector, 2);
+		getDeclaration("margin-bottom", "3px", selector, 3);
+		Declaration marginLeft = getDeclaration("margin-left", "4px", selector, 4);
+		
+		List<ShorthandDeclaration> virtualShorthands = getVirtualShorthands(selector);
+		assertEquals(1, virtualShorthands.size());
+		assertEquals("margin", virtualShorthands.get(0).getProperty());
+		assertSame(virtualShorthands.get(0), getVirtualShorthands(selector).get(0));
+		
+		// Changing the declarations of the selector changes the virtual shorthands
+		selector.removeDeclaration(marginLeft);
+		assertEquals(0, getVirtualShorthands(selector).size());
+		selector.addDeclaration(marginLeft);
+		List<ShorthandDeclaration> newVirtualShorthands = getVirtualShorthands(selector);
+		assertEquals(1, newVirtualShorthands.size());
+		assertNotSame(virtualShorthands.get(0), newVirtualShorthands.get(0));
+	}
+
 }
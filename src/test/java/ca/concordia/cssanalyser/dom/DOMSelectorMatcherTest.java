@@ -0,0 +1,50 @@
+package ca.concordia.cssanalyser.dom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+
+public class DOMSelectorMatcherTest {
+	
+	private static StyleSheet styleSheet;
+	private static Document document;
+	
+	@BeforeClass
+	public static void setUpOnce() {
+		styleSheet = FixturesUtil.getTestCSSFile(FixturesUtil.SELECTOR_MATCHING_TEST_FILE_PATH);
+		document = DOMHelper.getDocument(FixturesUtil.SELECTOR_MATCHING_TEST_HTML_FILE_PATH);
+		assertNotNull(document);
+	}
+
+	@Test
+	public void testMatcherAndXPathSelectTheSameNodes() {
+		DOMSelectorMatcher selectorMatcher = new DOMSelectorMatcher(document);
+		int numberOfSelectorsWithNodes = 0;
+		for (BaseSelector selector : styleSheet.getAllBaseSelectors()) {
+			DOMNodeWrapperList selectedNodes = selectorMatcher.getSelectedNodes(selector);
+			assertEquals(selector.toString(), selector.getSelectedNodes(document), selectedNodes);
+			if (selectedNodes.size() > 0)
+				numberOfSelectorsWithNodes++;
+		}
+		assertTrue(numberOfSelectorsWithNodes > styleSheet.getAllBaseSelectors().size() / 2);
+	}
+	
+	@Test
+	public void testMapStylesheetOnDocument() {
+		Map<BaseSelector, DOMNodeWrapperList> selectorNodeListMap = styleSheet.mapStylesheetOnDocument(document);
+		assertEquals(styleSheet.getAllBaseSelectors().size(), selectorNodeListMap.size());
+		for (BaseSelector selector : styleSheet.getAllBaseSelectors())
+			assertEquals(selector.toString(), selector.getSelectedNodes(document), selectorNodeListMap.get(selector));
+	}
+
+}
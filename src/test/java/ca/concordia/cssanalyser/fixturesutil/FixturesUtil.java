@@ -18,6 +18,10 @@ public class FixturesUtil {
 	public static final String SELECTORS_TEST_FILE_PATH = RESOURCES_PATH + "css-source/selectors-test.css";
 	public static final String DECLARATIONS_TEST_FILE_PATH = RESOURCES_PATH + "css-source/declarations-test.css";
 	public static final String MEDIA_TEST_FILE_PATH = RESOURCES_PATH + "css-source/media-test.css";
+	public static final String DUPLICATION_TEST_FILE_PATH = RESOURCES_PATH + "css-source/duplication-test.css";
+	public static final String DUPLICATION_TEST_HTML_FILE_PATH = RESOURCES_PATH + "html-source/duplication-test.html";
+	public static final String SELECTOR_MATCHING_TEST_FILE_PATH = RESOURCES_PATH + "css-source/selector-matching-test.css";
+	public static final String SELECTOR_MATCHING_TEST_HTML_FILE_PATH = RESOURCES_PATH + "html-source/selector-matching-test.html";
 	public static final String IMPORT_INLINER_TEST_INPUT = RESOURCES_PATH + "less-source/import-inliner-test.less"; 
 	public static final String IMPORT_INLINER_TEST_EXPECTED = RESOURCES_PATH + "less-source/import-inliner-test-expected.less";
 	public static final String EMPIRICAL_STUDY_TEST_FILE_PATH = RESOURCES_PATH + "less-source/empirical-study-test.less";
@@ -0,0 +1,132 @@
+package ca.concordia.cssanalyser.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.GroupingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+
+public class StyleSheetCodecTest {
+
+	private static final String[] TEST_FILES = new String[] {
+			FixturesUtil.SELECTORS_TEST_FILE_PATH,
+			FixturesUtil.DECLARATIONS_TEST_FILE_PATH,
+			FixturesUtil.SELECTOR_MATCHING_TEST_FILE_PATH,
+			FixturesUtil.DUPLICATION_TEST_FILE_PATH,
+			FixturesUtil.MEDIA_TEST_FILE_PATH
+	};
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		for (String path : TEST_FILES) {
+			StyleSheet expected = FixturesUtil.getTestCSSFile(path);
+			assertStyleSheetEquals(expected, StyleSheetCodec.fromBytes(StyleSheetCodec.toBytes(expected)));
+		}
+	}
+
+	@Test
+	public void testSharedMediaQueryLists() throws IOException {
+		StyleSheet styleSheet = StyleSheetCodec.fromBytes(StyleSheetCodec.toBytes(
+				FixturesUtil.getStyleSheetFromString("@media screen { a { color: red; } b { color: blue; } }")));
+		List<Selector> selectors = FixturesUtil.getSelectorsList(styleSheet);
+		assertEquals(2, selectors.size());
+		assertSame(selectors.get(0).getMediaQueryLists().iterator().next(),
+				selectors.get(1).getMediaQueryLists().iterator().next());
+	}
+
+	@Test
+	public void testStream() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (StyleSheetWriter writer = new StyleSheetWriter(Channels.newChannel(bytes))) {
+			for (String path : TEST_FILES)
+				writer.write(FixturesUtil.getTestCSSFile(path));
+		}
+		try (StyleSheetReader reader = new StyleSheetReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))) {
+			for (String path : TEST_FILES)
+				assertStyleSheetEquals(FixturesUtil.getTestCSSFile(path), reader.read());
+			assertNull(reader.read());
+		}
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		File file = File.createTempFile("codec-test", ".cssm");
+		file.deleteOnExit();
+		StyleSheet expected = FixturesUtil.getTestCSSFile(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		StyleSheetCodec.writeToFile(expected, file.getAbsolutePath());
+		assertStyleSheetEquals(expected, StyleSheetCodec.readFromFile(file.getAbsolutePath()));
+	}
+
+	@Test
+	public void testMalformedInput() {
+		byte[] bytes = StyleSheetCodec.toBytes(FixturesUtil.getTestCSSFile(FixturesUtil.SELECTORS_TEST_FILE_PATH));
+		assertNotReadable(Arrays.copyOf(bytes, bytes.length / 2));
+		byte[] wrongMagic = bytes.clone();
+		wrongMagic[0] = 'X';
+		assertNotReadable(wrongMagic);
+		byte[] newerVersion = bytes.clone();
+		newerVersion[StyleSheetCodec.MAGIC.length] = StyleSheetCodec.VERSION + 1;
+		assertNotReadable(newerVersion);
+		// The path of the style sheet, as a new string of Integer.MAX_VALUE bytes
+		byte[] wrongStringLength = Arrays.copyOf(StyleSheetCodec.MAGIC, StyleSheetCodec.MAGIC.length + 10);
+		System.arraycopy(new byte[] { StyleSheetCodec.VERSION, 1, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07, 'a', 'b', 'c' }, 0,
+				wrongStringLength, StyleSheetCodec.MAGIC.length, 10);
+		assertNotReadable(wrongStringLength);
+	}
+
+	private void assertNotReadable(byte[] bytes) {
+		try {
+			StyleSheetCodec.fromBytes(bytes);
+			fail("Malformed input is read");
+		} catch (IOException expected) {
+		}
+	}
+
+	private void assertStyleSheetEquals(StyleSheet expected, StyleSheet actual) {
+		assertEquals(expected.getFilePath(), actual.getFilePath());
+		assertEquals(expected.toString(), actual.toString());
+		List<Selector> expectedSelectors = FixturesUtil.getSelectorsList(expected);
+		List<Selector> actualSelectors = FixturesUtil.getSelectorsList(actual);
+		assertEquals(expectedSelectors.size(), actualSelectors.size());
+		for (int i = 0; i < expectedSelectors.size(); i++) {
+			Selector expectedSelector = expectedSelectors.get(i);
+			Selector actualSelector = actualSelectors.get(i);
+			assertEquals(expectedSelector.getClass(), actualSelector.getClass());
+			assertEquals(expectedSelector.getLocationInfo(), actualSelector.getLocationInfo());
+			assertEquals(expectedSelector.getSelectorNameLocationInfo(), actualSelector.getSelectorNameLocationInfo());
+			assertEquals(expectedSelector.getMediaQueryLists(), actualSelector.getMediaQueryLists());
+			if (expectedSelector instanceof GroupingSelector) {
+				for (BaseSelector baseSelector : (GroupingSelector)actualSelector)
+					assertSame(actualSelector, baseSelector.getParentGroupingSelector());
+			}
+			List<Declaration> expectedDeclarations = FixturesUtil.getDeclarations(expectedSelector);
+			List<Declaration> actualDeclarations = FixturesUtil.getDeclarations(actualSelector);
+			assertEquals(expectedDeclarations.size(), actualDeclarations.size());
+			for (int j = 0; j < expectedDeclarations.size(); j++) {
+				Declaration expectedDeclaration = expectedDeclarations.get(j);
+				Declaration actualDeclaration = actualDeclarations.get(j);
+				assertEquals(expectedDeclaration.getClass(), actualDeclaration.getClass());
+				assertEquals(expectedDeclaration, actualDeclaration);
+				assertEquals(expectedDeclaration.getLocationInfo(), actualDeclaration.getLocationInfo());
+				assertSame(actualSelector, actualDeclaration.getSelector());
+			}
+		}
+	}
+
+}
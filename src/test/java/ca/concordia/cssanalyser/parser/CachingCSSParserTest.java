@@ -0,0 +1,193 @@
+package ca.concordia.cssanalyser.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+import ca.concordia.cssanalyser.io.IOHelper;
+import ca.concordia.cssanalyser.parser.CSSParserFactory.CSSParserType;
+
+public class CachingCSSParserTest {
+
+	private File temporaryFolder;
+
+	@Before
+	public void setUp() throws IOException {
+		temporaryFolder = Files.createTempDirectory("caching-parser-test").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		delete(temporaryFolder);
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null)
+			for (File child : files)
+				delete(child);
+		file.delete();
+	}
+
+	@Test
+	public void testParseExternalCSSOnce() throws ParseException {
+		CachingCSSParser parser = new CachingCSSParser(CSSParserFactory.getCSSParser(CSSParserType.LESS));
+		StyleSheet styleSheet1 = parser.parseExternalCSS(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		StyleSheet styleSheet2 = parser.parseExternalCSS(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		assertEquals(1, parser.getNumberOfMisses());
+		assertEquals(1, parser.getNumberOfHits());
+
+		StyleSheet expected = FixturesUtil.getTestCSSFile(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		assertEquals(expected.toString(), styleSheet2.toString());
+		assertEquals(expected.getFilePath(), styleSheet2.getFilePath());
+		List<Selector> expectedSelectors = FixturesUtil.getSelectorsList(expected);
+		List<Selector> selectors = FixturesUtil.getSelectorsList(styleSheet2);
+		for (int i = 0; i < expectedSelectors.size(); i++) {
+			assertEquals(expectedSelectors.get(i).getLocationInfo(), selectors.get(i).getLocationInfo());
+		}
+
+		// The returned style sheets are independent
+		assertNotSame(FixturesUtil.getSelectorsList(styleSheet1).get(0), selectors.get(0));
+		List<Selector> selectorsToRemove = new ArrayList<>();
+		selectorsToRemove.add(selectors.get(0));
+		styleSheet2.removeSelectors(selectorsToRemove);
+		assertEquals(expected.toString(), styleSheet1.toString());
+		assertEquals(expected.toString(), parser.parseExternalCSS(FixturesUtil.SELECTORS_TEST_FILE_PATH).toString());
+	}
+
+	@Test
+	public void testParseCSSStringOnce() throws ParseException {
+		CachingCSSParser parser = new CachingCSSParser(CSSParserFactory.getCSSParser(CSSParserType.LESS));
+		String css = ".a { color: red; }";
+		parser.parseCSSString(css);
+		StyleSheet styleSheet = parser.parseCSSString(css);
+		assertEquals(1, parser.getNumberOfHits());
+		assertEquals(FixturesUtil.getStyleSheetFromString(css).toString(), styleSheet.toString());
+		parser.parseCSSString(".b { color: red; }");
+		assertEquals(2, parser.getNumberOfMisses());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsDropped() throws ParseException {
+		CachingCSSParser parser = new CachingCSSParser(CSSParserFactory.getCSSParser(CSSParserType.LESS), 2);
+		parser.parseCSSString(".a { color: red; }");
+		parser.parseCSSString(".b { color: red; }");
+		parser.parseCSSString(".a { color: red; }");
+		parser.parseCSSString(".c { color: red; }");
+		assertEquals(3, parser.getNumberOfMisses());
+		parser.parseCSSString(".a { color: red; }");
+		assertEquals(3, parser.getNumberOfMisses());
+		parser.parseCSSString(".b { color: red; }");
+		assertEquals(4, parser.getNumberOfMisses());
+	}
+
+	@Test
+	public void testKeyIgnoresLinesOfLeadingComments() {
+		String css = "a { color: red; }";
+		String key = CachingCSSParser.getKey("/*\n * state1\n */\n" + css);
+		assertEquals(key, CachingCSSParser.getKey("/*\n * state2\n */\n" + css));
+		assertEquals(key, CachingCSSParser.getKey("/*\n * state10\n */\n" + css));
+		assertEquals(key, CachingCSSParser.getKey("/* state1 */\r\n\r\n/*\n * state1\n\n */\n" + css));
+		assertEquals(key, CachingCSSParser.getKey(css));
+		// The columns of the rest of the CSS change
+		assertNotEquals(key, CachingCSSParser.getKey("/* state1 */ " + css));
+		assertNotEquals(CachingCSSParser.getKey("/* state1 */ " + css), CachingCSSParser.getKey("/* state2 */ " + css));
+		// Other comments are considered
+		assertNotEquals(CachingCSSParser.getKey(css + "/* state1 */"), CachingCSSParser.getKey(css + "/* state2 */"));
+	}
+
+	private static String getHeader(String stateName) {
+		return String.format("/* \n * Created by CSSCatcher plugin for Crawljax\n * CSS file is for Crawljax DOM state %s\n */\n\n", stateName);
+	}
+
+	private static void assertSameLocations(StyleSheet expected, StyleSheet actual) {
+		List<Selector> expectedSelectors = FixturesUtil.getSelectorsList(expected);
+		List<Selector> selectors = FixturesUtil.getSelectorsList(actual);
+		assertEquals(expectedSelectors.size(), selectors.size());
+		for (int i = 0; i < expectedSelectors.size(); i++) {
+			assertEquals(expectedSelectors.get(i).getLocationInfo(), selectors.get(i).getLocationInfo());
+			List<Declaration> expectedDeclarations = FixturesUtil.getDeclarations(expectedSelectors.get(i));
+			List<Declaration> declarations = FixturesUtil.getDeclarations(selectors.get(i));
+			for (int j = 0; j < expectedDeclarations.size(); j++)
+				assertEquals(expectedDeclarations.get(j).getLocationInfo(), declarations.get(j).getLocationInfo());
+		}
+	}
+
+	@Test
+	public void testLocationsAreMovedForLeadingComments() throws ParseException, IOException {
+		String css = IOHelper.readFileToString(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		File folder = temporaryFolder;
+		String state1 = new File(folder, "state1.css").getPath(), state10 = new File(folder, "state10.css").getPath();
+		IOHelper.writeStringToFile(getHeader("state1") + css, state1);
+		IOHelper.writeStringToFile(getHeader("state10") + "\n" + css, state10);
+
+		CSSParser cssParser = CSSParserFactory.getCSSParser(CSSParserType.LESS);
+		CachingCSSParser parser = new CachingCSSParser(cssParser);
+		parser.parseExternalCSS(state1);
+		StyleSheet styleSheet = parser.parseExternalCSS(state10);
+		assertEquals(1, parser.getNumberOfHits());
+
+		StyleSheet expected = cssParser.parseExternalCSS(state10);
+		assertEquals(expected.toString(), styleSheet.toString());
+		assertEquals(expected.getFilePath(), styleSheet.getFilePath());
+		assertSameLocations(expected, styleSheet);
+		// And back
+		assertSameLocations(cssParser.parseExternalCSS(state1), parser.parseExternalCSS(state1));
+		assertSameLocations(cssParser.parseCSSString(css), parser.parseCSSString(css));
+		assertEquals(2, parser.getNumberOfHits());
+	}
+
+	@Test
+	public void testParseCSSStringThenExternalCSS() throws ParseException, IOException {
+		CachingCSSParser parser = new CachingCSSParser(CSSParserFactory.getCSSParser(CSSParserType.LESS));
+		parser.parseCSSString(IOHelper.readFileToString(FixturesUtil.SELECTORS_TEST_FILE_PATH));
+		StyleSheet styleSheet = parser.parseExternalCSS(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		assertEquals(2, parser.getNumberOfMisses());
+		StyleSheet expected = FixturesUtil.getTestCSSFile(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		assertEquals(expected.toString(), styleSheet.toString());
+		assertEquals(expected.getFilePath(), styleSheet.getFilePath());
+	}
+
+	@Test
+	public void testCacheFolder() throws ParseException, IOException {
+		String cacheFolder = new File(temporaryFolder, "cache").getPath();
+		String css = ".a { color: red; }";
+		CachingCSSParser parser = new CachingCSSParser(CSSParserFactory.getCSSParser(CSSParserType.LESS));
+		parser.setCacheFolder(cacheFolder);
+		parser.parseExternalCSS(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		parser.parseCSSString(css);
+		assertEquals(2, parser.getNumberOfMisses());
+
+		// As in the next run
+		parser = new CachingCSSParser(CSSParserFactory.getCSSParser(CSSParserType.LESS));
+		parser.setCacheFolder(cacheFolder);
+		StyleSheet styleSheet = parser.parseExternalCSS(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		assertEquals(css, parser.parseCSSString(css).toString().replaceAll("\\s+", " ").trim());
+		assertEquals(0, parser.getNumberOfMisses());
+		assertEquals(2, parser.getNumberOfHits());
+		StyleSheet expected = FixturesUtil.getTestCSSFile(FixturesUtil.SELECTORS_TEST_FILE_PATH);
+		assertEquals(expected.toString(), styleSheet.toString());
+		assertEquals(expected.getFilePath(), styleSheet.getFilePath());
+		assertSameLocations(expected, styleSheet);
+
+		// Without the folder, the style sheets are parsed again
+		parser = new CachingCSSParser(CSSParserFactory.getCSSParser(CSSParserType.LESS));
+		parser.parseCSSString(css);
+		assertEquals(1, parser.getNumberOfMisses());
+	}
+
+}
@@ -0,0 +1,102 @@
+package ca.concordia.cssanalyser.parser.flute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.concordia.cssanalyser.cssmodel.LocationInfo;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+import ca.concordia.cssanalyser.parser.ParseException;
+
+public class ChunkedCSSParserTest {
+
+	private static final String[] TEST_FILES = new String[] {
+			FixturesUtil.SELECTORS_TEST_FILE_PATH,
+			FixturesUtil.DECLARATIONS_TEST_FILE_PATH,
+			FixturesUtil.DUPLICATION_TEST_FILE_PATH
+	};
+
+	@Test
+	public void testSameAsFlute() throws ParseException {
+		for (String path : TEST_FILES) {
+			StyleSheet expected = new FluteCSSParser().parseExternalCSS(path);
+			StyleSheet actual = new ChunkedCSSParser(4, 1).parseExternalCSS(path);
+			assertEquals(expected.getFilePath(), actual.getFilePath());
+			assertEquals(expected.toString(), actual.toString());
+			List<Selector> expectedSelectors = FixturesUtil.getSelectorsList(expected);
+			List<Selector> actualSelectors = FixturesUtil.getSelectorsList(actual);
+			assertEquals(expectedSelectors.size(), actualSelectors.size());
+			for (int i = 0; i < expectedSelectors.size(); i++) {
+				Selector expectedSelector = expectedSelectors.get(i);
+				Selector actualSelector = actualSelectors.get(i);
+				assertSame(actual, actualSelector.getParentStyleSheet());
+				assertEquals(expectedSelector.getSelectorNumber(), actualSelector.getSelectorNumber());
+				assertEquals(expectedSelector.getLocationInfo(), actualSelector.getLocationInfo());
+				assertEquals(expectedSelector.getSelectorNameLocationInfo(), actualSelector.getSelectorNameLocationInfo());
+				assertEquals(expectedSelector.getMediaQueryLists(), actualSelector.getMediaQueryLists());
+				List<Declaration> expectedDeclarations = FixturesUtil.getDeclarations(expectedSelector);
+				List<Declaration> actualDeclarations = FixturesUtil.getDeclarations(actualSelector);
+				assertEquals(expectedDeclarations.size(), actualDeclarations.size());
+				for (int j = 0; j < expectedDeclarations.size(); j++) {
+					assertEquals(expectedDeclarations.get(j), actualDeclarations.get(j));
+					assertEquals(expectedDeclarations.get(j).getLocationInfo(), actualDeclarations.get(j).getLocationInfo());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testChunks() {
+		String css = "@charset \"UTF-8\";\n" +
+				"a { content: \"}\"; }\r\n" +
+				"/* } ; */ b { content: '\\';}' }\n" +
+				"@media screen { c { color: red; } d { color: blue; } }\r" +
+				"  e { color: red; }";
+		List<LocationInfo> chunks = ChunkedCSSParser.getChunks(css, 1);
+		assertEquals(5, chunks.size());
+		assertEquals(new LocationInfo(1, 1, 0, 17), chunks.get(0));
+		assertEquals("\na { content: \"}\"; }", getText(css, chunks.get(1)));
+		assertEquals("\r\n/* } ; */ b { content: '\\';}' }", getText(css, chunks.get(2)));
+		assertEquals("\n@media screen { c { color: red; } d { color: blue; } }", getText(css, chunks.get(3)));
+		assertEquals("\r  e { color: red; }", getText(css, chunks.get(4)));
+		assertEquals(3, chunks.get(3).getLineNumber());
+		assertEquals(css.indexOf("\n@media") - css.indexOf("/*") + 1, chunks.get(3).getColumnNumber());
+		assertEquals(4, chunks.get(4).getLineNumber());
+		// Chunks are not shorter than the given length
+		assertEquals(1, ChunkedCSSParser.getChunks(css, css.length()).size());
+		assertEquals(2, ChunkedCSSParser.getChunks(css, css.indexOf("\n@media")).size());
+	}
+
+	@Test
+	public void testChunksWithEscapes() throws ParseException {
+		String css = ".a\\{b { color: red; }\n" +
+				".c\\}d\\;e { color: blue; }\n" +
+				".f\\'g { content: \"\\\"}\"; }\n" +
+				"h { color: black; }";
+		List<LocationInfo> chunks = ChunkedCSSParser.getChunks(css, 1);
+		assertEquals(4, chunks.size());
+		assertEquals(".a\\{b { color: red; }", getText(css, chunks.get(0)));
+		assertEquals("\n.c\\}d\\;e { color: blue; }", getText(css, chunks.get(1)));
+		assertEquals("\n.f\\'g { content: \"\\\"}\"; }", getText(css, chunks.get(2)));
+		assertEquals("\nh { color: black; }", getText(css, chunks.get(3)));
+		assertEquals(new FluteCSSParser().parseCSSString(css).toString(), new ChunkedCSSParser(2, 1).parseCSSString(css).toString());
+	}
+
+	@Test
+	public void testFallback() throws ParseException {
+		String css = "a { color: red; } .b { .c { color: red; } }";
+		assertEquals(FixturesUtil.getStyleSheetFromString(css).toString(),
+				new ChunkedCSSParser(2, 1).parseCSSString(css).toString());
+	}
+
+	private String getText(String css, LocationInfo locationInfo) {
+		return css.substring(locationInfo.getOffset(), locationInfo.getOffset() + locationInfo.getLength());
+	}
+
+}
@@ -0,0 +1,239 @@
+package ca.concordia.cssanalyser.parser.flute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.css.sac.InputSource;
+import org.w3c.flute.parser.CharSequence_CharStream;
+import org.w3c.flute.parser.Parser;
+
+import ca.concordia.cssanalyser.cssmodel.LocationInfo;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.declaration.value.DeclarationValue;
+import ca.concordia.cssanalyser.cssmodel.media.MediaQueryList;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.GroupingSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+import ca.concordia.cssanalyser.io.IOHelper;
+import ca.concordia.cssanalyser.parser.CSSParserFactory;
+import ca.concordia.cssanalyser.parser.CSSParserFactory.CSSParserType;
+import ca.concordia.cssanalyser.parser.ParseException;
+
+public class FluteCSSParserTest {
+
+	private static final String[] TEST_FILES = new String[] {
+			FixturesUtil.SELECTORS_TEST_FILE_PATH,
+			FixturesUtil.DECLARATIONS_TEST_FILE_PATH,
+			FixturesUtil.DUPLICATION_TEST_FILE_PATH
+	};
+
+	@Test
+	public void testSameAsLess() throws ParseException {
+		for (String path : TEST_FILES) {
+			StyleSheet expected = FixturesUtil.getTestCSSFile(path);
+			StyleSheet actual = new FluteCSSParser().parseExternalCSS(path);
+			assertEquals(expected.getFilePath(), actual.getFilePath());
+			List<Selector> expectedSelectors = FixturesUtil.getSelectorsList(expected);
+			List<Selector> actualSelectors = FixturesUtil.getSelectorsList(actual);
+			assertEquals(expectedSelectors.size(), actualSelectors.size());
+			for (int i = 0; i < expectedSelectors.size(); i++) {
+				Selector expectedSelector = expectedSelectors.get(i);
+				Selector actualSelector = actualSelectors.get(i);
+				assertEquals(expectedSelector.toString(), actualSelector.toString());
+				assertEquals(expectedSelector.getLocationInfo(), actualSelector.getLocationInfo());
+				assertEquals(expectedSelector.getSelectorNameLocationInfo(), actualSelector.getSelectorNameLocationInfo());
+				assertEquals(expectedSelector.getMediaQueryLists(), actualSelector.getMediaQueryLists());
+				List<Declaration> expectedDeclarations = FixturesUtil.getDeclarations(expectedSelector);
+				List<Declaration> actualDeclarations = FixturesUtil.getDeclarations(actualSelector);
+				assertEquals(expectedDeclarations.size(), actualDeclarations.size());
+				for (int j = 0; j < expectedDeclarations.size(); j++) {
+					assertEquals(expectedDeclarations.get(j), actualDeclarations.get(j));
+					assertEquals(expectedDeclarations.get(j).getLocationInfo(), actualDeclarations.get(j).getLocationInfo());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLocationInfo() throws ParseException, IOException {
+		String path = FixturesUtil.SELECTORS_TEST_FILE_PATH;
+		String css = IOHelper.readFileToString(path);
+		StyleSheet styleSheet = new FluteCSSParser().parseExternalCSS(path);
+		for (Selector selector : styleSheet.getAllSelectors()) {
+			String selectorText = getText(css, selector.getLocationInfo());
+			assertEquals('}', selectorText.charAt(selectorText.length() - 1));
+			if (selector instanceof GroupingSelector) {
+				for (BaseSelector baseSelector : (GroupingSelector)selector) {
+					assertSame(selector, baseSelector.getParentGroupingSelector());
+					assertEquals(baseSelector.toString(), getText(css, baseSelector.getSelectorNameLocationInfo()));
+				}
+			} else {
+				assertEquals(selector.toString(), getText(css, selector.getSelectorNameLocationInfo()));
+			}
+			for (MediaQueryList mediaQueryList : selector.getMediaQueryLists()) {
+				assertEquals(mediaQueryList.toString() + " {", getText(css, mediaQueryList.getLocationInfo()).substring(0, mediaQueryList.toString().length() + 2));
+			}
+			for (Declaration declaration : selector.getDeclarations()) {
+				assertSame(selector, declaration.getSelector());
+				// The same as less4j, the semicolon is a part of the declaration
+				String declarationText = getText(css, declaration.getLocationInfo());
+				assertEquals(';', declarationText.charAt(declarationText.length() - 1));
+				assertEquals(declaration.toString() + (declaration.isImportant() ? " !important" : ""),
+						declarationText.substring(0, declarationText.length() - 1).trim());
+			}
+		}
+	}
+
+	@Test
+	public void testDeclarationLocationInfo() throws ParseException {
+		String css = "a { color: red ; margin: 0 -2px; font-family: 'x', y; background: rgba(0, 0, 0, .5) url(x.png) !important }";
+		StyleSheet styleSheet = new FluteCSSParser().parseCSSString(css);
+		List<Declaration> declarations = FixturesUtil.getDeclarations(styleSheet.getAllSelectors().iterator().next());
+		assertEquals(4, declarations.size());
+		assertEquals("color: red ;", getText(css, declarations.get(0).getLocationInfo()));
+		assertEquals("margin: 0 -2px;", getText(css, declarations.get(1).getLocationInfo()));
+		assertEquals("font-family: 'x', y;", getText(css, declarations.get(2).getLocationInfo()));
+		// No semicolon before the closing brace
+		assertEquals("background: rgba(0, 0, 0, .5) url(x.png) !important", getText(css, declarations.get(3).getLocationInfo()));
+		String[][] expectedValues = new String[][] {
+				{ "red" },
+				{ "0", "-2px" },
+				{ "'x'", ",", "y" },
+				{ "rgba(0, 0, 0, .5)", "url(x.png)" }
+		};
+		for (int i = 0; i < declarations.size(); i++) {
+			List<String> values = new ArrayList<>();
+			for (DeclarationValue value : declarations.get(i).getDeclarationValues()) {
+				if (!value.isAMissingValue())
+					values.add(getText(css, value.getLocationInfo()));
+			}
+			assertEquals(Arrays.asList(expectedValues[i]), values);
+		}
+	}
+
+	@Test
+	public void testFailOnErrors() {
+		String css = ".a { .b { color: red; } }";
+		try {
+			new FluteCSSParser().parseCSSString(css);
+		} catch (ParseException e) {
+			fail("Flute should skip the errors");
+		}
+		try {
+			new FluteCSSParser(true).parseCSSString(css);
+			fail("Flute should fail on errors");
+		} catch (ParseException expected) {
+		}
+	}
+
+	@Test
+	public void testFailOnModelErrors() throws ParseException {
+		// Flute parses it, but the parameter of :not() should be a simple selector in our model
+		String css = "a:not(a b) { color: red; } .b { color: blue; }";
+		assertEquals(2, new FluteCSSParser().parseCSSString(css).getNumberOfSelectors());
+		try {
+			new FluteCSSParser(true).parseCSSString(css);
+			fail("Flute should fail on the CSS that cannot be added to the model");
+		} catch (ParseException expected) {
+		}
+		// So it is parsed by less4j
+		assertEquals(FixturesUtil.getStyleSheetFromString(css).toString(),
+				CSSParserFactory.getCSSParser(CSSParserType.AUTO).parseCSSString(css).toString());
+	}
+
+	/*
+	 * Parses the given CSS with Generic_CharStream, which reads the characters through a Reader
+	 */
+	private static StyleSheet parseWithGenericCharStream(String css) throws IOException {
+		StyleSheet styleSheet = new StyleSheet();
+		InputSource source = new InputSource();
+		source.setCharacterStream(new StringReader(css));
+		Parser parser = new Parser();
+		parser.setDocumentHandler(new CSSDocumentHandler(styleSheet));
+		parser.parseStyleSheet(source);
+		return styleSheet;
+	}
+
+	private static void assertSameStyleSheet(StyleSheet expected, StyleSheet actual) {
+		assertEquals(expected.toString(), actual.toString());
+		List<Selector> expectedSelectors = FixturesUtil.getSelectorsList(expected);
+		List<Selector> actualSelectors = FixturesUtil.getSelectorsList(actual);
+		assertEquals(expectedSelectors.size(), actualSelectors.size());
+		for (int i = 0; i < expectedSelectors.size(); i++) {
+			assertEquals(expectedSelectors.get(i).getLocationInfo(), actualSelectors.get(i).getLocationInfo());
+			assertEquals(expectedSelectors.get(i).getSelectorNameLocationInfo(), actualSelectors.get(i).getSelectorNameLocationInfo());
+			List<Declaration> expectedDeclarations = FixturesUtil.getDeclarations(expectedSelectors.get(i));
+			List<Declaration> actualDeclarations = FixturesUtil.getDeclarations(actualSelectors.get(i));
+			for (int j = 0; j < expectedDeclarations.size(); j++)
+				assertEquals(expectedDeclarations.get(j).getLocationInfo(), actualDeclarations.get(j).getLocationInfo());
+		}
+	}
+
+	@Test
+	public void testCharStream() throws ParseException, IOException {
+		// Lines end with \r\n, \r and \n, strings and comments have non-ASCII characters
+		String css = "a {\r\n\tcolor: red;\r\n}\rb { content: '\u00e9\u4e2d\\'}' ; }\n/* \u00e9 */\n" +
+				"@media screen {\r\n c, d > e { background: url(x.png) !important } }\r";
+		assertSameStyleSheet(parseWithGenericCharStream(css), new FluteCSSParser().parseCSSString(css));
+	}
+
+	/*
+	 * Parses the given file with the memory-mapped CharSequence_CharStream
+	 */
+	private static StyleSheet parseMapped(String path, Charset charset) throws IOException {
+		StyleSheet styleSheet = new StyleSheet();
+		Parser parser = new Parser();
+		parser.setDocumentHandler(new CSSDocumentHandler(styleSheet));
+		parser.parseStyleSheet(new InputSource(), CharSequence_CharStream.map(path, charset));
+		return styleSheet;
+	}
+
+	@Test
+	public void testMappedCharStream() throws IOException {
+		String latin1 = "a {\r\n\tcolor: red;\r\n}\rb { content: '\u00e9\u00fc\\'}' ; }\n/* \u00a9 */\n" +
+				"@media screen {\r\n c, d > e { background: url(x\u00e9.png) !important } }\r";
+		String unicode = latin1.replace("\u00fc", "\u4e2d\u00fc").replace("\u00a9", "\u00a9\u4e2d");
+		File file = File.createTempFile("char-stream-test", ".css");
+		file.deleteOnExit();
+		// ISO-8859-1 is read from the mapped bytes, the others are decoded
+		for (Charset charset : new Charset[] { StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8, StandardCharsets.UTF_16 }) {
+			String css = StandardCharsets.ISO_8859_1.equals(charset) ? latin1 : unicode;
+			Files.write(file.toPath(), css.getBytes(charset));
+			assertSameStyleSheet(parseWithGenericCharStream(css), parseMapped(file.getAbsolutePath(), charset));
+		}
+		// ASCII in UTF-8 is also read from the mapped bytes
+		String ascii = "a { color: red; }\r\nb { content: '\\'}' }";
+		Files.write(file.toPath(), ascii.getBytes(StandardCharsets.UTF_8));
+		assertSameStyleSheet(parseWithGenericCharStream(ascii), parseMapped(file.getAbsolutePath(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testAutoParser() throws ParseException {
+		String css = "@media screen { .a { color: red; } }";
+		assertEquals(new FluteCSSParser().parseCSSString(css).toString(),
+				CSSParserFactory.getCSSParser(CSSParserType.AUTO).parseCSSString(css).toString());
+		// Less syntax is parsed by less4j
+		String less = ".a { .b { color: red; } }";
+		assertEquals(FixturesUtil.getStyleSheetFromString(less).toString(),
+				CSSParserFactory.getCSSParser(CSSParserType.AUTO).parseCSSString(less).toString());
+	}
+
+	private String getText(String css, LocationInfo locationInfo) {
+		return css.substring(locationInfo.getOffset(), locationInfo.getOffset() + locationInfo.getLength());
+	}
+
+}
@@ -0,0 +1,172 @@
+package ca.concordia.cssanalyser.refactoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ca.concordia.cssanalyser.analyser.duplication.DuplicationDetector;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+
+public class GroupingRefactoringSchedulerTest {
+
+	private static List<ItemSetList> getItemSetLists(StyleSheet styleSheet) {
+		DuplicationDetector duplicationDetector = new DuplicationDetector(styleSheet);
+		duplicationDetector.findDuplications();
+		return duplicationDetector.fpGrowth(2, false);
+	}
+
+	/*
+	 * The order in which the ItemSets were taken before using the heap:
+	 * a TreeSet of the applicable ItemSets with positive impact, sorted by the impact,
+	 * in which the ItemSets with the same impact are kept in the order of insertion
+	 */
+	private static List<ItemSet> getOrderUsingTreeSet(List<ItemSetList> itemSetLists) {
+		TreeSet<ItemSet> itemSetsTreeSet = new TreeSet<>(new Comparator<ItemSet>() {
+			@Override
+			public int compare(ItemSet o1, ItemSet o2) {
+				if (o1 == o2)
+					return 0;
+				int i = o1.getGroupingRefactoringImpact();
+				int j = o2.getGroupingRefactoringImpact();
+				if (i != j)
+					return -Integer.compare(i, j);
+				return 1;
+			}
+		});
+		for (ItemSetList isl : itemSetLists)
+			for (ItemSet is : isl)
+				if (is.getGroupingRefactoringImpact() > 0 && is.isApplicable())
+					itemSetsTreeSet.add(is);
+		return new ArrayList<>(itemSetsTreeSet);
+	}
+
+	private static List<ItemSet> pollAll(GroupingRefactoringScheduler scheduler) {
+		List<ItemSet> itemSets = new ArrayList<>();
+		ItemSet itemSet;
+		while ((itemSet = scheduler.pollNextCandidate()) != null)
+			itemSets.add(itemSet);
+		assertEquals(0, scheduler.getNumberOfCandidates());
+		return itemSets;
+	}
+
+	private static void assertSameOrder(List<ItemSet> expected, List<ItemSet> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertSame(expected.get(i), actual.get(i));
+	}
+
+	@Test
+	public void testSameOrderAsTreeSet() {
+		List<ItemSetList> itemSetLists = getItemSetLists(FixturesUtil.getTestCSSFile(FixturesUtil.DUPLICATION_TEST_FILE_PATH));
+		List<ItemSet> expected = getOrderUsingTreeSet(itemSetLists);
+		assertTrue(expected.size() > 1);
+
+		GroupingRefactoringScheduler scheduler = new GroupingRefactoringScheduler();
+		scheduler.setCandidates(itemSetLists);
+		assertEquals(expected.size(), scheduler.getNumberOfApplicableCandidates());
+		assertSameOrder(expected, pollAll(scheduler));
+	}
+
+	@Test
+	public void testTiesAreTakenInTheOrderOfInsertion() {
+		// Four selectors with the same declarations, all of the same length: the ItemSets of the same size have the same impact
+		StyleSheet styleSheet = FixturesUtil.getStyleSheetFromString(
+				".a { color: red; width: 1px; float: top } .b { color: red; width: 1px; float: top } " +
+				".c { color: red; width: 1px; float: top } .d { color: red; width: 1px; float: top }");
+		List<ItemSetList> itemSetLists = getItemSetLists(styleSheet);
+		List<ItemSet> expected = getOrderUsingTreeSet(itemSetLists);
+		int ties = 0;
+		for (int i = 1; i < expected.size(); i++)
+			if (expected.get(i).getGroupingRefactoringImpact() == expected.get(i - 1).getGroupingRefactoringImpact())
+				ties++;
+		assertTrue(ties > 0);
+
+		GroupingRefactoringScheduler scheduler = new GroupingRefactoringScheduler();
+		scheduler.setCandidates(itemSetLists);
+		assertSameOrder(expected, pollAll(scheduler));
+
+		// The candidates are replaced by the new ones
+		scheduler.setCandidates(itemSetLists);
+		scheduler.setCandidates(new ArrayList<ItemSetList>());
+		assertEquals(0, scheduler.getNumberOfCandidates());
+		assertNull(scheduler.pollNextCandidate());
+	}
+
+	@Test
+	public void testRemove() {
+		List<ItemSetList> itemSetLists = getItemSetLists(FixturesUtil.getTestCSSFile(FixturesUtil.DUPLICATION_TEST_FILE_PATH));
+		List<ItemSet> expected = getOrderUsingTreeSet(itemSetLists);
+		GroupingRefactoringScheduler scheduler = new GroupingRefactoringScheduler();
+		scheduler.setCandidates(itemSetLists);
+		int numberOfCandidates = scheduler.getNumberOfCandidates();
+
+		// Remove from the middle, from the end and from the top of the heap
+		List<ItemSet> toRemove = new ArrayList<>();
+		toRemove.add(expected.get(expected.size() / 2));
+		toRemove.add(expected.get(expected.size() - 1));
+		toRemove.add(expected.get(0));
+		for (ItemSet itemSet : toRemove) {
+			assertTrue(scheduler.remove(itemSet));
+			assertFalse(scheduler.remove(itemSet));
+			expected.remove(itemSet);
+		}
+		assertEquals(numberOfCandidates - toRemove.size(), scheduler.getNumberOfCandidates());
+		assertSameOrder(expected, pollAll(scheduler));
+		assertFalse(scheduler.remove(toRemove.get(0)));
+	}
+
+	@Test
+	public void testInfeasibleItemSets() {
+		String css = ".a { color: red; float: left } .b { color: red; float: left } .c { color: blue }";
+		ItemSet redAndFloat = getItemSetOfSize(css, 2);
+		GroupingRefactoringScheduler scheduler = new GroupingRefactoringScheduler();
+		assertFalse(scheduler.isInfeasible(redAndFloat));
+		scheduler.markInfeasible(redAndFloat);
+		assertTrue(scheduler.isInfeasible(redAndFloat));
+
+		// The same declarations, mined again from another style sheet (i.e., in a later round)
+		assertTrue(scheduler.isInfeasible(getItemSetOfSize(css, 2)));
+		assertTrue(scheduler.isInfeasible(getItemSetOfSize(".x { float: left; color: red } .y { color: red; float: left }", 2)));
+		// The same properties and support, but !important
+		assertFalse(scheduler.isInfeasible(getItemSetOfSize(".a { color: red !important; float: left } .b { color: red !important; float: left }", 2)));
+		// The same declarations with another support size
+		assertFalse(scheduler.isInfeasible(getItemSetOfSize(".a { color: red; float: left } .b { color: red; float: left } .e { color: red; float: left }", 2)));
+		// Another value of the same property
+		assertFalse(scheduler.isInfeasible(getItemSetOfSize(".a { color: blue; float: left } .b { color: blue; float: left }", 2)));
+		// Only one of the declarations
+		assertFalse(scheduler.isInfeasible(getItemSetOfSize(css, 1)));
+
+		// Infeasible ItemSets are skipped when polling
+		List<ItemSetList> itemSetLists = getItemSetLists(FixturesUtil.getStyleSheetFromString(css));
+		List<ItemSet> expected = getOrderUsingTreeSet(itemSetLists);
+		scheduler.setCandidates(itemSetLists);
+		List<ItemSet> polled = pollAll(scheduler);
+		for (ItemSet itemSet : polled)
+			assertFalse(scheduler.isInfeasible(itemSet));
+		assertEquals(expected.size() - 1, polled.size());
+	}
+
+	/*
+	 * Returns the first ItemSet of the given size mined from the given CSS
+	 */
+	private static ItemSet getItemSetOfSize(String css, int size) {
+		for (ItemSetList isl : getItemSetLists(FixturesUtil.getStyleSheetFromString(css)))
+			for (ItemSet is : isl)
+				if (is.size() == size)
+					return is;
+		return null;
+	}
+
+}
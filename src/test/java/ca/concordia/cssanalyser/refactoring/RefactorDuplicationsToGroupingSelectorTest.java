@@ -0,0 +1,160 @@
+package ca.concordia.cssanalyser.refactoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.crawljax.util.DomUtils;
+
+import ca.concordia.cssanalyser.analyser.duplication.DuplicationDetector;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSet;
+import ca.concordia.cssanalyser.analyser.duplication.items.ItemSetList;
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.dom.DOMHelper;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+
+public class RefactorDuplicationsToGroupingSelectorTest {
+
+	private static final int MIN_SUPPORT = 2;
+
+	/*
+	 * .a comes before .b and .b before .c in the DOM, so color: red of .a and .c cannot be grouped
+	 */
+	private static final String INFEASIBLE_GROUPING_CSS = ".a { color: red; float: left } .b { color: blue } .c { color: red; float: left }";
+	private static final String INFEASIBLE_GROUPING_HTML = "<html><body><div class=\"a b\">ab</div><div class=\"b c\">bc</div></body></html>";
+
+	/*
+	 * .x and .y are grouped first, without touching the nodes of .a, .b and .c
+	 */
+	private static final String INDEPENDENT_GROUPINGS_CSS = ".x { margin: 0; padding: 0; border: none } .y { margin: 0; padding: 0; border: none } " + 
+			".a { color: red } .b { color: blue } .c { color: red }";
+	private static final String INDEPENDENT_GROUPINGS_HTML = "<html><body><p class=\"x\">x</p><p class=\"y\">y</p>" + 
+			"<div class=\"a b\">ab</div><div class=\"b c\">bc</div></body></html>";
+
+	private static Document duplicationTestDocument;
+	private static Document infeasibleGroupingDocument;
+	private static Document independentGroupingsDocument;
+
+	@BeforeClass
+	public static void setUpOnce() throws IOException {
+		duplicationTestDocument = DOMHelper.getDocument(FixturesUtil.DUPLICATION_TEST_HTML_FILE_PATH);
+		assertNotNull(duplicationTestDocument);
+		infeasibleGroupingDocument = DomUtils.asDocument(INFEASIBLE_GROUPING_HTML);
+		independentGroupingsDocument = DomUtils.asDocument(INDEPENDENT_GROUPINGS_HTML);
+	}
+
+	/*
+	 * Applies the grouping refactorings on the given style sheet with the given options,
+	 * always using the incremental dependency detection
+	 */
+	private static BatchGroupingRefactoringResult refactor(StyleSheet styleSheet, Document document, 
+			Consumer<RefactorDuplicationsToGroupingSelector> option) throws IOException {
+		DuplicationDetector duplicationDetector = new DuplicationDetector(styleSheet);
+		duplicationDetector.findDuplications();
+		List<ItemSetList> fpgrowthResults = duplicationDetector.fpGrowth(MIN_SUPPORT, false);
+
+		RefactorDuplicationsToGroupingSelector refactorDuplications = new RefactorDuplicationsToGroupingSelector(styleSheet);
+		refactorDuplications.setUseIncrementalDependencyDetection(true);
+		option.accept(refactorDuplications);
+		File folder = Files.createTempDirectory("grouping-test").toFile();
+		try {
+			return refactorDuplications.refactorGroupingOpportunities(MIN_SUPPORT, folder.getAbsolutePath(), fpgrowthResults, document, false);
+		} finally {
+			for (File file : folder.listFiles())
+				file.delete();
+			folder.delete();
+		}
+	}
+
+	private static BatchGroupingRefactoringResult refactorDuplicationTest(Consumer<RefactorDuplicationsToGroupingSelector> option) throws IOException {
+		return refactor(FixturesUtil.getTestCSSFile(FixturesUtil.DUPLICATION_TEST_FILE_PATH), duplicationTestDocument, option);
+	}
+
+	private static BatchGroupingRefactoringResult refactorInfeasibleGrouping(Consumer<RefactorDuplicationsToGroupingSelector> option) throws IOException {
+		return refactor(FixturesUtil.getStyleSheetFromString(INFEASIBLE_GROUPING_CSS), infeasibleGroupingDocument, option);
+	}
+
+	private static BatchGroupingRefactoringResult refactorIndependentGroupings(Consumer<RefactorDuplicationsToGroupingSelector> option) throws IOException {
+		return refactor(FixturesUtil.getStyleSheetFromString(INDEPENDENT_GROUPINGS_CSS), independentGroupingsDocument, option);
+	}
+
+	private static void assertSameResults(BatchGroupingRefactoringResult expected, BatchGroupingRefactoringResult actual) {
+		assertEquals(expected.getNumberOfPositiveRefactorins(), actual.getNumberOfPositiveRefactorins());
+		assertEquals(expected.getNumberOfAppliedRefactorings(), actual.getNumberOfAppliedRefactorings());
+		// The grouping selectors are added in the order in which the refactorings are applied
+		assertEquals(expected.getStyleSheet().toString(), actual.getStyleSheet().toString());
+	}
+
+	@Test
+	public void testInfeasibleGrouping() throws IOException {
+		BatchGroupingRefactoringResult result = refactorInfeasibleGrouping(refactorDuplications -> {});
+		// Only float: left can be grouped
+		assertEquals(1, result.getNumberOfAppliedRefactorings());
+		assertEquals(".a { color: red; } .b { color: blue; } .c { color: red; } .a, .c { float: left; }", result.getStyleSheet().toString().replaceAll("\\s+", " ").trim());
+	}
+
+	@Test
+	public void testSpeculativeEvaluationsDoNotChangeTheResult() throws IOException {
+		Consumer<RefactorDuplicationsToGroupingSelector> sequential = refactorDuplications -> refactorDuplications.setNumberOfSpeculativeEvaluations(1);
+		BatchGroupingRefactoringResult expected = refactorDuplicationTest(sequential);
+		assertTrue(expected.getNumberOfAppliedRefactorings() > 0);
+		BatchGroupingRefactoringResult expectedInfeasible = refactorInfeasibleGrouping(sequential);
+		for (int numberOfSpeculativeEvaluations : new int[] { 2, 3, 8 }) {
+			Consumer<RefactorDuplicationsToGroupingSelector> speculative = 
+					refactorDuplications -> refactorDuplications.setNumberOfSpeculativeEvaluations(numberOfSpeculativeEvaluations);
+			assertSameResults(expected, refactorDuplicationTest(speculative));
+			assertSameResults(expectedInfeasible, refactorInfeasibleGrouping(speculative));
+		}
+	}
+
+	@Test
+	public void testKeptSpeculativeEvaluationsDoNotChangeTheResult() throws IOException {
+		BatchGroupingRefactoringResult expected = refactorIndependentGroupings(refactorDuplications -> refactorDuplications.setNumberOfSpeculativeEvaluations(1));
+		assertEquals(1, expected.getNumberOfAppliedRefactorings());
+		assertEquals(".a { color: red; } .b { color: blue; } .c { color: red; } .x, .y { margin: 0; padding: 0; border: none; }", 
+				expected.getStyleSheet().toString().replaceAll("\\s+", " ").trim());
+		// The evaluation of grouping .a and .c is kept after grouping .x and .y
+		assertSameResults(expected, refactorIndependentGroupings(refactorDuplications -> refactorDuplications.setNumberOfSpeculativeEvaluations(8)));
+	}
+
+	@Test
+	public void testGroupingRefactoringDoesNotShareSelectors() {
+		StyleSheet styleSheet = FixturesUtil.getStyleSheetFromString(INFEASIBLE_GROUPING_CSS);
+		String original = styleSheet.toString();
+		DuplicationDetector duplicationDetector = new DuplicationDetector(styleSheet);
+		duplicationDetector.findDuplications();
+		ItemSet itemSet = null;
+		for (ItemSetList itemSetList : duplicationDetector.fpGrowth(MIN_SUPPORT, false))
+			for (ItemSet is : itemSetList)
+				if (is.size() == 2)
+					itemSet = is;
+		assertNotNull(itemSet);
+
+		StyleSheet refactored = new RefactorDuplicationsToGroupingSelector(styleSheet).groupingRefactoring(itemSet);
+		// .a and .c become empty, .b is not touched by the refactoring
+		assertEquals(2, refactored.getNumberOfSelectors());
+		for (Selector selector : refactored.getAllSelectors()) {
+			for (Selector originalSelector : styleSheet.getAllSelectors())
+				assertNotSame(originalSelector, selector);
+			assertSame(refactored, selector.getParentStyleSheet());
+		}
+		// Changing the refactored style sheet does not change the original one
+		for (Selector selector : refactored.getAllSelectors())
+			selector.removeDeclaration(FixturesUtil.getDeclarations(selector).get(0));
+		assertEquals(original, styleSheet.toString());
+	}
+
+}
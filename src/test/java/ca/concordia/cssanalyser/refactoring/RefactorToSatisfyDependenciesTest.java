@@ -0,0 +1,227 @@
+package ca.concordia.cssanalyser.refactoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.selectors.BaseSelector;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSInterSelectorValueOverridingDependency;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSInterSelectorValueOverridingDependency.InterSelectorDependencyReason;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSValueOverridingDependency;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSValueOverridingDependencyList;
+
+public class RefactorToSatisfyDependenciesTest {
+
+	/*
+	 * Six selectors; the last one is the newly added selector, which is free to move
+	 */
+	private static final String CSS = ".s0 { color: red } .s1 { color: orange } .s2 { color: yellow } .s3 { color: green } .s4 { color: blue } .s5 { color: black }";
+
+	private static StyleSheet getStyleSheet() {
+		return FixturesUtil.getStyleSheetFromString(CSS);
+	}
+
+	/*
+	 * Cascading dependencies between the selectors of the given style sheet,
+	 * given as pairs of the indices of the selectors: the first one should come before the second one
+	 */
+	private static CSSValueOverridingDependencyList getDependencies(StyleSheet styleSheet, int... pairs) {
+		List<Selector> selectors = FixturesUtil.getSelectorsList(styleSheet);
+		CSSValueOverridingDependencyList dependencies = new CSSValueOverridingDependencyList();
+		for (int i = 0; i < pairs.length; i += 2) {
+			Selector selector1 = selectors.get(pairs[i]), selector2 = selectors.get(pairs[i + 1]);
+			dependencies.add(new CSSInterSelectorValueOverridingDependency(selector1, FixturesUtil.getDeclarations(selector1).get(0),
+					selector2, FixturesUtil.getDeclarations(selector2).get(0), "color", InterSelectorDependencyReason.DUE_TO_CASCADING));
+		}
+		return dependencies;
+	}
+
+	private static List<String> getOrder(StyleSheet styleSheet) {
+		if (styleSheet == null)
+			return null;
+		List<String> order = new ArrayList<>();
+		for (Selector selector : styleSheet.getAllSelectors())
+			order.add(selector.toString());
+		return order;
+	}
+
+	private static List<String> refactor(boolean useConstraintSolver, int... pairs) {
+		StyleSheet styleSheet = getStyleSheet();
+		RefactorToSatisfyDependencies refactorToSatisfyDependencies = new RefactorToSatisfyDependencies();
+		refactorToSatisfyDependencies.setUseConstraintSolver(useConstraintSolver);
+		return getOrder(refactorToSatisfyDependencies.refactorToSatisfyOverridingDependencies(styleSheet, getDependencies(styleSheet, pairs)));
+	}
+
+	@Test
+	public void testLastSelectorIsMovedOnlyAsMuchAsNeeded() {
+		// .s5 should come after .s2 and before .s4
+		StyleSheet styleSheet = getStyleSheet();
+		List<Integer> newOrdering = new ArrayList<>();
+		StyleSheet refactored = new RefactorToSatisfyDependencies().refactorToSatisfyOverridingDependencies(styleSheet,
+				getDependencies(styleSheet, 2, 5, 5, 4), newOrdering);
+		assertEquals(Arrays.asList(".s0", ".s1", ".s2", ".s3", ".s5", ".s4"), getOrder(refactored));
+		assertEquals(Arrays.asList(1, 2, 3, 4, 6, 5), newOrdering);
+
+		// Without any dependency to break, the order is kept
+		assertEquals(getOrder(getStyleSheet()), refactor(false, 0, 5, 1, 3));
+	}
+
+	@Test
+	public void testSameOrderAsConstraintSolver() {
+		// Only one order satisfies these dependencies, so both have to find it
+		List<String> topologicalSort = refactor(false, 2, 5, 5, 3);
+		assertEquals(Arrays.asList(".s0", ".s1", ".s2", ".s5", ".s3", ".s4"), topologicalSort);
+		assertEquals(topologicalSort, refactor(true, 2, 5, 5, 3));
+
+		// .s3 before .s1 breaks the order of the selectors which should not move
+		assertNull(refactor(false, 3, 1));
+		assertNull(refactor(true, 3, 1));
+		// .s5 after .s3 and before .s1
+		assertNull(refactor(false, 3, 5, 5, 1));
+		assertNull(refactor(true, 3, 5, 5, 1));
+	}
+
+	@Test
+	public void testCycles() {
+		List<Selector> selectors = FixturesUtil.getSelectorsList(getStyleSheet());
+		RefactorToSatisfyDependencies refactorToSatisfyDependencies = new RefactorToSatisfyDependencies();
+		assertNotNull(refactorToSatisfyDependencies.getOrderUsingTopologicalSort(selectors, Collections.<Selector[]>emptyList()));
+		assertTrue(refactorToSatisfyDependencies.hasPositionForLastSelector(selectors, Collections.<Selector[]>emptyList()));
+
+		List<Selector[]> precedences = new ArrayList<>();
+		precedences.add(new Selector[] { selectors.get(2), selectors.get(2) });
+		assertNull(refactorToSatisfyDependencies.getOrderUsingTopologicalSort(selectors, precedences));
+		// Only the position of the last selector is checked
+		assertTrue(refactorToSatisfyDependencies.hasPositionForLastSelector(selectors, precedences));
+
+		precedences.clear();
+		precedences.add(new Selector[] { selectors.get(5), selectors.get(1) });
+		precedences.add(new Selector[] { selectors.get(4), selectors.get(5) });
+		assertNull(refactorToSatisfyDependencies.getOrderUsingTopologicalSort(selectors, precedences));
+		assertFalse(refactorToSatisfyDependencies.hasPositionForLastSelector(selectors, precedences));
+	}
+
+	@Test
+	public void testLastTwoSelectorsAreNotChained() {
+		// All but the last selector keep their order, so the last selector may be moved before the one before it
+		assertEquals(Arrays.asList(".s0", ".s1", ".s2", ".s3", ".s5", ".s4"), refactor(false, 5, 4));
+		assertEquals(Arrays.asList(".s5", ".s0", ".s1", ".s2", ".s3", ".s4"), refactor(false, 5, 0));
+		// But the ones before the last one may not
+		assertNull(refactor(false, 4, 3));
+	}
+
+	/*
+	 * The nested scan of all the base selectors and declarations, which was used before indexing them
+	 */
+	private static Map<CSSValueOverridingDependency, Selector[]> getDependencyToSelectorsMapByNestedScan(StyleSheet styleSheet,
+			CSSValueOverridingDependencyList listOfDependenciesToBeHeld) {
+		Map<CSSValueOverridingDependency, Selector[]> dependencyNodeToSelectorMap = new HashMap<>();
+		for (CSSValueOverridingDependency dependency : listOfDependenciesToBeHeld) {
+			for (BaseSelector selector : styleSheet.getAllBaseSelectors()) {
+				int index = -1;
+				Declaration declarationToMatch = null;
+				if (dependency.getSelector1().selectorEquals(selector)) {
+					index = 0;
+					declarationToMatch = dependency.getDeclaration1();
+				} else if (dependency.getSelector2().selectorEquals(selector)) {
+					index = 1;
+					declarationToMatch = dependency.getDeclaration2();
+				}
+				if (index < 0)
+					continue;
+				for (Declaration declaration : selector.getDeclarations()) {
+					if (declaration.declarationIsEquivalent(declarationToMatch)) {
+						Selector[] selectors = dependencyNodeToSelectorMap.get(dependency);
+						if (selectors == null) {
+							selectors = new Selector[2];
+							dependencyNodeToSelectorMap.put(dependency, selectors);
+						}
+						selectors[index] = declaration.getSelector();
+					}
+				}
+			}
+		}
+		Iterator<Selector[]> iterator = dependencyNodeToSelectorMap.values().iterator();
+		while (iterator.hasNext()) {
+			Selector[] selectors = iterator.next();
+			if (selectors[0] == selectors[1])
+				iterator.remove();
+		}
+		return dependencyNodeToSelectorMap;
+	}
+
+	@Test
+	public void testDependencyToSelectorsMapIsTheSameAsNestedScan() {
+		StyleSheet original = FixturesUtil.getStyleSheetFromString(
+				"a { color: red; margin: 0 } .b { color: blue !important } a, .b { color: red } div > p { color: green } " +
+				".c.d { color: #000 } a { color: red !important } p, .d.c { color: green }");
+		// Equal selectors with other declarations (equivalent values, other class order, etc.), and an added grouping selector 
+		StyleSheet refactored = FixturesUtil.getStyleSheetFromString(
+				"a { margin: 0 } .b { color: blue !important } a, .b { color: red } div > p { color: green } " +
+				".d.c { color: black } a { color: red !important } p, .c.d { color: green } a, p { color: red; margin: 0px }");
+
+		// Equal selectors (simple, combinator and grouping) should have the same selectorEquals() hash codes
+		int equalSelectors = 0;
+		for (Selector selector1 : original.getAllSelectors())
+			for (Selector selector2 : refactored.getAllSelectors())
+				if (selector1.selectorEquals(selector2)) {
+					assertEquals(selector1.selectorEqualsHashCode(), selector2.selectorEqualsHashCode());
+					equalSelectors++;
+				}
+		assertTrue(equalSelectors > 0);
+
+		// Dependencies between all the pairs of declarations with the same property, including the ones in equal selectors
+		List<BaseSelector> baseSelectors = original.getAllBaseSelectors();
+		CSSValueOverridingDependencyList dependencies = new CSSValueOverridingDependencyList();
+		for (BaseSelector selector1 : baseSelectors)
+			for (BaseSelector selector2 : baseSelectors)
+				if (selector1 != selector2)
+					for (Declaration declaration1 : selector1.getDeclarations())
+						for (Declaration declaration2 : selector2.getDeclarations())
+							if (declaration1.getProperty().equals(declaration2.getProperty()))
+								dependencies.add(new CSSInterSelectorValueOverridingDependency(selector1, declaration1, selector2, declaration2,
+										declaration1.getProperty(), InterSelectorDependencyReason.DUE_TO_CASCADING));
+		assertTrue(dependencies.size() > 0);
+
+		Map<CSSValueOverridingDependency, Selector[]> expected = getDependencyToSelectorsMapByNestedScan(refactored, dependencies);
+		Map<CSSValueOverridingDependency, Selector[]> actual = new RefactorToSatisfyDependencies().getDependencyToSelectorsMap(refactored, dependencies);
+		assertTrue(expected.size() > 0);
+		assertEquals(expected.keySet(), actual.keySet());
+		int selfMatched = 0, importantMatched = 0;
+		for (CSSValueOverridingDependency dependency : expected.keySet()) {
+			Selector[] expectedSelectors = expected.get(dependency), actualSelectors = actual.get(dependency);
+			assertSame(expectedSelectors[0], actualSelectors[0]);
+			assertSame(expectedSelectors[1], actualSelectors[1]);
+			// A selector which matches the first selector is not matched with the second one (e.g., a and a)
+			if (dependency.getSelector1().selectorEquals(dependency.getSelector2())) {
+				assertNull(actualSelectors[1]);
+				selfMatched++;
+			}
+			// !important declarations are only matched with !important declarations
+			if (dependency.getDeclaration1().isImportant() && actualSelectors[0] != null) {
+				assertTrue(FixturesUtil.getDeclarations(actualSelectors[0]).get(0).isImportant());
+				importantMatched++;
+			}
+		}
+		assertTrue(selfMatched > 0);
+		assertTrue(importantMatched > 0);
+	}
+
+}
@@ -0,0 +1,202 @@
+package ca.concordia.cssanalyser.refactoring.dependencies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSDependencyDifference.CSSDependencyDifferenceType;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSInterSelectorValueOverridingDependency.InterSelectorDependencyReason;
+
+public class CSSDependencyListTest {
+
+	private static final String CSS = "a { color: red } .b { color: blue } a:hover { color: green } a:focus { color: black } .x.y { color: white } .x.x { color: gray }";
+
+	private List<Selector> originalSelectors;
+	private List<Selector> refactoredSelectors;
+
+	@Before
+	public void setUp() {
+		// Two different style sheets, so that the dependencies are only equal through selectorEquals()
+		originalSelectors = FixturesUtil.getSelectorsList(FixturesUtil.getStyleSheetFromString(CSS));
+		refactoredSelectors = FixturesUtil.getSelectorsList(FixturesUtil.getStyleSheetFromString(CSS));
+	}
+
+	private static CSSValueOverridingDependency getDependency(List<Selector> selectors, int from, int to, String property) {
+		Selector selector1 = selectors.get(from), selector2 = selectors.get(to);
+		return new CSSInterSelectorValueOverridingDependency(selector1, FixturesUtil.getDeclarations(selector1).get(0),
+				selector2, FixturesUtil.getDeclarations(selector2).get(0), property, InterSelectorDependencyReason.DUE_TO_CASCADING);
+	}
+
+	/*
+	 * The pairwise comparison which was used before indexing the dependencies by their structural hash codes
+	 */
+	private static CSSDependencyDifferenceList getPairwiseDifferences(CSSDependencyList<?> dependencies, CSSDependencyList<?> otherDependencyList) {
+		CSSDependencyDifferenceList toReturn = new CSSDependencyDifferenceList();
+		List<CSSDependency<?>> missing = new ArrayList<>();
+		List<CSSDependency<?>> added = new ArrayList<>();
+		for (CSSDependency<?> d : dependencies) {
+			boolean found = false;
+			for (CSSDependency<?> rd : otherDependencyList)
+				if (rd.equals(d)) {
+					found = true;
+					break;
+				}
+			if (!found)
+				missing.add(d);
+		}
+		for (CSSDependency<?> rd : otherDependencyList) {
+			boolean found = false;
+			for (CSSDependency<?> d : dependencies)
+				if (rd.equals(d)) {
+					found = true;
+					break;
+				}
+			if (!found)
+				added.add(rd);
+		}
+		Set<Integer> toRemoveFromMissing = new HashSet<>();
+		Set<Integer> toRemoveFromAdded = new HashSet<>();
+		for (int i = 0; i < missing.size(); i++) {
+			CSSDependency<?> d = missing.get(i);
+			for (int j = 0; j < added.size(); j++) {
+				CSSDependency<?> rd = added.get(j);
+				if (rd.getStartingNode().nodeEquals(d.getEndingNode()) &&
+						d.getStartingNode().nodeEquals(rd.getEndingNode()) &&
+						(rd.getDependencyLabels().containsAll(d.getDependencyLabels()) || d.getDependencyLabels().containsAll(rd.getDependencyLabels()))) {
+					toRemoveFromMissing.add(i);
+					toRemoveFromAdded.add(j);
+					toReturn.add(new CSSDependencyDifference<>(CSSDependencyDifferenceType.REVERSED, d));
+				}
+			}
+		}
+		for (int i = 0; i < missing.size(); i++) {
+			if (!toRemoveFromMissing.contains(i))
+				toReturn.add(new CSSDependencyDifference<>(CSSDependencyDifferenceType.MISSING, missing.get(i)));
+		}
+		for (int i = 0; i < added.size(); i++) {
+			if (!toRemoveFromAdded.contains(i))
+				toReturn.add(new CSSDependencyDifference<>(CSSDependencyDifferenceType.ADDED, added.get(i)));
+		}
+		return toReturn;
+	}
+
+	/*
+	 * Checks that the indexed differences are the same (and in the same order) as the pairwise ones,
+	 * and that hasNonMissingDifferencesWith() agrees with them
+	 */
+	private static CSSDependencyDifferenceList assertSameDifferences(CSSValueOverridingDependencyList original, CSSValueOverridingDependencyList refactored) {
+		CSSDependencyDifferenceList expected = getPairwiseDifferences(original, refactored);
+		CSSDependencyDifferenceList actual = original.getDifferencesWith(refactored);
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.size() > 0 && !expected.allMissing(), original.hasNonMissingDifferencesWith(refactored));
+		return actual;
+	}
+
+	private static List<CSSDependencyDifferenceType> getTypes(CSSDependencyDifferenceList differences) {
+		List<CSSDependencyDifferenceType> types = new ArrayList<>();
+		for (CSSDependencyDifference<?> difference : differences)
+			types.add(difference.getType());
+		return types;
+	}
+
+	@Test
+	public void testSameDependencies() {
+		CSSValueOverridingDependencyList original = new CSSValueOverridingDependencyList();
+		CSSValueOverridingDependencyList refactored = new CSSValueOverridingDependencyList();
+		for (int i = 0; i < originalSelectors.size() - 1; i++) {
+			original.add(getDependency(originalSelectors, i, i + 1, "color"));
+			refactored.add(getDependency(refactoredSelectors, i, i + 1, "color"));
+		}
+		assertEquals(0, assertSameDifferences(original, refactored).size());
+		assertEquals(0, assertSameDifferences(refactored, original).size());
+	}
+
+	@Test
+	public void testMissingAddedAndReversedDependencies() {
+		CSSValueOverridingDependencyList original = new CSSValueOverridingDependencyList();
+		original.add(getDependency(originalSelectors, 0, 1, "color"));
+		original.add(getDependency(originalSelectors, 1, 2, "color"));
+		original.add(getDependency(originalSelectors, 2, 3, "color"));
+		CSSValueOverridingDependencyList refactored = new CSSValueOverridingDependencyList();
+		refactored.add(getDependency(refactoredSelectors, 0, 1, "background-color")); // Other label, not reversed
+		refactored.add(getDependency(refactoredSelectors, 2, 1, "color"));
+		refactored.add(getDependency(refactoredSelectors, 2, 3, "color"));
+		refactored.add(getDependency(refactoredSelectors, 1, 3, "color"));
+
+		CSSDependencyDifferenceList differences = assertSameDifferences(original, refactored);
+		assertEquals(4, differences.size());
+		List<CSSDependencyDifferenceType> types = getTypes(differences);
+		assertEquals(CSSDependencyDifferenceType.REVERSED, types.get(0));
+		assertEquals(CSSDependencyDifferenceType.MISSING, types.get(1));
+		assertEquals(CSSDependencyDifferenceType.ADDED, types.get(2));
+		assertEquals(CSSDependencyDifferenceType.ADDED, types.get(3));
+		assertTrue(original.hasNonMissingDifferencesWith(refactored));
+
+		// Only missing dependencies
+		refactored.clear();
+		refactored.add(getDependency(refactoredSelectors, 2, 3, "color"));
+		differences = assertSameDifferences(original, refactored);
+		assertEquals(2, differences.size());
+		assertTrue(differences.allMissing());
+		assertFalse(original.hasNonMissingDifferencesWith(refactored));
+
+		assertSameDifferences(refactored, original);
+		assertTrue(refactored.hasNonMissingDifferencesWith(original));
+	}
+
+	@Test
+	public void testDependenciesWithSameStructuralHashCode() {
+		// a:hover and a:focus only differ in their pseudo classes, which are not in the hash code
+		Selector hover = originalSelectors.get(2), focus = refactoredSelectors.get(3);
+		assertEquals(hover.selectorEqualsHashCode(), focus.selectorEqualsHashCode());
+		assertFalse(hover.selectorEquals(focus));
+
+		CSSValueOverridingDependencyList original = new CSSValueOverridingDependencyList();
+		original.add(getDependency(originalSelectors, 0, 2, "color"));
+		original.add(getDependency(originalSelectors, 3, 0, "color"));
+		CSSValueOverridingDependencyList refactored = new CSSValueOverridingDependencyList();
+		refactored.add(getDependency(refactoredSelectors, 0, 3, "color"));
+		refactored.add(getDependency(refactoredSelectors, 0, 2, "color"));
+		refactored.add(getDependency(refactoredSelectors, 2, 0, "color"));
+		assertEquals(original.get(0).getStructuralHashCode(), refactored.get(0).getStructuralHashCode());
+
+		CSSDependencyDifferenceList differences = assertSameDifferences(original, refactored);
+		// a:focus -> a is reversed to a -> a:focus, but not to a:hover -> a, which has the same structural hash code
+		List<CSSDependencyDifferenceType> types = getTypes(differences);
+		assertEquals(2, differences.size());
+		assertEquals(CSSDependencyDifferenceType.REVERSED, types.get(0));
+		assertEquals(CSSDependencyDifferenceType.ADDED, types.get(1));
+		assertTrue(differences.toString().contains("Added dependency: a:hover"));
+		assertSameDifferences(refactored, original);
+	}
+
+	@Test
+	public void testSelectorEqualsWithRepeatedClasses() {
+		// .x.y and .x.x have the same number of classes, and .x.y has all the classes of .x.x
+		Selector xy = originalSelectors.get(4), xx = refactoredSelectors.get(5);
+		assertFalse(xy.selectorEquals(xx));
+		assertFalse(xx.selectorEquals(xy));
+		assertTrue(xy.selectorEquals(refactoredSelectors.get(4)));
+		assertEquals(xy.selectorEqualsHashCode(), refactoredSelectors.get(4).selectorEqualsHashCode());
+
+		CSSValueOverridingDependencyList original = new CSSValueOverridingDependencyList();
+		original.add(getDependency(originalSelectors, 4, 0, "color"));
+		CSSValueOverridingDependencyList refactored = new CSSValueOverridingDependencyList();
+		refactored.add(getDependency(refactoredSelectors, 5, 0, "color"));
+		CSSDependencyDifferenceList differences = original.getDifferencesWith(refactored);
+		assertEquals(2, differences.size());
+		assertTrue(original.hasNonMissingDifferencesWith(refactored));
+		assertTrue(refactored.hasNonMissingDifferencesWith(original));
+	}
+
+}
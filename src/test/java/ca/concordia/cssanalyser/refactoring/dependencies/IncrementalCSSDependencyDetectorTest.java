@@ -0,0 +1,170 @@
+package ca.concordia.cssanalyser.refactoring.dependencies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import ca.concordia.cssanalyser.cssmodel.StyleSheet;
+import ca.concordia.cssanalyser.cssmodel.declaration.Declaration;
+import ca.concordia.cssanalyser.cssmodel.selectors.Selector;
+import ca.concordia.cssanalyser.dom.DOMHelper;
+import ca.concordia.cssanalyser.fixturesutil.FixturesUtil;
+
+public class IncrementalCSSDependencyDetectorTest {
+	
+	private static StyleSheet styleSheet;
+	private static Document document;
+	
+	@BeforeClass
+	public static void setUpOnce() {
+		styleSheet = FixturesUtil.getTestCSSFile(FixturesUtil.SELECTOR_MATCHING_TEST_FILE_PATH);
+		document = DOMHelper.getDocument(FixturesUtil.SELECTOR_MATCHING_TEST_HTML_FILE_PATH);
+		assertNotNull(document);
+	}
+	
+	private void assertSameDependencies(CSSValueOverridingDependencyList expected, CSSValueOverridingDependencyList actual) {
+		CSSDependencyDifferenceList differences = expected.getDifferencesWith(actual);
+		assertEquals(differences.toString(), 0, differences.size());
+	}
+	
+	/*
+	 * Copies the given style sheet, without the selectors to be removed.
+	 * The selectors to be moved are added to the end of the new style sheet.
+	 */
+	private StyleSheet copyStyleSheet(StyleSheet styleSheet, List<Selector> selectorsToRemove, List<Selector> selectorsToMove) {
+		StyleSheet newStyleSheet = new StyleSheet();
+		List<Selector> selectors = new ArrayList<>();
+		for (Selector selector : styleSheet.getAllSelectors()) {
+			if (!selectorsToRemove.contains(selector) && !selectorsToMove.contains(selector))
+				selectors.add(selector);
+		}
+		selectors.addAll(selectorsToMove);
+		for (Selector selector : selectors) {
+			Selector newSelector = selector.copyEmptySelector();
+			for (Declaration declaration : selector.getDeclarations())
+				newSelector.addDeclaration(declaration.clone());
+			newStyleSheet.addSelector(newSelector);
+		}
+		return newStyleSheet;
+	}
+	
+	@Test
+	public void testInitialDependencies() {
+		IncrementalCSSDependencyDetector detector = new IncrementalCSSDependencyDetector(styleSheet, document);
+		CSSValueOverridingDependencyList dependencies = detector.getOverridingDependencies();
+		assertTrue(dependencies.size() > 0);
+		assertSameDependencies(styleSheet.getValueOverridingDependencies(document), dependencies);
+	}
+	
+	@Test
+	public void testUpdate() {
+		IncrementalCSSDependencyDetector detector = new IncrementalCSSDependencyDetector(styleSheet, document);
+		List<Selector> selectors = new ArrayList<>();
+		for (Selector selector : styleSheet.getAllSelectors())
+			selectors.add(selector);
+		List<Selector> selectorsToRemove = new ArrayList<>();
+		List<Selector> selectorsToMove = new ArrayList<>();
+		selectorsToRemove.add(selectors.get(1)); // #main
+		selectorsToMove.add(selectors.get(0)); // div
+		selectorsToMove.add(selectors.get(13)); // ul > li
+		List<Selector> changedSelectors = new ArrayList<>();
+		changedSelectors.addAll(selectorsToRemove);
+		changedSelectors.addAll(selectorsToMove);
+		
+		StyleSheet newStyleSheet = copyStyleSheet(styleSheet, selectorsToRemove, selectorsToMove);
+		CSSValueOverridingDependencyList dependencies = detector.update(newStyleSheet, changedSelectors);
+		assertSameDependencies(newStyleSheet.getValueOverridingDependencies(document), dependencies);
+		
+		// Going back to the original style sheet
+		dependencies = detector.update(styleSheet, changedSelectors);
+		assertSameDependencies(styleSheet.getValueOverridingDependencies(document), dependencies);
+	}
+	
+	@Test
+	public void testDependenciesAfterUpdate() {
+		IncrementalCSSDependencyDetector detector = new IncrementalCSSDependencyDetector(styleSheet, document);
+		List<Selector> selectors = new ArrayList<>();
+		for (Selector selector : styleSheet.getAllSelectors())
+			selectors.add(selector);
+		List<Selector> selectorsToRemove = new ArrayList<>();
+		List<Selector> selectorsToMove = new ArrayList<>();
+		selectorsToRemove.add(selectors.get(1)); // #main
+		selectorsToMove.add(selectors.get(0)); // div
+		List<Selector> changedSelectors = new ArrayList<>();
+		changedSelectors.addAll(selectorsToRemove);
+		changedSelectors.addAll(selectorsToMove);
+		StyleSheet newStyleSheet = copyStyleSheet(styleSheet, selectorsToRemove, selectorsToMove);
+		CSSValueOverridingDependencyList dependencies = detector.getOverridingDependenciesAfterUpdate(newStyleSheet, changedSelectors);
+		assertSameDependencies(newStyleSheet.getValueOverridingDependencies(document), dependencies);
+
+		// The dependencies of the original style sheet are kept
+		assertSameDependencies(styleSheet.getValueOverridingDependencies(document), detector.getOverridingDependencies());
+		assertSameDependencies(styleSheet.getValueOverridingDependencies(document), detector.getOverridingDependenciesAfterUpdate(styleSheet, changedSelectors));
+	}
+
+	@Test
+	public void testApplyUpdate() {
+		IncrementalCSSDependencyDetector detector = new IncrementalCSSDependencyDetector(styleSheet, document);
+		List<Selector> selectors = new ArrayList<>();
+		for (Selector selector : styleSheet.getAllSelectors())
+			selectors.add(selector);
+		List<Selector> selectorsToRemove = new ArrayList<>();
+		List<Selector> selectorsToMove = new ArrayList<>();
+		selectorsToRemove.add(selectors.get(1)); // #main
+		selectorsToMove.add(selectors.get(0)); // div
+		List<Selector> changedSelectors = new ArrayList<>();
+		changedSelectors.addAll(selectorsToRemove);
+		changedSelectors.addAll(selectorsToMove);
+		StyleSheet newStyleSheet = copyStyleSheet(styleSheet, selectorsToRemove, selectorsToMove);
+		IncrementalCSSDependencyDetector.Update update = detector.getUpdate(newStyleSheet, changedSelectors);
+		assertFalse(update.isIndependentOf(detector.getUpdate(newStyleSheet, changedSelectors)));
+		assertSameDependencies(styleSheet.getValueOverridingDependencies(document), detector.getOverridingDependencies());
+
+		CSSValueOverridingDependencyList dependencies = detector.apply(update);
+		assertSameDependencies(newStyleSheet.getValueOverridingDependencies(document), dependencies);
+		assertSameDependencies(newStyleSheet.getValueOverridingDependencies(document), detector.getOverridingDependencies());
+		assertSame(newStyleSheet, detector.getStyleSheet());
+
+		// Going back to the original style sheet, the same as update() does
+		dependencies = detector.update(styleSheet, changedSelectors);
+		assertSameDependencies(styleSheet.getValueOverridingDependencies(document), dependencies);
+	}
+
+	@Test
+	public void testApplyUpdateOfAnotherStyleSheet() {
+		IncrementalCSSDependencyDetector detector = new IncrementalCSSDependencyDetector(styleSheet, document);
+		List<Selector> changedSelectors = new ArrayList<>();
+		changedSelectors.add(styleSheet.getAllSelectors().iterator().next());
+		StyleSheet newStyleSheet = copyStyleSheet(styleSheet, changedSelectors, new ArrayList<Selector>());
+		IncrementalCSSDependencyDetector.Update update = detector.getUpdate(newStyleSheet, changedSelectors);
+		detector.recompute(newStyleSheet);
+		try {
+			detector.apply(update);
+			fail("The update is found for the original style sheet");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testRecompute() {
+		IncrementalCSSDependencyDetector detector = new IncrementalCSSDependencyDetector(styleSheet, document);
+		List<Selector> selectorsToMove = new ArrayList<>();
+		for (Selector selector : styleSheet.getAllSelectors()) {
+			selectorsToMove.add(0, selector);
+		}
+		StyleSheet reversedStyleSheet = copyStyleSheet(styleSheet, new ArrayList<Selector>(), selectorsToMove);
+		CSSValueOverridingDependencyList dependencies = detector.recompute(reversedStyleSheet);
+		assertSameDependencies(reversedStyleSheet.getValueOverridingDependencies(document), dependencies);
+	}
+
+}
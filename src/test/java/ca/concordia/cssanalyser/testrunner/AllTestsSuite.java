@@ -4,12 +4,24 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import ca.concordia.cssanalyser.analyser.duplication.DuplicationDetectorTest;
+import ca.concordia.cssanalyser.cssmodel.StyleSheetTest;
 import ca.concordia.cssanalyser.cssmodel.declaration.DeclarationTestSuite;
 import ca.concordia.cssanalyser.cssmodel.media.MediaTestSuite;
 import ca.concordia.cssanalyser.cssmodel.selectors.SelectorTestSuite;
+import ca.concordia.cssanalyser.dom.DOMSelectorMatcherTest;
+import ca.concordia.cssanalyser.io.StyleSheetCodecTest;
+import ca.concordia.cssanalyser.parser.CachingCSSParserTest;
+import ca.concordia.cssanalyser.parser.flute.ChunkedCSSParserTest;
+import ca.concordia.cssanalyser.parser.flute.FluteCSSParserTest;
 import ca.concordia.cssanalyser.parser.less.LessCSSParserTestSuite;
 import ca.concordia.cssanalyser.preprocessors.constructsinfo.ConstructsInfoSuite;
 import ca.concordia.cssanalyser.preprocessors.util.less.ImportInlinerTest;
+import ca.concordia.cssanalyser.refactoring.GroupingRefactoringSchedulerTest;
+import ca.concordia.cssanalyser.refactoring.RefactorDuplicationsToGroupingSelectorTest;
+import ca.concordia.cssanalyser.refactoring.RefactorToSatisfyDependenciesTest;
+import ca.concordia.cssanalyser.refactoring.dependencies.CSSDependencyListTest;
+import ca.concordia.cssanalyser.refactoring.dependencies.IncrementalCSSDependencyDetectorTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
@@ -18,7 +30,19 @@ import ca.concordia.cssanalyser.preprocessors.util.less.ImportInlinerTest;
 	MediaTestSuite.class,
 	ImportInlinerTest.class,
 	ConstructsInfoSuite.class,
-	LessCSSParserTestSuite.class
+	LessCSSParserTestSuite.class,
+	CachingCSSParserTest.class,
+	FluteCSSParserTest.class,
+	ChunkedCSSParserTest.class,
+	StyleSheetCodecTest.class,
+	DuplicationDetectorTest.class,
+	DOMSelectorMatcherTest.class,
+	IncrementalCSSDependencyDetectorTest.class,
+	CSSDependencyListTest.class,
+	RefactorToSatisfyDependenciesTest.class,
+	GroupingRefactoringSchedulerTest.class,
+	RefactorDuplicationsToGroupingSelectorTest.class,
+	StyleSheetTest.class
 })
 public class AllTestsSuite {
 